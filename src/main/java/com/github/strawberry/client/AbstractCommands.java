@@ -0,0 +1,147 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.strawberry.redis.RedisCommands;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Base class of {@link RedisCommands} that are sent as raw commands (see
+ * {@link RequestEncoder}) and whose raw replies (see {@link ReplyDecoder}) are
+ * converted into the values that Jedis would have returned. Subclasses only
+ * decide where every command is sent.
+ * 
+ * @author Wiehann Matthysen
+ */
+public abstract class AbstractCommands implements RedisCommands {
+
+    /**
+     * Sends the given command (the command name followed by its arguments)
+     * and waits for its reply. The key of a command that concerns a single key
+     * is its first argument.
+     * @param args The command name and its arguments.
+     * @return The raw reply.
+     */
+    protected abstract Object call(Object... args);
+
+    protected static String stringOf(Object reply) {
+        return reply == null ? null : SafeEncoder.encode((byte[])reply);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static List<byte[]> bytesOf(Object reply) {
+        return (List<byte[]>)reply;
+    }
+
+    protected static <C extends Collection<String>> C stringsOf(Object reply, C strings) {
+        for (byte[] element : bytesOf(reply)) {
+            strings.add(stringOf(element));
+        }
+        return strings;
+    }
+
+    @Override
+    public Set<String> keys(String pattern) {
+        return stringsOf(call("KEYS", pattern), new HashSet<String>());
+    }
+
+    @Override
+    public String type(String key) {
+        return (String)call("TYPE", key);
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        return (byte[])call("GET", key);
+    }
+
+    @Override
+    public Map<String, String> hgetAll(String key) {
+        List<byte[]> pairs = bytesOf(call("HGETALL", key));
+        Map<String, String> hash = new HashMap<String, String>(pairs.size());
+        for (int index = 0; index < pairs.size(); index += 2) {
+            hash.put(stringOf(pairs.get(index)), stringOf(pairs.get(index + 1)));
+        }
+        return hash;
+    }
+
+    @Override
+    public List<String> hmget(String key, String... fields) {
+        Object[] args = new Object[fields.length + 2];
+        args[0] = "HMGET";
+        args[1] = key;
+        System.arraycopy(fields, 0, args, 2, fields.length);
+        return stringsOf(call(args), new ArrayList<String>(fields.length));
+    }
+
+    @Override
+    public List<String> lrange(String key, long start, long end) {
+        return stringsOf(call("LRANGE", key, start, end), new ArrayList<String>());
+    }
+
+    @Override
+    public List<byte[]> lrange(byte[] key, int start, int end) {
+        return bytesOf(call("LRANGE", key, start, end));
+    }
+
+    @Override
+    public Set<String> smembers(String key) {
+        return stringsOf(call("SMEMBERS", key), new HashSet<String>());
+    }
+
+    @Override
+    public Set<byte[]> smembers(byte[] key) {
+        return new LinkedHashSet<byte[]>(bytesOf(call("SMEMBERS", key)));
+    }
+
+    @Override
+    public Set<String> zrange(String key, int start, int end) {
+        return stringsOf(call("ZRANGE", key, start, end), new LinkedHashSet<String>());
+    }
+
+    @Override
+    public Set<byte[]> zrange(byte[] key, int start, int end) {
+        return new LinkedHashSet<byte[]>(bytesOf(call("ZRANGE", key, start, end)));
+    }
+
+    @Override
+    public Long strlen(byte[] key) {
+        return (Long)call("STRLEN", key);
+    }
+
+    @Override
+    public byte[] getrange(byte[] key, int start, int end) {
+        return (byte[])call("GETRANGE", key, start, end);
+    }
+
+    @Override
+    public String info() {
+        return stringOf(call("INFO"));
+    }
+
+}
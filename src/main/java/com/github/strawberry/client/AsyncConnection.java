@@ -0,0 +1,73 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import java.io.Closeable;
+import java.util.List;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * A connection to a Redis database over which commands are sent without
+ * waiting for their replies, thus any number of commands (from any number of
+ * threads) may be in flight at once.
+ * 
+ * @author Wiehann Matthysen
+ */
+public interface AsyncConnection extends Closeable {
+
+    /**
+     * Queues the given command (the command name followed by its arguments,
+     * see {@link RequestEncoder#encode(Object...)}) to be sent to the Redis
+     * database.
+     * @param args The command name and its arguments.
+     * @return A future that receives the decoded reply (see
+     * {@link ReplyDecoder}). An error reply fails the future with a
+     * {@link JedisDataException}, and a failure of the connection fails it
+     * with a {@link JedisConnectionException}.
+     */
+    public ListenableFuture<Object> send(Object... args);
+
+    /**
+     * Queues the given commands to be sent to the Redis database as a unit:
+     * no command of any other thread is sent in between them. This is required
+     * for commands that affect the command that follows them on the same
+     * connection (such as ASKING).
+     * @param commands The commands, each as its name followed by its
+     * arguments.
+     * @return The futures that receive the replies, in the order of the given
+     * commands.
+     */
+    public List<ListenableFuture<Object>> sendAll(List<Object[]> commands);
+
+    /**
+     * Returns whether this connection is still usable, that is: whether it has
+     * neither failed nor been closed.
+     */
+    public boolean isOpen();
+
+    /**
+     * Closes this connection. All commands whose replies have not been received
+     * yet fail with a {@link JedisConnectionException}.
+     */
+    @Override
+    public void close();
+}
@@ -0,0 +1,34 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * Opens {@link AsyncConnection}s to the Redis databases at given addresses.
+ * 
+ * @author Wiehann Matthysen
+ */
+public interface ConnectionFactory {
+
+    /**
+     * Opens a connection to the Redis database at the given host and port.
+     * @throws JedisConnectionException if the connection could not be opened.
+     */
+    public AsyncConnection connect(String host, int port);
+}
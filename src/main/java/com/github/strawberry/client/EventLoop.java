@@ -0,0 +1,135 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * A single thread that performs all input and output for any number of
+ * {@link NioConnection}s by means of a {@link Selector}, thus connections do
+ * not each require threads of their own.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class EventLoop implements Closeable {
+
+    private final Selector selector;
+    private final Thread thread;
+
+    /**
+     * Connections whose registration with the selector needs to be updated by
+     * the event-loop thread.
+     */
+    private final Queue<NioConnection> updates = new ConcurrentLinkedQueue<NioConnection>();
+
+    private volatile boolean closed;
+
+    /**
+     * Initializes a newly created {@code EventLoop} and starts its thread.
+     * @throws JedisConnectionException if the selector could not be opened.
+     */
+    public EventLoop() {
+        try {
+            this.selector = Selector.open();
+        } catch (IOException exception) {
+            throw new JedisConnectionException(exception);
+        }
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "strawberry-event-loop");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Schedules the registration of the given connection to be updated (see
+     * {@link NioConnection#update(Selector)}) by the event-loop thread.
+     */
+    void schedule(NioConnection connection) {
+        this.updates.add(connection);
+        if (this.closed) {
+            failUpdates();
+        } else {
+            this.selector.wakeup();
+        }
+    }
+
+    /**
+     * Returns whether the calling thread is the event-loop thread.
+     */
+    boolean inLoop() {
+        return Thread.currentThread() == this.thread;
+    }
+
+    private void failUpdates() {
+        NioConnection connection = null;
+        while ((connection = this.updates.poll()) != null) {
+            connection.fail(new JedisConnectionException("Event loop closed."));
+        }
+    }
+
+    private void loop() {
+        try {
+            while (!this.closed) {
+                this.selector.select();
+                NioConnection connection = null;
+                while ((connection = this.updates.poll()) != null) {
+                    connection.update(this.selector);
+                }
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    ((NioConnection)key.attachment()).handle(key);
+                }
+            }
+        } catch (IOException exception) {
+            this.closed = true;
+        } finally {
+            for (SelectionKey key : this.selector.keys()) {
+                ((NioConnection)key.attachment()).fail(new JedisConnectionException("Event loop closed."));
+            }
+            failUpdates();
+            try {
+                this.selector.close();
+            } catch (IOException exception) {
+                // Nothing sensible left to do.
+            }
+        }
+    }
+
+    /**
+     * Stops the event-loop thread, failing all of its connections.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.selector.wakeup();
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.github.strawberry.redis.RedisCommands;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * {@link RedisCommands} that are sent over a (shared) {@link AsyncConnection},
+ * such as a {@link MultiplexedConnection}. Every command blocks the calling
+ * thread until its reply has been received, but never blocks any of the other
+ * threads that share the connection.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class MultiplexedCommands extends AbstractCommands {
+
+    private final AsyncConnection connection;
+    private final int timeout;
+
+    /**
+     * Initializes a newly created {@code MultiplexedCommands} instance.
+     * @param connection The connection over which commands are sent.
+     * @param timeout The time in milliseconds to wait for each reply.
+     */
+    public MultiplexedCommands(AsyncConnection connection, int timeout) {
+        this.connection = connection;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Waits for the given reply, rethrowing the exception it failed with (as
+     * raised by an {@link AsyncConnection}) in the calling thread.
+     * @throws JedisConnectionException if the connection failed or the reply
+     * did not arrive within the given timeout.
+     * @throws JedisDataException if the reply is an error reply.
+     */
+    public static Object await(Future<Object> reply, int timeout) {
+        try {
+            return reply.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof JedisDataException) {
+                throw new JedisDataException(cause.getMessage());
+            }
+            throw new JedisConnectionException(cause);
+        } catch (TimeoutException exception) {
+            throw new JedisConnectionException("Timed out waiting for reply.", exception);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new JedisConnectionException(exception);
+        }
+    }
+
+    @Override
+    protected Object call(Object... args) {
+        return await(this.connection.send(args), this.timeout);
+    }
+
+    @Override
+    public List<Object> valuesOf(List<String> keys) {
+        List<Future<Object>> types = new ArrayList<Future<Object>>(keys.size());
+        for (String key : keys) {
+            types.add(this.connection.send("TYPE", key));
+        }
+        List<String> typeNames = new ArrayList<String>(keys.size());
+        List<Future<Object>> fetches = new ArrayList<Future<Object>>(keys.size());
+        for (int index = 0; index < keys.size(); index++) {
+            String type = Replies.typeOf(await(types.get(index), this.timeout));
+            Object[] fetch = Replies.fetchOf(type, keys.get(index));
+            typeNames.add(type);
+            fetches.add(fetch == null ? null : this.connection.send(fetch));
+        }
+        List<Object> values = new ArrayList<Object>(keys.size());
+        for (int index = 0; index < keys.size(); index++) {
+            Future<Object> fetch = fetches.get(index);
+            values.add(fetch == null ? null : Replies.valueOf(typeNames.get(index), await(fetch, this.timeout)));
+        }
+        return values;
+    }
+}
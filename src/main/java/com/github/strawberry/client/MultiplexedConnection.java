@@ -0,0 +1,312 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * A single connection to a Redis database that is shared by any number of
+ * threads. Commands are sent without waiting for the replies to previous
+ * commands, thus commands from concurrent threads are pipelined automatically:
+ * a dedicated writer thread drains all commands that have been queued in the
+ * meantime and flushes them to the socket in a single write, while a dedicated
+ * reader thread decodes the replies as they arrive. Since Redis replies to the
+ * commands on a connection in the order in which they were received, every
+ * reply is matched to its command by a first-in-first-out queue of pending
+ * replies.
+ * 
+ * <p>
+ * Once the connection fails (or is closed) all pending and subsequent commands
+ * fail with a {@link JedisConnectionException}; a failed connection is never
+ * reopened.
+ * </p>
+ * 
+ * <b>Note</b>: blocking commands (such as BLPOP) and commands that change the
+ * state of the connection (such as SELECT, MULTI or SUBSCRIBE) must not be sent
+ * over a shared connection, as they would affect the commands of all other
+ * threads.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class MultiplexedConnection implements AsyncConnection {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Closeable transport;
+    private final InputStream input;
+    private final OutputStream output;
+
+    private final BlockingQueue<Request> outgoing = new LinkedBlockingQueue<Request>();
+    private final Queue<SettableFuture<Object>> pending = new ConcurrentLinkedQueue<SettableFuture<Object>>();
+
+    private final Thread writer;
+    private final Thread reader;
+
+    private volatile JedisConnectionException failure;
+
+    /**
+     * Opens a new connection to the Redis database at the given host and port.
+     * @param host The host of the Redis database.
+     * @param port The port of the Redis database.
+     * @param timeout The connect timeout in milliseconds.
+     * @throws JedisConnectionException if the connection could not be opened.
+     */
+    public MultiplexedConnection(String host, int port, int timeout) {
+        this(new InetSocketAddress(host, port), timeout);
+    }
+
+    /**
+     * Opens a new connection to the Redis database at the given address,
+     * which is either an {@link InetSocketAddress} or the address of a Unix
+     * domain socket (see {@link UnixSockets#addressOf(String)}).
+     * @param address The address of the Redis database.
+     * @param timeout The connect timeout in milliseconds (only applies to TCP
+     * connections).
+     * @throws JedisConnectionException if the connection could not be opened.
+     */
+    public MultiplexedConnection(SocketAddress address, int timeout) {
+        this(UnixSockets.isUnix(address) ? connect(address) : Transport.of(connect(address, timeout)));
+    }
+
+    /**
+     * Initializes a newly created {@code MultiplexedConnection} over the given
+     * (already connected) socket.
+     * @param socket The connected socket.
+     * @throws JedisConnectionException if the streams of the socket could not
+     * be obtained.
+     */
+    public MultiplexedConnection(Socket socket) {
+        this(Transport.of(socket));
+    }
+
+    private MultiplexedConnection(Transport transport) {
+        this.transport = transport.closeable;
+        this.input = transport.input;
+        this.output = new BufferedOutputStream(transport.output, BUFFER_SIZE);
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "strawberry-writer-" + transport.name);
+        this.reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read();
+            }
+        }, "strawberry-reader-" + transport.name);
+        this.writer.setDaemon(true);
+        this.reader.setDaemon(true);
+        this.writer.start();
+        this.reader.start();
+    }
+
+    /**
+     * The streams of a connected socket, and the means to close it.
+     */
+    private static final class Transport {
+
+        final InputStream input;
+        final OutputStream output;
+        final Closeable closeable;
+        final String name;
+
+        Transport(InputStream input, OutputStream output, Closeable closeable, String name) {
+            this.input = input;
+            this.output = output;
+            this.closeable = closeable;
+            this.name = name;
+        }
+
+        static Transport of(final Socket socket) {
+            Closeable closeable = new Closeable() {
+                @Override
+                public void close() throws IOException {
+                    socket.close();
+                }
+            };
+            try {
+                return new Transport(socket.getInputStream(), socket.getOutputStream(), closeable,
+                    String.valueOf(socket.getRemoteSocketAddress()));
+            } catch (IOException exception) {
+                closeQuietly(closeable);
+                throw new JedisConnectionException(exception);
+            }
+        }
+    }
+
+    private static Socket connect(SocketAddress address, int timeout) {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(address, timeout);
+            return socket;
+        } catch (IOException exception) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Nothing sensible left to do.
+            }
+            throw new JedisConnectionException(exception);
+        }
+    }
+
+    private static Transport connect(SocketAddress address) {
+        SocketChannel channel = UnixSockets.open();
+        try {
+            channel.connect(address);
+        } catch (IOException exception) {
+            closeQuietly(channel);
+            throw new JedisConnectionException(exception);
+        }
+        return new Transport(UnixSockets.inputOf(channel), UnixSockets.outputOf(channel), channel,
+            String.valueOf(address));
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException exception) {
+            // Nothing sensible left to do.
+        }
+    }
+
+    @Override
+    public ListenableFuture<Object> send(Object... args) {
+        return enqueue(Request.of(args)).futures().get(0);
+    }
+
+    @Override
+    public List<ListenableFuture<Object>> sendAll(List<Object[]> commands) {
+        return enqueue(Request.of(commands)).futures();
+    }
+
+    private Request enqueue(Request request) {
+        if (this.failure != null) {
+            request.fail(this.failure);
+            return request;
+        }
+        this.outgoing.add(request);
+        // The connection may have failed while the command was being queued,
+        // in which case nobody else is left to fail it.
+        if (this.failure != null) {
+            failPending();
+        }
+        return request;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.failure == null;
+    }
+
+    @Override
+    public void close() {
+        fail(new JedisConnectionException("Connection closed."));
+    }
+
+    private void fail(JedisConnectionException cause) {
+        synchronized (this) {
+            if (this.failure == null) {
+                this.failure = cause;
+            }
+        }
+        closeQuietly(this.transport);
+        this.writer.interrupt();
+        failPending();
+    }
+
+    private void failPending() {
+        Request request = null;
+        while ((request = this.outgoing.poll()) != null) {
+            request.fail(this.failure);
+        }
+        SettableFuture<Object> reply = null;
+        while ((reply = this.pending.poll()) != null) {
+            reply.setException(this.failure);
+        }
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                Request request = this.outgoing.take();
+                do {
+                    this.pending.addAll(request.replies);
+                    this.output.write(request.commands);
+                } while ((request = this.outgoing.poll()) != null);
+                this.output.flush();
+            }
+        } catch (InterruptedException exception) {
+            fail(new JedisConnectionException("Connection closed."));
+        } catch (IOException exception) {
+            fail(new JedisConnectionException(exception));
+        }
+    }
+
+    private void read() {
+        ReplyDecoder decoder = new ReplyDecoder();
+        List<Object> replies = new ArrayList<Object>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            int read = 0;
+            while ((read = this.input.read(buffer)) != -1) {
+                decoder.decode(ByteBuffer.wrap(buffer, 0, read), replies);
+                for (Object reply : replies) {
+                    SettableFuture<Object> future = this.pending.poll();
+                    if (future == null) {
+                        throw new JedisConnectionException("Received a reply without a pending command.");
+                    }
+                    if (reply instanceof JedisDataException) {
+                        future.setException((JedisDataException)reply);
+                    } else {
+                        future.set(reply);
+                    }
+                }
+                replies.clear();
+            }
+            fail(new JedisConnectionException("Unexpected end of stream."));
+        } catch (IOException exception) {
+            fail(new JedisConnectionException(exception));
+        } catch (JedisConnectionException exception) {
+            fail(exception);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisSource;
+
+import redis.clients.jedis.Protocol;
+
+import fj.F;
+
+/**
+ * A {@link RedisSource} that shares a small, fixed number of
+ * {@link MultiplexedConnection}s between all threads, instead of giving every
+ * thread a dedicated connection for the duration of its callback (as a
+ * {@link com.github.strawberry.redis.JedisPoolSource} does). Callbacks are
+ * assigned to connections in a round-robin fashion, and commands from
+ * concurrent callbacks are pipelined automatically over each connection, thus
+ * throughput scales with load without requiring a large pool of connections.
+ * 
+ * <p>
+ * Connections are opened lazily, and a connection that has failed is replaced
+ * by a new one the next time it is assigned to a callback.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class MultiplexedSource implements RedisSource, Closeable {
+
+    private final SocketAddress address;
+    private final int timeout;
+
+    private final AtomicReferenceArray<MultiplexedConnection> connections;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    /**
+     * Initializes a newly created {@code MultiplexedSource} that shares a
+     * single connection to the Redis database at the given host and port.
+     */
+    public MultiplexedSource(String host, int port) {
+        this(host, port, 1, Protocol.DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Initializes a newly created {@code MultiplexedSource}.
+     * @param host The host of the Redis database.
+     * @param port The port of the Redis database.
+     * @param connections The number of connections to share.
+     * @param timeout The connect timeout, as well as the time to wait for each
+     * reply, in milliseconds.
+     */
+    public MultiplexedSource(String host, int port, int connections, int timeout) {
+        this(new InetSocketAddress(host, port), connections, timeout);
+    }
+
+    /**
+     * Initializes a newly created {@code MultiplexedSource} that connects to
+     * the Redis database at the given address, which is either an
+     * {@link InetSocketAddress} or the address of a Unix domain socket (see
+     * {@link UnixSockets#addressOf(String)}).
+     * @param address The address of the Redis database.
+     * @param connections The number of connections to share.
+     * @param timeout The connect timeout, as well as the time to wait for each
+     * reply, in milliseconds.
+     */
+    public MultiplexedSource(SocketAddress address, int connections, int timeout) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("At least one connection is required.");
+        }
+        this.address = address;
+        this.timeout = timeout;
+        this.connections = new AtomicReferenceArray<MultiplexedConnection>(connections);
+    }
+
+    private MultiplexedConnection connectionAt(int index) {
+        MultiplexedConnection connection = this.connections.get(index);
+        if (connection == null || !connection.isOpen()) {
+            synchronized (this) {
+                if (this.closed) {
+                    throw new IllegalStateException("Source has been closed.");
+                }
+                connection = this.connections.get(index);
+                if (connection == null || !connection.isOpen()) {
+                    connection = new MultiplexedConnection(this.address, this.timeout);
+                    this.connections.set(index, connection);
+                }
+            }
+        }
+        return connection;
+    }
+
+    @Override
+    public <T> T _do(F<RedisCommands, T> callback) {
+        int index = (this.next.getAndIncrement() & Integer.MAX_VALUE) % this.connections.length();
+        return callback.f(new MultiplexedCommands(connectionAt(index), this.timeout));
+    }
+
+    /**
+     * Closes all connections of this source.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            for (int index = 0; index < this.connections.length(); index++) {
+                MultiplexedConnection connection = this.connections.getAndSet(index, null);
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * A non-blocking connection to a Redis database whose input and output is
+ * performed by an {@link EventLoop}. As with a {@link MultiplexedConnection},
+ * commands are pipelined and their replies are matched to them in order, but
+ * without any threads dedicated to the connection: a single event loop serves
+ * any number of connections.
+ * 
+ * <p>
+ * All state other than the queue of outgoing commands is confined to the
+ * event-loop thread. The futures of replies are completed on the event-loop
+ * thread, thus callbacks that are registered on them (with the default
+ * same-thread executor) must not block.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class NioConnection implements AsyncConnection {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The maximum number of commands gathered into a single write.
+     */
+    private static final int MAX_BATCH = 1024;
+
+    private final EventLoop loop;
+    private final SocketChannel channel;
+
+    private final Queue<Request> outgoing = new ConcurrentLinkedQueue<Request>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    // State that is confined to the event-loop thread.
+    private final Queue<SettableFuture<Object>> pending = new LinkedList<SettableFuture<Object>>();
+    private final Deque<ByteBuffer> writing = new ArrayDeque<ByteBuffer>();
+    private final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ReplyDecoder decoder = new ReplyDecoder();
+    private final List<Object> replies = new ArrayList<Object>();
+    private SelectionKey key;
+
+    private volatile boolean closeRequested;
+    private volatile JedisConnectionException failure;
+
+    /**
+     * Starts connecting to the Redis database at the given host and port.
+     * Commands may be sent right away; they are written once the connection
+     * has been established.
+     * @param loop The event loop that serves the connection.
+     * @param host The host of the Redis database.
+     * @param port The port of the Redis database.
+     * @throws JedisConnectionException if the connection could not be
+     * initiated.
+     */
+    public NioConnection(EventLoop loop, String host, int port) {
+        this(loop, new InetSocketAddress(host, port));
+    }
+
+    /**
+     * Starts connecting to the Redis database at the given address, which is
+     * either an {@link InetSocketAddress} or the address of a Unix domain
+     * socket (see {@link UnixSockets#addressOf(String)}).
+     * @param loop The event loop that serves the connection.
+     * @param address The address of the Redis database.
+     * @throws JedisConnectionException if the connection could not be
+     * initiated.
+     */
+    public NioConnection(EventLoop loop, SocketAddress address) {
+        this.loop = loop;
+        boolean unix = UnixSockets.isUnix(address);
+        this.channel = unix ? UnixSockets.open() : openChannel();
+        try {
+            this.channel.configureBlocking(false);
+            if (!unix) {
+                this.channel.socket().setTcpNoDelay(true);
+                this.channel.socket().setKeepAlive(true);
+            }
+            this.channel.connect(address);
+        } catch (IOException exception) {
+            try {
+                this.channel.close();
+            } catch (IOException ignored) {
+                // Nothing sensible left to do.
+            }
+            throw new JedisConnectionException(exception);
+        }
+        schedule();
+    }
+
+    private static SocketChannel openChannel() {
+        try {
+            return SocketChannel.open();
+        } catch (IOException exception) {
+            throw new JedisConnectionException(exception);
+        }
+    }
+
+    private void schedule() {
+        if (this.scheduled.compareAndSet(false, true)) {
+            this.loop.schedule(this);
+        }
+    }
+
+    @Override
+    public ListenableFuture<Object> send(Object... args) {
+        return enqueue(Request.of(args)).futures().get(0);
+    }
+
+    @Override
+    public List<ListenableFuture<Object>> sendAll(List<Object[]> commands) {
+        return enqueue(Request.of(commands)).futures();
+    }
+
+    private Request enqueue(Request request) {
+        if (this.failure != null) {
+            request.fail(this.failure);
+            return request;
+        }
+        this.outgoing.add(request);
+        if (this.failure != null) {
+            failOutgoing();
+        } else {
+            schedule();
+        }
+        return request;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.failure == null && !this.closeRequested;
+    }
+
+    @Override
+    public void close() {
+        this.closeRequested = true;
+        this.scheduled.set(true);
+        this.loop.schedule(this);
+    }
+
+    private void failOutgoing() {
+        Request request = null;
+        while ((request = this.outgoing.poll()) != null) {
+            request.fail(this.failure);
+        }
+    }
+
+    /**
+     * Fails this connection and all of its commands. Only called by the
+     * event-loop thread (or once the event loop has terminated).
+     */
+    synchronized void fail(JedisConnectionException cause) {
+        if (this.failure == null) {
+            this.failure = cause;
+        }
+        if (this.key != null) {
+            this.key.cancel();
+        }
+        try {
+            this.channel.close();
+        } catch (IOException exception) {
+            // Nothing sensible left to do.
+        }
+        failOutgoing();
+        SettableFuture<Object> reply = null;
+        while ((reply = this.pending.poll()) != null) {
+            reply.setException(this.failure);
+        }
+    }
+
+    private boolean hasOutput() {
+        return !this.writing.isEmpty() || !this.outgoing.isEmpty();
+    }
+
+    private void updateInterest() {
+        int interest = this.channel.isConnected() ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT;
+        if (this.channel.isConnected() && hasOutput()) {
+            interest |= SelectionKey.OP_WRITE;
+        }
+        this.key.interestOps(interest);
+    }
+
+    /**
+     * Registers this connection with the given selector, or updates its
+     * interest in the readiness of its channel. Called by the event-loop
+     * thread.
+     */
+    void update(Selector selector) {
+        this.scheduled.set(false);
+        if (this.closeRequested) {
+            fail(new JedisConnectionException("Connection closed."));
+        }
+        if (this.failure != null) {
+            return;
+        }
+        try {
+            if (this.key == null) {
+                this.key = this.channel.register(selector, 0, this);
+            }
+            updateInterest();
+        } catch (IOException exception) {
+            fail(new JedisConnectionException(exception));
+        }
+    }
+
+    /**
+     * Performs the input and output for which the channel of this connection
+     * is ready. Called by the event-loop thread.
+     */
+    void handle(SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                this.channel.finishConnect();
+            }
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+            if (this.failure == null && key.isValid() && key.isWritable()) {
+                write();
+            }
+            if (this.failure == null && key.isValid()) {
+                updateInterest();
+            }
+        } catch (IOException exception) {
+            fail(new JedisConnectionException(exception));
+        } catch (JedisConnectionException exception) {
+            fail(exception);
+        }
+    }
+
+    private void read() throws IOException {
+        int read = 0;
+        while ((read = this.channel.read(this.input)) > 0) {
+            this.input.flip();
+            this.decoder.decode(this.input, this.replies);
+            this.input.clear();
+            for (Object reply : this.replies) {
+                SettableFuture<Object> future = this.pending.poll();
+                if (future == null) {
+                    throw new JedisConnectionException("Received a reply without a pending command.");
+                }
+                if (reply instanceof JedisDataException) {
+                    future.setException((JedisDataException)reply);
+                } else {
+                    future.set(reply);
+                }
+            }
+            this.replies.clear();
+        }
+        if (read < 0) {
+            throw new JedisConnectionException("Unexpected end of stream.");
+        }
+    }
+
+    private void write() throws IOException {
+        while (true) {
+            if (this.writing.isEmpty()) {
+                Request request = null;
+                while (this.writing.size() < MAX_BATCH && (request = this.outgoing.poll()) != null) {
+                    this.pending.addAll(request.replies);
+                    this.writing.add(ByteBuffer.wrap(request.commands));
+                }
+                if (this.writing.isEmpty()) {
+                    return;
+                }
+            }
+            this.channel.write(this.writing.toArray(new ByteBuffer[this.writing.size()]));
+            while (!this.writing.isEmpty() && !this.writing.peekFirst().hasRemaining()) {
+                this.writing.pollFirst();
+            }
+            if (!this.writing.isEmpty()) {
+                // The socket's send buffer is full; continue once writable.
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Utility methods that convert raw replies (as decoded by a
+ * {@link ReplyDecoder}, or as returned by a pipelined Jedis client) into the
+ * values that {@link com.github.strawberry.redis.RedisCommands} return.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class Replies {
+
+    private Replies() {}
+
+    /**
+     * Returns the given reply, unless it is an error reply.
+     * @throws JedisDataException if the reply is an error reply.
+     */
+    public static Object checked(Object reply) {
+        if (reply instanceof JedisDataException) {
+            throw new JedisDataException(((JedisDataException)reply).getMessage());
+        }
+        return reply;
+    }
+
+    /**
+     * Converts the reply to a TYPE command into the name of the type.
+     */
+    public static String typeOf(Object reply) {
+        checked(reply);
+        return reply instanceof byte[] ? SafeEncoder.encode((byte[])reply) : (String)reply;
+    }
+
+    /**
+     * Returns the command (and its arguments) that retrieves the value of the
+     * given type at the given key in its entirety, or {@code null} if values of
+     * the type cannot be retrieved (such as for keys of type "none").
+     */
+    public static Object[] fetchOf(String type, String key) {
+        if (type.equals("string")) {
+            return new Object[]{"GET", key};
+        } else if (type.equals("hash")) {
+            return new Object[]{"HGETALL", key};
+        } else if (type.equals("list")) {
+            return new Object[]{"LRANGE", key, 0, -1};
+        } else if (type.equals("set")) {
+            return new Object[]{"SMEMBERS", key};
+        } else if (type.equals("zset")) {
+            return new Object[]{"ZRANGE", key, 0, -1};
+        }
+        return null;
+    }
+
+    private static String stringOf(Object reply) {
+        return reply == null ? null : SafeEncoder.encode((byte[])reply);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> elementsOf(Object reply) {
+        return (List<Object>)checked(reply);
+    }
+
+    /**
+     * Converts the reply to the command returned by
+     * {@link #fetchOf(String, String)} into a value: a string into a
+     * {@code byte[]}, a hash into a {@code Map<String, String>}, a list into a
+     * {@code List<String>} and a set or sorted set (in order) into a
+     * {@code Set<String>}. Empty values (of keys that have been removed in the
+     * meantime) are converted into {@code null}.
+     */
+    public static Object valueOf(String type, Object reply) {
+        if (type.equals("string")) {
+            return checked(reply);
+        }
+        List<Object> elements = elementsOf(reply);
+        if (elements.isEmpty()) {
+            return null;
+        }
+        if (type.equals("hash")) {
+            Map<String, String> hash = new HashMap<String, String>(elements.size());
+            for (int index = 0; index < elements.size(); index += 2) {
+                hash.put(stringOf(elements.get(index)), stringOf(elements.get(index + 1)));
+            }
+            return hash;
+        }
+        List<String> members = new ArrayList<String>(elements.size());
+        for (Object element : elements) {
+            members.add(stringOf(element));
+        }
+        if (type.equals("set")) {
+            return new HashSet<String>(members);
+        } else if (type.equals("zset")) {
+            return new LinkedHashSet<String>(members);
+        }
+        return members;
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * An incremental decoder of replies in the Redis serialization protocol
+ * (RESP). Input may be fed to the decoder in arbitrarily sized fragments (as
+ * it arrives from a socket); the decoder keeps track of partially received
+ * replies between calls and only emits replies once they are complete.
+ * 
+ * <p>
+ * Replies are decoded as follows: status replies into a {@link String},
+ * integer replies into a {@link Long}, bulk replies into a {@code byte[]},
+ * multi-bulk replies into a {@link List} of decoded replies, and null bulk or
+ * multi-bulk replies into {@code null}. Error replies are decoded into a
+ * {@link JedisDataException} (which is emitted, not thrown) so that the
+ * decoder stays in sync with the replies that follow it.
+ * </p>
+ * 
+ * <p>
+ * Decoders are stateful and not thread-safe: every connection requires its
+ * own decoder.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class ReplyDecoder {
+
+    /**
+     * Marker for a reply that has not been received in its entirety yet.
+     */
+    private static final Object INCOMPLETE = new Object();
+
+    /**
+     * Marker for the header of a non-empty multi-bulk reply, whose elements
+     * still have to follow.
+     */
+    private static final Object NESTED = new Object();
+
+    /**
+     * A multi-bulk reply of which not all elements have been received yet.
+     */
+    private static final class Frame {
+
+        private final List<Object> elements;
+        private final int size;
+
+        private Frame(int size) {
+            this.elements = new ArrayList<Object>(size);
+            this.size = size;
+        }
+    }
+
+    private final Deque<Frame> frames = new ArrayDeque<Frame>();
+
+    private byte[] line = new byte[64];
+    private int lineLength;
+
+    private byte[] bulk;
+    private int bulkOffset;
+    private int trailing;
+
+    /**
+     * Decodes as many complete replies from the given input as possible,
+     * adding them (in order) to the given list of replies. All of the input is
+     * consumed; a trailing partial reply is retained until the rest of it is
+     * provided by subsequent calls.
+     * @param input The input to decode.
+     * @param replies The list to which decoded replies are added.
+     * @throws JedisConnectionException if the input does not conform to the
+     * protocol.
+     */
+    public void decode(ByteBuffer input, List<Object> replies) {
+        while (true) {
+            Object value = this.bulk != null ? readBulk(input) : readLine(input);
+            if (value == INCOMPLETE) {
+                return;
+            }
+            if (value != NESTED) {
+                complete(value, replies);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the decoder is in between replies, that is: whether it
+     * holds no partially received reply.
+     */
+    public boolean isIdle() {
+        return this.frames.isEmpty() && this.bulk == null && this.lineLength == 0;
+    }
+
+    private void complete(Object value, List<Object> replies) {
+        while (!this.frames.isEmpty()) {
+            Frame frame = this.frames.peek();
+            frame.elements.add(value);
+            if (frame.elements.size() < frame.size) {
+                return;
+            }
+            this.frames.pop();
+            value = frame.elements;
+        }
+        replies.add(value);
+    }
+
+    private Object readBulk(ByteBuffer input) {
+        int count = Math.min(input.remaining(), this.bulk.length - this.bulkOffset);
+        input.get(this.bulk, this.bulkOffset, count);
+        this.bulkOffset += count;
+        if (this.bulkOffset < this.bulk.length) {
+            return INCOMPLETE;
+        }
+        while (this.trailing > 0 && input.hasRemaining()) {
+            input.get();
+            this.trailing--;
+        }
+        if (this.trailing > 0) {
+            return INCOMPLETE;
+        }
+        byte[] value = this.bulk;
+        this.bulk = null;
+        return value;
+    }
+
+    private Object readLine(ByteBuffer input) {
+        while (input.hasRemaining()) {
+            byte next = input.get();
+            if (next == '\n') {
+                int length = this.lineLength;
+                this.lineLength = 0;
+                if (length == 0 || this.line[length - 1] != '\r') {
+                    throw new JedisConnectionException("Malformed reply: line not terminated by CRLF.");
+                }
+                return parseLine(length - 1, input);
+            }
+            if (this.lineLength == this.line.length) {
+                byte[] grown = new byte[this.line.length * 2];
+                System.arraycopy(this.line, 0, grown, 0, this.lineLength);
+                this.line = grown;
+            }
+            this.line[this.lineLength++] = next;
+        }
+        return INCOMPLETE;
+    }
+
+    private long numberOf(int length) {
+        if (length < 2) {
+            throw new JedisConnectionException("Malformed reply: missing number.");
+        }
+        boolean negative = this.line[1] == '-';
+        long number = 0;
+        for (int index = negative ? 2 : 1; index < length; index++) {
+            int digit = this.line[index] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new JedisConnectionException("Malformed reply: invalid number.");
+            }
+            number = number * 10 + digit;
+        }
+        return negative ? -number : number;
+    }
+
+    private Object parseLine(int length, ByteBuffer input) {
+        if (length == 0) {
+            throw new JedisConnectionException("Malformed reply: empty line.");
+        }
+        switch (this.line[0]) {
+            case '+': {
+                return new String(this.line, 1, length - 1, Charsets.UTF_8);
+            }
+            case '-': {
+                return new JedisDataException(new String(this.line, 1, length - 1, Charsets.UTF_8));
+            }
+            case ':': {
+                return numberOf(length);
+            }
+            case '$': {
+                long size = numberOf(length);
+                if (size < 0) {
+                    return null;
+                }
+                this.bulk = new byte[(int)size];
+                this.bulkOffset = 0;
+                this.trailing = 2;
+                return readBulk(input);
+            }
+            case '*': {
+                long size = numberOf(length);
+                if (size < 0) {
+                    return null;
+                }
+                if (size == 0) {
+                    return new ArrayList<Object>(0);
+                }
+                this.frames.push(new Frame((int)size));
+                return NESTED;
+            }
+            default: {
+                throw new JedisConnectionException("Malformed reply: unknown reply type '" + (char)this.line[0] + "'.");
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * One or more encoded commands that are queued (and written) as a unit, along
+ * with the futures that receive their replies.
+ * 
+ * @author Wiehann Matthysen
+ */
+final class Request {
+
+    final byte[] commands;
+    final List<SettableFuture<Object>> replies;
+
+    private Request(byte[] commands, List<SettableFuture<Object>> replies) {
+        this.commands = commands;
+        this.replies = replies;
+    }
+
+    static Request of(Object... args) {
+        SettableFuture<Object> reply = SettableFuture.create();
+        return new Request(RequestEncoder.encode(args), Collections.singletonList(reply));
+    }
+
+    static Request of(List<Object[]> commands) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        List<SettableFuture<Object>> replies = new ArrayList<SettableFuture<Object>>(commands.size());
+        for (Object[] command : commands) {
+            byte[] encoded = RequestEncoder.encode(command);
+            output.write(encoded, 0, encoded.length);
+            replies.add(SettableFuture.<Object>create());
+        }
+        return new Request(output.toByteArray(), replies);
+    }
+
+    @SuppressWarnings("unchecked")
+    List<ListenableFuture<Object>> futures() {
+        return (List<ListenableFuture<Object>>)(List<?>)this.replies;
+    }
+
+    void fail(Throwable cause) {
+        for (SettableFuture<Object> reply : this.replies) {
+            reply.setException(cause);
+        }
+    }
+}
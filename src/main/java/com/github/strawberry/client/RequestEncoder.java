@@ -0,0 +1,68 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import java.io.ByteArrayOutputStream;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Encodes commands in the request format of the Redis serialization protocol
+ * (RESP), namely: as an array of bulk strings.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class RequestEncoder {
+
+    private static final byte[] CRLF = new byte[]{'\r', '\n'};
+
+    private RequestEncoder() {}
+
+    private static byte[] bytesOf(Object arg) {
+        if (arg instanceof byte[]) {
+            return (byte[])arg;
+        }
+        return SafeEncoder.encode(String.valueOf(arg));
+    }
+
+    private static void writeHeader(ByteArrayOutputStream output, char type, int length) {
+        output.write(type);
+        byte[] digits = SafeEncoder.encode(Integer.toString(length));
+        output.write(digits, 0, digits.length);
+        output.write(CRLF, 0, CRLF.length);
+    }
+
+    /**
+     * Encodes the given command (the command name followed by its arguments)
+     * into its wire format. Arguments may be given as {@code byte[]} (sent as
+     * is), or as any other object whose string form is sent encoded as UTF-8.
+     * @param args The command name and its arguments.
+     * @return The encoded command.
+     */
+    public static byte[] encode(Object... args) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(64);
+        writeHeader(output, '*', args.length);
+        for (Object arg : args) {
+            byte[] bytes = bytesOf(arg);
+            writeHeader(output, '$', bytes.length);
+            output.write(bytes, 0, bytes.length);
+            output.write(CRLF, 0, CRLF.length);
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * Utility methods for connecting to a Redis database over a Unix domain socket
+ * (see the {@code unixsocket} directive of redis.conf), which avoids the
+ * overhead of the TCP loopback interface when the database runs on the same
+ * host. Unix domain sockets are supported from Java 16 onwards; on earlier
+ * versions {@link #isSupported()} returns {@code false}.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class UnixSockets {
+
+    private static final Method ADDRESS_OF;
+    private static final Method OPEN;
+    private static final Object UNIX;
+
+    static {
+        Method addressOf = null;
+        Method open = null;
+        Object unix = null;
+        try {
+            // Resolved reflectively, as these classes only exist as of Java 16.
+            addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+            Class<?> family = Class.forName("java.net.ProtocolFamily");
+            open = SocketChannel.class.getMethod("open", family);
+            unix = Class.forName("java.net.StandardProtocolFamily").getField("UNIX").get(null);
+        } catch (Exception exception) {
+            addressOf = null;
+        }
+        ADDRESS_OF = addressOf;
+        OPEN = open;
+        UNIX = unix;
+    }
+
+    private UnixSockets() {}
+
+    /**
+     * Returns whether this Java runtime supports Unix domain sockets.
+     */
+    public static boolean isSupported() {
+        return ADDRESS_OF != null;
+    }
+
+    private static Object invoke(Method method, Object argument) {
+        if (!isSupported()) {
+            throw new JedisConnectionException("Unix domain sockets require Java 16 or later.");
+        }
+        try {
+            return method.invoke(null, argument);
+        } catch (IllegalAccessException exception) {
+            throw new JedisConnectionException(exception);
+        } catch (InvocationTargetException exception) {
+            throw new JedisConnectionException(exception.getCause());
+        }
+    }
+
+    /**
+     * Returns the address of the Unix domain socket at the given path.
+     * @throws JedisConnectionException if Unix domain sockets are not
+     * supported.
+     */
+    public static SocketAddress addressOf(String path) {
+        return (SocketAddress)invoke(ADDRESS_OF, path);
+    }
+
+    /**
+     * Returns whether the given address is that of a Unix domain socket (as
+     * opposed to an {@link InetSocketAddress}).
+     */
+    static boolean isUnix(SocketAddress address) {
+        return !(address instanceof InetSocketAddress);
+    }
+
+    /**
+     * Opens an unconnected channel for a Unix domain socket.
+     * @throws JedisConnectionException if Unix domain sockets are not
+     * supported.
+     */
+    static SocketChannel open() {
+        return (SocketChannel)invoke(OPEN, UNIX);
+    }
+
+    /**
+     * Returns an input stream that reads from the given (blocking) channel.
+     * Unlike the streams of {@link java.nio.channels.Channels}, a read that
+     * blocks does not block concurrent writes to the channel.
+     */
+    static InputStream inputOf(final SocketChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                return length == 0 ? 0 : channel.read(ByteBuffer.wrap(bytes, offset, length));
+            }
+        };
+    }
+
+    /**
+     * Returns an output stream that writes to the given (blocking) channel.
+     */
+    static OutputStream outputOf(final SocketChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int value) throws IOException {
+                write(new byte[] {(byte)value}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import com.github.strawberry.client.AbstractCommands;
+import com.github.strawberry.client.MultiplexedCommands;
+import com.github.strawberry.client.Replies;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * The commands of a {@link ClusterSource}, each of which is routed to the
+ * master that serves the slot of its key.
+ * 
+ * @author Wiehann Matthysen
+ */
+final class ClusterCommands extends AbstractCommands {
+
+    /**
+     * The maximum number of redirections followed for a single command.
+     */
+    static final int MAX_REDIRECTS = 5;
+
+    private final ClusterSource source;
+
+    ClusterCommands(ClusterSource source) {
+        this.source = source;
+    }
+
+    private Object await(Future<Object> reply) {
+        return MultiplexedCommands.await(reply, this.source.timeout());
+    }
+
+    private static int slotOf(Object key) {
+        return ClusterSlots.slotOf(key instanceof byte[] ? SafeEncoder.encode((byte[])key) : String.valueOf(key));
+    }
+
+    @Override
+    protected Object call(Object... args) {
+        if (args.length < 2) {
+            return await(this.source.connectionTo(this.source.masters().get(0)).send(args));
+        }
+        int slot = slotOf(args[1]);
+        Redirect ask = null;
+        boolean refreshed = false;
+        for (int redirects = 0; redirects <= MAX_REDIRECTS; redirects++) {
+            try {
+                if (ask == null) {
+                    return await(this.source.connectionTo(this.source.nodeOf(slot)).send(args));
+                }
+                List<Object[]> commands = Arrays.asList(new Object[] {"ASKING"}, args);
+                List<? extends Future<Object>> replies = this.source.connectionTo(ask.node).sendAll(commands);
+                await(replies.get(0));
+                return await(replies.get(1));
+            } catch (JedisDataException exception) {
+                Redirect redirect = Redirect.of(exception.getMessage());
+                if (redirect == null) {
+                    throw exception;
+                }
+                if (!redirect.ask) {
+                    this.source.moved(redirect.slot, redirect.node);
+                }
+                ask = redirect.ask ? redirect : null;
+            } catch (JedisConnectionException exception) {
+                // The master may have failed over to one of its replicas.
+                if (refreshed) {
+                    throw exception;
+                }
+                this.source.refresh();
+                refreshed = true;
+                ask = null;
+            }
+        }
+        throw new JedisDataException("Too many cluster redirections for slot " + slot + ".");
+    }
+
+    private static boolean isRedirect(JedisDataException exception) {
+        return Redirect.of(exception.getMessage()) != null;
+    }
+
+    /**
+     * Returns the keys that match the given pattern. A pattern with a literal
+     * hash tag is only sent to the master that serves the slot of that tag;
+     * any other pattern is sent to all masters concurrently.
+     */
+    @Override
+    public Set<String> keys(String pattern) {
+        if (ClusterSlots.slotOfPattern(pattern) >= 0) {
+            return super.keys(pattern);
+        }
+        List<Future<Object>> replies = new ArrayList<Future<Object>>();
+        for (String master : this.source.masters()) {
+            replies.add(this.source.connectionTo(master).send("KEYS", pattern));
+        }
+        Set<String> keys = new HashSet<String>();
+        for (Future<Object> reply : replies) {
+            stringsOf(await(reply), keys);
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the values of the given keys. The commands for every key are
+     * pipelined to the master of its slot, so that all masters serve their
+     * share of the keys in parallel. Keys whose slots are being migrated fall
+     * back to individually redirected commands.
+     */
+    @Override
+    public List<Object> valuesOf(List<String> keys) {
+        List<String> nodes = new ArrayList<String>(keys.size());
+        List<Future<Object>> types = new ArrayList<Future<Object>>(keys.size());
+        for (String key : keys) {
+            String node = this.source.nodeOf(ClusterSlots.slotOf(key));
+            nodes.add(node);
+            types.add(this.source.connectionTo(node).send("TYPE", key));
+        }
+        List<String> typeNames = new ArrayList<String>(keys.size());
+        List<Future<Object>> fetches = new ArrayList<Future<Object>>(keys.size());
+        for (int index = 0; index < keys.size(); index++) {
+            String key = keys.get(index);
+            Object type;
+            try {
+                type = await(types.get(index));
+            } catch (JedisDataException exception) {
+                if (!isRedirect(exception)) {
+                    throw exception;
+                }
+                type = call("TYPE", key);
+            }
+            String typeName = Replies.typeOf(type);
+            Object[] fetch = Replies.fetchOf(typeName, key);
+            typeNames.add(typeName);
+            fetches.add(fetch == null ? null : this.source.connectionTo(nodes.get(index)).send(fetch));
+        }
+        List<Object> values = new ArrayList<Object>(keys.size());
+        for (int index = 0; index < keys.size(); index++) {
+            Future<Object> fetch = fetches.get(index);
+            if (fetch == null) {
+                values.add(null);
+                continue;
+            }
+            String typeName = typeNames.get(index);
+            Object reply;
+            try {
+                reply = await(fetch);
+            } catch (JedisDataException exception) {
+                if (!isRedirect(exception)) {
+                    throw exception;
+                }
+                reply = call(Replies.fetchOf(typeName, keys.get(index)));
+            }
+            values.add(Replies.valueOf(typeName, reply));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.cluster;
+
+import com.github.strawberry.util.Glob;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Utility methods that map keys onto the hash slots of a Redis Cluster.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class ClusterSlots {
+
+    /**
+     * The number of hash slots of a Redis Cluster.
+     */
+    public static final int SLOTS = 16384;
+
+    private static final int[] TABLE = new int[256];
+
+    static {
+        // CRC16-CCITT (XMODEM), as used by Redis Cluster.
+        for (int index = 0; index < 256; index++) {
+            int crc = index << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            TABLE[index] = crc & 0xffff;
+        }
+    }
+
+    private ClusterSlots() {}
+
+    /**
+     * Computes the CRC16 checksum of the given range of bytes.
+     */
+    static int crc16(byte[] bytes, int from, int to) {
+        int crc = 0;
+        for (int index = from; index < to; index++) {
+            crc = ((crc << 8) ^ TABLE[((crc >>> 8) ^ bytes[index]) & 0xff]) & 0xffff;
+        }
+        return crc;
+    }
+
+    /**
+     * Returns the hash tag of the given key (the non-empty part between the
+     * first '{' and the first '}' that follows it), or {@code null} if the key
+     * has no hash tag.
+     */
+    public static String hashTagOf(String key) {
+        int start = key.indexOf('{');
+        if (start < 0) {
+            return null;
+        }
+        int end = key.indexOf('}', start + 1);
+        if (end <= start + 1) {
+            return null;
+        }
+        return key.substring(start + 1, end);
+    }
+
+    /**
+     * Returns the hash slot of the given key. Only the hash tag of a key (if
+     * any) is hashed, so that keys with the same tag share a slot.
+     */
+    public static int slotOf(String key) {
+        String tag = hashTagOf(key);
+        byte[] bytes = SafeEncoder.encode(tag == null ? key : tag);
+        return crc16(bytes, 0, bytes.length) & (SLOTS - 1);
+    }
+
+    /**
+     * Returns the single hash slot to which all the keys that match the given
+     * glob-style pattern belong (as they share a literal hash tag), or -1 if
+     * matching keys may belong to any slot.
+     */
+    public static int slotOfPattern(String pattern) {
+        String tag = hashTagOf(pattern);
+        if (tag == null || !Glob.isLiteral(tag) || !Glob.isLiteral(pattern.substring(0, pattern.indexOf('{')))) {
+            return -1;
+        }
+        return slotOf(pattern);
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.cluster;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.github.strawberry.client.AsyncConnection;
+import com.github.strawberry.client.ConnectionFactory;
+import com.github.strawberry.client.MultiplexedCommands;
+import com.github.strawberry.client.MultiplexedConnection;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisSource;
+
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+/**
+ * A {@link RedisSource} that spreads commands over the masters of a Redis
+ * Cluster. Every command that concerns a single key is sent to the master
+ * that serves the hash slot of that key (see {@link ClusterSlots}), and MOVED
+ * and ASK redirections are followed transparently. Commands for keys on
+ * different masters are pipelined concurrently over one shared
+ * {@link AsyncConnection} per master.
+ * 
+ * <p>
+ * The slot table is loaded (with CLUSTER SLOTS) from any of the seed nodes on
+ * first use, kept up to date with every MOVED redirection, and reloaded
+ * whenever a master becomes unreachable (such as after a failover).
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class ClusterSource implements RedisSource, Closeable {
+
+    private final List<String> seeds;
+    private final ConnectionFactory factory;
+    private final int timeout;
+
+    private final AtomicReferenceArray<String> slots = new AtomicReferenceArray<String>(ClusterSlots.SLOTS);
+    private final ConcurrentMap<String, AsyncConnection> connections = new ConcurrentHashMap<String, AsyncConnection>();
+    private volatile List<String> masters = Collections.emptyList();
+
+    private volatile boolean closed;
+
+    /**
+     * Initializes a newly created {@code ClusterSource} that connects to the
+     * masters of the cluster over {@link MultiplexedConnection}s.
+     * @param seeds The addresses ("host:port") of one or more nodes of the
+     * cluster.
+     */
+    public ClusterSource(List<String> seeds) {
+        this(seeds, new ConnectionFactory() {
+            @Override
+            public AsyncConnection connect(String host, int port) {
+                return new MultiplexedConnection(host, port, Protocol.DEFAULT_TIMEOUT);
+            }
+        }, Protocol.DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Initializes a newly created {@code ClusterSource}.
+     * @param seeds The addresses ("host:port") of one or more nodes of the
+     * cluster.
+     * @param factory The factory that opens the connections to the nodes.
+     * @param timeout The time in milliseconds to wait for each reply.
+     */
+    public ClusterSource(List<String> seeds, ConnectionFactory factory, int timeout) {
+        if (seeds.isEmpty()) {
+            throw new IllegalArgumentException("At least one seed node is required.");
+        }
+        this.seeds = new ArrayList<String>(seeds);
+        this.factory = factory;
+        this.timeout = timeout;
+    }
+
+    int timeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Returns the addresses of the masters that serve the slots of the
+     * cluster.
+     */
+    public List<String> masters() {
+        if (this.masters.isEmpty()) {
+            refresh();
+        }
+        return this.masters;
+    }
+
+    /**
+     * Returns the address of the master that serves the given slot.
+     * @throws JedisConnectionException if no master serves the slot.
+     */
+    String nodeOf(int slot) {
+        String node = this.slots.get(slot);
+        if (node == null) {
+            refresh();
+            node = this.slots.get(slot);
+            if (node == null) {
+                throw new JedisConnectionException("No node serves slot " + slot + ".");
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Records that the given slot has moved to the given node.
+     */
+    synchronized void moved(int slot, String node) {
+        this.slots.set(slot, node);
+        if (!this.masters.contains(node)) {
+            List<String> masters = new ArrayList<String>(this.masters);
+            masters.add(node);
+            this.masters = Collections.unmodifiableList(masters);
+        }
+    }
+
+    /**
+     * Returns the (shared) connection to the given node, opening a new one if
+     * there is none or if the previous one has failed.
+     */
+    AsyncConnection connectionTo(String node) {
+        AsyncConnection connection = this.connections.get(node);
+        if (connection == null || !connection.isOpen()) {
+            synchronized (this) {
+                if (this.closed) {
+                    throw new IllegalStateException("Source has been closed.");
+                }
+                connection = this.connections.get(node);
+                if (connection == null || !connection.isOpen()) {
+                    int separator = node.lastIndexOf(':');
+                    connection = this.factory.connect(
+                        node.substring(0, separator), Integer.parseInt(node.substring(separator + 1)));
+                    this.connections.put(node, connection);
+                }
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Reloads the slot table from the first known master or seed node that
+     * replies to CLUSTER SLOTS.
+     * @throws JedisConnectionException if no node replied.
+     */
+    public synchronized void refresh() {
+        Set<String> candidates = new LinkedHashSet<String>(this.masters);
+        candidates.addAll(this.seeds);
+        JedisConnectionException failure = null;
+        for (String candidate : candidates) {
+            try {
+                Object reply = MultiplexedCommands.await(connectionTo(candidate).send("CLUSTER", "SLOTS"), this.timeout);
+                load(candidate, reply);
+                return;
+            } catch (JedisConnectionException exception) {
+                failure = exception;
+            }
+        }
+        throw new JedisConnectionException("No node of the cluster could be reached.", failure);
+    }
+
+    private void load(String queried, Object reply) {
+        String[] table = new String[ClusterSlots.SLOTS];
+        Set<String> masters = new LinkedHashSet<String>();
+        for (Object range : (List<?>)reply) {
+            List<?> elements = (List<?>)range;
+            List<?> master = (List<?>)elements.get(2);
+            String host = SafeEncoder.encode((byte[])master.get(0));
+            if (host.isEmpty()) {
+                host = queried.substring(0, queried.lastIndexOf(':'));
+            }
+            String node = host + ":" + master.get(1);
+            masters.add(node);
+            int end = ((Long)elements.get(1)).intValue();
+            for (int slot = ((Long)elements.get(0)).intValue(); slot <= end; slot++) {
+                table[slot] = node;
+            }
+        }
+        for (int slot = 0; slot < table.length; slot++) {
+            this.slots.set(slot, table[slot]);
+        }
+        this.masters = Collections.unmodifiableList(new ArrayList<String>(masters));
+    }
+
+    @Override
+    public <T> T _do(F<RedisCommands, T> callback) {
+        return callback.f(new ClusterCommands(this));
+    }
+
+    /**
+     * Closes all connections of this source.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            for (AsyncConnection connection : this.connections.values()) {
+                connection.close();
+            }
+            this.connections.clear();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.cluster;
+
+/**
+ * A MOVED or ASK redirection, as replied by a node of a Redis Cluster that
+ * does not serve the slot of a key.
+ * 
+ * @author Wiehann Matthysen
+ */
+final class Redirect {
+
+    final boolean ask;
+    final int slot;
+    final String node;
+
+    private Redirect(boolean ask, int slot, String node) {
+        this.ask = ask;
+        this.slot = slot;
+        this.node = node;
+    }
+
+    /**
+     * Parses the given error message into a redirection.
+     * @return The redirection, or {@code null} if the message is not a
+     * redirection.
+     */
+    static Redirect of(String message) {
+        if (message == null) {
+            return null;
+        }
+        String[] parts = message.split(" ");
+        if (parts.length != 3 || !(parts[0].equals("MOVED") || parts[0].equals("ASK"))) {
+            return null;
+        }
+        try {
+            return new Redirect(parts[0].equals("ASK"), Integer.parseInt(parts[1]), parts[2]);
+        } catch (NumberFormatException exception) {
+            return null;
+        }
+    }
+}
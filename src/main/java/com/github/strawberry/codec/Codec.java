@@ -0,0 +1,49 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+
+/**
+ * A {@code Codec} decodes the raw bytes of a Redis string value into an
+ * instance of a (possibly generic) target type. Specify a codec by means of
+ * {@link com.github.strawberry.guice.Redis#codec()} to have structured values,
+ * such as JSON documents, decoded once when they are loaded from Redis
+ * (rather than every time they are used).
+ * 
+ * <p>
+ * Implementations are instantiated once per class through their public
+ * no-argument constructor and shared between all fields that use them, thus
+ * they must be thread-safe.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public interface Codec {
+
+    /**
+     * Decodes the given stream of bytes into an instance of the given type.
+     * @param input The raw bytes of the value to decode.
+     * @param type The (generic) type of the field being injected.
+     * @return The decoded value.
+     * @throws IOException if the bytes cannot be decoded into the given type.
+     */
+    Object decode(InputStream input, Type type) throws IOException;
+}
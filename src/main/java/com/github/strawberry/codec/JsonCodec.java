@@ -0,0 +1,67 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A {@link Codec} that decodes JSON documents with
+ * <a href="https://github.com/FasterXML/jackson">Jackson</a>'s streaming
+ * parser straight into the target type, without first materializing the
+ * document as text or as an intermediate tree. Properties that are present in
+ * the document but not in the target type are ignored.
+ * 
+ * <p>
+ * <b>Note</b>: Jackson is an optional dependency of strawberry and needs to
+ * be on the class-path when this codec is used. To customize the mapping,
+ * subclass this codec and supply a configured {@link ObjectMapper}.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public class JsonCodec implements Codec {
+
+    private final ObjectMapper mapper;
+
+    /**
+     * Initializes a newly created {@code JsonCodec} with a default
+     * {@link ObjectMapper}.
+     */
+    public JsonCodec() {
+        this(new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+    }
+
+    /**
+     * Initializes a newly created {@code JsonCodec} with the given
+     * {@link ObjectMapper}.
+     * @param mapper The mapper to bind JSON documents to Java types with.
+     */
+    protected JsonCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public Object decode(InputStream input, Type type) throws IOException {
+        return this.mapper.readValue(input, this.mapper.getTypeFactory().constructType(type));
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.codec;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.math.BigInteger;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A {@link Codec} that decodes <a href="http://msgpack.org">MessagePack</a>
+ * values. The value is read in a single streaming pass and translated into a
+ * sequence of Jackson tokens, which are then bound to the target type with
+ * the same rules that apply to JSON documents (see {@link JsonCodec}). Map
+ * keys that are not strings are converted to their string representation, and
+ * extension types are not supported.
+ * 
+ * <p>
+ * <b>Note</b>: Jackson is an optional dependency of strawberry and needs to
+ * be on the class-path when this codec is used.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public class MessagePackCodec implements Codec {
+
+    private final ObjectMapper mapper;
+
+    /**
+     * Initializes a newly created {@code MessagePackCodec} with a default
+     * {@link ObjectMapper}.
+     */
+    public MessagePackCodec() {
+        this(new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+    }
+
+    /**
+     * Initializes a newly created {@code MessagePackCodec} with the given
+     * {@link ObjectMapper}.
+     * @param mapper The mapper to bind decoded values to Java types with.
+     */
+    protected MessagePackCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public Object decode(InputStream input, Type type) throws IOException {
+        TokenBuffer tokens = new TokenBuffer(this.mapper, false);
+        readValue(new DataInputStream(input), tokens);
+        return this.mapper.readValue(tokens.asParser(), this.mapper.getTypeFactory().constructType(type));
+    }
+
+    private static void readValue(DataInputStream input, TokenBuffer tokens) throws IOException {
+        int format = input.readUnsignedByte();
+        if (format <= 0x7f) {
+            tokens.writeNumber(format);
+        } else if (format <= 0x8f) {
+            readMap(input, tokens, format & 0x0f);
+        } else if (format <= 0x9f) {
+            readArray(input, tokens, format & 0x0f);
+        } else if (format <= 0xbf) {
+            tokens.writeString(readString(input, format & 0x1f));
+        } else if (format >= 0xe0) {
+            tokens.writeNumber((byte)format);
+        } else {
+            switch (format) {
+                case 0xc0: tokens.writeNull(); break;
+                case 0xc2: tokens.writeBoolean(false); break;
+                case 0xc3: tokens.writeBoolean(true); break;
+                case 0xc4: tokens.writeBinary(readBytes(input, input.readUnsignedByte())); break;
+                case 0xc5: tokens.writeBinary(readBytes(input, input.readUnsignedShort())); break;
+                case 0xc6: tokens.writeBinary(readBytes(input, readLength(input))); break;
+                case 0xca: tokens.writeNumber(input.readFloat()); break;
+                case 0xcb: tokens.writeNumber(input.readDouble()); break;
+                case 0xcc: tokens.writeNumber(input.readUnsignedByte()); break;
+                case 0xcd: tokens.writeNumber(input.readUnsignedShort()); break;
+                case 0xce: tokens.writeNumber(input.readInt() & 0xffffffffL); break;
+                case 0xcf: {
+                    long value = input.readLong();
+                    if (value >= 0) {
+                        tokens.writeNumber(value);
+                    } else {
+                        tokens.writeNumber(BigInteger.valueOf(value).add(BigInteger.ONE.shiftLeft(64)));
+                    }
+                } break;
+                case 0xd0: tokens.writeNumber(input.readByte()); break;
+                case 0xd1: tokens.writeNumber(input.readShort()); break;
+                case 0xd2: tokens.writeNumber(input.readInt()); break;
+                case 0xd3: tokens.writeNumber(input.readLong()); break;
+                case 0xd9: tokens.writeString(readString(input, input.readUnsignedByte())); break;
+                case 0xda: tokens.writeString(readString(input, input.readUnsignedShort())); break;
+                case 0xdb: tokens.writeString(readString(input, readLength(input))); break;
+                case 0xdc: readArray(input, tokens, input.readUnsignedShort()); break;
+                case 0xdd: readArray(input, tokens, readLength(input)); break;
+                case 0xde: readMap(input, tokens, input.readUnsignedShort()); break;
+                case 0xdf: readMap(input, tokens, readLength(input)); break;
+                default: {
+                    throw new IOException(String.format("Unsupported MessagePack format: 0x%02x", format));
+                }
+            }
+        }
+    }
+
+    private static void readArray(DataInputStream input, TokenBuffer tokens, int size) throws IOException {
+        tokens.writeStartArray();
+        for (int index = 0; index < size; index++) {
+            readValue(input, tokens);
+        }
+        tokens.writeEndArray();
+    }
+
+    private static void readMap(DataInputStream input, TokenBuffer tokens, int size) throws IOException {
+        tokens.writeStartObject();
+        for (int index = 0; index < size; index++) {
+            tokens.writeFieldName(readKey(input));
+            readValue(input, tokens);
+        }
+        tokens.writeEndObject();
+    }
+
+    private static String readKey(DataInputStream input) throws IOException {
+        TokenBuffer key = new TokenBuffer(null, false);
+        readValue(input, key);
+        JsonParser parser = key.asParser();
+        JsonToken token = parser.nextToken();
+        if (token.isStructStart()) {
+            throw new IOException(String.format("Unsupported MessagePack map key: %s", token));
+        }
+        return parser.getText();
+    }
+
+    private static int readLength(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            throw new IOException(String.format("Unsupported MessagePack length: %d", length & 0xffffffffL));
+        }
+        return length;
+    }
+
+    private static byte[] readBytes(DataInputStream input, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    private static String readString(DataInputStream input, int length) throws IOException {
+        return new String(readBytes(input, length), Charsets.UTF_8);
+    }
+}
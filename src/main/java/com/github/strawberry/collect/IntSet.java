@@ -0,0 +1,265 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.collect;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link java.util.Set} of primitive {@code int} values backed by an
+ * open-addressing hash-table with linear probing. Members are stored
+ * unboxed in a single {@code int[]}, which makes this set considerably more
+ * compact (and faster to probe) than a {@code HashSet<Integer>} when it holds
+ * large numbers of values. Use {@link #add(int)} and {@link #contains(int)} on
+ * the hot path to avoid boxing altogether.
+ * 
+ * <p>
+ * <b>Note</b>: the iterator of this set does not support removal.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class IntSet extends AbstractSet<Integer> {
+
+    private static final int DEFAULT_EXPECTED_SIZE = 16;
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    // The value 0 marks a free slot, thus the presence of 0 as a member is
+    // tracked separately.
+    private int[] keys;
+    private boolean containsZero;
+    private int assigned;
+    private int mask;
+    private int maxFill;
+
+    /**
+     * Initializes a newly created, empty {@code IntSet}.
+     */
+    public IntSet() {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+
+    /**
+     * Initializes a newly created, empty {@code IntSet} that is able to hold
+     * the given number of members without having to grow its hash-table.
+     * @param expectedSize The expected number of members.
+     */
+    public IntSet(int expectedSize) {
+        allocate(Tables.capacityFor(expectedSize, LOAD_FACTOR));
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new int[capacity];
+        this.mask = capacity - 1;
+        this.maxFill = (int)(capacity * LOAD_FACTOR);
+    }
+
+    private int slotOf(int key) {
+        return Tables.mix(key) & this.mask;
+    }
+
+    /**
+     * Adds the given value to this set.
+     * @param key The value to add.
+     * @return True if the value was not already present in this set.
+     */
+    public boolean add(int key) {
+        if (key == 0) {
+            boolean added = !this.containsZero;
+            this.containsZero = true;
+            return added;
+        }
+        int slot = slotOf(key);
+        int current;
+        while ((current = this.keys[slot]) != 0) {
+            if (current == key) {
+                return false;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        this.keys[slot] = key;
+        if (++this.assigned >= this.maxFill) {
+            rehash(this.keys.length << 1);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean add(Integer key) {
+        return add(key.intValue());
+    }
+
+    /**
+     * Determines whether the given value is a member of this set.
+     * @param key The value to look for.
+     * @return True if the value is present in this set.
+     */
+    public boolean contains(int key) {
+        if (key == 0) {
+            return this.containsZero;
+        }
+        int slot = slotOf(key);
+        int current;
+        while ((current = this.keys[slot]) != 0) {
+            if (current == key) {
+                return true;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object key) {
+        return key instanceof Integer && contains(((Integer)key).intValue());
+    }
+
+    /**
+     * Removes the given value from this set.
+     * @param key The value to remove.
+     * @return True if the value was present in this set.
+     */
+    public boolean removeInt(int key) {
+        if (key == 0) {
+            boolean removed = this.containsZero;
+            this.containsZero = false;
+            return removed;
+        }
+        int slot = slotOf(key);
+        int current;
+        while ((current = this.keys[slot]) != 0) {
+            if (current == key) {
+                shiftKeys(slot);
+                this.assigned--;
+                return true;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean remove(Object key) {
+        return key instanceof Integer && removeInt(((Integer)key).intValue());
+    }
+
+    /**
+     * Closes the gap left at the given slot by shifting subsequent keys of
+     * the same probe sequence backwards.
+     */
+    private void shiftKeys(int slot) {
+        int last;
+        int current;
+        for (;;) {
+            last = slot;
+            slot = (slot + 1) & this.mask;
+            for (;;) {
+                if ((current = this.keys[slot]) == 0) {
+                    this.keys[last] = 0;
+                    return;
+                }
+                int home = slotOf(current);
+                if (last <= slot ? (last >= home || home > slot) : (last >= home && home > slot)) {
+                    break;
+                }
+                slot = (slot + 1) & this.mask;
+            }
+            this.keys[last] = current;
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = this.keys;
+        allocate(capacity);
+        for (int key : oldKeys) {
+            if (key != 0) {
+                int slot = slotOf(key);
+                while (this.keys[slot] != 0) {
+                    slot = (slot + 1) & this.mask;
+                }
+                this.keys[slot] = key;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.containsZero ? this.assigned + 1 : this.assigned;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.keys, 0);
+        this.assigned = 0;
+        this.containsZero = false;
+    }
+
+    /**
+     * @return The members of this set as a newly allocated {@code int[]}.
+     */
+    public int[] toIntArray() {
+        int[] array = new int[size()];
+        int index = 0;
+        if (this.containsZero) {
+            array[index++] = 0;
+        }
+        for (int key : this.keys) {
+            if (key != 0) {
+                array[index++] = key;
+            }
+        }
+        return array;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+
+            private boolean zeroPending = containsZero;
+            private int slot = -1;
+            private int remaining = assigned;
+
+            @Override
+            public boolean hasNext() {
+                return this.zeroPending || this.remaining > 0;
+            }
+
+            @Override
+            public Integer next() {
+                if (this.zeroPending) {
+                    this.zeroPending = false;
+                    return 0;
+                }
+                if (this.remaining <= 0) {
+                    throw new NoSuchElementException();
+                }
+                while (keys[++this.slot] == 0) { }
+                this.remaining--;
+                return keys[this.slot];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.collect;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A growable {@link java.util.List} of primitive {@code long} values backed
+ * by a single {@code long[]}. Use {@link #add(long)} and {@link #getLong(int)}
+ * to avoid boxing altogether.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class LongList extends AbstractList<Long> implements RandomAccess {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] elements;
+    private int size;
+
+    /**
+     * Initializes a newly created, empty {@code LongList}.
+     */
+    public LongList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Initializes a newly created, empty {@code LongList} that is able to hold
+     * the given number of elements without having to grow its backing array.
+     * @param capacity The initial capacity.
+     */
+    public LongList(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException(String.format("Capacity must be non-negative: %d", capacity));
+        }
+        this.elements = new long[capacity];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.elements.length) {
+            int grown = Math.max(capacity, this.elements.length + (this.elements.length >> 1) + 1);
+            this.elements = Arrays.copyOf(this.elements, grown);
+        }
+    }
+
+    private void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, this.size));
+        }
+    }
+
+    /**
+     * Appends the given value to the end of this list.
+     * @param value The value to append.
+     * @return Always true.
+     */
+    public boolean add(long value) {
+        ensureCapacity(this.size + 1);
+        this.elements[this.size++] = value;
+        this.modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean add(Long value) {
+        return add(value.longValue());
+    }
+
+    @Override
+    public void add(int index, Long value) {
+        checkIndex(index, this.size + 1);
+        ensureCapacity(this.size + 1);
+        System.arraycopy(this.elements, index, this.elements, index + 1, this.size - index);
+        this.elements[index] = value;
+        this.size++;
+        this.modCount++;
+    }
+
+    /**
+     * Returns the value at the given position in this list.
+     * @param index The position of the value to return.
+     * @return The unboxed value at the given position.
+     */
+    public long getLong(int index) {
+        checkIndex(index, this.size);
+        return this.elements[index];
+    }
+
+    @Override
+    public Long get(int index) {
+        return getLong(index);
+    }
+
+    /**
+     * Replaces the value at the given position in this list.
+     * @param index The position of the value to replace.
+     * @param value The new value.
+     * @return The previous value at the given position.
+     */
+    public long setLong(int index, long value) {
+        checkIndex(index, this.size);
+        long previous = this.elements[index];
+        this.elements[index] = value;
+        return previous;
+    }
+
+    @Override
+    public Long set(int index, Long value) {
+        return setLong(index, value);
+    }
+
+    @Override
+    public Long remove(int index) {
+        checkIndex(index, this.size);
+        long previous = this.elements[index];
+        System.arraycopy(this.elements, index + 1, this.elements, index, this.size - index - 1);
+        this.size--;
+        this.modCount++;
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public void clear() {
+        this.size = 0;
+        this.modCount++;
+    }
+
+    /**
+     * @return The elements of this list as a newly allocated {@code long[]}.
+     */
+    public long[] toLongArray() {
+        return Arrays.copyOf(this.elements, this.size);
+    }
+}
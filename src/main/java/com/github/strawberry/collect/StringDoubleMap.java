@@ -0,0 +1,253 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.collect;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A {@link Map} of {@link String} keys to primitive {@code double} values backed
+ * by an open-addressing hash-table with linear probing. Values are stored
+ * unboxed in a single {@code double[]}. Use {@link #getDouble(String, double)} and
+ * {@link #putDouble(String, double)} on the hot path to avoid boxing altogether.
+ * 
+ * <p>
+ * <b>Note</b>: {@code null} keys are not supported, and the iterators of this
+ * map's views do not support removal.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class StringDoubleMap extends AbstractMap<String, Double> {
+
+    private static final int DEFAULT_EXPECTED_SIZE = 16;
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private String[] keys;
+    private double[] values;
+    private int size;
+    private int mask;
+    private int maxFill;
+
+    /**
+     * Initializes a newly created, empty {@code StringDoubleMap}.
+     */
+    public StringDoubleMap() {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+
+    /**
+     * Initializes a newly created, empty {@code StringDoubleMap} that is able to
+     * hold the given number of entries without having to grow its hash-table.
+     * @param expectedSize The expected number of entries.
+     */
+    public StringDoubleMap(int expectedSize) {
+        allocate(Tables.capacityFor(expectedSize, LOAD_FACTOR));
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new String[capacity];
+        this.values = new double[capacity];
+        this.mask = capacity - 1;
+        this.maxFill = (int)(capacity * LOAD_FACTOR);
+    }
+
+    private int slotOf(Object key) {
+        return Tables.mix(key.hashCode()) & this.mask;
+    }
+
+    /**
+     * @return The slot at which the given key is stored, or -1 if absent.
+     */
+    private int find(Object key) {
+        int slot = slotOf(key);
+        String current;
+        while ((current = this.keys[slot]) != null) {
+            if (current.equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the value that the given key maps to.
+     * @param key The key to look up.
+     * @param defaultValue The value to return if the key is absent.
+     * @return The unboxed value, or the default value if the key is absent.
+     */
+    public double getDouble(String key, double defaultValue) {
+        int slot = find(key);
+        return slot < 0 ? defaultValue : this.values[slot];
+    }
+
+    /**
+     * Associates the given value with the given key.
+     * @param key The (non-null) key.
+     * @param value The value to store.
+     */
+    public void putDouble(String key, double value) {
+        if (key == null) {
+            throw new NullPointerException("Null keys are not supported.");
+        }
+        int slot = slotOf(key);
+        String current;
+        while ((current = this.keys[slot]) != null) {
+            if (current.equals(key)) {
+                this.values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        if (++this.size >= this.maxFill) {
+            rehash(this.keys.length << 1);
+        }
+    }
+
+    @Override
+    public Double get(Object key) {
+        int slot = key == null ? -1 : find(key);
+        return slot < 0 ? null : this.values[slot];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && find(key) >= 0;
+    }
+
+    @Override
+    public Double put(String key, Double value) {
+        Double previous = get(key);
+        putDouble(key, value);
+        return previous;
+    }
+
+    @Override
+    public Double remove(Object key) {
+        int slot = key == null ? -1 : find(key);
+        if (slot < 0) {
+            return null;
+        }
+        double previous = this.values[slot];
+        shiftKeys(slot);
+        this.size--;
+        return previous;
+    }
+
+    /**
+     * Closes the gap left at the given slot by shifting subsequent entries of
+     * the same probe sequence backwards.
+     */
+    private void shiftKeys(int slot) {
+        int last;
+        String current;
+        for (;;) {
+            last = slot;
+            slot = (slot + 1) & this.mask;
+            for (;;) {
+                if ((current = this.keys[slot]) == null) {
+                    this.keys[last] = null;
+                    return;
+                }
+                int home = slotOf(current);
+                if (last <= slot ? (last >= home || home > slot) : (last >= home && home > slot)) {
+                    break;
+                }
+                slot = (slot + 1) & this.mask;
+            }
+            this.keys[last] = current;
+            this.values[last] = this.values[slot];
+        }
+    }
+
+    private void rehash(int capacity) {
+        String[] oldKeys = this.keys;
+        double[] oldValues = this.values;
+        allocate(capacity);
+        for (int index = 0; index < oldKeys.length; index++) {
+            if (oldKeys[index] != null) {
+                int slot = slotOf(oldKeys[index]);
+                while (this.keys[slot] != null) {
+                    slot = (slot + 1) & this.mask;
+                }
+                this.keys[slot] = oldKeys[index];
+                this.values[slot] = oldValues[index];
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.keys, null);
+        this.size = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Double>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Double>>() {
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, Double>> iterator() {
+                return new Iterator<Map.Entry<String, Double>>() {
+
+                    private int slot = -1;
+                    private int remaining = size;
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.remaining > 0;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Double> next() {
+                        if (this.remaining <= 0) {
+                            throw new NoSuchElementException();
+                        }
+                        while (keys[++this.slot] == null) { }
+                        this.remaining--;
+                        return new SimpleImmutableEntry<String, Double>(keys[this.slot], values[this.slot]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+}
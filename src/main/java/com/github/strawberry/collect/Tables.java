@@ -0,0 +1,60 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.collect;
+
+/**
+ * Internal helper methods shared by the open-addressing hash-tables in this
+ * package.
+ * 
+ * @author Wiehann Matthysen
+ */
+final class Tables {
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private Tables() { }
+
+    /**
+     * Determines the power-of-two table capacity required to hold the given
+     * number of entries without exceeding the given load-factor.
+     */
+    static int capacityFor(int expectedSize, float loadFactor) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(String.format("Expected size must be non-negative: %d", expectedSize));
+        }
+        long required = (long)Math.ceil((expectedSize + 1) / loadFactor);
+        if (required > MAXIMUM_CAPACITY) {
+            throw new IllegalArgumentException(String.format("Expected size is too large: %d", expectedSize));
+        }
+        return Math.max(4, Integer.highestOneBit((int)required - 1) << 1);
+    }
+
+    /**
+     * Scrambles the bits of the given value so that keys that only differ in
+     * their higher bits are spread evenly over a power-of-two sized table.
+     */
+    static int mix(int value) {
+        int hash = value * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    static int mix(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return mix((int)(hash ^ (hash >>> 32)));
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.strawberry.util.LoaderExecutors;
+
+/**
+ * The time budget for injecting the {@link Redis}-annotated fields of an
+ * object: a maximum time to wait for the value of every field (which the
+ * {@link Redis#timeout()} of a field overrides), and a deadline for all fields
+ * of an object together, which bounds the time that
+ * {@link com.google.inject.Injector#getInstance(Class)} may spend waiting on
+ * Redis. Once a budget applies to any field of an object, the fields of that
+ * object are loaded concurrently on the given executor. A field whose load is
+ * cut off receives its cached value (if any) or else the value it would have
+ * received if its keys did not exist, and is counted in {@link #timeouts()}.
+ * Its load is not cancelled, but keeps running for later injections of the
+ * same field, which wait on it instead of starting another load.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class LoadBudget implements Closeable {
+
+    private final long fieldTimeout;
+    private final long classDeadline;
+    private final ExecutorService executor;
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * Initializes a newly created {@code LoadBudget} that loads fields on
+     * virtual threads (see {@link LoaderExecutors#newVirtualThreadExecutor()}).
+     * @param fieldTimeout The maximum time to wait for the value of a field, or
+     * 0 for no maximum.
+     * @param classDeadline The maximum time to wait for the values of all
+     * fields of an object, or 0 for no maximum.
+     * @param unit The unit of both times.
+     */
+    public LoadBudget(long fieldTimeout, long classDeadline, TimeUnit unit) {
+        this(fieldTimeout, classDeadline, unit, LoaderExecutors.newVirtualThreadExecutor());
+    }
+
+    /**
+     * Initializes a newly created {@code LoadBudget}.
+     * @param fieldTimeout The maximum time to wait for the value of a field, or
+     * 0 for no maximum.
+     * @param classDeadline The maximum time to wait for the values of all
+     * fields of an object, or 0 for no maximum.
+     * @param unit The unit of both times.
+     * @param executor The executor on which fields are loaded, which is shut
+     * down when this budget is closed.
+     */
+    public LoadBudget(long fieldTimeout, long classDeadline, TimeUnit unit, ExecutorService executor) {
+        if (fieldTimeout < 0 || classDeadline < 0) {
+            throw new IllegalArgumentException("Budgets must not be negative.");
+        }
+        this.fieldTimeout = unit.toNanos(fieldTimeout);
+        this.classDeadline = unit.toNanos(classDeadline);
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the number of field loads that have been cut off.
+     */
+    public long timeouts() {
+        return this.timeouts.get();
+    }
+
+    void timedOut() {
+        this.timeouts.incrementAndGet();
+    }
+
+    /**
+     * Returns the maximum time in nanoseconds to wait for the value of the
+     * given field, or 0 for no maximum.
+     */
+    long timeoutOf(Field field) {
+        long timeout = field.getAnnotation(Redis.class).timeout();
+        return timeout > 0 ? TimeUnit.MILLISECONDS.toNanos(timeout) : this.fieldTimeout;
+    }
+
+    /**
+     * Returns the maximum time in nanoseconds to wait for the values of all
+     * fields of an object, or 0 for no maximum.
+     */
+    long classDeadline() {
+        return this.classDeadline;
+    }
+
+    ExecutorService executor() {
+        return this.executor;
+    }
+
+    /**
+     * Shuts down the executor on which fields are loaded, after which objects
+     * with fields to which this budget applies can no longer be injected.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+    }
+}
@@ -21,6 +21,7 @@ import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 
+import com.github.strawberry.codec.Codec;
 import com.google.inject.BindingAnnotation;
 
 import static java.lang.annotation.ElementType.FIELD;
@@ -33,6 +34,16 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
  * {@link com.google.inject.Injector} should inject values from a
  * <a href="http://redis.io">Redis</a> database.
  * 
+ * <p>
+ * Injected values must be treated as read-only: the same instance (of an
+ * array, a collection, a map or an object filled from a hash) is injected into
+ * every field that receives the value from the cache, as well as into every
+ * field (of any class) whose value of the same key-pattern and type is loaded
+ * concurrently (see {@link com.github.strawberry.redis.RedisLoader}). Only
+ * values that are consumed as they are read ({@code ByteBuffer} and
+ * {@code InputStream}) are given to every field as an object of its own.
+ * </p>
+ * 
  * @author Wiehann Matthysen
  */
 @BindingAnnotation
@@ -52,11 +63,15 @@ public @interface Redis {
      * matching value for the specified key-pattern exists in the Redis
      * database. This default value is type dependent and only the following
      * type are supported: {@code char([])} and {@code Character([])},
-     * {@code String}, {@code byte([])} and {@code Byte([]}, {@code boolean} and
+     * {@code String}, {@code byte([])} and {@code Byte([]}, {@code ByteBuffer}
+     * and {@code InputStream} (empty), {@code boolean} and
      * {@code Boolean}, {@code short} and {@code Short}, {@code int} and
      * {@code Integer}, {@code long} and {@code Long}, {@code BigInteger},
      * {@code float} and {@code Float}, {@code double} and {@code Double},
-     * {@code BigDecimal}, {@code Map}, {@code List} and {@code Set}.
+     * {@code BigDecimal}, {@code int[]}, {@code long[]}, {@code float[]},
+     * {@code double[]}, {@code Map}, {@code List}, {@code Set} and ordinary
+     * classes that are filled from a hash (for which a newly created instance
+     * will be injected).
      * Otherwise, if true, null will be used as the candidate-value if no
      * matching value for the specified key-pattern exists in the Redis
      * database. However, if {@link Redis#forceUpdate()} is false, then a
@@ -71,4 +86,36 @@ public @interface Redis {
      * candidate value (see {@link Redis#allowNull()}).
      */
     boolean forceUpdate() default false;
+
+    /**
+     * The {@link Codec} used to decode the string value at the specified key
+     * into the (generic) type of this field. The decoded object (and not the
+     * raw value) is what gets cached, thus decoding only happens when the
+     * value is (re)loaded from the Redis database. Defaults to
+     * {@code Codec.class}, which means that no codec is used and the value is
+     * converted as described for the supported types above.
+     */
+    Class<? extends Codec> codec() default Codec.class;
+
+    /**
+     * If true, a binary value ({@code byte[]}, {@code Byte[]},
+     * {@code ByteBuffer} or {@code InputStream}) that was stored in compressed
+     * form (see {@link com.github.strawberry.util.Compression}) is
+     * decompressed before it is injected. Otherwise, binary values are
+     * injected exactly as they are stored, even if they happen to start with a
+     * compression header. String values (including those that are decoded by
+     * a {@link Redis#codec()}) are always decompressed, as no compression
+     * header is a plausible start of text.
+     */
+    boolean compressed() default false;
+
+    /**
+     * The maximum time in milliseconds that injection waits for the value of
+     * this field. A load that takes longer is cut off: the field receives the
+     * cached value (if any) or else the value it would have received if its
+     * keys did not exist (see {@link Redis#allowNull()}), while the load
+     * completes in the background. Defaults to 0, which means that the
+     * module-wide budget applies (see {@link LoadBudget}).
+     */
+    long timeout() default 0;
 }
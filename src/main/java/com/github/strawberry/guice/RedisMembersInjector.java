@@ -17,9 +17,26 @@
  */
 package com.github.strawberry.guice;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import com.github.strawberry.redis.RedisLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.io.InputSupplier;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.inject.MembersInjector;
 
 import fj.data.Option;
@@ -31,32 +48,164 @@ import fj.data.Option;
 final class RedisMembersInjector<T> implements MembersInjector<T> {
 
     private final LoadingCache<Field, Option> cache;
-    private final Field field;
+    private final List<Field> fields;
+    private final LoadBudget budget;
+    private final boolean bounded;
+    private final ConcurrentMap<Field, Future<Option>> loading = new ConcurrentHashMap<Field, Future<Option>>();
 
-    RedisMembersInjector(LoadingCache<Field, Option> cache, Field field) {
+    RedisMembersInjector(LoadingCache<Field, Option> cache, List<Field> fields, LoadBudget budget) {
         this.cache = cache;
-        this.field = field;
-        this.field.setAccessible(true);
+        this.fields = fields;
+        this.budget = budget;
+        boolean bounded = budget.classDeadline() > 0;
+        for (Field field : fields) {
+            field.setAccessible(true);
+            bounded |= budget.timeoutOf(field) > 0;
+        }
+        this.bounded = bounded;
+    }
+
+    /**
+     * Some values are cached as suppliers of single-use objects (such as the
+     * {@link InputStream} of a large binary value), in which case every field
+     * receives its own object from the supplier. Likewise, every field
+     * receives a {@link ByteBuffer} of its own (that shares the contents of
+     * the cached buffer), so that reading it does not move the position of
+     * the buffers of other fields.
+     */
+    private Option valueOf(Field field, Option cached) throws IOException {
+        if (cached.isSome() && cached.some() instanceof InputSupplier &&
+            field.getType().equals(InputStream.class)) {
+            return Option.some(((InputSupplier)cached.some()).getInput());
+        } else if (cached.isSome() && cached.some() instanceof ByteBuffer) {
+            return Option.some(((ByteBuffer)cached.some()).duplicate());
+        }
+        return cached;
+    }
+
+    private void inject(T object, Field field, Option cached) throws IllegalAccessException, IOException {
+        Option value = valueOf(field, cached);
+        Redis annotation = field.getAnnotation(Redis.class);
+        if (field.get(object) != null) {
+            // If field is not equal to null (i.e. default value has been set)
+            // and if value to be injected is not null, then set.
+            // Or, if forced update has been specified, then set.
+            if (annotation.forceUpdate() || value.isSome()) {
+                field.set(object, value.toNull());
+            }
+        } else {
+            // Always set null field.
+            field.set(object, value.toNull());
+        }
+    }
+
+    /**
+     * Returns the value of a field whose load has been cut off: its cached
+     * value (if any), or else its default value.
+     */
+    private Option fallbackOf(Field field) {
+        Option cached = this.cache.getIfPresent(field);
+        return cached != null ? cached : RedisLoader.defaultValueOf(field);
+    }
+
+    /**
+     * Returns the load of the given field that is still running, or else
+     * starts a new one. A load that has been cut off thus keeps serving the
+     * injections that come after it until it completes, instead of every
+     * injection piling up another load of the same field.
+     */
+    private Future<Option> loadOf(final Field field) {
+        Future<Option> running = this.loading.get(field);
+        if (running != null) {
+            return running;
+        }
+        FutureTask<Option> load = new FutureTask<Option>(new Callable<Option>() {
+            @Override
+            public Option call() {
+                return RedisMembersInjector.this.cache.getUnchecked(field);
+            }
+        }) {
+            @Override
+            protected void done() {
+                RedisMembersInjector.this.loading.remove(field, this);
+            }
+        };
+        running = this.loading.putIfAbsent(field, load);
+        if (running != null) {
+            return running;
+        }
+        try {
+            this.budget.executor().execute(load);
+        } catch (RejectedExecutionException exception) {
+            this.loading.remove(field, load);
+            throw exception;
+        }
+        return load;
+    }
+
+    /**
+     * Loads the values of all fields concurrently, and waits for every value
+     * no longer than the budget of its field and the deadline of the object
+     * allow.
+     */
+    private List<Option> boundedValues() throws InterruptedException {
+        long start = System.nanoTime();
+        List<Future<Option>> loads = new ArrayList<Future<Option>>(this.fields.size());
+        for (Field field : this.fields) {
+            loads.add(loadOf(field));
+        }
+        List<Option> values = new ArrayList<Option>(this.fields.size());
+        for (int index = 0; index < this.fields.size(); index++) {
+            Field field = this.fields.get(index);
+            long timeout = this.budget.timeoutOf(field);
+            long deadline = this.budget.classDeadline();
+            if (deadline > 0 && (timeout == 0 || deadline < timeout)) {
+                timeout = deadline;
+            }
+            try {
+                if (timeout == 0) {
+                    values.add(loads.get(index).get());
+                } else {
+                    long remaining = Math.max(0, start + timeout - System.nanoTime());
+                    values.add(loads.get(index).get(remaining, TimeUnit.NANOSECONDS));
+                }
+            } catch (TimeoutException exception) {
+                // The load keeps running, and later injections of this field
+                // wait on it rather than starting another. Its value is only
+                // kept once it completes if the cache stores values at all.
+                this.budget.timedOut();
+                values.add(fallbackOf(field));
+            } catch (ExecutionException exception) {
+                Throwable cause = exception.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException)cause;
+                }
+                throw new UncheckedExecutionException(cause);
+            }
+        }
+        return values;
     }
 
     @Override
     public void injectMembers(final T object) {
-        Option value = this.cache.getUnchecked(this.field);
         try {
-            Redis annotation = this.field.getAnnotation(Redis.class);
-            if (this.field.get(object) != null) {
-                // If field is not equal to null (i.e. default value has been set)
-                // and if value to be injected is not null, then set.
-                // Or, if forced update has been specified, then set.
-                if (annotation.forceUpdate() || value.isSome()) {
-                    this.field.set(object, value.toNull());
+            if (this.bounded) {
+                List<Option> values = boundedValues();
+                for (int index = 0; index < this.fields.size(); index++) {
+                    inject(object, this.fields.get(index), values.get(index));
                 }
             } else {
-                // Always set null field.
-                this.field.set(object, value.toNull());
+                for (Field field : this.fields) {
+                    inject(object, field, this.cache.getUnchecked(field));
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
         } catch (IllegalAccessException e) {
             throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
     }
 }
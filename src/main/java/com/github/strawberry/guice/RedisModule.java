@@ -18,8 +18,12 @@
 package com.github.strawberry.guice;
 
 import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.redis.RedisSource;
+import com.github.strawberry.routing.PrefixRoutingSource;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -92,6 +96,7 @@ import fj.data.Option;
 public final class RedisModule extends AbstractModule {
 
     private final LoadingCache<Field, Option> cache;
+    private final LoadBudget budget;
 
     /**
      * Initializes a newly created {@code RedisModule} with the given cache of
@@ -100,7 +105,20 @@ public final class RedisModule extends AbstractModule {
      * are loaded from the Redis database.
      */
     public RedisModule(LoadingCache<Field, Option> cache) {
+        this(cache, new LoadBudget(0, 0, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Initializes a newly created {@code RedisModule} with the given cache of
+     * {@code Field}-to-value mappings, that bounds the time that injection
+     * waits for field values by the given budget.
+     * @param cache The cache that will serve as storage for field values that
+     * are loaded from the Redis database.
+     * @param budget The time budget for the fields of every object.
+     */
+    public RedisModule(LoadingCache<Field, Option> cache, LoadBudget budget) {
         this.cache = cache;
+        this.budget = budget;
     }
 
     /**
@@ -117,11 +135,36 @@ public final class RedisModule extends AbstractModule {
         
         // It achieves this by creating a cache that never stores it's values
         // (maximum size of 0).
-        this.cache = CacheBuilder.newBuilder().maximumSize(0).build(new RedisLoader(pool));
+        this(CacheBuilder.newBuilder().maximumSize(0).build(new RedisLoader(pool)));
+    }
+
+    /**
+     * Initializes a newly created {@code RedisModule} with the given
+     * {@link RedisSource} through which commands are sent to a Redis database
+     * (for example, a {@link com.github.strawberry.client.MultiplexedSource}
+     * that shares a single connection between all threads). As with
+     * {@link #RedisModule(JedisPool)}, field values are not cached.
+     * @param source The source of commands to a Redis database.
+     */
+    public RedisModule(RedisSource source) {
+        this(CacheBuilder.newBuilder().maximumSize(0).build(new RedisLoader(source)));
+    }
+
+    /**
+     * Initializes a newly created {@code RedisModule} that loads keys from
+     * different Redis databases depending on their prefixes (see
+     * {@link PrefixRoutingSource}). As with {@link #RedisModule(JedisPool)},
+     * field values are not cached.
+     * @param fallback The source of keys that do not match any prefix.
+     * @param routes The sources of keys that start with the given prefixes
+     * (such as {@code "config:"} or {@code "catalog:"}).
+     */
+    public RedisModule(RedisSource fallback, Map<String, ? extends RedisSource> routes) {
+        this(new PrefixRoutingSource(fallback, routes));
     }
 
     @Override
     protected void configure() {
-        bindListener(Matchers.any(), new RedisTypeListener(this.cache));
+        bindListener(Matchers.any(), new RedisTypeListener(this.cache, this.budget));
     }
 }
@@ -18,6 +18,8 @@
 package com.github.strawberry.guice;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.google.common.cache.LoadingCache;
 import com.google.inject.TypeLiteral;
@@ -33,17 +35,23 @@ import fj.data.Option;
 final class RedisTypeListener implements TypeListener {
 
     private final LoadingCache<Field, Option> cache;
+    private final LoadBudget budget;
 
-    RedisTypeListener(LoadingCache<Field, Option> cache) {
+    RedisTypeListener(LoadingCache<Field, Option> cache, LoadBudget budget) {
         this.cache = cache;
+        this.budget = budget;
     }
 
     @Override
     public <T> void hear(TypeLiteral<T> typeLiteral, TypeEncounter<T> typeEncounter) {
+        List<Field> fields = new ArrayList<Field>();
         for (Field field : typeLiteral.getRawType().getDeclaredFields()) {
             if (field.isAnnotationPresent(Redis.class)) {
-                typeEncounter.register(new RedisMembersInjector<T>(this.cache, field));
+                fields.add(field);
             }
         }
+        if (!fields.isEmpty()) {
+            typeEncounter.register(new RedisMembersInjector<T>(this.cache, fields, this.budget));
+        }
     }
 }
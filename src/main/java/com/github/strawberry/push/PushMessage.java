@@ -0,0 +1,89 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.push;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+
+import com.github.strawberry.shared.MappedSnapshot;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * A message that pushes the new values of keys to subscribers: the keys that
+ * have changed, followed by a {@link MappedSnapshot} of their new values.
+ * Keys that are not in the snapshot have been deleted.
+ * 
+ * @author Wiehann Matthysen
+ */
+final class PushMessage {
+
+    final List<String> keys;
+    final MappedSnapshot values;
+
+    private PushMessage(List<String> keys, MappedSnapshot values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    static byte[] encode(Collection<String> keys, SortedMap<String, Object> values) {
+        try {
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(message);
+            data.writeInt(keys.size());
+            for (String key : keys) {
+                byte[] bytes = SafeEncoder.encode(key);
+                data.writeInt(bytes.length);
+                data.write(bytes);
+            }
+            data.write(MappedSnapshot.encode(values));
+            data.flush();
+            return message.toByteArray();
+        } catch (IOException exception) {
+            // Cannot happen when writing to memory.
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * @throws IOException if the given bytes are not a message.
+     */
+    static PushMessage decode(byte[] message) throws IOException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(message);
+            int count = buffer.getInt();
+            List<String> keys = new ArrayList<String>(count);
+            for (int index = 0; index < count; index++) {
+                byte[] key = new byte[buffer.getInt()];
+                buffer.get(key);
+                keys.add(SafeEncoder.encode(key));
+            }
+            byte[] values = new byte[buffer.remaining()];
+            buffer.get(values);
+            return new PushMessage(keys, MappedSnapshot.of(values));
+        } catch (RuntimeException exception) {
+            throw new IOException("Corrupt message.", exception);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.push;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.github.strawberry.util.Compression;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Transaction;
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+import static com.github.strawberry.util.JedisUtil.using;
+
+/**
+ * Writes values to Redis for config writers, and pushes every new value in
+ * its entirety to the {@link ValueSubscriber}s on the same channel, which
+ * apply it to their caches directly (instead of all reading it from Redis
+ * again). Every value is stored and published in a single transaction.
+ * 
+ * <p>
+ * Values are stored as they are given; to store compressed strings, compress
+ * them first (see {@link Compression#compress(byte[], Compression.Format)}).
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class ValuePublisher {
+
+    /**
+     * The default channel on which values are pushed.
+     */
+    public static final String DEFAULT_CHANNEL = "strawberry:values";
+
+    /**
+     * Orders the members of a sorted set by score, and members with equal
+     * scores lexicographically (as Redis does).
+     */
+    private static final Comparator<Map.Entry<String, Double>> BY_SCORE = new Comparator<Map.Entry<String, Double>>() {
+        @Override
+        public int compare(Map.Entry<String, Double> first, Map.Entry<String, Double> second) {
+            int result = first.getValue().compareTo(second.getValue());
+            return result != 0 ? result : first.getKey().compareTo(second.getKey());
+        }
+    };
+
+    private final JedisPool pool;
+    private final byte[] channel;
+
+    public ValuePublisher(JedisPool pool) {
+        this(pool, DEFAULT_CHANNEL);
+    }
+
+    public ValuePublisher(JedisPool pool, String channel) {
+        this.pool = pool;
+        this.channel = SafeEncoder.encode(channel);
+    }
+
+    /**
+     * Stores the given string at the given key, and pushes it.
+     */
+    public void set(final String key, final byte[] value) {
+        publish(key, value, new F<Transaction, Void>() {
+            @Override
+            public Void f(Transaction transaction) {
+                transaction.set(SafeEncoder.encode(key), value);
+                return null;
+            }
+        });
+    }
+
+    public void set(String key, String value) {
+        set(key, SafeEncoder.encode(value));
+    }
+
+    /**
+     * Replaces the hash at the given key with the given one, and pushes it.
+     */
+    public void setHash(final String key, final Map<String, String> hash) {
+        publish(key, hash, new F<Transaction, Void>() {
+            @Override
+            public Void f(Transaction transaction) {
+                transaction.del(key);
+                if (!hash.isEmpty()) {
+                    transaction.hmset(key, hash);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Replaces the list at the given key with the given one, and pushes it.
+     */
+    public void setList(final String key, final List<String> list) {
+        publish(key, list, new F<Transaction, Void>() {
+            @Override
+            public Void f(Transaction transaction) {
+                transaction.del(key);
+                for (String element : list) {
+                    transaction.rpush(key, element);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Replaces the set at the given key with the given one, and pushes it.
+     */
+    public void setSet(final String key, final Set<String> set) {
+        // An unordered set, unlike the (ordered) members of a sorted set.
+        publish(key, new HashSet<String>(set), new F<Transaction, Void>() {
+            @Override
+            public Void f(Transaction transaction) {
+                transaction.del(key);
+                for (String member : set) {
+                    transaction.sadd(key, member);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Replaces the sorted set at the given key with the given members and
+     * their scores, and pushes it.
+     */
+    public void setSortedSet(final String key, final Map<String, Double> scores) {
+        List<Map.Entry<String, Double>> entries = new ArrayList<Map.Entry<String, Double>>(scores.entrySet());
+        Collections.sort(entries, BY_SCORE);
+        Set<String> members = new LinkedHashSet<String>();
+        for (Map.Entry<String, Double> entry : entries) {
+            members.add(entry.getKey());
+        }
+        publish(key, members, new F<Transaction, Void>() {
+            @Override
+            public Void f(Transaction transaction) {
+                transaction.del(key);
+                for (Map.Entry<String, Double> entry : scores.entrySet()) {
+                    transaction.zadd(key, entry.getValue(), entry.getKey());
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Deletes the given key, and pushes its deletion.
+     */
+    public void delete(final String key) {
+        publish(key, null, new F<Transaction, Void>() {
+            @Override
+            public Void f(Transaction transaction) {
+                transaction.del(key);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Runs the given writes and publishes the given value of the given key
+     * (or its deletion, if {@code null}) in a single transaction.
+     */
+    private void publish(String key, Object value, final F<Transaction, Void> writes) {
+        SortedMap<String, Object> values = new TreeMap<String, Object>();
+        if (value != null && !isEmpty(value)) {
+            values.put(key, value);
+        }
+        final byte[] message = PushMessage.encode(Collections.singletonList(key), values);
+        using(this.pool)._do(new F<Jedis, Void>() {
+            @Override
+            public Void f(Jedis jedis) {
+                Transaction transaction = jedis.multi();
+                writes.f(transaction);
+                transaction.publish(ValuePublisher.this.channel, message);
+                transaction.exec();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Redis does not keep empty hashes, lists or sets.
+     */
+    private static boolean isEmpty(Object value) {
+        if (value instanceof Map) {
+            return ((Map<?, ?>)value).isEmpty();
+        } else if (value instanceof Collection) {
+            return ((Collection<?>)value).isEmpty();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.push;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+
+import com.github.strawberry.guice.Redis;
+import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.util.Glob;
+import com.google.common.cache.Cache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.SafeEncoder;
+
+import fj.data.Option;
+
+/**
+ * Applies the values that a {@link ValuePublisher} pushes to a cache of field
+ * values, so that changed values are served without being read from Redis
+ * again. For every pushed key, the cached value of every field whose key is
+ * that key is replaced by the pushed value (converted as a {@link RedisLoader}
+ * would); cached values of fields whose pattern matches the key (aggregates of
+ * many keys) are invalidated instead, and reloaded on their next use.
+ * 
+ * <p>
+ * The subscriber listens on a dedicated connection, and reconnects when the
+ * connection fails. As values may have been pushed while it was disconnected,
+ * the whole cache is invalidated upon reconnecting.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class ValueSubscriber implements Closeable {
+
+    private static final long RETRY_DELAY = 1000;
+
+    private final String host;
+    private final int port;
+    private final byte[] channel;
+    private final Cache<Field, Option> cache;
+
+    private final Thread listener;
+    private volatile Jedis jedis;
+    private volatile boolean subscribed;
+    private volatile boolean closed;
+
+    /**
+     * Initializes a newly created {@code ValueSubscriber} on the
+     * {@link ValuePublisher#DEFAULT_CHANNEL}.
+     */
+    public ValueSubscriber(String host, int port, Cache<Field, Option> cache) {
+        this(host, port, ValuePublisher.DEFAULT_CHANNEL, cache);
+    }
+
+    /**
+     * Initializes a newly created {@code ValueSubscriber}.
+     * @param host The host of the Redis database.
+     * @param port The port of the Redis database.
+     * @param channel The channel on which values are pushed.
+     * @param cache The cache to which pushed values are applied.
+     */
+    public ValueSubscriber(String host, int port, String channel, Cache<Field, Option> cache) {
+        this.host = host;
+        this.port = port;
+        this.channel = SafeEncoder.encode(channel);
+        this.cache = cache;
+        this.listener = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("strawberry-value-subscriber").build().
+            newThread(new Runnable() {
+                @Override
+                public void run() {
+                    listen();
+                }
+            });
+        this.listener.start();
+    }
+
+    /**
+     * Returns whether the subscriber is currently subscribed to the channel.
+     */
+    public boolean isSubscribed() {
+        return this.subscribed;
+    }
+
+    private void listen() {
+        boolean reconnect = false;
+        while (!this.closed) {
+            try {
+                this.jedis = new Jedis(this.host, this.port);
+                if (this.closed) {
+                    return;
+                }
+                // Unlike subscribing to String channels, subscribing to binary
+                // ones does not connect first.
+                this.jedis.connect();
+                final boolean invalidate = reconnect;
+                this.jedis.subscribe(new BinaryJedisPubSub() {
+                    @Override
+                    public void onSubscribe(byte[] channel, int channels) {
+                        if (invalidate) {
+                            ValueSubscriber.this.cache.invalidateAll();
+                        }
+                        ValueSubscriber.this.subscribed = true;
+                    }
+
+                    @Override
+                    public void onMessage(byte[] channel, byte[] message) {
+                        apply(message);
+                    }
+
+                    @Override
+                    public void onPMessage(byte[] pattern, byte[] channel, byte[] message) {
+                    }
+
+                    @Override
+                    public void onUnsubscribe(byte[] channel, int channels) {
+                    }
+
+                    @Override
+                    public void onPSubscribe(byte[] pattern, int channels) {
+                    }
+
+                    @Override
+                    public void onPUnsubscribe(byte[] pattern, int channels) {
+                    }
+                }, this.channel);
+            } catch (RuntimeException exception) {
+                // Reconnect below.
+            } finally {
+                this.subscribed = false;
+                disconnect();
+            }
+            reconnect = true;
+            if (!this.closed) {
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException exception) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the given message to the cached values of the fields whose keys
+     * it concerns.
+     */
+    void apply(byte[] bytes) {
+        PushMessage message;
+        try {
+            message = PushMessage.decode(bytes);
+        } catch (IOException exception) {
+            // Not a message of a publisher; ignore it.
+            return;
+        }
+        RedisLoader loader = new RedisLoader(message.values);
+        for (Field field : this.cache.asMap().keySet()) {
+            String pattern = field.getAnnotation(Redis.class).value();
+            for (String key : message.keys) {
+                if (pattern.equals(key) && Glob.isLiteral(pattern)) {
+                    try {
+                        this.cache.put(field, loader.load(field));
+                    } catch (Exception exception) {
+                        // Cannot be converted; load it from Redis on next use.
+                        this.cache.invalidate(field);
+                    }
+                } else if (Glob.matches(pattern, key)) {
+                    this.cache.invalidate(field);
+                }
+            }
+        }
+    }
+
+    private void disconnect() {
+        Jedis jedis = this.jedis;
+        if (jedis != null) {
+            try {
+                jedis.disconnect();
+            } catch (RuntimeException exception) {
+                // Nothing more can be done about it.
+            }
+        }
+    }
+
+    /**
+     * Unsubscribes from the channel. Cached values are no longer updated.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        disconnect();
+        this.listener.interrupt();
+    }
+}
@@ -0,0 +1,342 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.github.strawberry.client.AsyncConnection;
+import com.github.strawberry.client.EventLoop;
+import com.github.strawberry.client.NioConnection;
+import com.github.strawberry.guice.Redis;
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
+
+import fj.data.Option;
+
+/**
+ * The asynchronous counterpart of {@link RedisLoader}: field values are loaded
+ * over an {@link AsyncConnection} (such as a {@link NioConnection} that is
+ * served by an {@link EventLoop}) without blocking any thread while the
+ * commands are in flight, thus the loads of many fields (of many classes) can
+ * be outstanding at once.
+ * 
+ * <p>
+ * A field is loaded in three pipelined stages: the keys that match its pattern
+ * are retrieved (KEYS), then the type of every key (TYPE), then the value of
+ * every key in its entirety (GET, HGETALL, LRANGE, SMEMBERS or ZRANGE). The
+ * retrieved values form a {@link Keyspace} snapshot from which the value of
+ * the field is converted exactly as a {@code RedisLoader} would have
+ * converted it. Conversion happens on the given {@link Executor} (on the
+ * thread that completed the last reply by default).
+ * </p>
+ * 
+ * <p>
+ * As a {@link CacheLoader}, an {@code AsyncRedisLoader} reloads values
+ * asynchronously when a {@link LoadingCache} is refreshed, and loads all the
+ * values of a bulk lookup concurrently. Caches can be warmed up in a single
+ * round of loads by means of {@link #prefetch(Class...)}:
+ * </p>
+ * 
+ * <pre>
+ * AsyncRedisLoader loader = new AsyncRedisLoader(new NioConnection(loop, "localhost", 6379));
+ * LoadingCache&lt;Field, Option&gt; cache = CacheBuilder.newBuilder().
+ *   refreshAfterWrite(1, TimeUnit.MINUTES).
+ *   build(loader);
+ * cache.putAll(loader.prefetch(MyClass.class, MyOtherClass.class).get());
+ * install(new RedisModule(cache));
+ * </pre>
+ * 
+ * <b>Note</b>: since values are retrieved in their entirety, fields of type
+ * {@link java.io.InputStream} are streamed from the snapshot rather than
+ * being retrieved in chunks as they are read.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class AsyncRedisLoader extends CacheLoader<Field, Option> {
+
+    private final AsyncConnection connection;
+    private final Executor executor;
+    private final int timeout;
+
+    /**
+     * Initializes a newly created {@code AsyncRedisLoader} that converts
+     * values on the thread that completes their retrieval.
+     * @param connection The connection over which values are retrieved.
+     */
+    public AsyncRedisLoader(AsyncConnection connection) {
+        this(connection, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * Initializes a newly created {@code AsyncRedisLoader} whose blocking
+     * loads wait at most {@link Protocol#DEFAULT_TIMEOUT} milliseconds.
+     * @param connection The connection over which values are retrieved.
+     * @param executor The executor on which retrieved values are converted
+     * into field values.
+     */
+    public AsyncRedisLoader(AsyncConnection connection, Executor executor) {
+        this(connection, executor, Protocol.DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Initializes a newly created {@code AsyncRedisLoader}.
+     * @param connection The connection over which values are retrieved.
+     * @param executor The executor on which retrieved values are converted
+     * into field values.
+     * @param timeout The maximum time in milliseconds that the blocking
+     * {@link #load(Field)} and {@link #loadAll(Iterable)} wait for values.
+     */
+    public AsyncRedisLoader(AsyncConnection connection, Executor executor, int timeout) {
+        this.connection = connection;
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    private static String stringOf(Object reply) {
+        return reply == null ? null : SafeEncoder.encode((byte[])reply);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> elementsOf(Object reply) {
+        return (List<Object>)reply;
+    }
+
+    private static double scoreOf(Object reply) {
+        String score = stringOf(reply);
+        if (score.endsWith("inf")) {
+            return score.startsWith("-") ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        return Double.parseDouble(score);
+    }
+
+    /**
+     * Retrieves the value of the given type at the given key into the given
+     * snapshot. Keys that have been removed in the meantime are skipped.
+     */
+    private ListenableFuture<Object> fetch(final Keyspace keyspace, final String key, String type) {
+        if (type.equals("string")) {
+            return Futures.transform(this.connection.send("GET", key), new Function<Object, Object>() {
+                @Override
+                public Object apply(Object reply) {
+                    if (reply != null) {
+                        keyspace.putString(key, (byte[])reply);
+                    }
+                    return reply;
+                }
+            });
+        } else if (type.equals("hash")) {
+            return Futures.transform(this.connection.send("HGETALL", key), new Function<Object, Object>() {
+                @Override
+                public Object apply(Object reply) {
+                    List<Object> pairs = elementsOf(reply);
+                    Map<String, String> hash = new LinkedHashMap<String, String>(pairs.size());
+                    for (int index = 0; index < pairs.size(); index += 2) {
+                        hash.put(stringOf(pairs.get(index)), stringOf(pairs.get(index + 1)));
+                    }
+                    if (!hash.isEmpty()) {
+                        keyspace.putHash(key, hash);
+                    }
+                    return reply;
+                }
+            });
+        } else if (type.equals("list")) {
+            return Futures.transform(this.connection.send("LRANGE", key, 0, -1), new Function<Object, Object>() {
+                @Override
+                public Object apply(Object reply) {
+                    List<String> list = new ArrayList<String>();
+                    for (Object element : elementsOf(reply)) {
+                        list.add(stringOf(element));
+                    }
+                    if (!list.isEmpty()) {
+                        keyspace.putList(key, list);
+                    }
+                    return reply;
+                }
+            });
+        } else if (type.equals("set")) {
+            return Futures.transform(this.connection.send("SMEMBERS", key), new Function<Object, Object>() {
+                @Override
+                public Object apply(Object reply) {
+                    Set<String> set = new LinkedHashSet<String>();
+                    for (Object element : elementsOf(reply)) {
+                        set.add(stringOf(element));
+                    }
+                    if (!set.isEmpty()) {
+                        keyspace.putSet(key, set);
+                    }
+                    return reply;
+                }
+            });
+        } else if (type.equals("zset")) {
+            return Futures.transform(this.connection.send("ZRANGE", key, 0, -1, "WITHSCORES"), new Function<Object, Object>() {
+                @Override
+                public Object apply(Object reply) {
+                    List<Object> pairs = elementsOf(reply);
+                    Map<String, Double> scores = new LinkedHashMap<String, Double>(pairs.size());
+                    for (int index = 0; index < pairs.size(); index += 2) {
+                        scores.put(stringOf(pairs.get(index)), scoreOf(pairs.get(index + 1)));
+                    }
+                    if (!scores.isEmpty()) {
+                        keyspace.putSortedSet(key, scores);
+                    }
+                    return reply;
+                }
+            });
+        }
+        return Futures.immediateFuture(null);
+    }
+
+    /**
+     * Retrieves a snapshot of all the keys that match the given pattern, along
+     * with their values.
+     * @param pattern The (glob-style) pattern of the keys to retrieve.
+     * @return A future that receives the snapshot.
+     */
+    public ListenableFuture<Keyspace> snapshotOf(String pattern) {
+        final Keyspace keyspace = new Keyspace();
+        return Futures.transform(this.connection.send("KEYS", pattern), new AsyncFunction<Object, Keyspace>() {
+            @Override
+            public ListenableFuture<Keyspace> apply(Object reply) {
+                List<ListenableFuture<Object>> fetches = new ArrayList<ListenableFuture<Object>>();
+                for (Object element : elementsOf(reply)) {
+                    final String key = stringOf(element);
+                    fetches.add(Futures.transform(connection.send("TYPE", key), new AsyncFunction<Object, Object>() {
+                        @Override
+                        public ListenableFuture<Object> apply(Object type) {
+                            return fetch(keyspace, key, (String)type);
+                        }
+                    }));
+                }
+                return Futures.transform(Futures.allAsList(fetches), Functions.constant(keyspace));
+            }
+        });
+    }
+
+    /**
+     * Loads the value of the given {@link Redis}-annotated field.
+     * @param field The field whose value to load.
+     * @return A future that receives the value of the field, or that fails with
+     * a {@link ConversionException} if the retrieved value could not be
+     * converted.
+     */
+    public ListenableFuture<Option> loadAsync(final Field field) {
+        final Redis annotation = field.getAnnotation(Redis.class);
+        return Futures.transform(snapshotOf(annotation.value()), new Function<Keyspace, Option>() {
+            @Override
+            public Option apply(Keyspace keyspace) {
+                return RedisLoader.loadFromRedis(keyspace, field, annotation);
+            }
+        }, this.executor);
+    }
+
+    /**
+     * Loads the values of all the given {@link Redis}-annotated fields
+     * concurrently.
+     * @param fields The fields whose values to load.
+     * @return A future that receives the values of the fields, keyed by field
+     * in the order in which the fields were given.
+     */
+    public ListenableFuture<Map<Field, Option>> loadAllAsync(Iterable<? extends Field> fields) {
+        final List<Field> toLoad = Lists.newArrayList(fields);
+        List<ListenableFuture<Option>> loads = new ArrayList<ListenableFuture<Option>>(toLoad.size());
+        for (Field field : toLoad) {
+            loads.add(loadAsync(field));
+        }
+        return Futures.transform(Futures.allAsList(loads), new Function<List<Option>, Map<Field, Option>>() {
+            @Override
+            public Map<Field, Option> apply(List<Option> values) {
+                Map<Field, Option> loaded = new LinkedHashMap<Field, Option>(toLoad.size());
+                for (int index = 0; index < toLoad.size(); index++) {
+                    loaded.put(toLoad.get(index), values.get(index));
+                }
+                return loaded;
+            }
+        });
+    }
+
+    /**
+     * Loads the values of all the {@link Redis}-annotated fields that are
+     * declared by the given classes concurrently, so that a cache can be
+     * warmed up before any instances of the classes are injected.
+     * @param types The classes whose fields to load.
+     * @return A future that receives the values of the fields.
+     */
+    public ListenableFuture<Map<Field, Option>> prefetch(Class<?>... types) {
+        List<Field> fields = new ArrayList<Field>();
+        for (Class<?> type : types) {
+            for (Field field : type.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Redis.class)) {
+                    fields.add(field);
+                }
+            }
+        }
+        return loadAllAsync(fields);
+    }
+
+    private static <V> V valueOf(Future<V> future, int timeout) throws Exception {
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException exception) {
+            future.cancel(false);
+            throw new JedisConnectionException("Timed out waiting for field value.", exception);
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception)cause;
+            }
+            throw exception;
+        }
+    }
+
+    @Override
+    public Option load(Field field) throws Exception {
+        return valueOf(loadAsync(field), this.timeout);
+    }
+
+    @Override
+    public ListenableFuture<Option> reload(Field field, Option oldValue) {
+        return loadAsync(field);
+    }
+
+    @Override
+    public Map<Field, Option> loadAll(Iterable<? extends Field> fields) throws Exception {
+        return valueOf(loadAllAsync(fields), this.timeout);
+    }
+}
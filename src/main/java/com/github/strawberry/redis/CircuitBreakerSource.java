@@ -0,0 +1,174 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import fj.F;
+
+/**
+ * A {@link RedisSource} that stops sending callbacks to a source that keeps
+ * failing, so that threads fail fast instead of each waiting for a connect
+ * timeout while Redis is down. After the given number of consecutive
+ * connection failures the circuit opens: every callback then fails right away
+ * with a {@link CircuitOpenException} (upon which a {@link RedisLoader} that
+ * keeps {@link StaleValues} serves the value it loaded last for the same
+ * field, if any), while a background
+ * thread probes the source. The circuit closes again once a probe succeeds.
+ * 
+ * <p>
+ * Only connection failures count; error replies (such as those of commands
+ * against keys of the wrong type) and rejections by a {@link LimitedSource}
+ * do not.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class CircuitBreakerSource implements RedisSource, Closeable {
+
+    /**
+     * The default number of consecutive failures after which the circuit
+     * opens.
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    /**
+     * The default interval in milliseconds between probes of an open circuit.
+     */
+    public static final long DEFAULT_PROBE_INTERVAL = 1000;
+
+    private static final F<RedisCommands, String> PROBE = new F<RedisCommands, String>() {
+        @Override
+        public String f(RedisCommands redis) {
+            return redis.info();
+        }
+    };
+
+    private final RedisSource source;
+    private final int failureThreshold;
+    private final long probeInterval;
+
+    private final ScheduledExecutorService prober;
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private volatile boolean open;
+    private ScheduledFuture<?> probe;
+
+    /**
+     * Initializes a newly created {@code CircuitBreakerSource} that opens
+     * after {@link #DEFAULT_FAILURE_THRESHOLD} consecutive failures and probes
+     * every {@link #DEFAULT_PROBE_INTERVAL} milliseconds.
+     * @param source The source that runs the callbacks.
+     */
+    public CircuitBreakerSource(RedisSource source) {
+        this(source, DEFAULT_FAILURE_THRESHOLD, DEFAULT_PROBE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Initializes a newly created {@code CircuitBreakerSource}.
+     * @param source The source that runs the callbacks.
+     * @param failureThreshold The number of consecutive failures after which
+     * the circuit opens.
+     * @param probeInterval The interval between probes of an open circuit.
+     * @param unit The unit of the probe interval.
+     */
+    public CircuitBreakerSource(RedisSource source, int failureThreshold, long probeInterval, TimeUnit unit) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be at least 1.");
+        }
+        this.source = source;
+        this.failureThreshold = failureThreshold;
+        this.probeInterval = unit.toNanos(probeInterval);
+        this.prober = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("strawberry-circuit-prober").build());
+    }
+
+    /**
+     * Returns whether the circuit is open, that is: whether callbacks are
+     * currently rejected.
+     */
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    @Override
+    public <T> T _do(F<RedisCommands, T> callback) {
+        if (this.open) {
+            throw new CircuitOpenException("Circuit is open after " + this.failureThreshold + " failures.");
+        }
+        try {
+            T result = this.source._do(callback);
+            this.failures.set(0);
+            return result;
+        } catch (SaturatedException exception) {
+            throw exception;
+        } catch (JedisConnectionException exception) {
+            if (this.failures.incrementAndGet() >= this.failureThreshold) {
+                trip();
+            }
+            throw exception;
+        }
+    }
+
+    private synchronized void trip() {
+        if (this.open || this.prober.isShutdown()) {
+            return;
+        }
+        this.open = true;
+        this.probe = this.prober.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                probe();
+            }
+        }, this.probeInterval, this.probeInterval, TimeUnit.NANOSECONDS);
+    }
+
+    private void probe() {
+        try {
+            this.source._do(PROBE);
+        } catch (RuntimeException exception) {
+            // Still down; try again later.
+            return;
+        }
+        synchronized (this) {
+            this.failures.set(0);
+            this.open = false;
+            if (this.probe != null) {
+                this.probe.cancel(false);
+                this.probe = null;
+            }
+        }
+    }
+
+    /**
+     * Stops probing the source.
+     */
+    @Override
+    public void close() {
+        this.prober.shutdownNow();
+    }
+}
@@ -17,6 +17,8 @@
  */
 package com.github.strawberry.redis;
 
+import java.lang.reflect.Type;
+
 /**
  *
  * @author Wiehann Matthysen
@@ -38,4 +40,12 @@ public final class ConversionException extends RuntimeException {
     static ConversionException of(String toConvert, String key, Class<?> type) {
         return new ConversionException(String.format("Cannot convert value: (%s) at key: (%s) to %s.", toConvert, key, type));
     }
+
+    static ConversionException ofType(String redisType, String key, Class<?> type) {
+        return new ConversionException(String.format("Cannot convert %s value at key: (%s) to %s.", redisType, key, type));
+    }
+
+    static ConversionException ofDecoding(Exception cause, String key, Type type) {
+        return new ConversionException(String.format("Cannot decode value at key: (%s) to %s.", key, type), cause);
+    }
 }
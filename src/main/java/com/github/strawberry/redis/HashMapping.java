@@ -0,0 +1,188 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Describes how the fields of a Redis hash map onto the properties of an
+ * ordinary Java class. Every non-static, non-transient field of the class (and
+ * its super-classes) that has a scalar type (see
+ * {@link RedisLoader#isScalar(Class)}) is treated as a property, and the name
+ * of the field serves as the name of the hash-field to read. A property is
+ * written through its public setter if one exists, otherwise directly through
+ * its field.
+ * 
+ * <p>
+ * Mappings are resolved once per class and cached, so that the reflective
+ * lookups of constructors, setters and fields stay off the load path.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+final class HashMapping {
+
+    private static final ConcurrentMap<Class<?>, HashMapping> MAPPINGS = Maps.newConcurrentMap();
+
+    private final Constructor<?> constructor;
+    private final String[] hashFields;
+    private final Class<?>[] types;
+    private final Method[] setters;
+    private final Field[] fields;
+
+    private HashMapping(Constructor<?> constructor, List<Field> properties) {
+        this.constructor = constructor;
+        int size = properties.size();
+        this.hashFields = new String[size];
+        this.types = new Class<?>[size];
+        this.setters = new Method[size];
+        this.fields = new Field[size];
+        for (int index = 0; index < size; index++) {
+            Field property = properties.get(index);
+            this.hashFields[index] = property.getName();
+            this.types[index] = property.getType();
+            this.setters[index] = setterOf(property);
+            if (this.setters[index] == null) {
+                property.setAccessible(true);
+                this.fields[index] = property;
+            }
+        }
+    }
+
+    /**
+     * Determines whether the given type is an ordinary (concrete) class with a
+     * no-argument constructor and at least one mappable property.
+     */
+    static boolean isMappable(Class<?> type) {
+        if (type.isPrimitive() || type.isArray() || type.isInterface() || type.isEnum() ||
+            Modifier.isAbstract(type.getModifiers()) || type.getName().startsWith("java.")) {
+            return false;
+        }
+        if (type.isMemberClass() && !Modifier.isStatic(type.getModifiers())) {
+            return false;
+        }
+        return MAPPINGS.containsKey(type) || (constructorOf(type) != null && !propertiesOf(type).isEmpty());
+    }
+
+    /**
+     * Returns the (cached) mapping for the given class.
+     * @throws IllegalArgumentException if the class is not mappable.
+     */
+    static HashMapping of(Class<?> type) {
+        HashMapping mapping = MAPPINGS.get(type);
+        if (mapping == null) {
+            Constructor<?> constructor = constructorOf(type);
+            if (constructor == null) {
+                throw new IllegalArgumentException(String.format("%s does not declare a no-argument constructor.", type));
+            }
+            MAPPINGS.putIfAbsent(type, new HashMapping(constructor, propertiesOf(type)));
+            mapping = MAPPINGS.get(type);
+        }
+        return mapping;
+    }
+
+    private static Constructor<?> constructorOf(Class<?> type) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (NoSuchMethodException exception) {
+            return null;
+        }
+    }
+
+    private static List<Field> propertiesOf(Class<?> type) {
+        List<Field> properties = Lists.newArrayList();
+        for (Class<?> current = type; current != null && !current.equals(Object.class); current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) &&
+                    !field.isSynthetic() && RedisLoader.isScalar(field.getType())) {
+                    properties.add(field);
+                }
+            }
+        }
+        return properties;
+    }
+
+    private static Method setterOf(Field property) {
+        String name = property.getName();
+        String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        try {
+            Method setter = property.getDeclaringClass().getMethod(setterName, property.getType());
+            return Modifier.isStatic(setter.getModifiers()) ? null : setter;
+        } catch (NoSuchMethodException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The names of the hash-fields to retrieve, in property order.
+     */
+    String[] hashFields() {
+        return this.hashFields.clone();
+    }
+
+    /**
+     * @return The type of the property at the given index.
+     */
+    Class<?> typeOf(int index) {
+        return this.types[index];
+    }
+
+    /**
+     * @return A newly created instance of the mapped class.
+     */
+    Object newInstance() {
+        try {
+            return this.constructor.newInstance();
+        } catch (InstantiationException exception) {
+            throw new RuntimeException(exception);
+        } catch (IllegalAccessException exception) {
+            throw new RuntimeException(exception);
+        } catch (InvocationTargetException exception) {
+            throw new RuntimeException(exception.getCause());
+        }
+    }
+
+    /**
+     * Sets the property at the given index on the given object.
+     */
+    void set(Object object, int index, Object value) {
+        try {
+            if (this.setters[index] != null) {
+                this.setters[index].invoke(object, value);
+            } else {
+                this.fields[index].set(object, value);
+            }
+        } catch (IllegalAccessException exception) {
+            throw new RuntimeException(exception);
+        } catch (InvocationTargetException exception) {
+            throw new RuntimeException(exception.getCause());
+        }
+    }
+}
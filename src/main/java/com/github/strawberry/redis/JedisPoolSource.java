@@ -0,0 +1,199 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.strawberry.client.Replies;
+import com.github.strawberry.util.JedisUtil.LinkedCallbackBuilder;
+import com.github.strawberry.util.ThreadAffinePool;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+import static com.github.strawberry.util.JedisUtil.using;
+
+/**
+ * A {@link RedisSource} that borrows a dedicated connection from a
+ * {@link JedisPool} for the duration of every callback (see
+ * {@link com.github.strawberry.util.JedisUtil#using(JedisPool)}), or that uses
+ * the connection pinned to the calling thread by a {@link ThreadAffinePool}.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class JedisPoolSource implements RedisSource {
+
+    private final LinkedCallbackBuilder connections;
+
+    public JedisPoolSource(JedisPool pool) {
+        this.connections = using(pool);
+    }
+
+    public JedisPoolSource(ThreadAffinePool pool) {
+        this.connections = using(pool);
+    }
+
+    @Override
+    public <T> T _do(final F<RedisCommands, T> callback) {
+        return this.connections._do(new F<Jedis, T>() {
+            @Override
+            public T f(Jedis jedis) {
+                return callback.f(commandsOf(jedis));
+            }
+        });
+    }
+
+    /**
+     * Sends the command that retrieves the value of the given type at the
+     * given key in its entirety (see {@link Replies#fetchOf(String, String)})
+     * without waiting for its reply.
+     * @return False if values of the type cannot be retrieved.
+     */
+    private static boolean sendFetch(Client client, String type, byte[] key) {
+        if (type.equals("string")) {
+            client.get(key);
+        } else if (type.equals("hash")) {
+            client.hgetAll(key);
+        } else if (type.equals("list")) {
+            client.lrange(key, 0, -1);
+        } else if (type.equals("set")) {
+            client.smembers(key);
+        } else if (type.equals("zset")) {
+            client.zrange(key, 0, -1);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the values at the given keys over the given connection in two
+     * pipelined rounds: one for the types of the keys, and one for their
+     * values.
+     */
+    private static List<Object> valuesOf(Jedis jedis, List<String> keys) {
+        Client client = jedis.getClient();
+        for (String key : keys) {
+            client.type(SafeEncoder.encode(key));
+        }
+        List<Object> typeReplies = client.getAll();
+        List<String> types = new ArrayList<String>(keys.size());
+        for (int index = 0; index < keys.size(); index++) {
+            String type = Replies.typeOf(typeReplies.get(index));
+            types.add(sendFetch(client, type, SafeEncoder.encode(keys.get(index))) ? type : null);
+        }
+        List<Object> replies = client.getAll();
+        List<Object> values = new ArrayList<Object>(keys.size());
+        int reply = 0;
+        for (String type : types) {
+            values.add(type == null ? null : Replies.valueOf(type, replies.get(reply++)));
+        }
+        return values;
+    }
+
+    /**
+     * Adapts the given Jedis connection to the {@link RedisCommands}
+     * interface.
+     */
+    public static RedisCommands commandsOf(final Jedis jedis) {
+        return new RedisCommands() {
+
+            @Override
+            public Set<String> keys(String pattern) {
+                return jedis.keys(pattern);
+            }
+
+            @Override
+            public String type(String key) {
+                return jedis.type(key);
+            }
+
+            @Override
+            public byte[] get(byte[] key) {
+                return jedis.get(key);
+            }
+
+            @Override
+            public Map<String, String> hgetAll(String key) {
+                return jedis.hgetAll(key);
+            }
+
+            @Override
+            public List<String> hmget(String key, String... fields) {
+                return jedis.hmget(key, fields);
+            }
+
+            @Override
+            public List<String> lrange(String key, long start, long end) {
+                return jedis.lrange(key, start, end);
+            }
+
+            @Override
+            public List<byte[]> lrange(byte[] key, int start, int end) {
+                return jedis.lrange(key, start, end);
+            }
+
+            @Override
+            public Set<String> smembers(String key) {
+                return jedis.smembers(key);
+            }
+
+            @Override
+            public Set<byte[]> smembers(byte[] key) {
+                return jedis.smembers(key);
+            }
+
+            @Override
+            public Set<String> zrange(String key, int start, int end) {
+                return jedis.zrange(key, start, end);
+            }
+
+            @Override
+            public Set<byte[]> zrange(byte[] key, int start, int end) {
+                return jedis.zrange(key, start, end);
+            }
+
+            @Override
+            public Long strlen(byte[] key) {
+                return jedis.strlen(key);
+            }
+
+            @Override
+            public byte[] getrange(byte[] key, int start, int end) {
+                return jedis.substr(key, start, end);
+            }
+
+            @Override
+            public String info() {
+                return jedis.info();
+            }
+
+            @Override
+            public List<Object> valuesOf(List<String> keys) {
+                return JedisPoolSource.valuesOf(jedis, keys);
+            }
+        };
+    }
+}
@@ -0,0 +1,347 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import com.github.strawberry.util.Glob;
+import com.google.common.collect.Maps;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+/**
+ * An in-memory snapshot of (part of) the keyspace of a Redis database. A
+ * {@code Keyspace} answers the same {@link RedisCommands} as a connection to
+ * the database would (with the same semantics for ranges, missing keys and
+ * type mismatches), thus a {@link RedisLoader} can load field values from a
+ * snapshot exactly as it would from the database itself. It is the
+ * {@link RedisSource} of its own commands.
+ * 
+ * <p>
+ * Values are stored as follows: strings as {@code byte[]}, hashes as a
+ * {@code Map<String, String>}, lists as a {@code List<String>}, sets as a
+ * {@code Set<String>} and sorted sets as a {@code Map<String, Double>} of
+ * members to their scores. Stored values are owned by the snapshot and must not
+ * be modified after they have been put; every command returns a copy.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class Keyspace implements RedisCommands, RedisSource {
+
+    private static final String WRONG_TYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+
+    /**
+     * A stored value along with its Redis type.
+     */
+    private static final class Entry {
+
+        private final String type;
+        private final Object value;
+
+        private Entry(String type, Object value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Orders the members of a sorted set by score, and members with equal
+     * scores lexicographically (as Redis does).
+     */
+    private static final Comparator<Map.Entry<String, Double>> BY_SCORE = new Comparator<Map.Entry<String, Double>>() {
+        @Override
+        public int compare(Map.Entry<String, Double> first, Map.Entry<String, Double> second) {
+            int result = first.getValue().compareTo(second.getValue());
+            return result != 0 ? result : first.getKey().compareTo(second.getKey());
+        }
+    };
+
+    private final ConcurrentMap<String, Entry> entries = Maps.newConcurrentMap();
+
+    @Override
+    public <T> T _do(F<RedisCommands, T> callback) {
+        return callback.f(this);
+    }
+
+    public void putString(String key, byte[] value) {
+        this.entries.put(key, new Entry("string", value));
+    }
+
+    public void putHash(String key, Map<String, String> hash) {
+        this.entries.put(key, new Entry("hash", hash));
+    }
+
+    public void putList(String key, List<String> list) {
+        this.entries.put(key, new Entry("list", list));
+    }
+
+    public void putSet(String key, Set<String> set) {
+        this.entries.put(key, new Entry("set", set));
+    }
+
+    public void putSortedSet(String key, Map<String, Double> scores) {
+        this.entries.put(key, new Entry("zset", scores));
+    }
+
+    /**
+     * Returns the value stored at the given key (of one of the classes listed
+     * above), or {@code null} if the key does not exist. The value is owned by
+     * the snapshot and must not be modified; to change it, put a modified
+     * copy instead.
+     */
+    public Object valueAt(String key) {
+        Entry entry = this.entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Removes the value at the given key.
+     * @return True if a value was present.
+     */
+    public boolean remove(String key) {
+        return this.entries.remove(key) != null;
+    }
+
+    public void clear() {
+        this.entries.clear();
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Returns the value at the given key if it is of the given type, or
+     * {@code null} if the key does not exist.
+     * @throws JedisDataException if the key holds a value of another type.
+     */
+    private Object valueOf(String key, String type) {
+        Entry entry = this.entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.type.equals(type)) {
+            throw new JedisDataException(WRONG_TYPE);
+        }
+        return entry.value;
+    }
+
+    private static String keyOf(byte[] key) {
+        return SafeEncoder.encode(key);
+    }
+
+    /**
+     * Converts a (possibly negative) Redis range into the bounds
+     * {@code [from, to)} over a sequence of the given length.
+     */
+    private static int[] boundsOf(long start, long end, int length) {
+        if (start < 0) {
+            start = Math.max(length + start, 0);
+        }
+        if (end < 0) {
+            end = length + end;
+        }
+        end = Math.min(end, length - 1);
+        if (start > end || start >= length) {
+            return new int[]{0, 0};
+        }
+        return new int[]{(int)start, (int)end + 1};
+    }
+
+    private static List<String> rangeOf(List<String> members, long start, long end) {
+        int[] bounds = boundsOf(start, end, members.size());
+        return new ArrayList<String>(members.subList(bounds[0], bounds[1]));
+    }
+
+    private static List<byte[]> bytesOf(Iterable<String> members) {
+        List<byte[]> bytes = new ArrayList<byte[]>();
+        for (String member : members) {
+            bytes.add(SafeEncoder.encode(member));
+        }
+        return bytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> sortedMembersOf(String key) {
+        Map<String, Double> scores = (Map<String, Double>)valueOf(key, "zset");
+        if (scores == null) {
+            return Collections.emptyList();
+        }
+        List<Map.Entry<String, Double>> sorted = new ArrayList<Map.Entry<String, Double>>(scores.entrySet());
+        Collections.sort(sorted, BY_SCORE);
+        List<String> members = new ArrayList<String>(sorted.size());
+        for (Map.Entry<String, Double> entry : sorted) {
+            members.add(entry.getKey());
+        }
+        return members;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> listOf(String key) {
+        List<String> list = (List<String>)valueOf(key, "list");
+        return list == null ? Collections.<String>emptyList() : list;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> setOf(String key) {
+        Set<String> set = (Set<String>)valueOf(key, "set");
+        return set == null ? Collections.<String>emptySet() : set;
+    }
+
+    @Override
+    public Set<String> keys(String pattern) {
+        Set<String> keys = new HashSet<String>();
+        if (Glob.isLiteral(pattern)) {
+            if (this.entries.containsKey(pattern)) {
+                keys.add(pattern);
+            }
+        } else {
+            for (String key : this.entries.keySet()) {
+                if (Glob.matches(pattern, key)) {
+                    keys.add(key);
+                }
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public String type(String key) {
+        Entry entry = this.entries.get(key);
+        return entry == null ? "none" : entry.type;
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        byte[] value = (byte[])valueOf(keyOf(key), "string");
+        return value == null ? null : value.clone();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, String> hgetAll(String key) {
+        Map<String, String> hash = (Map<String, String>)valueOf(key, "hash");
+        return hash == null ? new LinkedHashMap<String, String>() : new LinkedHashMap<String, String>(hash);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> hmget(String key, String... fields) {
+        Map<String, String> hash = (Map<String, String>)valueOf(key, "hash");
+        List<String> values = new ArrayList<String>(fields.length);
+        for (String field : fields) {
+            values.add(hash == null ? null : hash.get(field));
+        }
+        return values;
+    }
+
+    @Override
+    public List<String> lrange(String key, long start, long end) {
+        return rangeOf(listOf(key), start, end);
+    }
+
+    @Override
+    public List<byte[]> lrange(byte[] key, int start, int end) {
+        return bytesOf(rangeOf(listOf(keyOf(key)), start, end));
+    }
+
+    @Override
+    public Set<String> smembers(String key) {
+        return new LinkedHashSet<String>(setOf(key));
+    }
+
+    @Override
+    public Set<byte[]> smembers(byte[] key) {
+        return new LinkedHashSet<byte[]>(bytesOf(setOf(keyOf(key))));
+    }
+
+    @Override
+    public Set<String> zrange(String key, int start, int end) {
+        return new LinkedHashSet<String>(rangeOf(sortedMembersOf(key), start, end));
+    }
+
+    @Override
+    public Set<byte[]> zrange(byte[] key, int start, int end) {
+        return new LinkedHashSet<byte[]>(bytesOf(rangeOf(sortedMembersOf(keyOf(key)), start, end)));
+    }
+
+    @Override
+    public Long strlen(byte[] key) {
+        byte[] value = (byte[])valueOf(keyOf(key), "string");
+        return value == null ? 0L : (long)value.length;
+    }
+
+    @Override
+    public byte[] getrange(byte[] key, int start, int end) {
+        byte[] value = (byte[])valueOf(keyOf(key), "string");
+        if (value == null) {
+            return new byte[]{};
+        }
+        int[] bounds = boundsOf(start, end, value.length);
+        byte[] range = new byte[bounds[1] - bounds[0]];
+        System.arraycopy(value, bounds[0], range, 0, range.length);
+        return range;
+    }
+
+    /**
+     * A snapshot is not replicated, and thus reports itself as a master.
+     */
+    @Override
+    public String info() {
+        return "# Replication\r\nrole:master\r\n";
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Object> valuesOf(List<String> keys) {
+        List<Object> values = new ArrayList<Object>(keys.size());
+        for (String key : keys) {
+            Entry entry = this.entries.get(key);
+            Object value = null;
+            if (entry == null) {
+                value = null;
+            } else if (entry.type.equals("string")) {
+                value = ((byte[])entry.value).clone();
+            } else if (entry.type.equals("hash")) {
+                value = new HashMap<String, String>((Map<String, String>)entry.value);
+            } else if (entry.type.equals("list")) {
+                value = new ArrayList<String>((List<String>)entry.value);
+            } else if (entry.type.equals("set")) {
+                value = new HashSet<String>((Set<String>)entry.value);
+            } else {
+                value = new LinkedHashSet<String>(sortedMembersOf(key));
+            }
+            values.add(value);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.util.concurrent.TimeUnit;
+
+import com.github.strawberry.util.AdaptiveLimit;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import fj.F;
+
+/**
+ * A {@link RedisSource} that bounds the number of callbacks that run at once
+ * by an {@link AdaptiveLimit}, so that a burst of loads (such as an injection
+ * storm during a deploy) cannot exhaust the connections of the underlying
+ * source or push up the latency of Redis for every other client. A callback
+ * that is not admitted within a short wait fails with a
+ * {@link SaturatedException}, upon which a {@link RedisLoader} that keeps
+ * {@link StaleValues} serves the value it loaded last for the same field (if
+ * any) instead.
+ * 
+ * <b>Note</b>: the partitions of a parallel fetch (see
+ * {@link RedisLoader#RedisLoader(RedisSource, java.util.concurrent.ExecutorService, int)})
+ * are callbacks of their own, thus the minimum limit should allow for them.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class LimitedSource implements RedisSource {
+
+    /**
+     * The default time in milliseconds a callback waits to be admitted.
+     */
+    public static final long DEFAULT_MAX_WAIT = 50;
+
+    private final RedisSource source;
+    private final AdaptiveLimit limit;
+    private final long maxWait;
+
+    /**
+     * Initializes a newly created {@code LimitedSource} with a limit between
+     * the given bounds, that lets callbacks wait up to
+     * {@link #DEFAULT_MAX_WAIT} milliseconds.
+     * @param source The source that runs the callbacks.
+     * @param minLimit The limit below which the limit never shrinks.
+     * @param maxLimit The limit above which the limit never grows (typically
+     * the number of connections of the source).
+     */
+    public LimitedSource(RedisSource source, int minLimit, int maxLimit) {
+        this(source, new AdaptiveLimit(minLimit, minLimit, maxLimit), DEFAULT_MAX_WAIT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Initializes a newly created {@code LimitedSource}.
+     * @param source The source that runs the callbacks.
+     * @param limit The limit on the number of callbacks that run at once.
+     * @param maxWait The maximum time a callback waits to be admitted.
+     * @param unit The unit of the maximum wait.
+     */
+    public LimitedSource(RedisSource source, AdaptiveLimit limit, long maxWait, TimeUnit unit) {
+        this.source = source;
+        this.limit = limit;
+        this.maxWait = unit.toNanos(maxWait);
+    }
+
+    /**
+     * Returns the limit on the number of callbacks that run at once.
+     */
+    public AdaptiveLimit limit() {
+        return this.limit;
+    }
+
+    @Override
+    public <T> T _do(F<RedisCommands, T> callback) {
+        try {
+            if (!this.limit.acquire(this.maxWait, TimeUnit.NANOSECONDS)) {
+                throw new SaturatedException("Too many loads in flight (limit " + this.limit.limit() + ").");
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new JedisConnectionException(exception);
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            return this.source._do(callback);
+        } catch (JedisConnectionException exception) {
+            failed = true;
+            throw exception;
+        } finally {
+            this.limit.release(System.nanoTime() - start, failed);
+        }
+    }
+}
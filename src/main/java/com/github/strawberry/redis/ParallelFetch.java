@@ -0,0 +1,152 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import fj.F;
+
+/**
+ * Retrieves the values of the (many) keys that match the pattern of an
+ * aggregate field. Large sets of keys are split into contiguous partitions
+ * that are retrieved concurrently, every partition over a connection of its
+ * own on the given {@link ExecutorService}. The calling thread holds no
+ * connection while it waits for the partitions, thus concurrent loads never
+ * hold on to one connection while waiting for more (which would deadlock on a
+ * bounded pool of connections). Every partition also converts its own values,
+ * and the partitions are merged in the order of their keys, thus the result
+ * does not depend on the order in which partitions complete.
+ * 
+ * @author Wiehann Matthysen
+ */
+final class ParallelFetch {
+
+    /**
+     * The smallest number of keys worth retrieving as a separate partition.
+     */
+    static final int MIN_PARTITION_SIZE = 1024;
+
+    /**
+     * Retrieves all values over the connection of the calling thread.
+     */
+    static final ParallelFetch SEQUENTIAL = new ParallelFetch(null, 1);
+
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    ParallelFetch(ExecutorService executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the executor on which partitions are fetched, or {@code null} if
+     * all values are retrieved over the connection of the calling thread.
+     */
+    ExecutorService executor() {
+        return this.executor;
+    }
+
+    /**
+     * Retrieves and converts the values of the given keys (see
+     * {@link RedisCommands#valuesOf(List)}) over the given connection.
+     * @param redis The connection to retrieve the values over.
+     * @param keys The keys whose values to retrieve.
+     * @return The values, in the order of the given keys.
+     */
+    static List<Object> valuesOf(RedisCommands redis, List<String> keys) {
+        List<Object> values = redis.valuesOf(keys);
+        for (int index = 0; index < values.size(); index++) {
+            values.set(index, RedisLoader.nestedValueOf(keys.get(index), values.get(index)));
+        }
+        return values;
+    }
+
+    private int partitionsOf(int keys) {
+        if (this.executor == null) {
+            return 1;
+        }
+        return Math.min(this.parallelism, (keys + MIN_PARTITION_SIZE - 1) / MIN_PARTITION_SIZE);
+    }
+
+    /**
+     * Returns whether the values of the given number of keys are retrieved in
+     * more than one partition, in which case they should be retrieved by
+     * {@link #valuesOf(RedisSource, List)} once the connection of the calling
+     * thread has been released.
+     */
+    boolean isPartitioned(int keys) {
+        return partitionsOf(keys) > 1;
+    }
+
+    /**
+     * Retrieves and converts the values of the given keys in partitions, each
+     * over a connection of its own from the given source.
+     * @param source The source of connections for the partitions.
+     * @param keys The keys whose values to retrieve.
+     * @return The values, in the order of the given keys.
+     */
+    List<Object> valuesOf(final RedisSource source, List<String> keys) {
+        int partitions = partitionsOf(keys.size());
+        int size = (keys.size() + partitions - 1) / partitions;
+        List<Future<List<Object>>> fetches = new ArrayList<Future<List<Object>>>(partitions);
+        boolean completed = false;
+        try {
+            for (int start = 0; start < keys.size(); start += size) {
+                final List<String> partition = keys.subList(start, Math.min(start + size, keys.size()));
+                fetches.add(this.executor.submit(new Callable<List<Object>>() {
+                    @Override
+                    public List<Object> call() {
+                        return source._do(new F<RedisCommands, List<Object>>() {
+                            @Override
+                            public List<Object> f(RedisCommands redis) {
+                                return valuesOf(redis, partition);
+                            }
+                        });
+                    }
+                }));
+            }
+            List<Object> values = new ArrayList<Object>(keys.size());
+            for (Future<List<Object>> fetch : fetches) {
+                values.addAll(fetch.get());
+            }
+            completed = true;
+            return values;
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(exception);
+        } finally {
+            if (!completed) {
+                for (Future<List<Object>> fetch : fetches) {
+                    fetch.cancel(true);
+                }
+            }
+        }
+    }
+}
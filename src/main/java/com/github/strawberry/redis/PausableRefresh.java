@@ -0,0 +1,36 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+/**
+ * Implemented by a {@link RedisSource} that knows when refreshing cached
+ * values is pointless, such as while the master it sends commands to is
+ * failing over (see {@link com.github.strawberry.sentinel.SentinelSource}).
+ * While refreshes are paused, a {@link RedisLoader} keeps cached values as
+ * they are instead of reloading them.
+ * 
+ * @author Wiehann Matthysen
+ */
+public interface PausableRefresh {
+
+    /**
+     * Returns whether cached values should currently be kept rather than
+     * reloaded.
+     */
+    public boolean isRefreshPaused();
+}
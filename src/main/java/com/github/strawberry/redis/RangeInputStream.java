@@ -0,0 +1,115 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.io.InputStream;
+
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+/**
+ * An {@link InputStream} over the string value at a key in a Redis database
+ * that retrieves the value in fixed-size chunks (using GETRANGE) as it is
+ * read, so that the value never has to be held in memory in its entirety. A
+ * connection is only used for the duration of each chunk's
+ * retrieval.
+ * 
+ * <p>
+ * <b>Note</b>: chunks are retrieved independently, thus a value that is
+ * modified while it is being read may yield a mixture of old and new bytes.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+final class RangeInputStream extends InputStream {
+
+    private static final byte[] EMPTY = new byte[]{};
+
+    private final RedisSource source;
+    private final byte[] key;
+    private final int chunkSize;
+
+    private long length = -1;
+    private long position;
+    private byte[] chunk = EMPTY;
+    private int offset;
+
+    RangeInputStream(RedisSource source, String key, int chunkSize) {
+        this.source = source;
+        this.key = SafeEncoder.encode(key);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Retrieves the next chunk of the value.
+     * @return False if the end of the value has been reached.
+     */
+    private boolean fill() {
+        if (this.offset < this.chunk.length) {
+            return true;
+        }
+        if (this.length < 0) {
+            this.length = this.source._do(new F<RedisCommands, Long>() {
+                @Override
+                public Long f(RedisCommands redis) {
+                    return redis.strlen(key);
+                }
+            });
+        }
+        if (this.position >= this.length) {
+            return false;
+        }
+        final int start = (int)this.position;
+        final int end = (int)Math.min(this.position + this.chunkSize, this.length) - 1;
+        this.chunk = this.source._do(new F<RedisCommands, byte[]>() {
+            @Override
+            public byte[] f(RedisCommands redis) {
+                return redis.getrange(key, start, end);
+            }
+        });
+        this.offset = 0;
+        this.position += this.chunk.length;
+        // An empty chunk means that the value has shrunk in the meantime.
+        return this.chunk.length > 0;
+    }
+
+    @Override
+    public int read() {
+        return fill() ? this.chunk[this.offset++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int read = Math.min(length, this.chunk.length - this.offset);
+        System.arraycopy(this.chunk, this.offset, bytes, offset, read);
+        this.offset += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return this.chunk.length - this.offset;
+    }
+}
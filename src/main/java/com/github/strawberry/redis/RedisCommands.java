@@ -0,0 +1,83 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The set of Redis commands that a {@link RedisLoader} issues while loading
+ * field values. The signatures deliberately mirror those of
+ * {@link redis.clients.jedis.Jedis}, so that a Jedis connection can be adapted
+ * to this interface as is, while alternative transports (see
+ * {@link RedisSource}) only need to provide the handful of commands that are
+ * actually used.
+ * 
+ * <p>
+ * Implementations signal errors in the same way as Jedis does: a failure of
+ * the connection itself raises a
+ * {@link redis.clients.jedis.exceptions.JedisConnectionException}, and an error
+ * reply from the Redis server raises a
+ * {@link redis.clients.jedis.exceptions.JedisDataException}.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public interface RedisCommands {
+
+    public Set<String> keys(String pattern);
+
+    public String type(String key);
+
+    public byte[] get(byte[] key);
+
+    public Map<String, String> hgetAll(String key);
+
+    public List<String> hmget(String key, String... fields);
+
+    public List<String> lrange(String key, long start, long end);
+
+    public List<byte[]> lrange(byte[] key, int start, int end);
+
+    public Set<String> smembers(String key);
+
+    public Set<byte[]> smembers(byte[] key);
+
+    public Set<String> zrange(String key, int start, int end);
+
+    public Set<byte[]> zrange(byte[] key, int start, int end);
+
+    public Long strlen(byte[] key);
+
+    public byte[] getrange(byte[] key, int start, int end);
+
+    public String info();
+
+    /**
+     * Retrieves the values at the given keys in their entirety, pipelining the
+     * commands instead of waiting for the reply to every command in turn. A
+     * string is retrieved as its raw {@code byte[]}, a hash as a
+     * {@code Map<String, String>}, a list as a {@code List<String>}, and a set
+     * or sorted set (in order) as a {@code Set<String>}.
+     * @param keys The keys whose values to retrieve.
+     * @return The values, in the order of the given keys, with {@code null} in
+     * place of the value of every key that does not exist.
+     */
+    public List<Object> valuesOf(List<String> keys);
+}
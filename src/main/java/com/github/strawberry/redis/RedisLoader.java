@@ -17,35 +17,66 @@
  */
 package com.github.strawberry.redis;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.lang3.ArrayUtils;
 
+import com.github.strawberry.codec.Codec;
+import com.github.strawberry.collect.IntSet;
+import com.github.strawberry.collect.LongList;
+import com.github.strawberry.collect.LongSet;
+import com.github.strawberry.collect.StringDoubleMap;
+import com.github.strawberry.collect.StringLongMap;
 import com.github.strawberry.guice.Redis;
+import com.github.strawberry.util.Compression;
+import com.github.strawberry.util.Numbers;
+import com.github.strawberry.util.SingleFlight;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.InputSupplier;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.Injector;
 
-import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
 
 import fj.F;
 import fj.data.Option;
 
-import static com.github.strawberry.util.JedisUtil.using;
 import static com.github.strawberry.util.Types.BOOLEAN;
 import static com.github.strawberry.util.Types.TRUE;
 import static com.github.strawberry.util.Types.collectionImplementationOf;
 import static com.github.strawberry.util.Types.genericTypeOf;
+import static com.github.strawberry.util.Types.implementationOf;
 import static com.github.strawberry.util.Types.isEqualTo;
 import static com.github.strawberry.util.Types.isAssignableTo;
 import static com.github.strawberry.util.Types.mapImplementationOf;
@@ -67,7 +98,21 @@ public final class RedisLoader extends CacheLoader<Field, Option> {
         STRING, HASH, LIST, SET, ZSET
     }
 
-    private final JedisPool pool;
+    /**
+     * Shared {@link Codec} instances, keyed by their class.
+     */
+    private static final ConcurrentMap<Class<? extends Codec>, Codec> CODECS = Maps.newConcurrentMap();
+
+    /**
+     * The size of the chunks in which large binary values are retrieved.
+     */
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private final RedisSource source;
+    private final ParallelFetch fetch;
+
+    private final SingleFlight<List<Object>, Option> flights = new SingleFlight<List<Object>, Option>();
+    private final StaleValues staleValues;
 
     /**
      * Initializes a newly created {@code RedisLoader} with the given
@@ -76,12 +121,191 @@ public final class RedisLoader extends CacheLoader<Field, Option> {
      * @param pool The pool of connections to a Redis database.
      */
     public RedisLoader(JedisPool pool) {
-        this.pool = pool;
+        this(new JedisPoolSource(pool));
+    }
+
+    /**
+     * Initializes a newly created {@code RedisLoader} with the given
+     * {@link RedisSource} through which all commands are sent to a Redis
+     * database.
+     * @param source The source of commands to a Redis database.
+     */
+    public RedisLoader(RedisSource source) {
+        this(source, null);
+    }
+
+    /**
+     * Initializes a newly created {@code RedisLoader} that serves the value it
+     * loaded last for a field (if any) when a load cannot reach Redis (see
+     * {@link StaleValues}).
+     * @param source The source of commands to a Redis database.
+     * @param staleValues The store of the values that were loaded last.
+     */
+    public RedisLoader(RedisSource source, StaleValues staleValues) {
+        this.source = source;
+        this.fetch = ParallelFetch.SEQUENTIAL;
+        this.staleValues = staleValues;
+    }
+
+    /**
+     * Initializes a newly created {@code RedisLoader} that retrieves the values
+     * of aggregate fields whose patterns match many keys in partitions that
+     * are fetched concurrently, each over a connection of its own, and that
+     * loads the fields of a bulk load (see {@link #loadAll(Iterable)})
+     * concurrently. An executor of virtual threads (see
+     * {@link com.github.strawberry.util.LoaderExecutors}) allows for any
+     * number of such loads at once.
+     * <b>Note</b>: every such load requires up to {@code parallelism}
+     * connections from the source at once. The key-pattern is resolved over a
+     * connection that is released before the partitions are fetched, thus a
+     * load never holds on to a connection while it waits for others.
+     * @param source The source of commands to a Redis database.
+     * @param executor The executor on which partitions are fetched and
+     * converted.
+     * @param parallelism The maximum number of partitions per aggregate.
+     */
+    public RedisLoader(RedisSource source, ExecutorService executor, int parallelism) {
+        this(source, executor, parallelism, null);
+    }
+
+    /**
+     * Initializes a newly created {@code RedisLoader} that fetches large
+     * aggregates in partitions (see
+     * {@link #RedisLoader(RedisSource, ExecutorService, int)}) and that serves
+     * the value it loaded last for a field (if any) when a load cannot reach
+     * Redis (see {@link StaleValues}).
+     * @param source The source of commands to a Redis database.
+     * @param executor The executor on which partitions are fetched and
+     * converted.
+     * @param parallelism The maximum number of partitions per aggregate.
+     * @param staleValues The store of the values that were loaded last.
+     */
+    public RedisLoader(RedisSource source, ExecutorService executor, int parallelism, StaleValues staleValues) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        this.source = source;
+        this.fetch = new ParallelFetch(executor, parallelism);
+        this.staleValues = staleValues;
     }
 
     @Override
     public Option load(Field field) throws Exception {
-        return loadFromRedis(this.pool, field, field.getAnnotation(Redis.class));
+        return loadShared(this.fetch, field);
+    }
+
+    /**
+     * Reloads the value of the given field, unless the source has paused
+     * refreshes (see {@link PausableRefresh}), in which case the cached value
+     * is kept as is until refreshes resume.
+     */
+    @Override
+    public ListenableFuture<Option> reload(Field field, Option oldValue) throws Exception {
+        if (this.source instanceof PausableRefresh && ((PausableRefresh)this.source).isRefreshPaused()) {
+            return Futures.immediateFuture(oldValue);
+        }
+        return super.reload(field, oldValue);
+    }
+
+    /**
+     * Loads the value of the given field, unless the same value (the value of
+     * the same key-pattern, decompressed and converted into the same type) is
+     * already being
+     * loaded by another thread, in which case the value of that load is
+     * shared. This keeps a burst of injections on a cold (or disabled) cache
+     * from loading the same keys many times over, even for different fields.
+     * The threads that share a load receive the very same instance, thus
+     * injected values must be treated as read-only (see {@link Redis}), as
+     * they must be when they are cached.
+     * If the load cannot reach Redis and this loader keeps
+     * {@link StaleValues}, the value that was loaded last is served instead.
+     */
+    private Option loadShared(final ParallelFetch fetch, final Field field) throws Exception {
+        final Redis annotation = field.getAnnotation(Redis.class);
+        List<Object> key = Arrays.<Object>asList(
+            annotation.value(), annotation.allowNull(), annotation.compressed(), annotation.codec(),
+            field.getGenericType());
+        Option value;
+        try {
+            value = this.flights.execute(key, new Callable<Option>() {
+                @Override
+                public Option call() {
+                    return loadFromRedis(RedisLoader.this.source, fetch, field, annotation);
+                }
+            });
+        } catch (JedisConnectionException exception) {
+            // Rather serve a stale value than fail (or add to the overload).
+            Option stale = this.staleValues == null ? null : this.staleValues.get(key);
+            if (stale == null) {
+                throw exception;
+            }
+            return stale;
+        }
+        if (this.staleValues != null) {
+            this.staleValues.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Loads the values of the given fields. If this loader was given an
+     * executor, every field is loaded on the executor concurrently (and
+     * fetched as a single partition, as the fields already keep the executor
+     * busy), otherwise the fields are loaded one after the other.
+     */
+    @Override
+    public Map<Field, Option> loadAll(Iterable<? extends Field> fields) throws Exception {
+        Map<Field, Option> values = Maps.newLinkedHashMap();
+        ExecutorService executor = this.fetch.executor();
+        if (executor == null) {
+            for (Field field : fields) {
+                values.put(field, load(field));
+            }
+            return values;
+        }
+        Map<Field, Future<Option>> loads = Maps.newLinkedHashMap();
+        boolean completed = false;
+        try {
+            for (final Field field : fields) {
+                loads.put(field, executor.submit(new Callable<Option>() {
+                    @Override
+                    public Option call() throws Exception {
+                        return loadShared(ParallelFetch.SEQUENTIAL, field);
+                    }
+                }));
+            }
+            for (Map.Entry<Field, Future<Option>> load : loads.entrySet()) {
+                values.put(load.getKey(), load.getValue().get());
+            }
+            completed = true;
+            return values;
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception)cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            if (!completed) {
+                for (Future<Option> load : loads.values()) {
+                    load.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the value that is loaded for the given field if none of its keys
+     * exist: a default non-null value if {@link Redis#allowNull()} is false,
+     * or else none (leaving the field at its default value).
+     * @param field The field to return the default value of.
+     * @return The default value.
+     */
+    public static Option defaultValueOf(Field field) {
+        if (field.getAnnotation(Redis.class).allowNull()) {
+            return Option.none();
+        }
+        return Option.some(nonNullValueOf(field.getType()));
     }
 
     /**
@@ -107,6 +331,10 @@ public final class RedisLoader extends CacheLoader<Field, Option> {
             value = new byte[]{};
         } else if (type.equals(Byte[].class)) {
             value = new Byte[]{};
+        } else if (type.equals(ByteBuffer.class)) {
+            value = ByteBuffer.allocateDirect(0).asReadOnlyBuffer();
+        } else if (type.equals(InputStream.class)) {
+            value = ByteStreams.newInputStreamSupplier(new byte[]{});
         } else if (type.equals(byte.class) || type.equals(Byte.class)) {
             value = (byte)0;
         } else if (type.equals(boolean.class) || type.equals(Boolean.class)) {
@@ -125,133 +353,596 @@ public final class RedisLoader extends CacheLoader<Field, Option> {
             value = 0.0;
         } else if (type.equals(BigDecimal.class)) {
             value = BigDecimal.ZERO;
+        } else if (type.equals(int[].class)) {
+            value = new int[]{};
+        } else if (type.equals(long[].class)) {
+            value = new long[]{};
+        } else if (type.equals(float[].class)) {
+            value = new float[]{};
+        } else if (type.equals(double[].class)) {
+            value = new double[]{};
         } else if (Map.class.isAssignableFrom(type)) {
             value = mapImplementationOf(type);
         } else if (Collection.class.isAssignableFrom(type)) {
             value = collectionImplementationOf(type);
+        } else if (HashMapping.isMappable(type)) {
+            value = HashMapping.of(type).newInstance();
+        }
+        return value;
+    }
+
+    /**
+     * Retrieves the raw bytes of the string value at the given key. If
+     * {@code compressed} is true, values that were stored in compressed form
+     * (see {@link Compression}) are decompressed, otherwise the bytes are
+     * returned exactly as they are stored.
+     */
+    private static byte[] bytesOf(RedisCommands redis, String key, boolean compressed) {
+        byte[] value = redis.get(SafeEncoder.encode(key));
+        try {
+            return value == null || !compressed ? value : Compression.decompress(value);
+        } catch (IOException exception) {
+            throw ConversionException.ofDecoding(exception, key, byte[].class);
+        }
+    }
+
+    /**
+     * Retrieves the string value at the given key, decompressing it if it was
+     * stored in compressed form (see {@link Compression}).
+     */
+    private static String stringOf(RedisCommands redis, String key) {
+        byte[] value = bytesOf(redis, key, true);
+        return value == null ? null : SafeEncoder.encode(value);
+    }
+
+    /**
+     * Loads the string value at the given key into a direct (off-heap),
+     * read-only {@link ByteBuffer}. The value is retrieved in chunks (using
+     * GETRANGE) that are copied into the buffer as they arrive, thus the value
+     * never has to be held on the heap in its entirety. Only values that are
+     * declared {@code compressed} (see {@link Redis#compressed()}) and that
+     * were stored in compressed form, whose uncompressed size is not known up
+     * front, are inflated on the heap before being copied into the buffer.
+     */
+    private static ByteBuffer byteBufferOf(RedisCommands redis, String key, boolean compressed) {
+        byte[] rawKey = SafeEncoder.encode(key);
+        int length = redis.strlen(rawKey).intValue();
+        byte[] chunk = redis.getrange(rawKey, 0, Math.min(length, CHUNK_SIZE) - 1);
+        ByteBuffer buffer = null;
+        if (compressed && Compression.isCompressed(chunk)) {
+            byte[] value = bytesOf(redis, key, true);
+            buffer = ByteBuffer.allocateDirect(value.length);
+            buffer.put(value);
+        } else {
+            buffer = ByteBuffer.allocateDirect(length);
+            buffer.put(chunk, 0, Math.min(chunk.length, buffer.remaining()));
+            while (buffer.hasRemaining() && chunk.length > 0) {
+                int start = buffer.position();
+                chunk = redis.getrange(rawKey, start, Math.min(start + CHUNK_SIZE, length) - 1);
+                buffer.put(chunk, 0, Math.min(chunk.length, buffer.remaining()));
+            }
+        }
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Creates a supplier of streams over the string value at the given key.
+     * Every stream retrieves the value in chunks as it is read (see
+     * {@link RangeInputStream}) and, if {@code compressed} is true,
+     * decompresses it on the fly if it was stored in compressed form. A
+     * supplier (rather than a stream) is cached, so that every injected field
+     * receives its own, unread stream.
+     */
+    private static InputSupplier<InputStream> inputSupplierOf(final RedisSource source, final String key, final boolean compressed) {
+        return new InputSupplier<InputStream>() {
+            @Override
+            public InputStream getInput() throws IOException {
+                InputStream input = new RangeInputStream(source, key, CHUNK_SIZE);
+                return compressed ? Compression.inputStreamOf(input) : input;
+            }
+        };
+    }
+
+    /**
+     * Converts a value retrieved by {@link RedisCommands#valuesOf(List)} into
+     * the value that is nested in an aggregate field: strings are decompressed
+     * (see {@link Compression}) and decoded, all other values are nested as
+     * retrieved.
+     */
+    static Object nestedValueOf(String key, Object value) {
+        if (value instanceof byte[]) {
+            try {
+                return SafeEncoder.encode(Compression.decompress((byte[])value));
+            } catch (IOException exception) {
+                throw ConversionException.ofDecoding(exception, key, String.class);
+            }
         }
         return value;
     }
 
-    private static Map<?, ?> nestedMapOf(Field field, Jedis jedis, Set<String> redisKeys) {
+    private static Map<?, ?> nestedMapOf(Field field, List<String> redisKeys, List<Object> values) {
         Map map = mapImplementationOf(field.getType());
-        for (String redisKey : redisKeys) {
-            JedisType jedisType = JedisType.valueOf(jedis.type(redisKey).toUpperCase());
-            switch (jedisType) {
-                case STRING: {
-                    map.put(redisKey, jedis.get(redisKey));
-                } break;
-                case HASH: {
-                    map.put(redisKey, jedis.hgetAll(redisKey));
-                } break;
-                case LIST: {
-                    map.put(redisKey, jedis.lrange(redisKey, 0, -1));
-                } break;
-                case SET: {
-                    map.put(redisKey, jedis.smembers(redisKey));
-                } break;
-                case ZSET : {
-                    map.put(redisKey, jedis.zrange(redisKey, 0, -1));
-                } break;
+        if (isPrimitiveMap(map)) {
+            return nestedPrimitiveMapOf(map, field.getType(), redisKeys, values);
+        }
+        for (int index = 0; index < redisKeys.size(); index++) {
+            if (values.get(index) != null) {
+                map.put(redisKeys.get(index), values.get(index));
             }
         }
         return map;
     }
 
-    private static Collection<?> nestedCollectionOf(Field field, Jedis jedis, Set<String> redisKeys) {
+    private static Collection<?> nestedCollectionOf(Field field, List<String> redisKeys, List<Object> values) {
         Collection collection = collectionImplementationOf(field.getType());
-        for (String redisKey : redisKeys) {
-            JedisType jedisType = JedisType.valueOf(jedis.type(redisKey).toUpperCase());
-            switch (jedisType) {
-                case STRING: {
-                    collection.add(jedis.get(redisKey));
-                } break;
-                case HASH: {
-                    collection.add(jedis.hgetAll(redisKey));
-                } break;
-                case LIST: {
-                    collection.add(jedis.lrange(redisKey, 0, -1));
-                } break;
-                case SET: {
-                    collection.add(jedis.smembers(redisKey));
-                } break;
-                case ZSET: {
-                    collection.add(jedis.zrange(redisKey, 0, -1));
-                } break;
+        if (isPrimitiveCollection(collection)) {
+            return nestedPrimitiveCollectionOf(collection, field.getType(), redisKeys, values);
+        }
+        for (Object value : values) {
+            if (value != null) {
+                collection.add(value);
             }
         }
         return collection;
     }
     
-    private static Map<?, ?> mapOf(Field field, Jedis jedis, String key) {
+    /**
+     * Utility method to determine whether the given map is one of the
+     * primitive-specialized maps that store their values unboxed.
+     */
+    private static boolean isPrimitiveMap(Map<?, ?> map) {
+        return map instanceof StringLongMap || map instanceof StringDoubleMap;
+    }
+
+    /**
+     * Loads the string or hash at the given key into the given
+     * primitive-specialized map, parsing each value as it is inserted.
+     */
+    private static Map<?, ?> primitiveMapOf(Map<?, ?> map, Class<?> type, JedisType jedisType, RedisCommands redis, String key) {
+        Map<String, String> entries = null;
+        switch (jedisType) {
+            case STRING: {
+                entries = ImmutableMap.of(key, stringOf(redis, key));
+            } break;
+            case HASH: {
+                entries = redis.hgetAll(key);
+            } break;
+            default: {
+                throw ConversionException.ofType(jedisType.name().toLowerCase(), key, type);
+            }
+        }
+        putParsed(map, type, key, entries);
+        return map;
+    }
+
+    /**
+     * Puts the given entries (of the value at the given key) into the given
+     * primitive-specialized map, parsing each value as it is inserted.
+     */
+    private static void putParsed(Map<?, ?> map, Class<?> type, String key, Map<String, String> entries) {
+        String current = null;
+        try {
+            if (map instanceof StringLongMap) {
+                StringLongMap longMap = (StringLongMap)map;
+                for (Map.Entry<String, String> entry : entries.entrySet()) {
+                    current = entry.getValue();
+                    longMap.putLong(entry.getKey(), Long.parseLong(current));
+                }
+            } else {
+                StringDoubleMap doubleMap = (StringDoubleMap)map;
+                for (Map.Entry<String, String> entry : entries.entrySet()) {
+                    current = entry.getValue();
+                    doubleMap.putDouble(entry.getKey(), Double.parseDouble(current));
+                }
+            }
+        } catch (NumberFormatException exception) {
+            throw ConversionException.of(exception, current, key, type);
+        }
+    }
+
+    /**
+     * Fills the given primitive-specialized map with the values of several
+     * keys (as retrieved by {@link RedisCommands#valuesOf(List)}): the value
+     * of a string is put at its key and the fields of a hash are put as they
+     * are, as they would be for a single key.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<?, ?> nestedPrimitiveMapOf(Map<?, ?> map, Class<?> type, List<String> redisKeys, List<Object> values) {
+        for (int index = 0; index < redisKeys.size(); index++) {
+            String key = redisKeys.get(index);
+            Object value = values.get(index);
+            if (value instanceof String) {
+                putParsed(map, type, key, ImmutableMap.of(key, (String)value));
+            } else if (value instanceof Map) {
+                putParsed(map, type, key, (Map<String, String>)value);
+            } else if (value != null) {
+                throw ConversionException.ofType(redisTypeOf(value), key, type);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Returns the name of the Redis type of the given value, as retrieved by
+     * {@link RedisCommands#valuesOf(List)}.
+     */
+    private static String redisTypeOf(Object value) {
+        if (value instanceof Map) {
+            return "hash";
+        } else if (value instanceof List) {
+            return "list";
+        } else if (value instanceof LinkedHashSet) {
+            return "zset";
+        } else if (value instanceof Set) {
+            return "set";
+        }
+        return "string";
+    }
+
+    private static Map<?, ?> mapOf(Field field, RedisCommands redis, String key) {
         Map map = mapImplementationOf(field.getType());
-        JedisType jedisType = JedisType.valueOf(jedis.type(key).toUpperCase());
+        JedisType jedisType = JedisType.valueOf(redis.type(key).toUpperCase());
+        if (isPrimitiveMap(map)) {
+            return primitiveMapOf(map, field.getType(), jedisType, redis, key);
+        }
         switch (jedisType) {
             case STRING: {
-                map.put(key, jedis.get(key));
+                map.put(key, stringOf(redis, key));
             } break;
             case HASH: {
                 Option<Type> valueType = genericTypeOf(field, 1);
                 if (valueType.exists(isAssignableTo(Map.class)) || valueType.exists(isEqualTo(Object.class))) {
-                    map.put(key, jedis.hgetAll(key));
+                    map.put(key, redis.hgetAll(key));
                 } else {
-                    map.putAll(jedis.hgetAll(key));
+                    map.putAll(redis.hgetAll(key));
                 }
             } break;
             case LIST: {
-                map.put(key, jedis.lrange(key, 0, -1));
+                map.put(key, redis.lrange(key, 0, -1));
             } break;
             case SET: {
-                map.put(key, jedis.smembers(key));
+                map.put(key, redis.smembers(key));
             } break;
             case ZSET: {
-                map.put(key, jedis.zrange(key, 0, -1));
+                map.put(key, redis.zrange(key, 0, -1));
             } break;
         }
         return map;
     }
 
-    private static Collection<?> collectionOf(Field field, Jedis jedis, String key) {
+    /**
+     * Utility method to determine whether the given collection is one of the
+     * primitive-specialized collections that store their members unboxed.
+     */
+    private static boolean isPrimitiveCollection(Collection<?> collection) {
+        return collection instanceof IntSet || collection instanceof LongSet || collection instanceof LongList;
+    }
+
+    /**
+     * Loads the members of the list, set or sorted set at the given key into
+     * the given primitive-specialized collection. The members are retrieved in
+     * their raw binary form and parsed directly into the collection.
+     */
+    private static Collection<?> primitiveCollectionOf(Collection<?> collection, Class<?> type, JedisType jedisType, RedisCommands redis, String key) {
+        addParsed(collection, type, key, rawMembersOf(type, jedisType, redis, key));
+        return collection;
+    }
+
+    /**
+     * Adds the given members (of the value at the given key) to the given
+     * primitive-specialized collection, parsing each member as it is added.
+     */
+    private static void addParsed(Collection<?> collection, Class<?> type, String key, Collection<byte[]> members) {
+        byte[] current = null;
+        try {
+            if (collection instanceof IntSet) {
+                IntSet set = (IntSet)collection;
+                for (byte[] member : members) {
+                    current = member;
+                    set.add(Numbers.parseInt(member));
+                }
+            } else if (collection instanceof LongSet) {
+                LongSet set = (LongSet)collection;
+                for (byte[] member : members) {
+                    current = member;
+                    set.add(Numbers.parseLong(member));
+                }
+            } else {
+                LongList list = (LongList)collection;
+                for (byte[] member : members) {
+                    current = member;
+                    list.add(Numbers.parseLong(member));
+                }
+            }
+        } catch (NumberFormatException exception) {
+            throw ConversionException.of(exception, new String(current), key, type);
+        }
+    }
+
+    /**
+     * Fills the given primitive-specialized collection with the values of
+     * several keys (as retrieved by {@link RedisCommands#valuesOf(List)}): a
+     * string is added as a member, and the members of a list, set or sorted
+     * set are added as they are.
+     */
+    @SuppressWarnings("unchecked")
+    private static Collection<?> nestedPrimitiveCollectionOf(Collection<?> collection, Class<?> type, List<String> redisKeys, List<Object> values) {
+        for (int index = 0; index < redisKeys.size(); index++) {
+            String key = redisKeys.get(index);
+            Object value = values.get(index);
+            if (value == null) {
+                continue;
+            } else if (value instanceof Map) {
+                throw ConversionException.ofType("hash", key, type);
+            }
+            Collection<String> members = value instanceof String
+                ? Collections.singletonList((String)value) : (Collection<String>)value;
+            List<byte[]> rawMembers = new ArrayList<byte[]>(members.size());
+            for (String member : members) {
+                rawMembers.add(SafeEncoder.encode(member));
+            }
+            addParsed(collection, type, key, rawMembers);
+        }
+        return collection;
+    }
+
+    private static Collection<?> collectionOf(Field field, RedisCommands redis, String key) {
         Collection collection = collectionImplementationOf(field.getType());
-        JedisType jedisType = JedisType.valueOf(jedis.type(key).toUpperCase());
+        JedisType jedisType = JedisType.valueOf(redis.type(key).toUpperCase());
+        if (isPrimitiveCollection(collection)) {
+            return primitiveCollectionOf(collection, field.getType(), jedisType, redis, key);
+        }
         Option<Type> genericType = genericTypeOf(field, 0);
         switch (jedisType) {
             case STRING: {
-                collection.add(jedis.get(key));
+                collection.add(stringOf(redis, key));
             } break;
             case HASH: {
-                collection.add(jedis.hgetAll(key));
+                collection.add(redis.hgetAll(key));
             } break;
             case LIST: {
                 if (genericType.exists(isAssignableTo(Collection.class)) || genericType.exists(isEqualTo(Object.class))) {
-                    collection.add(jedis.lrange(key, 0, -1));
+                    collection.add(redis.lrange(key, 0, -1));
                 } else {
-                    collection.addAll(jedis.lrange(key, 0, -1));
+                    collection.addAll(redis.lrange(key, 0, -1));
                 }
             } break;
             case SET: {
                 if (genericType.exists(isAssignableTo(Collection.class)) || genericType.exists(isEqualTo(Object.class))) {
-                    collection.add(jedis.smembers(key));
+                    collection.add(redis.smembers(key));
                 } else {
-                    collection.addAll(jedis.smembers(key));
+                    collection.addAll(redis.smembers(key));
                 }
             } break;
             case ZSET: {
                 if (genericType.exists(isAssignableTo(Collection.class)) || genericType.exists(isEqualTo(Object.class))) {
-                    collection.add(jedis.zrange(key, 0, -1));
+                    collection.add(redis.zrange(key, 0, -1));
                 } else {
-                    collection.addAll(jedis.zrange(key, 0, -1));
+                    collection.addAll(redis.zrange(key, 0, -1));
                 }
             } break;
         }
         return collection;
     }
 
-    private static Option loadFromRedis(JedisPool pool, final Field field, final Redis annotation) {
-        return using(pool)._do(new F<Jedis, Option>() {
+    /**
+     * Utility method to determine whether the given type is one of the
+     * supported primitive numeric array types, namely: {@code int[]},
+     * {@code long[]}, {@code float[]} and {@code double[]}.
+     */
+    private static boolean isPrimitiveArray(Class<?> type) {
+        return type.equals(int[].class) || type.equals(long[].class) ||
+            type.equals(float[].class) || type.equals(double[].class);
+    }
+
+    /**
+     * Retrieves the members of the list, set or sorted set at the given key in
+     * their raw binary form, to be parsed into a primitive container of the
+     * given type.
+     */
+    private static Collection<byte[]> rawMembersOf(Class<?> type, JedisType jedisType, RedisCommands redis, String key) {
+        byte[] rawKey = key.getBytes();
+        switch (jedisType) {
+            case LIST: {
+                return redis.lrange(rawKey, 0, -1);
+            }
+            case SET: {
+                return redis.smembers(rawKey);
+            }
+            case ZSET: {
+                return redis.zrange(rawKey, 0, -1);
+            }
+            default: {
+                throw ConversionException.ofType(jedisType.name().toLowerCase(), key, type);
+            }
+        }
+    }
+
+    /**
+     * Loads the members of the list, set or sorted set at the given key into a
+     * single densely packed primitive array of the given type. The members are
+     * retrieved in their raw binary form and parsed directly into the array,
+     * without creating any intermediate (boxed) collection of values.
+     */
+    private static Object primitiveArrayOf(Class<?> type, RedisCommands redis, String key) {
+        JedisType jedisType = JedisType.valueOf(redis.type(key).toUpperCase());
+        Collection<byte[]> members = rawMembersOf(type, jedisType, redis, key);
+        int index = 0;
+        byte[] current = null;
+        try {
+            if (type.equals(int[].class)) {
+                int[] array = new int[members.size()];
+                for (byte[] member : members) {
+                    current = member;
+                    array[index++] = Numbers.parseInt(member);
+                }
+                return array;
+            } else if (type.equals(long[].class)) {
+                long[] array = new long[members.size()];
+                for (byte[] member : members) {
+                    current = member;
+                    array[index++] = Numbers.parseLong(member);
+                }
+                return array;
+            } else if (type.equals(float[].class)) {
+                float[] array = new float[members.size()];
+                for (byte[] member : members) {
+                    current = member;
+                    array[index++] = Numbers.parseFloat(member);
+                }
+                return array;
+            } else {
+                double[] array = new double[members.size()];
+                for (byte[] member : members) {
+                    current = member;
+                    array[index++] = Numbers.parseDouble(member);
+                }
+                return array;
+            }
+        } catch (NumberFormatException exception) {
+            throw ConversionException.of(exception, new String(current), key, type);
+        }
+    }
+
+    /**
+     * Utility method to determine whether the given type is one of the
+     * supported scalar types that can be converted from a single string value
+     * (see {@link #scalarOf(String, String, Class)}).
+     */
+    static boolean isScalar(Class<?> type) {
+        return type.equals(String.class) ||
+            type.equals(char.class) || type.equals(Character.class) ||
+            type.equals(boolean.class) || type.equals(Boolean.class) ||
+            type.equals(byte.class) || type.equals(Byte.class) ||
+            type.equals(short.class) || type.equals(Short.class) ||
+            type.equals(int.class) || type.equals(Integer.class) ||
+            type.equals(long.class) || type.equals(Long.class) ||
+            type.equals(BigInteger.class) ||
+            type.equals(float.class) || type.equals(Float.class) ||
+            type.equals(double.class) || type.equals(Double.class) ||
+            type.equals(BigDecimal.class);
+    }
+
+    /**
+     * Converts the given string value (retrieved from the given key) into an
+     * instance of the given scalar type.
+     * @throws ConversionException if the value cannot be converted.
+     */
+    static Object scalarOf(String toConvert, String key, Class<?> type) {
+        Object value = null;
+        if (type.equals(String.class)) {
+            value = toConvert;
+        } else if (type.equals(char.class) || type.equals(Character.class)) {
+            if (toConvert.length() == 1) {
+                value = toConvert.charAt(0);
+            } else {
+                throw ConversionException.of(toConvert, key, type);
+            }
+        } else if (type.equals(boolean.class) || type.equals(Boolean.class)) {
+            if (BOOLEAN.matcher(toConvert).matches()) {
+                value = TRUE.matcher(toConvert).matches();
+            } else {
+                throw ConversionException.of(toConvert, key, type);
+            }
+        } else {
+            try {
+                if (type.equals(byte.class) || type.equals(Byte.class)) {
+                    value = Byte.parseByte(toConvert);
+                } else if (type.equals(short.class) || type.equals(Short.class)) {
+                    value = Short.parseShort(toConvert);
+                } else if (type.equals(int.class) || type.equals(Integer.class)) {
+                    value = Integer.parseInt(toConvert);
+                } else if (type.equals(long.class) || type.equals(Long.class)) {
+                    value = Long.parseLong(toConvert);
+                } else if (type.equals(BigInteger.class)) {
+                    value = new BigInteger(toConvert);
+                } else if (type.equals(float.class) || type.equals(Float.class)) {
+                    value = Float.parseFloat(toConvert);
+                } else if (type.equals(double.class) || type.equals(Double.class)) {
+                    value = Double.parseDouble(toConvert);
+                } else if (type.equals(BigDecimal.class)) {
+                    value = new BigDecimal(toConvert);
+                }
+            } catch (NumberFormatException exception) {
+                throw ConversionException.of(exception, toConvert, key, type);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Loads the hash at the given key into a newly created instance of the
+     * given (ordinary) class. Only the hash-fields that correspond to the
+     * properties of the class are retrieved (using a single HMGET), and each
+     * value is converted to the type of its property before being set.
+     */
+    private static Object objectOf(Class<?> type, RedisCommands redis, String key) {
+        JedisType jedisType = JedisType.valueOf(redis.type(key).toUpperCase());
+        if (jedisType != JedisType.HASH) {
+            throw ConversionException.ofType(jedisType.name().toLowerCase(), key, type);
+        }
+        HashMapping mapping = HashMapping.of(type);
+        List<String> values = redis.hmget(key, mapping.hashFields());
+        Object object = mapping.newInstance();
+        for (int index = 0; index < values.size(); index++) {
+            String toConvert = values.get(index);
+            if (toConvert != null) {
+                mapping.set(object, index, scalarOf(toConvert, key, mapping.typeOf(index)));
+            }
+        }
+        return object;
+    }
+
+    private static Codec codecOf(Class<? extends Codec> type) {
+        Codec codec = CODECS.get(type);
+        if (codec == null) {
+            CODECS.putIfAbsent(type, (Codec)implementationOf(type));
+            codec = CODECS.get(type);
+        }
+        return codec;
+    }
+
+    /**
+     * Decodes the raw string value at the given key into the (generic) type of
+     * the given field by means of the given {@link Codec}. Compressed values
+     * are decompressed on the fly while the codec reads them.
+     */
+    private static Object decodedOf(Field field, Class<? extends Codec> codecType, RedisCommands redis, String key) {
+        JedisType jedisType = JedisType.valueOf(redis.type(key).toUpperCase());
+        if (jedisType != JedisType.STRING) {
+            throw ConversionException.ofType(jedisType.name().toLowerCase(), key, field.getType());
+        }
+        try {
+            InputStream input = Compression.inputStreamOf(redis.get(SafeEncoder.encode(key)));
+            return codecOf(codecType).decode(input, field.getGenericType());
+        } catch (IOException exception) {
+            throw ConversionException.ofDecoding(exception, key, field.getGenericType());
+        } catch (RuntimeException exception) {
+            throw ConversionException.ofDecoding(exception, key, field.getGenericType());
+        }
+    }
+
+    /**
+     * Loads the value of the given {@link Redis}-annotated field from the given
+     * source.
+     */
+    static Option loadFromRedis(RedisSource source, Field field, Redis annotation) {
+        return loadFromRedis(source, ParallelFetch.SEQUENTIAL, field, annotation);
+    }
+
+    /**
+     * Loads the value of the given {@link Redis}-annotated field from the given
+     * source. The values of an aggregate field whose keys are fetched in
+     * partitions are only retrieved once the connection over which its
+     * key-pattern was resolved has been released.
+     */
+    private static Option loadFromRedis(final RedisSource source, final ParallelFetch fetch, final Field field, final Redis annotation) {
+        final AtomicReference<List<String>> partitioned = new AtomicReference<List<String>>();
+        Option value = source._do(new F<RedisCommands, Option>() {
 
             @Override
-            public Option f(Jedis jedis) {
+            public Option f(RedisCommands redis) {
                 Object value = null;
                 
                 Class<?> fieldType = field.getType();
@@ -259,67 +950,42 @@ public final class RedisLoader extends CacheLoader<Field, Option> {
                 String pattern = annotation.value();
                 boolean allowNull = annotation.allowNull();
 
-                Set<String> redisKeys = Sets.newTreeSet(jedis.keys(pattern));
+                Set<String> redisKeys = Sets.newTreeSet(redis.keys(pattern));
                 if (redisKeys.size() == 1) {
                     String redisKey = Iterables.getOnlyElement(redisKeys);
-                    if (fieldType.equals(char[].class)) {
-                        value = jedis.get(redisKey).toCharArray();
+                    if (!annotation.codec().equals(Codec.class)) {
+                        value = decodedOf(field, annotation.codec(), redis, redisKey);
+                    } else if (fieldType.equals(char[].class)) {
+                        value = stringOf(redis, redisKey).toCharArray();
                     } else if (fieldType.equals(Character[].class)) {
-                        value = ArrayUtils.toObject(jedis.get(redisKey).toCharArray());
-                    } else if (fieldType.equals(char.class) || fieldType.equals(Character.class)) {
-                        String toConvert = jedis.get(redisKey);
-                        if (toConvert.length() == 1) {
-                            value = jedis.get(redisKey).charAt(0);
-                        } else {
-                            throw ConversionException.of(toConvert, redisKey, fieldType);
-                        }
-                    } else if (fieldType.equals(String.class)) {
-                        value = jedis.get(redisKey);
+                        value = ArrayUtils.toObject(stringOf(redis, redisKey).toCharArray());
                     } else if (fieldType.equals(byte[].class)) {
-                        value = jedis.get(redisKey.getBytes());
+                        value = bytesOf(redis, redisKey, annotation.compressed());
                     } else if (fieldType.equals(Byte[].class)) {
-                        value = ArrayUtils.toObject(jedis.get(redisKey.getBytes()));
-                    } else if (fieldType.equals(boolean.class) || fieldType.equals(Boolean.class)) {
-                        String toConvert = jedis.get(redisKey);
-                        if (BOOLEAN.matcher(toConvert).matches()) {
-                            value = TRUE.matcher(toConvert).matches();
-                        } else {
-                            throw ConversionException.of(toConvert, redisKey, fieldType);
-                        }
+                        value = ArrayUtils.toObject(bytesOf(redis, redisKey, annotation.compressed()));
+                    } else if (fieldType.equals(ByteBuffer.class)) {
+                        value = byteBufferOf(redis, redisKey, annotation.compressed());
+                    } else if (fieldType.equals(InputStream.class)) {
+                        value = inputSupplierOf(source, redisKey, annotation.compressed());
+                    } else if (isPrimitiveArray(fieldType)) {
+                        value = primitiveArrayOf(fieldType, redis, redisKey);
                     } else if (Map.class.isAssignableFrom(fieldType)) {
-                        value = mapOf(field, jedis, redisKey);
+                        value = mapOf(field, redis, redisKey);
                     } else if (Collection.class.isAssignableFrom(fieldType)) {
-                        value = collectionOf(field, jedis, redisKey);
-                    } else {
-                        String toConvert = jedis.get(redisKey);
-                        try {
-                            if (fieldType.equals(byte.class) || fieldType.equals(Byte.class)) {
-                                value = Byte.parseByte(jedis.get(redisKey));
-                            } else if (fieldType.equals(short.class) || fieldType.equals(Short.class)) {
-                                value = Short.parseShort(toConvert);
-                            } else if (fieldType.equals(int.class) || fieldType.equals(Integer.class)) {
-                                value = Integer.parseInt(toConvert);
-                            } else if (fieldType.equals(long.class) || fieldType.equals(Long.class)) {
-                                value = Long.parseLong(toConvert);
-                            } else if (fieldType.equals(BigInteger.class)) {
-                                value = new BigInteger(toConvert);
-                            } else if (fieldType.equals(float.class) || fieldType.equals(Float.class)) {
-                                value = Float.parseFloat(toConvert);
-                            } else if (fieldType.equals(double.class) || fieldType.equals(Double.class)) {
-                                value = Double.parseDouble(toConvert);
-                            } else if (fieldType.equals(BigDecimal.class)) {
-                                value = new BigDecimal(toConvert);
-                            }
-                        } catch (NumberFormatException exception) {
-                            throw ConversionException.of(exception, toConvert, redisKey, fieldType);
-                        }
+                        value = collectionOf(field, redis, redisKey);
+                    } else if (isScalar(fieldType)) {
+                        value = scalarOf(stringOf(redis, redisKey), redisKey, fieldType);
+                    } else if (HashMapping.isMappable(fieldType)) {
+                        value = objectOf(fieldType, redis, redisKey);
                     }
                 } else if (redisKeys.size() > 1) {
-                    if (Map.class.isAssignableFrom(fieldType)) {
-                        value = nestedMapOf(field, jedis, redisKeys);
-                    }
-                    else if (Collection.class.isAssignableFrom(fieldType)) {
-                        value = nestedCollectionOf(field, jedis, redisKeys);
+                    if (Map.class.isAssignableFrom(fieldType) || Collection.class.isAssignableFrom(fieldType)) {
+                        List<String> keys = Lists.newArrayList(redisKeys);
+                        if (fetch.isPartitioned(keys.size())) {
+                            partitioned.set(keys);
+                        } else {
+                            value = aggregateOf(field, keys, ParallelFetch.valuesOf(redis, keys));
+                        }
                     }
                 } else {
                     if (!allowNull) {
@@ -329,5 +995,17 @@ public final class RedisLoader extends CacheLoader<Field, Option> {
                 return Option.fromNull(value);
             }
         });
+        List<String> keys = partitioned.get();
+        if (keys != null) {
+            value = Option.some(aggregateOf(field, keys, fetch.valuesOf(source, keys)));
+        }
+        return value;
+    }
+
+    private static Object aggregateOf(Field field, List<String> redisKeys, List<Object> values) {
+        if (Map.class.isAssignableFrom(field.getType())) {
+            return nestedMapOf(field, redisKeys, values);
+        }
+        return nestedCollectionOf(field, redisKeys, values);
     }
 }
\ No newline at end of file
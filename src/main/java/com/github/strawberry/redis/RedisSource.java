@@ -0,0 +1,42 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import fj.F;
+
+/**
+ * A source of {@link RedisCommands} from which a {@link RedisLoader} loads its
+ * field values. A source decouples the loader from the way in which commands
+ * reach the Redis database: from a pool of dedicated connections (see
+ * {@link JedisPoolSource}) to a single connection that is shared by all
+ * threads (see {@link com.github.strawberry.client.MultiplexedSource}).
+ * 
+ * @author Wiehann Matthysen
+ */
+public interface RedisSource {
+
+    /**
+     * Calls the given callback with the commands of a connection to the Redis
+     * database, returning the callback's result. The connection is only
+     * guaranteed to be usable for the duration of the callback.
+     * @param <T> The type of the callback's result.
+     * @param callback The callback that issues the commands.
+     * @return The result of the callback.
+     */
+    public <T> T _do(F<RedisCommands, T> callback);
+}
@@ -0,0 +1,100 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.util.List;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import fj.data.Option;
+
+/**
+ * A bounded store of the values that a {@link RedisLoader} loaded last, from
+ * which the loader serves a stale value rather than failing when a load
+ * cannot reach Redis: that is, when it fails with a
+ * {@link JedisConnectionException}, such as the {@link SaturatedException} of
+ * a {@link LimitedSource}, the {@link CircuitOpenException} of a
+ * {@link CircuitBreakerSource} or the
+ * {@link com.github.strawberry.sentinel.FailoverException} of a
+ * {@link com.github.strawberry.sentinel.SentinelSource}. As the fallback
+ * depends on the failure rather than on the source, it still applies when
+ * such a source is wrapped by another (such as a
+ * {@link com.github.strawberry.routing.HedgedSource}).
+ * 
+ * <pre>
+ * RedisLoader loader = new RedisLoader(new CircuitBreakerSource(source), new StaleValues());
+ * </pre>
+ * 
+ * Once the store is full, the values that were used least recently are
+ * evicted, thus only the values of those fields are no longer served when
+ * Redis cannot be reached.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class StaleValues {
+
+    /**
+     * The default maximum number of values that are kept.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    private final Cache<List<Object>, Option> values;
+
+    /**
+     * Initializes a newly created {@code StaleValues} store that keeps up to
+     * {@link #DEFAULT_MAXIMUM_SIZE} values.
+     */
+    public StaleValues() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Initializes a newly created {@code StaleValues} store.
+     * @param maximumSize The maximum number of values that are kept (one per
+     * distinct key-pattern and field type).
+     */
+    public StaleValues(long maximumSize) {
+        this.values = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Returns the value that was loaded last for the given key, or
+     * {@code null} if there is none.
+     */
+    Option get(List<Object> key) {
+        return this.values.getIfPresent(key);
+    }
+
+    /**
+     * Keeps the given value as the value that was loaded last for the given
+     * key.
+     */
+    void put(List<Object> key, Option value) {
+        this.values.put(key, value);
+    }
+
+    /**
+     * Returns the number of values that are kept.
+     */
+    public long size() {
+        return this.values.size();
+    }
+}
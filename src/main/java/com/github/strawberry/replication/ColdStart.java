@@ -0,0 +1,123 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.replication;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+
+import com.github.strawberry.guice.Redis;
+import com.github.strawberry.redis.Keyspace;
+import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.util.Glob;
+import com.google.common.cache.Cache;
+import com.google.common.io.Closeables;
+
+import fj.data.Option;
+
+/**
+ * Seeds a cache of field values from an RDB dump on local disk (such as a
+ * nightly copy of the dump of the production database), so that a freshly
+ * started process does not have to load all of its configuration from Redis
+ * at once. Values are refreshed lazily afterwards, as is set up for the cache.
+ * This is illustrated with the following example:
+ * 
+ * <pre>
+ * LoadingCache&lt;Field, Option&gt; cache =
+ *   CacheBuilder.newBuilder().
+ *   refreshAfterWrite(10, TimeUnit.MINUTES).
+ *   build(new RedisLoader(pool));
+ * ColdStart.seed(cache, new File("/data/dump.rdb"), MyConfig.class, MyOtherConfig.class);
+ * Injector injector = Guice.createInjector(new RedisModule(cache));
+ * </pre>
+ * 
+ * Dumps of RDB versions up to 12 (as written by Redis 7.4) can be read, with
+ * the limitations of {@link RdbParser}.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class ColdStart {
+
+    private ColdStart() {}
+
+    /**
+     * Reads the keys that match the given filter from the given dump.
+     * @throws IOException if the dump could not be read, or is not a
+     * supported RDB dump.
+     */
+    public static Keyspace snapshotOf(File dump, KeyFilter filter) throws IOException {
+        InputStream input = new BufferedInputStream(new FileInputStream(dump), 64 * 1024);
+        try {
+            Keyspace snapshot = new Keyspace();
+            new RdbParser(input, filter).parseInto(snapshot);
+            return snapshot;
+        } finally {
+            Closeables.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Seeds the given cache with the values of the {@link Redis}-annotated
+     * fields of the given classes, as read from the given dump.
+     * @return The number of fields whose values were seeded.
+     * @throws IOException if the dump could not be read, or is not a
+     * supported RDB dump.
+     */
+    public static int seed(Cache<Field, Option> cache, File dump, Class<?>... types) throws IOException {
+        return seed(cache, snapshotOf(dump, KeyFilter.of(types)), types);
+    }
+
+    /**
+     * Seeds the given cache with the values of the {@link Redis}-annotated
+     * fields of the given classes, as loaded from the given snapshot. Fields
+     * whose keys are not in the snapshot (or whose values cannot be converted)
+     * are not seeded, and are loaded as usual on first use instead.
+     * @return The number of fields whose values were seeded.
+     */
+    public static int seed(Cache<Field, Option> cache, Keyspace snapshot, Class<?>... types) {
+        RedisLoader loader = new RedisLoader(snapshot);
+        int seeded = 0;
+        for (Class<?> type : types) {
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    Redis annotation = field.getAnnotation(Redis.class);
+                    if (annotation == null || !contains(snapshot, annotation.value())) {
+                        continue;
+                    }
+                    try {
+                        cache.put(field, loader.load(field));
+                        seeded++;
+                    } catch (Exception exception) {
+                        // Not seeded; loaded from Redis on first use instead.
+                    }
+                }
+            }
+        }
+        return seeded;
+    }
+
+    private static boolean contains(Keyspace snapshot, String pattern) {
+        if (Glob.isLiteral(pattern)) {
+            return !snapshot.type(pattern).equals("none");
+        }
+        return !snapshot.keys(pattern).isEmpty();
+    }
+}
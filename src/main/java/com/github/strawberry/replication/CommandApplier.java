@@ -0,0 +1,439 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.replication;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.strawberry.redis.Keyspace;
+import com.google.common.collect.ImmutableSet;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Applies the write commands of a replication stream to the keys of a
+ * {@link Keyspace} that match a {@link KeyFilter}. A master only propagates
+ * commands that had an effect (and rewrites some, such as SPOP and
+ * INCRBYFLOAT, into equivalent deterministic ones), thus commands are applied
+ * without checking their conditions again. ZADD is the exception: it is
+ * propagated with its flags (NX, XX, GT and LT) as given, which thus apply to
+ * every member here as they did on the master.
+ * 
+ * <p>
+ * Commands that concern matching keys but cannot be applied locally (such as
+ * SUNIONSTORE into a matching key, or scripts) are rejected, upon which the
+ * mirror has to resynchronize.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+final class CommandApplier {
+
+    /**
+     * Commands that never change the values of keys.
+     */
+    private static final Set<String> IGNORED = ImmutableSet.of(
+        "PING", "MULTI", "EXEC", "REPLCONF", "PUBLISH", "SCRIPT",
+        "EXPIRE", "PEXPIRE", "EXPIREAT", "PEXPIREAT", "PERSIST");
+
+    /**
+     * Commands that only change the value of the key that is their first
+     * argument.
+     */
+    private static final Set<String> SINGLE_KEY = ImmutableSet.of(
+        "SET", "SETNX", "SETEX", "PSETEX", "GETSET", "APPEND", "INCR", "DECR", "INCRBY", "DECRBY", "MOVE",
+        "HSET", "HSETNX", "HMSET", "HDEL", "HINCRBY",
+        "LPUSH", "RPUSH", "LPUSHX", "RPUSHX", "LPOP", "RPOP", "LSET", "LTRIM", "LREM", "LINSERT",
+        "SADD", "SREM", "ZADD", "ZREM", "ZINCRBY");
+
+    private final KeyFilter filter;
+    private int database;
+
+    CommandApplier(KeyFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Applies the given command (a list of {@code byte[]} arguments) to the
+     * given keyspace.
+     * @return False if the command affects matching keys but could not be
+     * applied.
+     */
+    boolean apply(Keyspace keyspace, List<?> command) {
+        String name = stringOf(command, 0).toUpperCase();
+        if (IGNORED.contains(name)) {
+            return true;
+        } else if (name.equals("SELECT")) {
+            this.database = Integer.parseInt(stringOf(command, 1));
+            return true;
+        } else if (name.equals("FLUSHALL")) {
+            keyspace.clear();
+            return true;
+        } else if (this.database != 0) {
+            return true;
+        } else if (name.equals("FLUSHDB")) {
+            keyspace.clear();
+            return true;
+        } else if (name.equals("DEL") || name.equals("UNLINK")) {
+            // Expiries and evictions are propagated as either.
+            for (int index = 1; index < command.size(); index++) {
+                keyspace.remove(stringOf(command, index));
+            }
+            return true;
+        } else if (name.equals("MSET") || name.equals("MSETNX")) {
+            for (int index = 1; index + 1 < command.size(); index += 2) {
+                if (this.filter.matches(stringOf(command, index))) {
+                    keyspace.putString(stringOf(command, index), bytesOf(command, index + 1));
+                }
+            }
+            return true;
+        } else if (name.equals("RENAME") || name.equals("RENAMENX")) {
+            return move(keyspace, stringOf(command, 1), stringOf(command, 2));
+        } else if (name.equals("SMOVE")) {
+            return applyTo(keyspace, "SREM", stringOf(command, 1), command.subList(3, 4))
+                && applyTo(keyspace, "SADD", stringOf(command, 2), command.subList(3, 4));
+        } else if (name.equals("RPOPLPUSH")) {
+            String source = stringOf(command, 1);
+            String destination = stringOf(command, 2);
+            if (this.filter.matches(destination) && !this.filter.matches(source)) {
+                return false;
+            }
+            List<String> list = listOf(keyspace, source);
+            if (list.isEmpty()) {
+                return true;
+            }
+            String last = list.remove(list.size() - 1);
+            putList(keyspace, source, list);
+            if (this.filter.matches(destination)) {
+                List<String> target = listOf(keyspace, destination);
+                target.add(0, last);
+                putList(keyspace, destination, target);
+            }
+            return true;
+        } else if (command.size() > 1 && SINGLE_KEY.contains(name)) {
+            String key = stringOf(command, 1);
+            return !this.filter.matches(key) || applyTo(keyspace, name, key, command.subList(2, command.size()));
+        }
+        // An unknown command: keys can be at any position.
+        for (int index = 1; index < command.size(); index++) {
+            if (this.filter.matches(stringOf(command, index))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies a command to a single matching key.
+     * @param args The arguments that follow the key.
+     */
+    private boolean applyTo(Keyspace keyspace, String name, String key, List<?> args) {
+        if (!this.filter.matches(key)) {
+            return true;
+        }
+        if (name.equals("SET") || name.equals("SETNX") || name.equals("GETSET")) {
+            keyspace.putString(key, bytesOf(args, 0));
+        } else if (name.equals("SETEX") || name.equals("PSETEX")) {
+            keyspace.putString(key, bytesOf(args, 1));
+        } else if (name.equals("APPEND")) {
+            byte[] value = (byte[])keyspace.valueAt(key);
+            byte[] suffix = bytesOf(args, 0);
+            byte[] appended = new byte[(value == null ? 0 : value.length) + suffix.length];
+            if (value != null) {
+                System.arraycopy(value, 0, appended, 0, value.length);
+            }
+            System.arraycopy(suffix, 0, appended, appended.length - suffix.length, suffix.length);
+            keyspace.putString(key, appended);
+        } else if (name.equals("INCR") || name.equals("DECR") || name.equals("INCRBY") || name.equals("DECRBY")) {
+            long delta = args.isEmpty() ? 1 : Long.parseLong(stringOf(args, 0));
+            byte[] value = (byte[])keyspace.valueAt(key);
+            long current = value == null ? 0 : Long.parseLong(SafeEncoder.encode(value));
+            keyspace.putString(key, SafeEncoder.encode(String.valueOf(name.startsWith("DECR") ? current - delta : current + delta)));
+        } else if (name.equals("MOVE")) {
+            keyspace.remove(key);
+        } else if (name.startsWith("H")) {
+            applyToHash(keyspace, name, key, args);
+        } else if (name.startsWith("L") || name.startsWith("R")) {
+            applyToList(keyspace, name, key, args);
+        } else if (name.startsWith("S")) {
+            applyToSet(keyspace, name, key, args);
+        } else {
+            applyToSortedSet(keyspace, name, key, args);
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void applyToHash(Keyspace keyspace, String name, String key, List<?> args) {
+        Map<String, String> stored = (Map<String, String>)keyspace.valueAt(key);
+        Map<String, String> hash = stored == null ? new HashMap<String, String>() : new HashMap<String, String>(stored);
+        if (name.equals("HDEL")) {
+            for (int index = 0; index < args.size(); index++) {
+                hash.remove(stringOf(args, index));
+            }
+        } else if (name.equals("HINCRBY")) {
+            String current = hash.get(stringOf(args, 0));
+            long value = (current == null ? 0 : Long.parseLong(current)) + Long.parseLong(stringOf(args, 1));
+            hash.put(stringOf(args, 0), String.valueOf(value));
+        } else {
+            for (int index = 0; index + 1 < args.size(); index += 2) {
+                hash.put(stringOf(args, index), stringOf(args, index + 1));
+            }
+        }
+        if (hash.isEmpty()) {
+            keyspace.remove(key);
+        } else {
+            keyspace.putHash(key, hash);
+        }
+    }
+
+    private static void applyToList(Keyspace keyspace, String name, String key, List<?> args) {
+        List<String> list = listOf(keyspace, key);
+        if (name.equals("LPUSH") || name.equals("LPUSHX")) {
+            for (int index = 0; index < args.size(); index++) {
+                list.add(0, stringOf(args, index));
+            }
+        } else if (name.equals("RPUSH") || name.equals("RPUSHX")) {
+            for (int index = 0; index < args.size(); index++) {
+                list.add(stringOf(args, index));
+            }
+        } else if (name.equals("LPOP") || name.equals("RPOP")) {
+            // As of Redis 6.2 with an optional count (into which LMPOP is
+            // rewritten as well).
+            long count = Math.min(args.isEmpty() ? 1 : Long.parseLong(stringOf(args, 0)), list.size());
+            for (long popped = 0; popped < count; popped++) {
+                list.remove(name.equals("LPOP") ? 0 : list.size() - 1);
+            }
+        } else if (name.equals("LSET")) {
+            int index = Integer.parseInt(stringOf(args, 0));
+            list.set(index < 0 ? list.size() + index : index, stringOf(args, 1));
+        } else if (name.equals("LTRIM")) {
+            int[] bounds = boundsOf(Long.parseLong(stringOf(args, 0)), Long.parseLong(stringOf(args, 1)), list.size());
+            list = new ArrayList<String>(list.subList(bounds[0], bounds[1]));
+        } else if (name.equals("LREM")) {
+            long count = Long.parseLong(stringOf(args, 0));
+            String value = stringOf(args, 1);
+            long removed = 0;
+            if (count >= 0) {
+                Iterator<String> iterator = list.iterator();
+                while (iterator.hasNext() && (count == 0 || removed < count)) {
+                    if (iterator.next().equals(value)) {
+                        iterator.remove();
+                        removed++;
+                    }
+                }
+            } else {
+                ListIterator<String> iterator = list.listIterator(list.size());
+                while (iterator.hasPrevious() && removed < -count) {
+                    if (iterator.previous().equals(value)) {
+                        iterator.remove();
+                        removed++;
+                    }
+                }
+            }
+        } else if (name.equals("LINSERT")) {
+            int pivot = list.indexOf(stringOf(args, 1));
+            if (pivot >= 0) {
+                boolean before = stringOf(args, 0).equalsIgnoreCase("BEFORE");
+                list.add(before ? pivot : pivot + 1, stringOf(args, 2));
+            }
+        }
+        putList(keyspace, key, list);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void applyToSet(Keyspace keyspace, String name, String key, List<?> args) {
+        Set<String> stored = (Set<String>)keyspace.valueAt(key);
+        Set<String> set = stored == null ? new LinkedHashSet<String>() : new LinkedHashSet<String>(stored);
+        for (int index = 0; index < args.size(); index++) {
+            if (name.equals("SADD")) {
+                set.add(stringOf(args, index));
+            } else {
+                set.remove(stringOf(args, index));
+            }
+        }
+        if (set.isEmpty()) {
+            keyspace.remove(key);
+        } else {
+            keyspace.putSet(key, set);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void applyToSortedSet(Keyspace keyspace, String name, String key, List<?> args) {
+        Map<String, Double> stored = (Map<String, Double>)keyspace.valueAt(key);
+        Map<String, Double> scores = stored == null
+            ? new LinkedHashMap<String, Double>() : new LinkedHashMap<String, Double>(stored);
+        if (name.equals("ZREM")) {
+            for (int index = 0; index < args.size(); index++) {
+                scores.remove(stringOf(args, index));
+            }
+        } else if (name.equals("ZINCRBY")) {
+            Double current = scores.get(stringOf(args, 1));
+            double score = (current == null ? 0 : current) + scoreOf(stringOf(args, 0));
+            scores.put(stringOf(args, 1), score);
+        } else {
+            applyZadd(scores, args);
+        }
+        if (scores.isEmpty()) {
+            keyspace.remove(key);
+        } else {
+            keyspace.putSortedSet(key, scores);
+        }
+    }
+
+    /**
+     * Applies the (optional) flags and the score-member pairs of a ZADD.
+     */
+    private static void applyZadd(Map<String, Double> scores, List<?> args) {
+        boolean nx = false;
+        boolean xx = false;
+        boolean gt = false;
+        boolean lt = false;
+        boolean incr = false;
+        int index = 0;
+        for (; index < args.size(); index++) {
+            String flag = stringOf(args, index).toUpperCase();
+            if (flag.equals("NX")) {
+                nx = true;
+            } else if (flag.equals("XX")) {
+                xx = true;
+            } else if (flag.equals("GT")) {
+                gt = true;
+            } else if (flag.equals("LT")) {
+                lt = true;
+            } else if (flag.equals("INCR")) {
+                incr = true;
+            } else if (!flag.equals("CH")) {
+                break;
+            }
+        }
+        for (; index + 1 < args.size(); index += 2) {
+            String member = stringOf(args, index + 1);
+            Double current = scores.get(member);
+            double score = scoreOf(stringOf(args, index));
+            if (incr) {
+                score += current == null ? 0 : current;
+            }
+            if ((nx && current != null) || (xx && current == null)) {
+                continue;
+            }
+            if (current != null && ((gt && score <= current) || (lt && score >= current))) {
+                continue;
+            }
+            scores.put(member, score);
+        }
+    }
+
+    /**
+     * Parses a score as Redis does, which also accepts the infinities in
+     * forms that {@link Double#parseDouble(String)} does not.
+     */
+    private static double scoreOf(String score) {
+        String lower = score.toLowerCase();
+        if (lower.equals("inf") || lower.equals("+inf") || lower.equals("infinity") || lower.equals("+infinity")) {
+            return Double.POSITIVE_INFINITY;
+        } else if (lower.equals("-inf") || lower.equals("-infinity")) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return Double.parseDouble(score);
+    }
+
+    /**
+     * Moves the value of a key to another key (as RENAME does).
+     * @return False if the value is moved from a key that does not match
+     * into one that does, as the value is then not known.
+     */
+    private boolean move(Keyspace keyspace, String source, String destination) {
+        if (!this.filter.matches(destination)) {
+            keyspace.remove(source);
+            return true;
+        }
+        if (!this.filter.matches(source)) {
+            return false;
+        }
+        String type = keyspace.type(source);
+        Object value = keyspace.valueAt(source);
+        keyspace.remove(source);
+        keyspace.remove(destination);
+        put(keyspace, destination, type, value);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void put(Keyspace keyspace, String key, String type, Object value) {
+        if (type.equals("string")) {
+            keyspace.putString(key, (byte[])value);
+        } else if (type.equals("hash")) {
+            keyspace.putHash(key, (Map<String, String>)value);
+        } else if (type.equals("list")) {
+            keyspace.putList(key, (List<String>)value);
+        } else if (type.equals("set")) {
+            keyspace.putSet(key, (Set<String>)value);
+        } else if (type.equals("zset")) {
+            keyspace.putSortedSet(key, (Map<String, Double>)value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> listOf(Keyspace keyspace, String key) {
+        List<String> stored = (List<String>)keyspace.valueAt(key);
+        return stored == null ? new ArrayList<String>() : new ArrayList<String>(stored);
+    }
+
+    private static void putList(Keyspace keyspace, String key, List<String> list) {
+        if (list.isEmpty()) {
+            keyspace.remove(key);
+        } else {
+            keyspace.putList(key, list);
+        }
+    }
+
+    /**
+     * Converts a (possibly negative) Redis range into the bounds
+     * {@code [from, to)} over a list of the given length.
+     */
+    private static int[] boundsOf(long start, long end, int length) {
+        if (start < 0) {
+            start = Math.max(length + start, 0);
+        }
+        if (end < 0) {
+            end = length + end;
+        }
+        end = Math.min(end, length - 1);
+        if (start > end) {
+            return new int[]{0, 0};
+        }
+        return new int[]{(int)start, (int)end + 1};
+    }
+
+    private static byte[] bytesOf(List<?> command, int index) {
+        return (byte[])command.get(index);
+    }
+
+    private static String stringOf(List<?> command, int index) {
+        return SafeEncoder.encode((byte[])command.get(index));
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.replication;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.github.strawberry.guice.Redis;
+import com.github.strawberry.util.Glob;
+
+/**
+ * The set of key-patterns (such as those of {@link Redis}-annotations) whose
+ * matching keys are to be kept locally, by a {@link ReplicaMirror} or when
+ * reading a dump with an {@link RdbParser}.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class KeyFilter {
+
+    private final Set<String> patterns;
+
+    private KeyFilter(Set<String> patterns) {
+        this.patterns = Collections.unmodifiableSet(patterns);
+    }
+
+    /**
+     * Returns a filter that matches the keys that match any of the given
+     * glob-style patterns (see {@link Glob}).
+     */
+    public static KeyFilter of(Collection<String> patterns) {
+        return new KeyFilter(new LinkedHashSet<String>(patterns));
+    }
+
+    /**
+     * Returns a filter that matches the keys of the {@link Redis}-annotated
+     * fields, methods and parameters of the given classes (and their
+     * superclasses).
+     */
+    public static KeyFilter of(Class<?>... types) {
+        Set<String> patterns = new LinkedHashSet<String>();
+        for (Class<?> type : types) {
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    add(patterns, field.getAnnotation(Redis.class));
+                }
+                for (Method method : current.getDeclaredMethods()) {
+                    add(patterns, method.getAnnotation(Redis.class));
+                    add(patterns, method.getParameterAnnotations());
+                }
+                for (Constructor<?> constructor : current.getDeclaredConstructors()) {
+                    add(patterns, constructor.getParameterAnnotations());
+                }
+            }
+        }
+        return new KeyFilter(patterns);
+    }
+
+    private static void add(Set<String> patterns, Redis annotation) {
+        if (annotation != null) {
+            patterns.add(annotation.value());
+        }
+    }
+
+    private static void add(Set<String> patterns, Annotation[][] parameters) {
+        for (Annotation[] annotations : parameters) {
+            for (Annotation annotation : annotations) {
+                if (annotation instanceof Redis) {
+                    add(patterns, (Redis)annotation);
+                }
+            }
+        }
+    }
+
+    public Set<String> patterns() {
+        return this.patterns;
+    }
+
+    /**
+     * Returns whether the given key matches any of the patterns.
+     */
+    public boolean matches(String key) {
+        for (String pattern : this.patterns) {
+            if (Glob.matches(pattern, key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
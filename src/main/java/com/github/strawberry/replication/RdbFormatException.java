@@ -0,0 +1,40 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.replication;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an RDB dump is corrupt, or contains an encoding that
+ * {@link RdbParser} does not support. Reading the same dump again fails in the
+ * same way, unlike a failure of the stream that the dump is read from.
+ * 
+ * @author Wiehann Matthysen
+ */
+public class RdbFormatException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RdbFormatException(String message) {
+        super(message);
+    }
+
+    public RdbFormatException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
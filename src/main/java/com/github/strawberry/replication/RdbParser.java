@@ -0,0 +1,846 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.replication;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.strawberry.redis.Keyspace;
+import com.ning.compress.lzf.ChunkDecoder;
+import com.ning.compress.lzf.util.ChunkDecoderFactory;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * A streaming parser of Redis RDB dumps (as written by SAVE and BGSAVE, and
+ * sent to replicas upon a full resynchronization) that puts the keys of the
+ * first database that match a {@link KeyFilter} into a {@link Keyspace}.
+ * Keys that do not match, and keys that have already expired, are read past
+ * without being kept.
+ * 
+ * <p>
+ * Strings (including integer- and LZF-encoded ones), hashes, lists, sets and
+ * sorted sets are supported in all of their encodings up to RDB version 12:
+ * plain, zipmap, ziplist, intset, quicklist and listpack. Streams and values
+ * of module types are read past (even if their keys match), as are the
+ * functions, the auxiliary data of modules and the eviction statistics of
+ * keys. A dump that contains any other type (such as the hashes with field
+ * expiry of Redis 7.4) is rejected, as the length of such a value is not
+ * known and so it cannot be read past either.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class RdbParser {
+
+    private static final int MAX_VERSION = 12;
+
+    private static final int TYPE_STRING = 0;
+    private static final int TYPE_LIST = 1;
+    private static final int TYPE_SET = 2;
+    private static final int TYPE_ZSET = 3;
+    private static final int TYPE_HASH = 4;
+    private static final int TYPE_ZSET_2 = 5;
+    private static final int TYPE_MODULE_2 = 7;
+    private static final int TYPE_HASH_ZIPMAP = 9;
+    private static final int TYPE_LIST_ZIPLIST = 10;
+    private static final int TYPE_SET_INTSET = 11;
+    private static final int TYPE_ZSET_ZIPLIST = 12;
+    private static final int TYPE_HASH_ZIPLIST = 13;
+    private static final int TYPE_LIST_QUICKLIST = 14;
+    private static final int TYPE_STREAM_LISTPACKS = 15;
+    private static final int TYPE_HASH_LISTPACK = 16;
+    private static final int TYPE_ZSET_LISTPACK = 17;
+    private static final int TYPE_LIST_QUICKLIST_2 = 18;
+    private static final int TYPE_STREAM_LISTPACKS_2 = 19;
+    private static final int TYPE_SET_LISTPACK = 20;
+    private static final int TYPE_STREAM_LISTPACKS_3 = 21;
+
+    private static final int OPCODE_SLOT_INFO = 0xF4;
+    private static final int OPCODE_FUNCTION = 0xF5;
+    private static final int OPCODE_MODULE_AUX = 0xF7;
+    private static final int OPCODE_IDLE = 0xF8;
+    private static final int OPCODE_FREQ = 0xF9;
+    private static final int OPCODE_AUX = 0xFA;
+    private static final int OPCODE_RESIZEDB = 0xFB;
+    private static final int OPCODE_EXPIRETIME_MS = 0xFC;
+    private static final int OPCODE_EXPIRETIME = 0xFD;
+    private static final int OPCODE_SELECTDB = 0xFE;
+    private static final int OPCODE_EOF = 0xFF;
+
+    private static final int ENCODING_INT8 = 0;
+    private static final int ENCODING_INT16 = 1;
+    private static final int ENCODING_INT32 = 2;
+    private static final int ENCODING_LZF = 3;
+
+    private static final int MODULE_OPCODE_EOF = 0;
+    private static final int MODULE_OPCODE_SINT = 1;
+    private static final int MODULE_OPCODE_UINT = 2;
+    private static final int MODULE_OPCODE_FLOAT = 3;
+    private static final int MODULE_OPCODE_DOUBLE = 4;
+    private static final int MODULE_OPCODE_STRING = 5;
+
+    private static final int QUICKLIST_NODE_PLAIN = 1;
+
+    private final DataInputStream input;
+    private final KeyFilter filter;
+    private final ChunkDecoder decoder = ChunkDecoderFactory.safeInstance();
+
+    /**
+     * Set by {@link #readLength()} when the length denotes a specially
+     * encoded string instead.
+     */
+    private boolean encoded;
+
+    public RdbParser(InputStream input, KeyFilter filter) {
+        this.input = new DataInputStream(input);
+        this.filter = filter;
+    }
+
+    /**
+     * Reads the dump up to (and including) its end marker and checksum,
+     * putting the keys that match the filter into the given keyspace.
+     * @return The number of keys that were put.
+     * @throws RdbFormatException if the dump is not a supported RDB dump.
+     * @throws IOException if the dump could not be read.
+     */
+    public int parseInto(Keyspace keyspace) throws IOException {
+        byte[] magic = new byte[9];
+        this.input.readFully(magic);
+        String header = SafeEncoder.encode(magic);
+        if (!header.startsWith("REDIS")) {
+            throw new RdbFormatException("Not an RDB dump.");
+        }
+        int version = Integer.parseInt(header.substring(5));
+        if (version > MAX_VERSION) {
+            throw new RdbFormatException("Unsupported RDB version " + version + ".");
+        }
+        int database = 0;
+        int count = 0;
+        long now = System.currentTimeMillis();
+        // The expiry (and eviction statistics) of a key precede its type.
+        long expiry = -1;
+        while (true) {
+            int type = this.input.readUnsignedByte();
+            if (type == OPCODE_EOF) {
+                break;
+            } else if (type == OPCODE_SELECTDB) {
+                database = (int)readLength();
+                continue;
+            } else if (type == OPCODE_AUX) {
+                skipString();
+                skipString();
+                continue;
+            } else if (type == OPCODE_RESIZEDB) {
+                readLength();
+                readLength();
+                continue;
+            } else if (type == OPCODE_SLOT_INFO) {
+                // The slot, and the number of keys and of expiring keys in it.
+                readLength();
+                readLength();
+                readLength();
+                continue;
+            } else if (type == OPCODE_FUNCTION) {
+                skipString();
+                continue;
+            } else if (type == OPCODE_MODULE_AUX) {
+                // The module, and when (before or after the keys) it was saved.
+                readLength();
+                readLength();
+                readLength();
+                skipModuleValue();
+                continue;
+            } else if (type == OPCODE_IDLE) {
+                readLength();
+                continue;
+            } else if (type == OPCODE_FREQ) {
+                this.input.readUnsignedByte();
+                continue;
+            } else if (type == OPCODE_EXPIRETIME) {
+                expiry = (readLittleEndian(4) & 0xFFFFFFFFL) * 1000;
+                continue;
+            } else if (type == OPCODE_EXPIRETIME_MS) {
+                expiry = readLittleEndian(8);
+                continue;
+            }
+            String key = SafeEncoder.encode(readString());
+            if (database == 0 && (expiry < 0 || expiry > now) && isStored(type) && this.filter.matches(key)) {
+                put(keyspace, key, type, readValue(type));
+                count++;
+            } else {
+                skipValue(type);
+            }
+            expiry = -1;
+        }
+        if (version >= 5) {
+            // The CRC64 checksum of the dump (which is zero if disabled).
+            readLittleEndian(8);
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void put(Keyspace keyspace, String key, int type, Object value) {
+        switch (type) {
+            case TYPE_STRING: {
+                keyspace.putString(key, (byte[])value);
+                break;
+            }
+            case TYPE_LIST: case TYPE_LIST_ZIPLIST: case TYPE_LIST_QUICKLIST: case TYPE_LIST_QUICKLIST_2: {
+                keyspace.putList(key, (List<String>)value);
+                break;
+            }
+            case TYPE_SET: case TYPE_SET_INTSET: case TYPE_SET_LISTPACK: {
+                keyspace.putSet(key, (Set<String>)value);
+                break;
+            }
+            case TYPE_ZSET: case TYPE_ZSET_2: case TYPE_ZSET_ZIPLIST: case TYPE_ZSET_LISTPACK: {
+                keyspace.putSortedSet(key, (Map<String, Double>)value);
+                break;
+            }
+            default: {
+                keyspace.putHash(key, (Map<String, String>)value);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns whether values of the given type can be put into a keyspace.
+     */
+    private static boolean isStored(int type) {
+        switch (type) {
+            case TYPE_STRING: case TYPE_LIST: case TYPE_SET: case TYPE_ZSET: case TYPE_HASH: case TYPE_ZSET_2:
+            case TYPE_HASH_ZIPMAP: case TYPE_LIST_ZIPLIST: case TYPE_SET_INTSET: case TYPE_ZSET_ZIPLIST:
+            case TYPE_HASH_ZIPLIST: case TYPE_LIST_QUICKLIST: case TYPE_HASH_LISTPACK: case TYPE_ZSET_LISTPACK:
+            case TYPE_LIST_QUICKLIST_2: case TYPE_SET_LISTPACK: {
+                return true;
+            }
+            default: {
+                return false;
+            }
+        }
+    }
+
+    private Object readValue(int type) throws IOException {
+        switch (type) {
+            case TYPE_STRING: {
+                return readString();
+            }
+            case TYPE_LIST: {
+                long size = readLength();
+                List<String> list = new ArrayList<String>();
+                for (long index = 0; index < size; index++) {
+                    list.add(SafeEncoder.encode(readString()));
+                }
+                return list;
+            }
+            case TYPE_SET: {
+                long size = readLength();
+                Set<String> set = new LinkedHashSet<String>();
+                for (long index = 0; index < size; index++) {
+                    set.add(SafeEncoder.encode(readString()));
+                }
+                return set;
+            }
+            case TYPE_ZSET: case TYPE_ZSET_2: {
+                long size = readLength();
+                Map<String, Double> scores = new LinkedHashMap<String, Double>();
+                for (long index = 0; index < size; index++) {
+                    String member = SafeEncoder.encode(readString());
+                    scores.put(member, type == TYPE_ZSET ? readDouble() : Double.longBitsToDouble(readLittleEndian(8)));
+                }
+                return scores;
+            }
+            case TYPE_HASH: {
+                long size = readLength();
+                Map<String, String> hash = new LinkedHashMap<String, String>();
+                for (long index = 0; index < size; index++) {
+                    hash.put(SafeEncoder.encode(readString()), SafeEncoder.encode(readString()));
+                }
+                return hash;
+            }
+            case TYPE_HASH_ZIPMAP: {
+                return zipmapOf(readString());
+            }
+            case TYPE_LIST_ZIPLIST: {
+                return ziplistOf(readString());
+            }
+            case TYPE_SET_INTSET: {
+                return intsetOf(readString());
+            }
+            case TYPE_ZSET_ZIPLIST: {
+                return scoresOf(ziplistOf(readString()));
+            }
+            case TYPE_ZSET_LISTPACK: {
+                return scoresOf(listpackOf(readString()));
+            }
+            case TYPE_HASH_ZIPLIST: {
+                return hashOf(ziplistOf(readString()));
+            }
+            case TYPE_HASH_LISTPACK: {
+                return hashOf(listpackOf(readString()));
+            }
+            case TYPE_SET_LISTPACK: {
+                return new LinkedHashSet<String>(listpackOf(readString()));
+            }
+            case TYPE_LIST_QUICKLIST: {
+                long size = readLength();
+                List<String> list = new ArrayList<String>();
+                for (long index = 0; index < size; index++) {
+                    list.addAll(ziplistOf(readString()));
+                }
+                return list;
+            }
+            case TYPE_LIST_QUICKLIST_2: {
+                long size = readLength();
+                List<String> list = new ArrayList<String>();
+                for (long index = 0; index < size; index++) {
+                    if (readLength() == QUICKLIST_NODE_PLAIN) {
+                        // A single element that is too large for a listpack.
+                        list.add(SafeEncoder.encode(readString()));
+                    } else {
+                        list.addAll(listpackOf(readString()));
+                    }
+                }
+                return list;
+            }
+            default: {
+                throw new RdbFormatException("Unsupported RDB value type " + type + ".");
+            }
+        }
+    }
+
+    private static Map<String, Double> scoresOf(List<String> entries) {
+        Map<String, Double> scores = new LinkedHashMap<String, Double>();
+        for (int index = 0; index + 1 < entries.size(); index += 2) {
+            scores.put(entries.get(index), Double.valueOf(entries.get(index + 1)));
+        }
+        return scores;
+    }
+
+    private static Map<String, String> hashOf(List<String> entries) {
+        Map<String, String> hash = new LinkedHashMap<String, String>();
+        for (int index = 0; index + 1 < entries.size(); index += 2) {
+            hash.put(entries.get(index), entries.get(index + 1));
+        }
+        return hash;
+    }
+
+    /**
+     * Reads past a value of the given type without decoding it.
+     */
+    private void skipValue(int type) throws IOException {
+        switch (type) {
+            case TYPE_STRING: case TYPE_HASH_ZIPMAP: case TYPE_LIST_ZIPLIST: case TYPE_SET_INTSET:
+            case TYPE_ZSET_ZIPLIST: case TYPE_HASH_ZIPLIST: case TYPE_HASH_LISTPACK: case TYPE_ZSET_LISTPACK:
+            case TYPE_SET_LISTPACK: {
+                skipString();
+                break;
+            }
+            case TYPE_LIST: case TYPE_SET: case TYPE_LIST_QUICKLIST: {
+                skipStrings(readLength());
+                break;
+            }
+            case TYPE_HASH: {
+                skipStrings(readLength() * 2);
+                break;
+            }
+            case TYPE_ZSET: case TYPE_ZSET_2: {
+                long size = readLength();
+                for (long index = 0; index < size; index++) {
+                    skipString();
+                    if (type == TYPE_ZSET) {
+                        readDouble();
+                    } else {
+                        skipBytes(8);
+                    }
+                }
+                break;
+            }
+            case TYPE_LIST_QUICKLIST_2: {
+                long size = readLength();
+                for (long index = 0; index < size; index++) {
+                    readLength();
+                    skipString();
+                }
+                break;
+            }
+            case TYPE_MODULE_2: {
+                // The identifier of the module type, followed by its values.
+                readLength();
+                skipModuleValue();
+                break;
+            }
+            case TYPE_STREAM_LISTPACKS: case TYPE_STREAM_LISTPACKS_2: case TYPE_STREAM_LISTPACKS_3: {
+                skipStream(type);
+                break;
+            }
+            default: {
+                throw new RdbFormatException("Unsupported RDB value type " + type + ".");
+            }
+        }
+    }
+
+    /**
+     * Reads past the values that a module saved, up to their end marker.
+     */
+    private void skipModuleValue() throws IOException {
+        while (true) {
+            int opcode = (int)readLength();
+            switch (opcode) {
+                case MODULE_OPCODE_EOF: {
+                    return;
+                }
+                case MODULE_OPCODE_SINT: case MODULE_OPCODE_UINT: {
+                    readLength();
+                    break;
+                }
+                case MODULE_OPCODE_FLOAT: {
+                    skipBytes(4);
+                    break;
+                }
+                case MODULE_OPCODE_DOUBLE: {
+                    skipBytes(8);
+                    break;
+                }
+                case MODULE_OPCODE_STRING: {
+                    skipString();
+                    break;
+                }
+                default: {
+                    throw new RdbFormatException("Unsupported module value opcode " + opcode + ".");
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads past a stream: its entries (in listpacks keyed by their first
+     * identifier), its metadata and its consumer groups.
+     */
+    private void skipStream(int type) throws IOException {
+        skipStrings(readLength() * 2);
+        // The number of entries and the last identifier.
+        readLength();
+        readLength();
+        readLength();
+        if (type != TYPE_STREAM_LISTPACKS) {
+            // The first identifier, the largest deleted one and the number of
+            // entries that were ever added.
+            readLength();
+            readLength();
+            readLength();
+            readLength();
+            readLength();
+        }
+        long groups = readLength();
+        for (long group = 0; group < groups; group++) {
+            skipString();
+            readLength();
+            readLength();
+            if (type != TYPE_STREAM_LISTPACKS) {
+                readLength();
+            }
+            long pending = readLength();
+            for (long index = 0; index < pending; index++) {
+                // The identifier, the time of delivery and the number of them.
+                skipBytes(16 + 8);
+                readLength();
+            }
+            long consumers = readLength();
+            for (long consumer = 0; consumer < consumers; consumer++) {
+                skipString();
+                skipBytes(type == TYPE_STREAM_LISTPACKS_3 ? 16 : 8);
+                skipBytes(readLength() * 16);
+            }
+        }
+    }
+
+    /**
+     * Reads a length, or the kind of encoding of a specially encoded string
+     * (in which case {@link #encoded} is set).
+     */
+    private long readLength() throws IOException {
+        int first = this.input.readUnsignedByte();
+        this.encoded = false;
+        switch (first >> 6) {
+            case 0: {
+                return first & 0x3F;
+            }
+            case 1: {
+                return ((first & 0x3F) << 8) | this.input.readUnsignedByte();
+            }
+            case 2: {
+                if (first == 0x81) {
+                    return this.input.readLong();
+                }
+                return this.input.readInt() & 0xFFFFFFFFL;
+            }
+            default: {
+                this.encoded = true;
+                return first & 0x3F;
+            }
+        }
+    }
+
+    private byte[] readString() throws IOException {
+        long length = readLength();
+        if (this.encoded) {
+            switch ((int)length) {
+                case ENCODING_INT8: {
+                    return SafeEncoder.encode(String.valueOf(this.input.readByte()));
+                }
+                case ENCODING_INT16: {
+                    return SafeEncoder.encode(String.valueOf((short)readLittleEndian(2)));
+                }
+                case ENCODING_INT32: {
+                    return SafeEncoder.encode(String.valueOf((int)readLittleEndian(4)));
+                }
+                case ENCODING_LZF: {
+                    long compressedLength = readLength();
+                    byte[] value = new byte[(int)readLength()];
+                    this.decoder.decodeChunk(readBytes(compressedLength), 0, value, 0, value.length);
+                    return value;
+                }
+                default: {
+                    throw new RdbFormatException("Unsupported string encoding " + length + ".");
+                }
+            }
+        }
+        return readBytes(length);
+    }
+
+    private void skipString() throws IOException {
+        long length = readLength();
+        if (this.encoded) {
+            switch ((int)length) {
+                case ENCODING_INT8: {
+                    skipBytes(1);
+                    break;
+                }
+                case ENCODING_INT16: {
+                    skipBytes(2);
+                    break;
+                }
+                case ENCODING_INT32: {
+                    skipBytes(4);
+                    break;
+                }
+                case ENCODING_LZF: {
+                    long compressedLength = readLength();
+                    readLength();
+                    skipBytes(compressedLength);
+                    break;
+                }
+                default: {
+                    throw new RdbFormatException("Unsupported string encoding " + length + ".");
+                }
+            }
+        } else {
+            skipBytes(length);
+        }
+    }
+
+    private void skipStrings(long count) throws IOException {
+        for (long index = 0; index < count; index++) {
+            skipString();
+        }
+    }
+
+    private byte[] readBytes(long length) throws IOException {
+        byte[] bytes = new byte[(int)length];
+        this.input.readFully(bytes);
+        return bytes;
+    }
+
+    private void skipBytes(long length) throws IOException {
+        long remaining = length;
+        while (remaining > 0) {
+            int skipped = this.input.skipBytes((int)Math.min(remaining, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                // Tells the end of the stream apart from a stream that skips nothing.
+                this.input.readUnsignedByte();
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Reads a score of a sorted set, which is stored as a string with a
+     * single-byte length (or one of the special lengths for NaN and the
+     * infinities).
+     */
+    private double readDouble() throws IOException {
+        int length = this.input.readUnsignedByte();
+        switch (length) {
+            case 253: {
+                return Double.NaN;
+            }
+            case 254: {
+                return Double.POSITIVE_INFINITY;
+            }
+            case 255: {
+                return Double.NEGATIVE_INFINITY;
+            }
+            default: {
+                return Double.parseDouble(SafeEncoder.encode(readBytes(length)));
+            }
+        }
+    }
+
+    private long readLittleEndian(int size) throws IOException {
+        long value = 0;
+        for (int index = 0; index < size; index++) {
+            value |= ((long)this.input.readUnsignedByte()) << (8 * index);
+        }
+        return value;
+    }
+
+    /**
+     * Decodes the entries of a ziplist, in which integers are stored in their
+     * binary form and strings with a varying-length header.
+     */
+    private static List<String> ziplistOf(byte[] ziplist) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(ziplist).order(ByteOrder.LITTLE_ENDIAN);
+        // Skip the total size, the offset of the tail and the number of entries.
+        buffer.position(10);
+        List<String> entries = new ArrayList<String>();
+        try {
+            while ((buffer.get(buffer.position()) & 0xFF) != 0xFF) {
+                // Skip the length of the previous entry.
+                if ((buffer.get() & 0xFF) == 254) {
+                    buffer.getInt();
+                }
+                int encoding = buffer.get() & 0xFF;
+                switch (encoding >> 6) {
+                    case 0: {
+                        entries.add(stringOf(buffer, encoding & 0x3F));
+                        break;
+                    }
+                    case 1: {
+                        entries.add(stringOf(buffer, ((encoding & 0x3F) << 8) | (buffer.get() & 0xFF)));
+                        break;
+                    }
+                    case 2: {
+                        entries.add(stringOf(buffer, buffer.order(ByteOrder.BIG_ENDIAN).getInt()));
+                        buffer.order(ByteOrder.LITTLE_ENDIAN);
+                        break;
+                    }
+                    default: {
+                        entries.add(String.valueOf(integerOf(buffer, encoding)));
+                        break;
+                    }
+                }
+            }
+        } catch (RuntimeException exception) {
+            throw new RdbFormatException("Corrupt ziplist.", exception);
+        }
+        return entries;
+    }
+
+    /**
+     * Decodes the entries of a listpack (the encoding that replaced the
+     * ziplist as of RDB version 10), in which every entry is followed by its
+     * own length instead of being preceded by that of the previous entry.
+     */
+    private static List<String> listpackOf(byte[] listpack) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(listpack).order(ByteOrder.LITTLE_ENDIAN);
+        // Skip the total size and the number of entries.
+        buffer.position(6);
+        List<String> entries = new ArrayList<String>();
+        try {
+            while ((buffer.get(buffer.position()) & 0xFF) != 0xFF) {
+                int start = buffer.position();
+                int encoding = buffer.get() & 0xFF;
+                if ((encoding & 0x80) == 0) {
+                    entries.add(String.valueOf(encoding));
+                } else if ((encoding & 0xC0) == 0x80) {
+                    entries.add(stringOf(buffer, encoding & 0x3F));
+                } else if ((encoding & 0xE0) == 0xC0) {
+                    // A 13-bit integer, sign-extended.
+                    int value = ((encoding & 0x1F) << 8) | (buffer.get() & 0xFF);
+                    entries.add(String.valueOf(value >= 1 << 12 ? value - (1 << 13) : value));
+                } else if ((encoding & 0xF0) == 0xE0) {
+                    entries.add(stringOf(buffer, ((encoding & 0x0F) << 8) | (buffer.get() & 0xFF)));
+                } else {
+                    entries.add(listpackEntryOf(buffer, encoding));
+                }
+                skipBacklength(buffer, buffer.position() - start);
+            }
+        } catch (RuntimeException exception) {
+            throw new RdbFormatException("Corrupt listpack.", exception);
+        }
+        return entries;
+    }
+
+    private static String listpackEntryOf(ByteBuffer buffer, int encoding) throws IOException {
+        switch (encoding) {
+            case 0xF0: {
+                return stringOf(buffer, buffer.getInt());
+            }
+            case 0xF1: {
+                return String.valueOf(buffer.getShort());
+            }
+            case 0xF2: {
+                // A 24-bit integer, sign-extended.
+                int value = (buffer.get() & 0xFF) | ((buffer.get() & 0xFF) << 8) | (buffer.get() << 16);
+                return String.valueOf(value);
+            }
+            case 0xF3: {
+                return String.valueOf(buffer.getInt());
+            }
+            case 0xF4: {
+                return String.valueOf(buffer.getLong());
+            }
+            default: {
+                throw new RdbFormatException("Unsupported listpack encoding " + encoding + ".");
+            }
+        }
+    }
+
+    /**
+     * Skips the length of an entry of a listpack, which follows the entry and
+     * takes one byte for (about) every 7 bits of the length.
+     */
+    private static void skipBacklength(ByteBuffer buffer, int length) {
+        int size = 5;
+        if (length <= 127) {
+            size = 1;
+        } else if (length < 16383) {
+            size = 2;
+        } else if (length < 2097151) {
+            size = 3;
+        } else if (length < 268435455) {
+            size = 4;
+        }
+        buffer.position(buffer.position() + size);
+    }
+
+    private static long integerOf(ByteBuffer buffer, int encoding) throws IOException {
+        switch (encoding) {
+            case 0xC0: {
+                return buffer.getShort();
+            }
+            case 0xD0: {
+                return buffer.getInt();
+            }
+            case 0xE0: {
+                return buffer.getLong();
+            }
+            case 0xF0: {
+                // A 24-bit integer, sign-extended.
+                int value = (buffer.get() & 0xFF) | ((buffer.get() & 0xFF) << 8) | (buffer.get() << 16);
+                return value;
+            }
+            case 0xFE: {
+                return buffer.get();
+            }
+            default: {
+                if (encoding >= 0xF1 && encoding <= 0xFD) {
+                    return (encoding & 0x0F) - 1;
+                }
+                throw new RdbFormatException("Unsupported ziplist encoding " + encoding + ".");
+            }
+        }
+    }
+
+    private static String stringOf(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return SafeEncoder.encode(bytes);
+    }
+
+    /**
+     * Decodes the members of an intset, which are integers of the same size
+     * (2, 4 or 8 bytes).
+     */
+    private static Set<String> intsetOf(byte[] intset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(intset).order(ByteOrder.LITTLE_ENDIAN);
+        int encoding = buffer.getInt();
+        int size = buffer.getInt();
+        Set<String> members = new LinkedHashSet<String>();
+        for (int index = 0; index < size; index++) {
+            switch (encoding) {
+                case 2: {
+                    members.add(String.valueOf(buffer.getShort()));
+                    break;
+                }
+                case 4: {
+                    members.add(String.valueOf(buffer.getInt()));
+                    break;
+                }
+                case 8: {
+                    members.add(String.valueOf(buffer.getLong()));
+                    break;
+                }
+                default: {
+                    throw new RdbFormatException("Unsupported intset encoding " + encoding + ".");
+                }
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Decodes the entries of a zipmap (the encoding of small hashes before
+     * RDB version 4).
+     */
+    private static Map<String, String> zipmapOf(byte[] zipmap) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(zipmap).order(ByteOrder.LITTLE_ENDIAN);
+        // Skip the number of entries.
+        buffer.get();
+        Map<String, String> hash = new LinkedHashMap<String, String>();
+        try {
+            int length = 0;
+            while ((length = zipmapLengthOf(buffer)) >= 0) {
+                String field = stringOf(buffer, length);
+                length = zipmapLengthOf(buffer);
+                int free = buffer.get() & 0xFF;
+                hash.put(field, stringOf(buffer, length));
+                buffer.position(buffer.position() + free);
+            }
+        } catch (RuntimeException exception) {
+            throw new RdbFormatException("Corrupt zipmap.", exception);
+        }
+        return hash;
+    }
+
+    /**
+     * Reads the length of the next zipmap string, or returns -1 at the end of
+     * the zipmap.
+     */
+    private static int zipmapLengthOf(ByteBuffer buffer) {
+        int length = buffer.get() & 0xFF;
+        if (length == 255) {
+            return -1;
+        }
+        return length == 254 ? buffer.getInt() : length;
+    }
+}
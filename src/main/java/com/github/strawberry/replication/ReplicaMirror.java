@@ -0,0 +1,458 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.replication;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.github.strawberry.client.RequestEncoder;
+import com.github.strawberry.client.ReplyDecoder;
+import com.github.strawberry.redis.Keyspace;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisSource;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+/**
+ * A {@link RedisSource} that keeps a local mirror of the keys of a Redis
+ * database that match a {@link KeyFilter} (typically those of the
+ * {@link com.github.strawberry.guice.Redis}-annotated fields of an
+ * application, see {@link KeyFilter#of(Class...)}). The mirror connects to
+ * the database as a replica would (with PSYNC, or SYNC on servers that predate
+ * it): the dump of the database that the master sends first is parsed into a
+ * {@link Keyspace} (see {@link RdbParser}), after which the write commands
+ * that the master propagates are applied to it as they arrive (see
+ * {@link CommandApplier}). Callbacks are run against the mirror, thus loads
+ * never wait for the network, and see changes as soon as they have been
+ * replicated.
+ * 
+ * <p>
+ * Callbacks that are run before the first dump has been received wait for it
+ * for up to the timeout. When the connection fails (or a command that cannot
+ * be applied locally is received), the mirror reconnects and resynchronizes
+ * from a fresh dump, while still serving the previous contents in the
+ * meantime. Failed attempts are retried after a delay that doubles with every
+ * attempt, and the mirror gives up on the master altogether once several
+ * dumps in a row could not be parsed (see {@link RdbFormatException}), as the
+ * next dump is bound to contain the same data.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class ReplicaMirror implements RedisSource, Closeable {
+
+    /**
+     * The default time in milliseconds after which a silent master is
+     * considered to be down (the default repl-timeout of Redis).
+     */
+    public static final int DEFAULT_TIMEOUT = 60000;
+
+    /**
+     * The interval in milliseconds at which the processed offset is
+     * acknowledged to the master, which disconnects replicas that do not do
+     * so.
+     */
+    private static final long ACK_INTERVAL = 1000;
+
+    private static final long RETRY_DELAY = 1000;
+
+    private static final long MAX_RETRY_DELAY = 60000;
+
+    /**
+     * The number of dumps in a row that may fail to parse before the mirror
+     * gives up on the master.
+     */
+    private static final int MAX_PARSE_FAILURES = 3;
+
+    /**
+     * The length of the delimiter that surrounds a dump that the master
+     * streams to its replicas without knowing its length upfront.
+     */
+    private static final int EOF_MARK_LENGTH = 40;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * An {@link InputStream} over the given number of bytes of another
+     * stream.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        LimitedInputStream(InputStream input, long length) {
+            super(input);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            int read = super.read();
+            if (read >= 0) {
+                this.remaining--;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int)Math.min(length, this.remaining));
+            if (read > 0) {
+                this.remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long length) throws IOException {
+            long skipped = super.skip(Math.min(length, this.remaining));
+            if (skipped > 0) {
+                this.remaining -= skipped;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int)Math.min(super.available(), this.remaining);
+        }
+
+        void skipRemaining() throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (read(buffer, 0, buffer.length) >= 0) {
+                continue;
+            }
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final KeyFilter filter;
+    private final int timeout;
+
+    private final Thread replicator;
+    private final ScheduledExecutorService acknowledger;
+    private final CountDownLatch synced = new CountDownLatch(1);
+
+    private volatile Keyspace keyspace = new Keyspace();
+    private volatile long offset = -1;
+    private volatile Socket socket;
+    private volatile boolean closed;
+    private volatile RdbFormatException abandoned;
+
+    /**
+     * The number of dumps that have been received (only accessed by the
+     * replicator).
+     */
+    private long dumps;
+
+    /**
+     * Initializes a newly created {@code ReplicaMirror} of the keys of the
+     * database at the given host and port that match the given filter, with
+     * a timeout of {@link #DEFAULT_TIMEOUT} milliseconds.
+     */
+    public ReplicaMirror(String host, int port, KeyFilter filter) {
+        this(host, port, filter, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Initializes a newly created {@code ReplicaMirror}.
+     * @param host The host of the Redis database.
+     * @param port The port of the Redis database.
+     * @param filter The filter of the keys to mirror.
+     * @param timeout The connect timeout, the time to wait for the first dump
+     * and the time after which a silent master is considered to be down, in
+     * milliseconds.
+     */
+    public ReplicaMirror(String host, int port, KeyFilter filter, int timeout) {
+        this.host = host;
+        this.port = port;
+        this.filter = filter;
+        this.timeout = timeout;
+        this.acknowledger = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("strawberry-replica-ack").build());
+        this.replicator = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("strawberry-replica-mirror").build().
+            newThread(new Runnable() {
+                @Override
+                public void run() {
+                    replicate();
+                }
+            });
+        this.replicator.start();
+    }
+
+    /**
+     * Waits for the first dump of the database to have been received.
+     * @return False if the dump was not received in time.
+     */
+    public boolean awaitSync(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.synced.await(timeout, unit);
+    }
+
+    /**
+     * Returns whether the first dump of the database has been received.
+     */
+    public boolean isSynchronized() {
+        return this.synced.getCount() == 0;
+    }
+
+    /**
+     * Returns the replication offset up to which the mirror has received the
+     * commands of the master, or -1 if it is not known.
+     */
+    public long offset() {
+        return this.offset;
+    }
+
+    /**
+     * Returns the current contents of the mirror.
+     */
+    public Keyspace keyspace() {
+        return this.keyspace;
+    }
+
+    @Override
+    public <T> T _do(F<RedisCommands, T> callback) {
+        if (!isSynchronized()) {
+            try {
+                if (this.abandoned != null || !awaitSync(this.timeout, TimeUnit.MILLISECONDS)) {
+                    throw new JedisConnectionException(
+                        "Mirror of " + this.host + ":" + this.port + " has not been synchronized.", this.abandoned);
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new JedisConnectionException(exception);
+            }
+        }
+        return this.keyspace._do(callback);
+    }
+
+    private void replicate() {
+        long delay = RETRY_DELAY;
+        int parseFailures = 0;
+        while (!this.closed) {
+            boolean resync = false;
+            long dumps = this.dumps;
+            try {
+                resync = synchronize();
+            } catch (RdbFormatException exception) {
+                if (++parseFailures >= MAX_PARSE_FAILURES) {
+                    this.abandoned = exception;
+                    return;
+                }
+            } catch (IOException exception) {
+                // Reconnect below.
+            } catch (RuntimeException exception) {
+                // Reconnect below.
+            } finally {
+                closeSocket();
+            }
+            if (this.dumps != dumps) {
+                // A dump was received, thus the master is healthy again.
+                delay = RETRY_DELAY;
+                parseFailures = 0;
+            }
+            if (!resync && !this.closed) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException exception) {
+                    return;
+                }
+                delay = Math.min(delay * 2, MAX_RETRY_DELAY);
+            }
+        }
+    }
+
+    /**
+     * Connects to the master, receives a dump and applies the commands that
+     * follow until the connection fails.
+     * @return True if the mirror has to resynchronize right away.
+     */
+    private boolean synchronize() throws IOException {
+        Socket socket = new Socket();
+        this.socket = socket;
+        if (this.closed) {
+            return false;
+        }
+        socket.connect(new InetSocketAddress(this.host, this.port), this.timeout);
+        socket.setSoTimeout(this.timeout);
+        InputStream input = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+        final OutputStream output = socket.getOutputStream();
+
+        output.write(RequestEncoder.encode("PSYNC", "?", "-1"));
+        output.flush();
+        String reply = readLine(input);
+        long offset = -1;
+        if (reply.startsWith("+FULLRESYNC")) {
+            offset = Long.parseLong(reply.split(" ")[2]);
+        } else if (reply.startsWith("-")) {
+            output.write(RequestEncoder.encode("SYNC"));
+            output.flush();
+        } else {
+            throw new IOException("Unexpected reply to PSYNC: " + reply);
+        }
+        reply = readLine(input);
+        if (!reply.startsWith("$")) {
+            throw new IOException("Unexpected dump header: " + reply);
+        }
+        Keyspace keyspace = new Keyspace();
+        if (reply.startsWith("$EOF:")) {
+            // A diskless dump, which is followed by the same random mark that
+            // its header carries instead of being preceded by its length.
+            new RdbParser(input, this.filter).parseInto(keyspace);
+            byte[] mark = new byte[EOF_MARK_LENGTH];
+            new DataInputStream(input).readFully(mark);
+            if (!SafeEncoder.encode(mark).equals(reply.substring(5))) {
+                throw new IOException("Dump does not end with its mark.");
+            }
+        } else {
+            LimitedInputStream dump = new LimitedInputStream(input, Long.parseLong(reply.substring(1)));
+            new RdbParser(dump, this.filter).parseInto(keyspace);
+            dump.skipRemaining();
+        }
+        this.dumps++;
+        this.keyspace = keyspace;
+        this.offset = offset;
+        this.synced.countDown();
+
+        ScheduledFuture<?> acknowledgements = null;
+        if (offset >= 0) {
+            acknowledgements = this.acknowledger.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    acknowledge(output);
+                }
+            }, ACK_INTERVAL, ACK_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+        try {
+            return apply(input, keyspace, offset);
+        } finally {
+            if (acknowledgements != null) {
+                acknowledgements.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Applies the commands of the replication stream to the given keyspace.
+     * @return True if a command could not be applied.
+     */
+    private boolean apply(InputStream input, Keyspace keyspace, long offset) throws IOException {
+        CommandApplier applier = new CommandApplier(this.filter);
+        ReplyDecoder decoder = new ReplyDecoder();
+        List<Object> commands = new ArrayList<Object>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read = 0;
+        while ((read = input.read(buffer)) != -1) {
+            decoder.decode(ByteBuffer.wrap(buffer, 0, read), commands);
+            for (Object command : commands) {
+                if (command instanceof List && !applier.apply(keyspace, (List<?>)command)) {
+                    return true;
+                }
+            }
+            commands.clear();
+            if (offset >= 0) {
+                offset += read;
+                this.offset = offset;
+            }
+        }
+        throw new IOException("Connection closed by master.");
+    }
+
+    private void acknowledge(OutputStream output) {
+        try {
+            synchronized (output) {
+                output.write(RequestEncoder.encode("REPLCONF", "ACK", String.valueOf(this.offset)));
+                output.flush();
+            }
+        } catch (IOException exception) {
+            // The replicator notices the failure as well.
+        }
+    }
+
+    /**
+     * Reads a line of the handshake, skipping the empty lines that a master
+     * sends to keep the connection alive while it prepares the dump.
+     */
+    private static String readLine(InputStream input) throws IOException {
+        while (true) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int next = 0;
+            while ((next = input.read()) != '\n') {
+                if (next == -1) {
+                    throw new IOException("Connection closed by master.");
+                }
+                if (next != '\r') {
+                    line.write(next);
+                }
+            }
+            if (line.size() > 0) {
+                return SafeEncoder.encode(line.toByteArray());
+            }
+        }
+    }
+
+    private void closeSocket() {
+        Socket socket = this.socket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException exception) {
+                // Nothing more can be done about it.
+            }
+        }
+    }
+
+    /**
+     * Disconnects from the master. The mirror keeps serving its last
+     * contents.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        closeSocket();
+        this.replicator.interrupt();
+        this.acknowledger.shutdownNow();
+    }
+}
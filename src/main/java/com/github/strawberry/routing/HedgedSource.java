@@ -0,0 +1,170 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisSource;
+import com.github.strawberry.util.LatencyHistogram;
+import com.google.common.util.concurrent.SettableFuture;
+
+import fj.F;
+
+/**
+ * A {@link RedisSource} that hedges reads to cut their tail latency: if a
+ * read has not completed after a delay (the given percentile of the recent
+ * latencies of reads), the same read is sent to the next source as well, and
+ * whichever completes first wins. Reads are spread over the sources in a
+ * round-robin fashion, and a single source may be given, in which case the
+ * hedged read is sent over another connection of that same source.
+ * 
+ * <p>
+ * Reads are only hedged once enough latencies have been recorded for the
+ * percentile to be meaningful, and never sooner than the given minimum delay.
+ * The latencies of all reads (including those that lost) are recorded, thus
+ * the delay follows the latency of a single read rather than that of hedged
+ * reads.
+ * </p>
+ * 
+ * <b>Note</b>: callbacks are executed on the given {@link ExecutorService},
+ * and a hedged callback is executed twice (concurrently), thus callbacks must
+ * be free of side-effects (as those of a
+ * {@link com.github.strawberry.redis.RedisLoader} are). The read that loses is
+ * not interrupted, but allowed to complete and then discarded.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class HedgedSource implements RedisSource {
+
+    /**
+     * The number of latencies to record before reads are hedged.
+     */
+    static final int MIN_SAMPLES = 20;
+
+    private final List<RedisSource> sources;
+    private final ExecutorService executor;
+    private final double percentile;
+    private final long minDelay;
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Initializes a newly created {@code HedgedSource}.
+     * @param sources The sources to which reads (and hedged reads) are sent.
+     * @param executor The executor on which reads are executed.
+     * @param percentile The percentile of recent latencies after which reads
+     * are hedged, in the range {@code (0, 1]}.
+     * @param minDelay The minimum delay after which reads are hedged.
+     * @param unit The unit of the minimum delay.
+     */
+    public HedgedSource(List<? extends RedisSource> sources, ExecutorService executor, double percentile, long minDelay, TimeUnit unit) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("At least one source is required.");
+        }
+        if (percentile <= 0 || percentile > 1) {
+            throw new IllegalArgumentException("Percentile must be in the range (0, 1].");
+        }
+        this.sources = new ArrayList<RedisSource>(sources);
+        this.executor = executor;
+        this.percentile = percentile;
+        this.minDelay = unit.toNanos(minDelay);
+    }
+
+    /**
+     * Returns the histogram of the latencies of reads.
+     */
+    public LatencyHistogram histogram() {
+        return this.histogram;
+    }
+
+    /**
+     * Returns the current delay (in nanoseconds) after which reads are hedged,
+     * or -1 if reads are not hedged (yet).
+     */
+    public long hedgeDelay() {
+        if (this.histogram.count() < MIN_SAMPLES) {
+            return -1;
+        }
+        return Math.max(this.minDelay, this.histogram.percentile(this.percentile));
+    }
+
+    private <T> void attempt(final RedisSource source, final F<RedisCommands, T> callback,
+        final SettableFuture<T> result, final AtomicInteger outstanding) {
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    T value = source._do(callback);
+                    histogram.record(System.nanoTime() - start);
+                    result.set(value);
+                } catch (Throwable throwable) {
+                    if (outstanding.decrementAndGet() == 0) {
+                        result.setException(throwable);
+                    }
+                }
+            }
+        });
+    }
+
+    private static <T> T valueOf(SettableFuture<T> result, long timeout) throws TimeoutException {
+        try {
+            return timeout < 0 ? result.get() : result.get(timeout, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(exception);
+        }
+    }
+
+    @Override
+    public <T> T _do(F<RedisCommands, T> callback) {
+        int first = (this.next.getAndIncrement() & Integer.MAX_VALUE) % this.sources.size();
+        SettableFuture<T> result = SettableFuture.create();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        long delay = hedgeDelay();
+        attempt(this.sources.get(first), callback, result, outstanding);
+        try {
+            return valueOf(result, delay);
+        } catch (TimeoutException exception) {
+            outstanding.incrementAndGet();
+            attempt(this.sources.get((first + 1) % this.sources.size()), callback, result, outstanding);
+            try {
+                return valueOf(result, -1);
+            } catch (TimeoutException impossible) {
+                throw new AssertionError(impossible);
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisSource;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import fj.F;
+
+/**
+ * A {@link RedisSource} that spreads keys over several independent Redis
+ * databases by prefix, for example to keep large, rarely read catalog data
+ * apart from small, frequently read configuration:
+ * 
+ * <pre>
+ * Map&lt;String, RedisSource&gt; routes = new LinkedHashMap&lt;String, RedisSource&gt;();
+ * routes.put("config:", new JedisPoolSource(configPool));
+ * routes.put("catalog:", new JedisPoolSource(catalogPool));
+ * RedisSource source = new PrefixRoutingSource(new JedisPoolSource(defaultPool), routes);
+ * </pre>
+ * 
+ * A command that concerns a single key is sent to the source of the longest
+ * prefix of that key, or to the default source if no prefix matches. A
+ * pattern (see {@link RedisCommands#keys(String)}) is sent to every source
+ * that may hold matching keys, and the values of keys that belong to different
+ * sources (see {@link RedisCommands#valuesOf(List)}) are retrieved from each
+ * of these sources concurrently, thus a load that spans several sources takes
+ * as long as the slowest of them rather than all of them together.
+ * 
+ * <p>
+ * Every command acquires a connection of its own from the source it is routed
+ * to, thus the commands of a single callback may be sent over different
+ * connections.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class PrefixRoutingSource implements RedisSource {
+
+    private final RedisSource fallback;
+    private final Map<String, RedisSource> routes;
+    private final ExecutorService executor;
+    private final RedisCommands commands;
+
+    /**
+     * Initializes a newly created {@code PrefixRoutingSource} that retrieves
+     * keys from different sources on a pool of daemon threads.
+     * @param fallback The source of keys that do not match any prefix.
+     * @param routes The sources of keys that start with the given prefixes.
+     */
+    public PrefixRoutingSource(RedisSource fallback, Map<String, ? extends RedisSource> routes) {
+        this(fallback, routes, Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("prefix-routing-%d").setDaemon(true).build()));
+    }
+
+    /**
+     * Initializes a newly created {@code PrefixRoutingSource}.
+     * @param fallback The source of keys that do not match any prefix.
+     * @param routes The sources of keys that start with the given prefixes.
+     * @param executor The executor on which commands are sent to different
+     * sources concurrently.
+     */
+    public PrefixRoutingSource(RedisSource fallback, Map<String, ? extends RedisSource> routes, ExecutorService executor) {
+        List<String> prefixes = new ArrayList<String>(routes.keySet());
+        // Longest prefixes first, so that the first match is the most specific.
+        Collections.sort(prefixes, new Comparator<String>() {
+            @Override
+            public int compare(String first, String second) {
+                return second.length() - first.length();
+            }
+        });
+        this.routes = new LinkedHashMap<String, RedisSource>();
+        for (String prefix : prefixes) {
+            this.routes.put(prefix, routes.get(prefix));
+        }
+        this.fallback = fallback;
+        this.executor = executor;
+        this.commands = new RoutingCommands(this);
+    }
+
+    /**
+     * Returns the source of the given key: the source of its longest prefix,
+     * or the default source if no prefix matches.
+     */
+    public RedisSource sourceOf(String key) {
+        for (Map.Entry<String, RedisSource> route : this.routes.entrySet()) {
+            if (key.startsWith(route.getKey())) {
+                return route.getValue();
+            }
+        }
+        return this.fallback;
+    }
+
+    /**
+     * Returns the literal part of the given pattern that precedes its first
+     * special character.
+     */
+    static String prefixOf(String pattern) {
+        for (int index = 0; index < pattern.length(); index++) {
+            char c = pattern.charAt(index);
+            if (c == '*' || c == '?' || c == '[' || c == '\\') {
+                return pattern.substring(0, index);
+            }
+        }
+        return pattern;
+    }
+
+    /**
+     * Returns the sources that may hold keys that match the given pattern:
+     * the source of the literal prefix of the pattern, as well as the sources
+     * of all (longer) prefixes that start with it.
+     */
+    List<RedisSource> sourcesOf(String pattern) {
+        String prefix = prefixOf(pattern);
+        Set<RedisSource> sources = Collections.newSetFromMap(new IdentityHashMap<RedisSource, Boolean>());
+        List<RedisSource> ordered = new ArrayList<RedisSource>();
+        RedisSource first = sourceOf(prefix);
+        sources.add(first);
+        ordered.add(first);
+        for (Map.Entry<String, RedisSource> route : this.routes.entrySet()) {
+            if (route.getKey().startsWith(prefix) && sources.add(route.getValue())) {
+                ordered.add(route.getValue());
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Returns the source of keys that do not match any prefix.
+     */
+    RedisSource fallback() {
+        return this.fallback;
+    }
+
+    /**
+     * Returns the executor on which commands are sent to different sources
+     * concurrently.
+     */
+    ExecutorService executor() {
+        return this.executor;
+    }
+
+    @Override
+    public <T> T _do(F<RedisCommands, T> callback) {
+        return callback.f(this.commands);
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.routing;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisSource;
+import com.github.strawberry.util.Info;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import fj.F;
+
+/**
+ * A {@link RedisSource} that sends reads to the read-replica of a primary
+ * Redis database with the lowest measured latency, thus taking load off the
+ * primary and avoiding replicas in distant zones.
+ * 
+ * <p>
+ * Replicas are probed in the background (using INFO) at a fixed interval.
+ * Every probe measures the round-trip latency to the replica, which is
+ * smoothed into an exponentially weighted moving average, and determines
+ * whether the replica is fit to serve reads: its link to the primary has to be
+ * up, and its replication offset may not lag behind that of the primary by
+ * more than a given number of bytes. Reads fall back to the primary when no
+ * replica is fit, as well as when a replica fails with a
+ * {@link JedisConnectionException} (after which the replica is avoided until
+ * it passes its next probe). Replicas are avoided until their first probe has
+ * completed.
+ * </p>
+ * 
+ * <b>Note</b>: replicas serve reads that may be slightly out of date.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class ReplicaRoutingSource implements RedisSource, Closeable {
+
+    /**
+     * The default maximum replication lag, in bytes of the replication stream.
+     */
+    public static final long DEFAULT_MAX_LAG = 1 << 20;
+
+    /**
+     * The weight of a new latency sample in the moving average.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    private static final F<RedisCommands, String> INFO = new F<RedisCommands, String>() {
+        @Override
+        public String f(RedisCommands redis) {
+            return redis.info();
+        }
+    };
+
+    private static final class Replica {
+
+        private final RedisSource source;
+
+        private volatile double latency = Double.NaN;
+        private volatile boolean fit;
+
+        private Replica(RedisSource source) {
+            this.source = source;
+        }
+
+        private synchronized void sample(long latency) {
+            this.latency = Double.isNaN(this.latency) ? latency : SMOOTHING * latency + (1 - SMOOTHING) * this.latency;
+        }
+    }
+
+    private final RedisSource primary;
+    private final List<Replica> replicas;
+    private final long maxLag;
+    private final ScheduledExecutorService prober;
+
+    /**
+     * Initializes a newly created {@code ReplicaRoutingSource} that probes its
+     * replicas every second and tolerates a lag of
+     * {@link #DEFAULT_MAX_LAG} bytes.
+     * @param primary The primary Redis database.
+     * @param replicas The read-replicas of the primary.
+     */
+    public ReplicaRoutingSource(RedisSource primary, List<? extends RedisSource> replicas) {
+        this(primary, replicas, DEFAULT_MAX_LAG, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Initializes a newly created {@code ReplicaRoutingSource}.
+     * @param primary The primary Redis database.
+     * @param replicas The read-replicas of the primary.
+     * @param maxLag The maximum number of bytes by which the replication
+     * offset of a replica may lag behind that of the primary.
+     * @param probeInterval The interval at which replicas are probed.
+     * @param unit The unit of the probe interval.
+     */
+    public ReplicaRoutingSource(RedisSource primary, List<? extends RedisSource> replicas, long maxLag, long probeInterval, TimeUnit unit) {
+        this.primary = primary;
+        List<Replica> toRoute = new ArrayList<Replica>(replicas.size());
+        for (RedisSource replica : replicas) {
+            toRoute.add(new Replica(replica));
+        }
+        this.replicas = Collections.unmodifiableList(toRoute);
+        this.maxLag = maxLag;
+        this.prober = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("strawberry-replica-prober").build());
+        this.prober.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                probe();
+            }
+        }, 0, probeInterval, unit);
+    }
+
+    private void probe() {
+        long primaryOffset = -1;
+        try {
+            primaryOffset = Info.longOf(Info.fieldsOf(this.primary._do(INFO)), "master_repl_offset", -1);
+        } catch (RuntimeException exception) {
+            // The lag of the replicas cannot be judged while the primary is
+            // unreachable, thus only their links are considered.
+        }
+        for (Replica replica : this.replicas) {
+            try {
+                long start = System.nanoTime();
+                Map<String, String> fields = Info.fieldsOf(replica.source._do(INFO));
+                replica.sample(System.nanoTime() - start);
+                long offset = Info.longOf(fields, "slave_repl_offset", -1);
+                replica.fit = "up".equals(fields.get("master_link_status")) &&
+                    (primaryOffset < 0 || (offset >= 0 && primaryOffset - offset <= this.maxLag));
+            } catch (RuntimeException exception) {
+                replica.fit = false;
+            }
+        }
+    }
+
+    /**
+     * Returns the fit replica with the lowest latency, or {@code null} if no
+     * replica is fit to serve reads.
+     */
+    private Replica fastest() {
+        Replica fastest = null;
+        for (Replica replica : this.replicas) {
+            if (replica.fit && (fastest == null || replica.latency < fastest.latency)) {
+                fastest = replica;
+            }
+        }
+        return fastest;
+    }
+
+    @Override
+    public <T> T _do(F<RedisCommands, T> callback) {
+        Replica replica = fastest();
+        if (replica != null) {
+            try {
+                return replica.source._do(callback);
+            } catch (JedisConnectionException exception) {
+                replica.fit = false;
+            }
+        }
+        return this.primary._do(callback);
+    }
+
+    /**
+     * Stops probing the replicas.
+     */
+    @Override
+    public void close() {
+        this.prober.shutdownNow();
+    }
+}
@@ -0,0 +1,332 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.github.strawberry.client.AbstractCommands;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisSource;
+import com.google.common.base.Throwables;
+
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+/**
+ * The commands of a {@link PrefixRoutingSource}, each of which is sent to the
+ * source of its key (or to the default source if it has none). Every command
+ * acquires a connection of its own from the source it is routed to.
+ * 
+ * <p>
+ * The sources that commands are routed to do not accept raw commands, thus
+ * every method of {@link RedisCommands} is routed by its typed counterpart
+ * rather than by {@link #call(Object...)}.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+final class RoutingCommands extends AbstractCommands {
+
+    private final PrefixRoutingSource source;
+
+    RoutingCommands(PrefixRoutingSource source) {
+        this.source = source;
+    }
+
+    private RedisSource sourceOf(byte[] key) {
+        return this.source.sourceOf(SafeEncoder.encode(key));
+    }
+
+    /**
+     * Raw commands cannot be routed, as the sources that commands are routed
+     * to only accept typed commands.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    protected Object call(Object... args) {
+        throw new UnsupportedOperationException("Command " + args[0] + " cannot be routed by prefix.");
+    }
+
+    /**
+     * Executes the given tasks concurrently: the first on the calling thread
+     * and all others on the executor of the source.
+     * @return The results, in the order of the given tasks.
+     */
+    private <T> List<T> inParallel(List<Callable<T>> tasks) {
+        List<Future<T>> others = new ArrayList<Future<T>>(tasks.size());
+        for (Callable<T> task : tasks.subList(1, tasks.size())) {
+            others.add(this.source.executor().submit(task));
+        }
+        boolean completed = false;
+        try {
+            List<T> results = new ArrayList<T>(tasks.size());
+            results.add(tasks.get(0).call());
+            for (Future<T> other : others) {
+                results.add(other.get());
+            }
+            completed = true;
+            return results;
+        } catch (ExecutionException exception) {
+            throw Throwables.propagate(exception.getCause());
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(exception);
+        } catch (Exception exception) {
+            throw Throwables.propagate(exception);
+        } finally {
+            if (!completed) {
+                for (Future<T> other : others) {
+                    other.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the keys that match the given pattern, as retrieved from every
+     * source that may hold such keys concurrently.
+     */
+    @Override
+    public Set<String> keys(final String pattern) {
+        final List<RedisSource> sources = this.source.sourcesOf(pattern);
+        List<Callable<Set<String>>> tasks = new ArrayList<Callable<Set<String>>>(sources.size());
+        for (final RedisSource source : sources) {
+            tasks.add(new Callable<Set<String>>() {
+                @Override
+                public Set<String> call() {
+                    return source._do(new F<RedisCommands, Set<String>>() {
+                        @Override
+                        public Set<String> f(RedisCommands redis) {
+                            return redis.keys(pattern);
+                        }
+                    });
+                }
+            });
+        }
+        Set<String> keys = new HashSet<String>();
+        List<Set<String>> results = inParallel(tasks);
+        for (int index = 0; index < sources.size(); index++) {
+            for (String key : results.get(index)) {
+                // Ignore keys that are held by a source they are not routed to.
+                if (this.source.sourceOf(key) == sources.get(index)) {
+                    keys.add(key);
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the values of the given keys, as retrieved from the sources of
+     * the keys concurrently.
+     */
+    @Override
+    public List<Object> valuesOf(List<String> keys) {
+        Map<RedisSource, List<Integer>> groups = new IdentityHashMap<RedisSource, List<Integer>>();
+        final List<RedisSource> sources = new ArrayList<RedisSource>();
+        for (int index = 0; index < keys.size(); index++) {
+            RedisSource source = this.source.sourceOf(keys.get(index));
+            List<Integer> group = groups.get(source);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                groups.put(source, group);
+                sources.add(source);
+            }
+            group.add(index);
+        }
+        if (sources.size() == 1) {
+            return valuesOf(sources.get(0), keys);
+        }
+        List<Callable<List<Object>>> tasks = new ArrayList<Callable<List<Object>>>(sources.size());
+        for (final RedisSource source : sources) {
+            final List<String> group = new ArrayList<String>();
+            for (int index : groups.get(source)) {
+                group.add(keys.get(index));
+            }
+            tasks.add(new Callable<List<Object>>() {
+                @Override
+                public List<Object> call() {
+                    return valuesOf(source, group);
+                }
+            });
+        }
+        List<List<Object>> results = inParallel(tasks);
+        Object[] values = new Object[keys.size()];
+        for (int source = 0; source < sources.size(); source++) {
+            List<Integer> group = groups.get(sources.get(source));
+            for (int index = 0; index < group.size(); index++) {
+                values[group.get(index)] = results.get(source).get(index);
+            }
+        }
+        List<Object> merged = new ArrayList<Object>(keys.size());
+        Collections.addAll(merged, values);
+        return merged;
+    }
+
+    private static List<Object> valuesOf(RedisSource source, final List<String> keys) {
+        return source._do(new F<RedisCommands, List<Object>>() {
+            @Override
+            public List<Object> f(RedisCommands redis) {
+                return redis.valuesOf(keys);
+            }
+        });
+    }
+
+    @Override
+    public String type(final String key) {
+        return this.source.sourceOf(key)._do(new F<RedisCommands, String>() {
+            @Override
+            public String f(RedisCommands redis) {
+                return redis.type(key);
+            }
+        });
+    }
+
+    @Override
+    public byte[] get(final byte[] key) {
+        return sourceOf(key)._do(new F<RedisCommands, byte[]>() {
+            @Override
+            public byte[] f(RedisCommands redis) {
+                return redis.get(key);
+            }
+        });
+    }
+
+    @Override
+    public Map<String, String> hgetAll(final String key) {
+        return this.source.sourceOf(key)._do(new F<RedisCommands, Map<String, String>>() {
+            @Override
+            public Map<String, String> f(RedisCommands redis) {
+                return redis.hgetAll(key);
+            }
+        });
+    }
+
+    @Override
+    public List<String> hmget(final String key, final String... fields) {
+        return this.source.sourceOf(key)._do(new F<RedisCommands, List<String>>() {
+            @Override
+            public List<String> f(RedisCommands redis) {
+                return redis.hmget(key, fields);
+            }
+        });
+    }
+
+    @Override
+    public List<String> lrange(final String key, final long start, final long end) {
+        return this.source.sourceOf(key)._do(new F<RedisCommands, List<String>>() {
+            @Override
+            public List<String> f(RedisCommands redis) {
+                return redis.lrange(key, start, end);
+            }
+        });
+    }
+
+    @Override
+    public List<byte[]> lrange(final byte[] key, final int start, final int end) {
+        return sourceOf(key)._do(new F<RedisCommands, List<byte[]>>() {
+            @Override
+            public List<byte[]> f(RedisCommands redis) {
+                return redis.lrange(key, start, end);
+            }
+        });
+    }
+
+    @Override
+    public Set<String> smembers(final String key) {
+        return this.source.sourceOf(key)._do(new F<RedisCommands, Set<String>>() {
+            @Override
+            public Set<String> f(RedisCommands redis) {
+                return redis.smembers(key);
+            }
+        });
+    }
+
+    @Override
+    public Set<byte[]> smembers(final byte[] key) {
+        return sourceOf(key)._do(new F<RedisCommands, Set<byte[]>>() {
+            @Override
+            public Set<byte[]> f(RedisCommands redis) {
+                return redis.smembers(key);
+            }
+        });
+    }
+
+    @Override
+    public Set<String> zrange(final String key, final int start, final int end) {
+        return this.source.sourceOf(key)._do(new F<RedisCommands, Set<String>>() {
+            @Override
+            public Set<String> f(RedisCommands redis) {
+                return redis.zrange(key, start, end);
+            }
+        });
+    }
+
+    @Override
+    public Set<byte[]> zrange(final byte[] key, final int start, final int end) {
+        return sourceOf(key)._do(new F<RedisCommands, Set<byte[]>>() {
+            @Override
+            public Set<byte[]> f(RedisCommands redis) {
+                return redis.zrange(key, start, end);
+            }
+        });
+    }
+
+    @Override
+    public Long strlen(final byte[] key) {
+        return sourceOf(key)._do(new F<RedisCommands, Long>() {
+            @Override
+            public Long f(RedisCommands redis) {
+                return redis.strlen(key);
+            }
+        });
+    }
+
+    @Override
+    public byte[] getrange(final byte[] key, final int start, final int end) {
+        return sourceOf(key)._do(new F<RedisCommands, byte[]>() {
+            @Override
+            public byte[] f(RedisCommands redis) {
+                return redis.getrange(key, start, end);
+            }
+        });
+    }
+
+    /**
+     * Returns the information of the default source.
+     */
+    @Override
+    public String info() {
+        return this.source.fallback()._do(new F<RedisCommands, String>() {
+            @Override
+            public String f(RedisCommands redis) {
+                return redis.info();
+            }
+        });
+    }
+}
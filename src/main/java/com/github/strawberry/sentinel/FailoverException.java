@@ -0,0 +1,35 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.sentinel;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * Thrown when a load is rejected without being attempted because the master
+ * that a {@link SentinelSource} sends commands to is failing over.
+ * 
+ * @author Wiehann Matthysen
+ */
+public class FailoverException extends JedisConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public FailoverException(String message) {
+        super(message);
+    }
+}
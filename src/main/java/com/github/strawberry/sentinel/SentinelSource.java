@@ -0,0 +1,426 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.sentinel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.github.strawberry.client.AsyncConnection;
+import com.github.strawberry.client.ConnectionFactory;
+import com.github.strawberry.client.MultiplexedCommands;
+import com.github.strawberry.client.MultiplexedConnection;
+import com.github.strawberry.redis.JedisPoolSource;
+import com.github.strawberry.redis.PausableRefresh;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisSource;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+/**
+ * A {@link RedisSource} that sends commands to the current master of a set of
+ * Redis databases monitored by Redis Sentinel. The address of the master (and
+ * of its replicas) is asked from the sentinels on creation and then polled at
+ * a fixed interval (over a connection to every sentinel that is kept open
+ * between polls), as well as right after any connection failure. When a
+ * sentinel reports a new master, a source for it is created by the given
+ * {@link Factory} (by default one that borrows connections from a
+ * {@link JedisPool}) and swapped in, after which the source of the old master
+ * is closed.
+ * 
+ * <p>
+ * From the first connection failure until the (same or new) master replies
+ * again, the master is considered to be failing over: every callback then
+ * fails right away with a {@link FailoverException}, upon which a
+ * {@link com.github.strawberry.redis.RedisLoader} that keeps
+ * {@link com.github.strawberry.redis.StaleValues} serves the value it loaded
+ * last for the same field (if any), and any {@code RedisLoader} keeps cached
+ * values instead of refreshing them (see
+ * {@link com.github.strawberry.redis.PausableRefresh}). Values that were cached before the failover are therefore
+ * still served while it lasts, and after it.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class SentinelSource implements RedisSource, PausableRefresh, Closeable {
+
+    /**
+     * Creates the {@link RedisSource} through which commands are sent to a
+     * master. If the source is {@link Closeable}, it is closed once another
+     * master has taken over.
+     */
+    public interface Factory {
+
+        /**
+         * Returns a source of commands to the master at the given host and
+         * port.
+         */
+        public RedisSource sourceOf(String host, int port);
+    }
+
+    /**
+     * The default interval in milliseconds at which the sentinels are polled.
+     */
+    public static final long DEFAULT_POLL_INTERVAL = 1000;
+
+    /**
+     * A {@link Factory} that creates a {@link JedisPool} for every master, and
+     * destroys it once another master has taken over.
+     */
+    public static final Factory POOLED = new Factory() {
+        @Override
+        public RedisSource sourceOf(String host, int port) {
+            return new PooledSource(new JedisPool(host, port));
+        }
+    };
+
+    private static final F<RedisCommands, String> PROBE = new F<RedisCommands, String>() {
+        @Override
+        public String f(RedisCommands redis) {
+            return redis.info();
+        }
+    };
+
+    /**
+     * The master that commands are currently sent to.
+     */
+    private static final class Master {
+
+        final String address;
+        final RedisSource source;
+
+        Master(String address, RedisSource source) {
+            this.address = address;
+            this.source = source;
+        }
+    }
+
+    private static final class PooledSource implements RedisSource, Closeable {
+
+        private final JedisPool pool;
+        private final JedisPoolSource source;
+
+        PooledSource(JedisPool pool) {
+            this.pool = pool;
+            this.source = new JedisPoolSource(pool);
+        }
+
+        @Override
+        public <T> T _do(F<RedisCommands, T> callback) {
+            return this.source._do(callback);
+        }
+
+        @Override
+        public void close() {
+            this.pool.destroy();
+        }
+    }
+
+    private final String masterName;
+    private final List<String> sentinels;
+    private final ConnectionFactory connections;
+    private final int timeout;
+    private final Factory factory;
+
+    private final ScheduledExecutorService poller;
+    private final Map<String, AsyncConnection> sentinelConnections = new HashMap<String, AsyncConnection>();
+    private boolean closed;
+
+    private volatile Master master;
+    private volatile List<String> replicas = Collections.emptyList();
+    private volatile boolean failingOver;
+
+    /**
+     * Initializes a newly created {@code SentinelSource} that creates a
+     * {@link JedisPool} for every master (see {@link #POOLED}), and that polls
+     * the sentinels every {@link #DEFAULT_POLL_INTERVAL} milliseconds.
+     * @param masterName The name under which the sentinels monitor the
+     * master.
+     * @param sentinels The addresses ("host:port") of one or more sentinels.
+     * @throws JedisConnectionException if no sentinel knows the master.
+     */
+    public SentinelSource(String masterName, List<String> sentinels) {
+        this(masterName, sentinels, new ConnectionFactory() {
+            @Override
+            public AsyncConnection connect(String host, int port) {
+                return new MultiplexedConnection(host, port, Protocol.DEFAULT_TIMEOUT);
+            }
+        }, Protocol.DEFAULT_TIMEOUT, POOLED, DEFAULT_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Initializes a newly created {@code SentinelSource}.
+     * @param masterName The name under which the sentinels monitor the
+     * master.
+     * @param sentinels The addresses ("host:port") of one or more sentinels.
+     * @param connections The factory that opens the connections to the
+     * sentinels.
+     * @param timeout The time in milliseconds to wait for each reply of a
+     * sentinel.
+     * @param factory The factory that creates the source of every master.
+     * @param pollInterval The interval at which the sentinels are polled.
+     * @param unit The unit of the poll interval.
+     * @throws JedisConnectionException if no sentinel knows the master.
+     */
+    public SentinelSource(String masterName, List<String> sentinels, ConnectionFactory connections, int timeout,
+        Factory factory, long pollInterval, TimeUnit unit) {
+        if (sentinels.isEmpty()) {
+            throw new IllegalArgumentException("At least one sentinel is required.");
+        }
+        this.masterName = masterName;
+        this.sentinels = new ArrayList<String>(sentinels);
+        this.connections = connections;
+        this.timeout = timeout;
+        this.factory = factory;
+        String address = queryMaster();
+        this.master = new Master(address, sourceOf(address));
+        this.replicas = queryReplicas();
+        this.poller = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("strawberry-sentinel-poller").build());
+        this.poller.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, pollInterval, pollInterval, unit);
+    }
+
+    /**
+     * Returns the address ("host:port") of the master that commands are
+     * currently sent to.
+     */
+    public String master() {
+        return this.master.address;
+    }
+
+    /**
+     * Returns the addresses ("host:port") of the replicas of the master that
+     * the sentinels consider to be up, as of the last poll.
+     */
+    public List<String> replicas() {
+        return this.replicas;
+    }
+
+    /**
+     * Returns whether the master is failing over, that is: whether callbacks
+     * are currently rejected.
+     */
+    public boolean isFailingOver() {
+        return this.failingOver;
+    }
+
+    /**
+     * Refreshes are paused while the master is failing over.
+     */
+    @Override
+    public boolean isRefreshPaused() {
+        return isFailingOver();
+    }
+
+    @Override
+    public <T> T _do(F<RedisCommands, T> callback) {
+        if (this.failingOver) {
+            throw new FailoverException("Master " + this.masterName + " is failing over.");
+        }
+        Master master = this.master;
+        try {
+            return master.source._do(callback);
+        } catch (JedisConnectionException exception) {
+            if (master == this.master && !this.failingOver) {
+                this.failingOver = true;
+                pollNow();
+            }
+            throw exception;
+        }
+    }
+
+    private void pollNow() {
+        if (!this.poller.isShutdown()) {
+            this.poller.execute(new Runnable() {
+                @Override
+                public void run() {
+                    poll();
+                }
+            });
+        }
+    }
+
+    /**
+     * Asks the sentinels for the current master, switching to it if it has
+     * changed, and ends a failover once the master replies again.
+     */
+    private void poll() {
+        String address;
+        try {
+            address = queryMaster();
+            this.replicas = queryReplicas();
+        } catch (JedisConnectionException exception) {
+            // No sentinel could be reached; keep to the last known master.
+            address = this.master.address;
+        }
+        if (!address.equals(this.master.address)) {
+            switchTo(address);
+        } else if (this.failingOver) {
+            try {
+                this.master.source._do(PROBE);
+                this.failingOver = false;
+            } catch (RuntimeException exception) {
+                // Still down; try again on the next poll.
+            }
+        }
+    }
+
+    /**
+     * Swaps in the source of the master at the given address (rejecting
+     * callbacks until it replies), and closes the source of the old master.
+     */
+    private void switchTo(String address) {
+        this.failingOver = true;
+        RedisSource source = null;
+        try {
+            source = sourceOf(address);
+            source._do(PROBE);
+        } catch (RuntimeException exception) {
+            // The new master is not ready yet; try again on the next poll.
+            closeQuietly(source);
+            return;
+        }
+        Master old = this.master;
+        this.master = new Master(address, source);
+        this.failingOver = false;
+        closeQuietly(old.source);
+    }
+
+    private RedisSource sourceOf(String address) {
+        int separator = address.lastIndexOf(':');
+        return this.factory.sourceOf(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+    }
+
+    /**
+     * Returns the connection to the given sentinel, which is kept open across
+     * polls and only (re)opened when it has none or it has failed.
+     */
+    private AsyncConnection connectionTo(String sentinel) {
+        AsyncConnection connection = this.sentinelConnections.get(sentinel);
+        if (connection == null || !connection.isOpen()) {
+            int separator = sentinel.lastIndexOf(':');
+            connection = this.connections.connect(
+                sentinel.substring(0, separator), Integer.parseInt(sentinel.substring(separator + 1)));
+            this.sentinelConnections.put(sentinel, connection);
+        }
+        return connection;
+    }
+
+    private void disconnect(String sentinel) {
+        AsyncConnection connection = this.sentinelConnections.remove(sentinel);
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Sends the given command to the first sentinel that replies to it.
+     * @throws JedisConnectionException if no sentinel replied.
+     */
+    private synchronized Object query(Object... command) {
+        if (this.closed) {
+            throw new JedisConnectionException("Source has been closed.");
+        }
+        JedisConnectionException failure = null;
+        for (String sentinel : this.sentinels) {
+            try {
+                Object reply = MultiplexedCommands.await(connectionTo(sentinel).send(command), this.timeout);
+                if (reply != null) {
+                    return reply;
+                }
+            } catch (JedisConnectionException exception) {
+                // Reconnect to this sentinel the next time it is asked.
+                disconnect(sentinel);
+                failure = exception;
+            } catch (JedisDataException exception) {
+                // This sentinel does not monitor the master; ask the next.
+            }
+        }
+        throw new JedisConnectionException("No sentinel knows master " + this.masterName + ".", failure);
+    }
+
+    private String queryMaster() {
+        List<?> address = (List<?>)query("SENTINEL", "get-master-addr-by-name", this.masterName);
+        return stringOf(address.get(0)) + ":" + stringOf(address.get(1));
+    }
+
+    private List<String> queryReplicas() {
+        List<String> replicas = new ArrayList<String>();
+        for (Object reply : (List<?>)query("SENTINEL", "slaves", this.masterName)) {
+            List<?> fields = (List<?>)reply;
+            Map<String, String> replica = new HashMap<String, String>();
+            for (int i = 0; i + 1 < fields.size(); i += 2) {
+                replica.put(stringOf(fields.get(i)), stringOf(fields.get(i + 1)));
+            }
+            String flags = replica.containsKey("flags") ? replica.get("flags") : "";
+            if (!flags.contains("s_down") && !flags.contains("o_down") && !flags.contains("disconnected")) {
+                replicas.add(replica.get("ip") + ":" + replica.get("port"));
+            }
+        }
+        return Collections.unmodifiableList(replicas);
+    }
+
+    private static String stringOf(Object reply) {
+        return reply instanceof byte[] ? SafeEncoder.encode((byte[])reply) : String.valueOf(reply);
+    }
+
+    private static void closeQuietly(RedisSource source) {
+        if (source instanceof Closeable) {
+            try {
+                ((Closeable)source).close();
+            } catch (IOException exception) {
+                // Nothing more can be done about it.
+            }
+        }
+    }
+
+    /**
+     * Stops polling the sentinels, closes the connections to them and closes
+     * the source of the current master.
+     */
+    @Override
+    public void close() {
+        this.poller.shutdownNow();
+        synchronized (this) {
+            this.closed = true;
+            for (String sentinel : new ArrayList<String>(this.sentinelConnections.keySet())) {
+                disconnect(sentinel);
+            }
+        }
+        closeQuietly(this.master.source);
+    }
+}
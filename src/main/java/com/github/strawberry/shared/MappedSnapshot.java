@@ -0,0 +1,542 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.shared;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.strawberry.redis.Keyspace;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisSource;
+import com.github.strawberry.util.Glob;
+import com.google.common.collect.ImmutableMap;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+/**
+ * A read-only snapshot of (part of) a Redis keyspace in a memory-mapped file,
+ * as written by the {@link SharedStore} that is elected to load values from
+ * Redis on a host. Only the index of keys is read into memory when the file
+ * is opened; values are decoded from the mapping (which all processes that
+ * open the file share through the page cache) when they are requested, and
+ * ranges of strings are read from it directly. It answers the same
+ * {@link RedisCommands} as a {@link Keyspace} would.
+ * 
+ * <p>
+ * The file starts with a header (a magic number and the number of keys),
+ * followed by the index (every key with the type, offset and length of its
+ * value) and the values. A string is stored as its raw bytes; a hash as the
+ * number of fields followed by every field and value; and a list, set or
+ * sorted set as the number of members followed by every member (in order).
+ * Every string within a value is preceded by its length.
+ * </p>
+ * 
+ * <p>
+ * A snapshot that has been opened from a file is unmapped when it is closed,
+ * once the callbacks that run against it have completed. Values are copied
+ * out of the mapping, thus they stay valid after that.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class MappedSnapshot implements RedisCommands, RedisSource, Closeable {
+
+    private static final int MAGIC = 0x53545257;
+
+    private static final String WRONG_TYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+
+    private static final Map<String, Byte> CODES = ImmutableMap.of(
+        "string", (byte)0, "hash", (byte)1, "list", (byte)2, "set", (byte)3, "zset", (byte)4);
+
+    private static final String[] TYPES = {"string", "hash", "list", "set", "zset"};
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    private static final Method CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        Method cleaner = null;
+        try {
+            // Resolved reflectively, as there is no public API to unmap a
+            // buffer: Unsafe.invokeCleaner as of Java 9, or else the cleaner
+            // of the buffer itself.
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (Exception exception) {
+            invokeCleaner = null;
+            try {
+                cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            } catch (Exception fallback) {
+                cleaner = null;
+            }
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+        CLEANER = cleaner;
+    }
+
+    /**
+     * The location of a value within the file.
+     */
+    private static final class Entry {
+
+        private final String type;
+        private final int offset;
+        private final int length;
+
+        private Entry(String type, int offset, int length) {
+            this.type = type;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final Map<String, Entry> index;
+
+    /**
+     * The number of callbacks that run against the snapshot, plus one until
+     * it has been closed.
+     */
+    private final AtomicInteger users = new AtomicInteger(1);
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private MappedSnapshot(ByteBuffer buffer, Map<String, Entry> index) {
+        this.buffer = buffer;
+        this.index = index;
+    }
+
+    /**
+     * Maps the snapshot in the given file into memory.
+     * @throws IOException if the file could not be mapped, or is not a
+     * snapshot.
+     */
+    public static MappedSnapshot open(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        MappedByteBuffer buffer;
+        try {
+            // The mapping stays valid after the file has been closed.
+            buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+        } finally {
+            input.close();
+        }
+        return parse(buffer, file.toString());
+    }
+
+    /**
+     * Wraps a snapshot held in memory (such as the contents of a message),
+     * as encoded by {@link #encode(SortedMap)}.
+     * @throws IOException if the contents are not a snapshot.
+     */
+    public static MappedSnapshot of(byte[] contents) throws IOException {
+        return parse(ByteBuffer.wrap(contents), "contents");
+    }
+
+    private static MappedSnapshot parse(ByteBuffer buffer, String origin) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot: " + origin + ".");
+            }
+            int count = buffer.getInt();
+            Map<String, Entry> index = new HashMap<String, Entry>(count * 2);
+            for (int entry = 0; entry < count; entry++) {
+                String key = SafeEncoder.encode(bytesOf(buffer));
+                index.put(key, new Entry(TYPES[buffer.get()], buffer.getInt(), buffer.getInt()));
+            }
+            return new MappedSnapshot(buffer, index);
+        } catch (RuntimeException exception) {
+            throw new IOException("Corrupt snapshot: " + origin + ".", exception);
+        }
+    }
+
+    /**
+     * Encodes the given values (in the form in which
+     * {@link RedisCommands#valuesOf(List)} retrieves them, by key) into the
+     * contents of a snapshot file. Sets are stored as sorted sets if they are
+     * ordered (that is: a {@link LinkedHashSet}).
+     */
+    @SuppressWarnings("unchecked")
+    public static byte[] encode(SortedMap<String, Object> values) {
+        try {
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(contents);
+            int indexSize = 8;
+            for (String key : values.keySet()) {
+                indexSize += 4 + SafeEncoder.encode(key).length + 1 + 4 + 4;
+            }
+            List<String> types = new ArrayList<String>(values.size());
+            List<Integer> lengths = new ArrayList<Integer>(values.size());
+            for (Object value : values.values()) {
+                int start = data.size();
+                if (value instanceof byte[]) {
+                    types.add("string");
+                    data.write((byte[])value);
+                } else if (value instanceof Map) {
+                    types.add("hash");
+                    Map<String, String> hash = (Map<String, String>)value;
+                    data.writeInt(hash.size());
+                    for (Map.Entry<String, String> entry : hash.entrySet()) {
+                        write(data, entry.getKey());
+                        write(data, entry.getValue());
+                    }
+                } else {
+                    Collection<String> members = (Collection<String>)value;
+                    types.add(value instanceof List ? "list" : value instanceof LinkedHashSet ? "zset" : "set");
+                    data.writeInt(members.size());
+                    for (String member : members) {
+                        write(data, member);
+                    }
+                }
+                lengths.add(data.size() - start);
+            }
+            data.flush();
+
+            ByteArrayOutputStream file = new ByteArrayOutputStream(indexSize + contents.size());
+            DataOutputStream header = new DataOutputStream(file);
+            header.writeInt(MAGIC);
+            header.writeInt(values.size());
+            int offset = indexSize;
+            int position = 0;
+            for (String key : values.keySet()) {
+                byte[] bytes = SafeEncoder.encode(key);
+                header.writeInt(bytes.length);
+                header.write(bytes);
+                header.writeByte(CODES.get(types.get(position)));
+                header.writeInt(offset);
+                header.writeInt(lengths.get(position));
+                offset += lengths.get(position);
+                position++;
+            }
+            contents.writeTo(header);
+            header.flush();
+            return file.toByteArray();
+        } catch (IOException exception) {
+            // Cannot happen when writing to memory.
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static void write(DataOutputStream data, String string) throws IOException {
+        byte[] bytes = SafeEncoder.encode(string);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static byte[] bytesOf(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static String stringOf(ByteBuffer buffer) {
+        return SafeEncoder.encode(bytesOf(buffer));
+    }
+
+    /**
+     * Returns a view of the value of the given entry.
+     */
+    private ByteBuffer viewOf(Entry entry) {
+        ByteBuffer view = this.buffer.duplicate();
+        view.position(entry.offset);
+        view.limit(entry.offset + entry.length);
+        return view;
+    }
+
+    /**
+     * Decodes the value of the given entry into the form in which
+     * {@link #valuesOf(List)} returns it.
+     */
+    private Object valueOf(Entry entry) {
+        ByteBuffer view = viewOf(entry);
+        if (entry.type.equals("string")) {
+            byte[] value = new byte[entry.length];
+            view.get(value);
+            return value;
+        } else if (entry.type.equals("hash")) {
+            int size = view.getInt();
+            Map<String, String> hash = new HashMap<String, String>(size * 2);
+            for (int field = 0; field < size; field++) {
+                hash.put(stringOf(view), stringOf(view));
+            }
+            return hash;
+        }
+        int size = view.getInt();
+        Collection<String> members = entry.type.equals("list") ? new ArrayList<String>(size)
+            : entry.type.equals("set") ? new HashSet<String>(size * 2) : new LinkedHashSet<String>(size * 2);
+        for (int member = 0; member < size; member++) {
+            members.add(stringOf(view));
+        }
+        return members;
+    }
+
+    /**
+     * Returns a {@link Keyspace} that holds only the value of the given key,
+     * to answer the commands that concern it with the same semantics.
+     */
+    @SuppressWarnings("unchecked")
+    private Keyspace keyspaceOf(String key) {
+        Keyspace keyspace = new Keyspace();
+        Entry entry = this.index.get(key);
+        if (entry == null) {
+            return keyspace;
+        }
+        Object value = valueOf(entry);
+        if (entry.type.equals("string")) {
+            keyspace.putString(key, (byte[])value);
+        } else if (entry.type.equals("hash")) {
+            keyspace.putHash(key, (Map<String, String>)value);
+        } else if (entry.type.equals("list")) {
+            keyspace.putList(key, (List<String>)value);
+        } else if (entry.type.equals("set")) {
+            keyspace.putSet(key, (Set<String>)value);
+        } else {
+            // Only the order of the members is kept, which their ranks reflect.
+            Map<String, Double> scores = new LinkedHashMap<String, Double>();
+            for (String member : (Set<String>)value) {
+                scores.put(member, (double)scores.size());
+            }
+            keyspace.putSortedSet(key, scores);
+        }
+        return keyspace;
+    }
+
+    /**
+     * Returns the entry of the string at the given key, or {@code null} if the
+     * key does not exist.
+     * @throws JedisDataException if the key holds a value of another type.
+     */
+    private Entry stringEntryOf(byte[] key) {
+        Entry entry = this.index.get(SafeEncoder.encode(key));
+        if (entry != null && !entry.type.equals("string")) {
+            throw new JedisDataException(WRONG_TYPE);
+        }
+        return entry;
+    }
+
+    public int size() {
+        return this.index.size();
+    }
+
+    /**
+     * Registers a user of the snapshot, which keeps it mapped until it is
+     * {@link #release() released}.
+     * @return False if the snapshot has been unmapped already.
+     */
+    boolean retain() {
+        while (true) {
+            int users = this.users.get();
+            if (users == 0) {
+                return false;
+            }
+            if (this.users.compareAndSet(users, users + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        if (this.users.decrementAndGet() == 0) {
+            unmap(this.buffer);
+        }
+    }
+
+    boolean isUnmapped() {
+        return this.users.get() == 0;
+    }
+
+    private static void unmap(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else if (CLEANER != null) {
+                Object cleaner = CLEANER.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (Exception exception) {
+            // Unmapped once the buffer has been garbage-collected instead.
+        }
+    }
+
+    /**
+     * Unmaps the snapshot, as soon as the callbacks that run against it have
+     * completed. The snapshot must not be used after that.
+     */
+    @Override
+    public void close() {
+        if (this.closed.compareAndSet(false, true)) {
+            release();
+        }
+    }
+
+    @Override
+    public <T> T _do(F<RedisCommands, T> callback) {
+        if (!retain()) {
+            throw new IllegalStateException("Snapshot has been closed.");
+        }
+        try {
+            return callback.f(this);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public Set<String> keys(String pattern) {
+        Set<String> keys = new LinkedHashSet<String>();
+        if (Glob.isLiteral(pattern)) {
+            if (this.index.containsKey(pattern)) {
+                keys.add(pattern);
+            }
+            return keys;
+        }
+        for (String key : this.index.keySet()) {
+            if (Glob.matches(pattern, key)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public String type(String key) {
+        Entry entry = this.index.get(key);
+        return entry == null ? "none" : entry.type;
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        Entry entry = stringEntryOf(key);
+        return entry == null ? null : (byte[])valueOf(entry);
+    }
+
+    @Override
+    public Map<String, String> hgetAll(String key) {
+        return keyspaceOf(key).hgetAll(key);
+    }
+
+    @Override
+    public List<String> hmget(String key, String... fields) {
+        return keyspaceOf(key).hmget(key, fields);
+    }
+
+    @Override
+    public List<String> lrange(String key, long start, long end) {
+        return keyspaceOf(key).lrange(key, start, end);
+    }
+
+    @Override
+    public List<byte[]> lrange(byte[] key, int start, int end) {
+        return keyspaceOf(SafeEncoder.encode(key)).lrange(key, start, end);
+    }
+
+    @Override
+    public Set<String> smembers(String key) {
+        return keyspaceOf(key).smembers(key);
+    }
+
+    @Override
+    public Set<byte[]> smembers(byte[] key) {
+        return keyspaceOf(SafeEncoder.encode(key)).smembers(key);
+    }
+
+    @Override
+    public Set<String> zrange(String key, int start, int end) {
+        return keyspaceOf(key).zrange(key, start, end);
+    }
+
+    @Override
+    public Set<byte[]> zrange(byte[] key, int start, int end) {
+        return keyspaceOf(SafeEncoder.encode(key)).zrange(key, start, end);
+    }
+
+    @Override
+    public Long strlen(byte[] key) {
+        Entry entry = stringEntryOf(key);
+        return entry == null ? 0L : (long)entry.length;
+    }
+
+    @Override
+    public byte[] getrange(byte[] key, int start, int end) {
+        Entry entry = stringEntryOf(key);
+        if (entry == null) {
+            return new byte[]{};
+        }
+        long from = start < 0 ? Math.max(entry.length + (long)start, 0) : start;
+        long to = Math.min(end < 0 ? entry.length + (long)end : end, entry.length - 1);
+        if (from > to) {
+            return new byte[]{};
+        }
+        byte[] range = new byte[(int)(to - from + 1)];
+        ByteBuffer view = viewOf(entry);
+        view.position(entry.offset + (int)from);
+        view.get(range);
+        return range;
+    }
+
+    /**
+     * A snapshot is not replicated, and thus reports itself as a master.
+     */
+    @Override
+    public String info() {
+        return "# Replication\r\nrole:master\r\n";
+    }
+
+    @Override
+    public List<Object> valuesOf(List<String> keys) {
+        List<Object> values = new ArrayList<Object>(keys.size());
+        for (String key : keys) {
+            Entry entry = this.index.get(key);
+            values.add(entry == null ? null : valueOf(entry));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.shared;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisSource;
+import com.github.strawberry.replication.KeyFilter;
+import com.github.strawberry.util.Glob;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import fj.F;
+
+/**
+ * A {@link RedisSource} that shares the values of the keys that match a
+ * {@link KeyFilter} between all processes on a host through a memory-mapped
+ * file, so that only one of them loads them from Redis. The processes elect
+ * the one that loads by locking a control file ({@code <file>.lock}): the
+ * process that holds the lock periodically loads the values from its source
+ * and, when they have changed, writes them to a new snapshot file (see
+ * {@link MappedSnapshot}) that replaces the previous one, after which it
+ * increments the version counter in the control file. All processes
+ * (including the elected one) serve callbacks from the snapshot, and map the
+ * file again whenever the version has changed, unmapping the previous file
+ * once the callbacks that run against it have completed. When the elected
+ * process exits, its lock is released and another process takes over (within
+ * a refresh interval).
+ * 
+ * <p>
+ * Until the first snapshot has been written, callbacks are run against the
+ * source instead. <b>Note</b>: the values of keys that do not match the filter
+ * are not shared, and are thus not found by callbacks.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class SharedStore implements RedisSource, Closeable {
+
+    /**
+     * The default interval in milliseconds at which the elected process
+     * reloads the values. Every reload looks up the keys of every pattern of
+     * the filter and fetches all of their values, thus it is kept well apart.
+     */
+    public static final long DEFAULT_REFRESH_INTERVAL = 30000;
+
+    private final File file;
+    private final RedisSource source;
+    private final KeyFilter filter;
+
+    private final RandomAccessFile control;
+    private final MappedByteBuffer counter;
+    private final ScheduledExecutorService refresher;
+
+    private FileLock lock;
+    private byte[] published;
+
+    private volatile MappedSnapshot snapshot;
+    private volatile long mappedVersion;
+    private volatile boolean closed;
+
+    /**
+     * Initializes a newly created {@code SharedStore} that reloads the values
+     * every {@link #DEFAULT_REFRESH_INTERVAL} milliseconds when elected.
+     * @param file The snapshot file that all processes share.
+     * @param source The source from which the values are loaded.
+     * @param filter The filter of the keys whose values are shared.
+     * @throws IOException if the control file could not be opened.
+     */
+    public SharedStore(File file, RedisSource source, KeyFilter filter) throws IOException {
+        this(file, source, filter, DEFAULT_REFRESH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Initializes a newly created {@code SharedStore}.
+     * @param file The snapshot file that all processes share.
+     * @param source The source from which the values are loaded.
+     * @param filter The filter of the keys whose values are shared.
+     * @param refreshInterval The interval at which the elected process reloads
+     * the values (and at which the others try to get elected).
+     * @param unit The unit of the refresh interval.
+     * @throws IOException if the control file could not be opened.
+     */
+    public SharedStore(File file, RedisSource source, KeyFilter filter, long refreshInterval, TimeUnit unit)
+        throws IOException {
+        this.file = file;
+        this.source = source;
+        this.filter = filter;
+        this.control = new RandomAccessFile(new File(file.getPath() + ".lock"), "rw");
+        this.counter = this.control.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 8);
+        this.refresher = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("strawberry-shared-store").build());
+        this.refresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, 0, refreshInterval, unit);
+    }
+
+    /**
+     * Returns whether this process is the one that loads the values.
+     */
+    public synchronized boolean isLeader() {
+        return this.lock != null;
+    }
+
+    /**
+     * Returns the version of the latest snapshot, or 0 if none has been
+     * written yet.
+     */
+    public long version() {
+        return this.counter.getLong(0);
+    }
+
+    @Override
+    public <T> T _do(F<RedisCommands, T> callback) {
+        while (true) {
+            MappedSnapshot snapshot = current();
+            if (snapshot == null) {
+                return this.source._do(callback);
+            }
+            if (snapshot.retain()) {
+                try {
+                    return callback.f(snapshot);
+                } finally {
+                    snapshot.release();
+                }
+            }
+            // Replaced (and unmapped) since it was looked up; use its successor.
+        }
+    }
+
+    /**
+     * Returns the latest snapshot, mapping it first (and closing the previous
+     * one) if its version has changed, or {@code null} if none has been
+     * written yet or the store has been closed.
+     */
+    private MappedSnapshot current() {
+        long version = version();
+        if (this.snapshot == null || version != this.mappedVersion) {
+            synchronized (this) {
+                if (this.closed) {
+                    return null;
+                }
+                if (version != 0 && (this.snapshot == null || version != this.mappedVersion) && this.file.exists()) {
+                    try {
+                        MappedSnapshot previous = this.snapshot;
+                        this.snapshot = MappedSnapshot.open(this.file);
+                        this.mappedVersion = version;
+                        if (previous != null) {
+                            previous.close();
+                        }
+                    } catch (IOException exception) {
+                        if (this.snapshot == null) {
+                            throw new JedisConnectionException(exception);
+                        }
+                        // Keep serving the snapshot that was mapped before.
+                    }
+                }
+            }
+        }
+        return this.snapshot;
+    }
+
+    private synchronized void refresh() {
+        try {
+            if (this.lock == null) {
+                this.lock = this.control.getChannel().tryLock();
+            }
+        } catch (OverlappingFileLockException exception) {
+            // Another store in this process holds the lock.
+        } catch (IOException exception) {
+            // Try again on the next refresh.
+        }
+        if (this.lock != null) {
+            try {
+                publish();
+            } catch (IOException exception) {
+                // Try again on the next refresh.
+            } catch (RuntimeException exception) {
+                // Redis is unreachable; keep the snapshot as it is.
+            }
+        }
+    }
+
+    /**
+     * Loads the values from the source and writes them as a new snapshot if
+     * they have changed since they were last published.
+     */
+    private void publish() throws IOException {
+        final List<String> patterns = new ArrayList<String>(this.filter.patterns());
+        SortedMap<String, Object> values = this.source._do(new F<RedisCommands, SortedMap<String, Object>>() {
+            @Override
+            public SortedMap<String, Object> f(RedisCommands redis) {
+                SortedMap<String, Object> values = new TreeMap<String, Object>();
+                for (String pattern : patterns) {
+                    List<String> keys = Glob.isLiteral(pattern)
+                        ? Arrays.asList(pattern) : new ArrayList<String>(redis.keys(pattern));
+                    List<Object> fetched = redis.valuesOf(keys);
+                    for (int index = 0; index < keys.size(); index++) {
+                        if (fetched.get(index) != null) {
+                            values.put(keys.get(index), fetched.get(index));
+                        }
+                    }
+                }
+                return values;
+            }
+        });
+        byte[] contents = MappedSnapshot.encode(values);
+        if (Arrays.equals(contents, this.published) && this.file.exists()) {
+            return;
+        }
+        File temporary = new File(this.file.getPath() + ".tmp");
+        FileOutputStream output = new FileOutputStream(temporary);
+        try {
+            output.write(contents);
+            output.getFD().sync();
+        } finally {
+            output.close();
+        }
+        // Processes that have mapped the previous file keep reading it until
+        // they notice the new version.
+        if (!temporary.renameTo(this.file)) {
+            throw new IOException("Could not replace " + this.file + ".");
+        }
+        this.counter.putLong(0, this.counter.getLong(0) + 1);
+        this.counter.force();
+        this.published = contents;
+    }
+
+    /**
+     * Stops refreshing the values, unmaps the snapshot and releases the
+     * election lock (if held) so that another process can take over.
+     * Callbacks are run against the source after that.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.refresher.shutdownNow();
+        this.closed = true;
+        if (this.snapshot != null) {
+            this.snapshot.close();
+            this.snapshot = null;
+        }
+        if (this.lock != null) {
+            this.lock.release();
+            this.lock = null;
+        }
+        this.control.close();
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A concurrency limit that adapts to the latency of the work it admits, in
+ * the manner of TCP congestion control: while latencies stay close to their
+ * long-term average the limit grows (by about the square root of the limit
+ * per sample), and once latencies rise above that average, a sign of queueing
+ * downstream, the limit shrinks in proportion. Failures (such as connection
+ * timeouts) shrink the limit multiplicatively.
+ * 
+ * <p>
+ * The limit only grows while at least half of it is in use, thus an idle
+ * system does not accumulate a limit that it has never been shown to sustain.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class AdaptiveLimit {
+
+    /**
+     * The factor by which the long-term latency may be exceeded before the
+     * limit shrinks.
+     */
+    static final double TOLERANCE = 1.5;
+
+    /**
+     * The weight of every new limit estimate.
+     */
+    static final double SMOOTHING = 0.2;
+
+    /**
+     * The weight of every latency sample in the long-term latency.
+     */
+    static final double LATENCY_SMOOTHING = 0.05;
+
+    /**
+     * The factor by which the limit shrinks on failure.
+     */
+    static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private double longLatency;
+    private int inFlight;
+
+    /**
+     * Initializes a newly created {@code AdaptiveLimit}.
+     * @param initialLimit The limit to start with.
+     * @param minLimit The limit below which the limit never shrinks.
+     * @param maxLimit The limit above which the limit never grows.
+     */
+    public AdaptiveLimit(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max.");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Returns the current limit.
+     */
+    public synchronized int limit() {
+        return (int)this.limit;
+    }
+
+    /**
+     * Returns the number of admitted units of work that have not been
+     * released yet.
+     */
+    public synchronized int inFlight() {
+        return this.inFlight;
+    }
+
+    /**
+     * Admits a unit of work, waiting up to the given time for the number of
+     * units in flight to drop below the limit.
+     * @return Whether the unit of work was admitted. If so, it must be
+     * released with {@link #release(long, boolean)} once done.
+     */
+    public synchronized boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (this.inFlight >= (int)this.limit) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        this.inFlight++;
+        return true;
+    }
+
+    /**
+     * Releases an admitted unit of work, and adapts the limit to its outcome.
+     * @param latency The time (in nanoseconds) the unit of work took.
+     * @param failed Whether the unit of work failed because of overload (for
+     * example, a connection timeout).
+     */
+    public synchronized void release(long latency, boolean failed) {
+        int used = this.inFlight--;
+        if (failed) {
+            this.limit = Math.max(this.minLimit, this.limit * BACKOFF);
+        } else {
+            update(Math.max(1, latency), used);
+        }
+        notifyAll();
+    }
+
+    private void update(long latency, int used) {
+        if (this.longLatency == 0) {
+            this.longLatency = latency;
+        } else {
+            this.longLatency = this.longLatency * (1 - LATENCY_SMOOTHING) + latency * LATENCY_SMOOTHING;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * this.longLatency / latency));
+        if (gradient == 1.0 && used < this.limit / 2) {
+            // Not limited by the limit, thus no evidence that it may grow.
+            return;
+        }
+        double estimate = this.limit * gradient + Math.sqrt(this.limit);
+        double next = this.limit * (1 - SMOOTHING) + estimate * SMOOTHING;
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, next));
+    }
+}
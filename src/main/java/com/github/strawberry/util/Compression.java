@@ -0,0 +1,199 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.io.ByteStreams;
+import com.ning.compress.lzf.LZFEncoder;
+import com.ning.compress.lzf.LZFInputStream;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.util.SafeEncoder;
+
+import fj.data.Option;
+
+/**
+ * A set of utility methods to store large values in Redis in compressed form,
+ * and to transparently detect and decompress such values when they are read.
+ * Compressed values are recognized by the header that their compression
+ * format starts with, thus no additional framing is added to the value.
+ * String values are always detected, whereas binary values are only
+ * decompressed for fields that opt in (see
+ * {@link com.github.strawberry.guice.Redis#compressed()}), as arbitrary bytes
+ * may start with such a header by chance.
+ * 
+ * <p>
+ * Two formats are supported: <a href="http://www.gzip.org">gzip</a>, which
+ * gives good compression ratios, and
+ * <a href="https://github.com/ning/compress">LZF</a>, a fast member of the
+ * LZ-family that trades some compression ratio for (de)compression speed.
+ * </p>
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class Compression {
+
+    /**
+     * The supported compression formats.
+     */
+    public static enum Format {
+        GZIP, LZF
+    }
+
+    /**
+     * The number of leading bytes that identify a compression format.
+     */
+    private static final int HEADER_LENGTH = 5;
+
+    private Compression() { }
+
+    /**
+     * Determines the compression format of the given value from its header.
+     * @param value The (possibly compressed) value.
+     * @return The compression format, or none if the value is not compressed.
+     */
+    public static Option<Format> formatOf(byte[] value) {
+        if (value.length >= 3 && (value[0] & 0xff) == 0x1f && (value[1] & 0xff) == 0x8b && value[2] == 0x08) {
+            return Option.some(Format.GZIP);
+        } else if (value.length >= 5 && value[0] == 'Z' && value[1] == 'V' && (value[2] == 0 || value[2] == 1)) {
+            return Option.some(Format.LZF);
+        }
+        return Option.none();
+    }
+
+    /**
+     * Determines whether the given value is compressed.
+     * @param value The (possibly compressed) value.
+     * @return True if the value starts with a supported compression header.
+     */
+    public static boolean isCompressed(byte[] value) {
+        return formatOf(value).isSome();
+    }
+
+    /**
+     * Wraps the given value in a stream that decompresses it on the fly if it
+     * is compressed, and that simply yields the value itself otherwise.
+     * @param value The (possibly compressed) value.
+     * @return A stream of the uncompressed bytes of the value.
+     * @throws IOException if the compression header of the value is corrupt.
+     */
+    public static InputStream inputStreamOf(byte[] value) throws IOException {
+        return inputStreamOf(new ByteArrayInputStream(value), formatOf(value));
+    }
+
+    /**
+     * Wraps the given stream in a stream that decompresses it on the fly if it
+     * starts with a compression header, and that simply yields the bytes of
+     * the given stream otherwise. Only the header is read ahead to determine
+     * the compression format, thus the given stream is never fully buffered.
+     * @param input The stream of (possibly compressed) bytes.
+     * @return A stream of the uncompressed bytes.
+     * @throws IOException if the given stream cannot be read or if the
+     * compression header is corrupt.
+     */
+    public static InputStream inputStreamOf(InputStream input) throws IOException {
+        InputStream buffered = input.markSupported() ? input : new BufferedInputStream(input);
+        byte[] header = new byte[HEADER_LENGTH];
+        buffered.mark(HEADER_LENGTH);
+        int read = ByteStreams.read(buffered, header, 0, HEADER_LENGTH);
+        buffered.reset();
+        return inputStreamOf(buffered, formatOf(Arrays.copyOf(header, read)));
+    }
+
+    private static InputStream inputStreamOf(InputStream input, Option<Format> format) throws IOException {
+        if (format.isSome()) {
+            switch (format.some()) {
+                case GZIP: {
+                    return new GZIPInputStream(input);
+                }
+                case LZF: {
+                    return new LZFInputStream(input);
+                }
+            }
+        }
+        return input;
+    }
+
+    /**
+     * Decompresses the given value if it is compressed.
+     * @param value The (possibly compressed) value.
+     * @return The uncompressed value, which is the given value itself if it is
+     * not compressed.
+     * @throws IOException if the value is corrupt.
+     */
+    public static byte[] decompress(byte[] value) throws IOException {
+        return isCompressed(value) ? ByteStreams.toByteArray(inputStreamOf(value)) : value;
+    }
+
+    /**
+     * Compresses the given value in the given format.
+     * @param value The value to compress.
+     * @param format The compression format to use.
+     * @return The compressed value.
+     */
+    public static byte[] compress(byte[] value, Format format) {
+        switch (format) {
+            case GZIP: {
+                try {
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(32, value.length / 4));
+                    GZIPOutputStream output = new GZIPOutputStream(buffer);
+                    output.write(value);
+                    output.close();
+                    return buffer.toByteArray();
+                } catch (IOException exception) {
+                    // Cannot happen when writing to memory.
+                    throw new IllegalStateException(exception);
+                }
+            }
+            default: {
+                return LZFEncoder.encode(value);
+            }
+        }
+    }
+
+    /**
+     * Stores the given value in compressed form at the given key.
+     * @param jedis The connection to the Redis database to store the value in.
+     * @param key The key to store the value at.
+     * @param value The value to compress and store.
+     * @param format The compression format to use.
+     */
+    public static void set(Jedis jedis, String key, byte[] value, Format format) {
+        jedis.set(SafeEncoder.encode(key), compress(value, format));
+    }
+
+    /**
+     * Stores the given (UTF-8 encoded) string in compressed form at the given
+     * key.
+     * @param jedis The connection to the Redis database to store the value in.
+     * @param key The key to store the value at.
+     * @param value The string to compress and store.
+     * @param format The compression format to use.
+     */
+    public static void set(Jedis jedis, String key, String value, Format format) {
+        set(jedis, key, SafeEncoder.encode(value), format);
+    }
+}
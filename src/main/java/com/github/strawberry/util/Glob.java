@@ -0,0 +1,155 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+/**
+ * Matches keys against glob-style patterns, following the same rules as the
+ * KEYS command of Redis: {@code *} matches any sequence of characters,
+ * {@code ?} matches any single character, {@code [abc]} matches any of the
+ * enclosed characters (with {@code ^} negating the set and {@code a-z}
+ * denoting a range), and {@code \} escapes the character that follows it.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class Glob {
+
+    private Glob() {}
+
+    /**
+     * Returns whether the given pattern contains any special characters, that
+     * is: whether it can match any key other than itself.
+     */
+    public static boolean isLiteral(String pattern) {
+        for (int index = 0; index < pattern.length(); index++) {
+            switch (pattern.charAt(index)) {
+                case '*': case '?': case '[': case '\\': {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the given key matches the given glob-style pattern.
+     */
+    public static boolean matches(String pattern, String key) {
+        return matches(pattern, 0, key, 0);
+    }
+
+    private static boolean matches(String pattern, int p, String key, int k) {
+        while (p < pattern.length()) {
+            char next = pattern.charAt(p);
+            switch (next) {
+                case '*': {
+                    while (p + 1 < pattern.length() && pattern.charAt(p + 1) == '*') {
+                        p++;
+                    }
+                    if (p + 1 == pattern.length()) {
+                        return true;
+                    }
+                    for (int start = k; start <= key.length(); start++) {
+                        if (matches(pattern, p + 1, key, start)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                case '?': {
+                    if (k == key.length()) {
+                        return false;
+                    }
+                    k++;
+                    p++;
+                } break;
+                case '[': {
+                    if (k == key.length()) {
+                        return false;
+                    }
+                    int end = endOfSet(pattern, p);
+                    if (end < 0) {
+                        // An unterminated set is matched literally.
+                        if (key.charAt(k) != next) {
+                            return false;
+                        }
+                        k++;
+                        p++;
+                    } else {
+                        if (!inSet(pattern, p + 1, end, key.charAt(k))) {
+                            return false;
+                        }
+                        k++;
+                        p = end + 1;
+                    }
+                } break;
+                default: {
+                    if (next == '\\' && p + 1 < pattern.length()) {
+                        // Match the escaped character literally.
+                        p++;
+                        next = pattern.charAt(p);
+                    }
+                    if (k == key.length() || key.charAt(k) != next) {
+                        return false;
+                    }
+                    k++;
+                    p++;
+                }
+            }
+        }
+        return k == key.length();
+    }
+
+    private static int endOfSet(String pattern, int start) {
+        for (int index = start + 1; index < pattern.length(); index++) {
+            char next = pattern.charAt(index);
+            if (next == '\\') {
+                index++;
+            } else if (next == ']' && index > start + 1) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean inSet(String pattern, int start, int end, char toMatch) {
+        boolean negated = pattern.charAt(start) == '^';
+        if (negated) {
+            start++;
+        }
+        boolean matched = false;
+        for (int index = start; index < end && !matched; index++) {
+            char next = pattern.charAt(index);
+            if (next == '\\' && index + 1 < end) {
+                matched = pattern.charAt(++index) == toMatch;
+            } else if (index + 2 < end && pattern.charAt(index + 1) == '-') {
+                char from = next;
+                char to = pattern.charAt(index + 2);
+                if (from > to) {
+                    char swap = from;
+                    from = to;
+                    to = swap;
+                }
+                matched = toMatch >= from && toMatch <= to;
+                index += 2;
+            } else {
+                matched = next == toMatch;
+            }
+        }
+        return matched != negated;
+    }
+}
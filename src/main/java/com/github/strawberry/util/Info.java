@@ -0,0 +1,62 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Utility methods for the output of the INFO command of Redis.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class Info {
+
+    private Info() {}
+
+    /**
+     * Parses the given output of the INFO command into a map of its fields to
+     * their values. Section headers and empty lines are skipped.
+     */
+    public static Map<String, String> fieldsOf(String info) {
+        Map<String, String> fields = new HashMap<String, String>();
+        for (String line : info.split("\r?\n")) {
+            int separator = line.indexOf(':');
+            if (!line.startsWith("#") && separator > 0) {
+                fields.put(line.substring(0, separator), line.substring(separator + 1).trim());
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the value of the given field as a long, or the given default if
+     * the field is missing or not a number.
+     */
+    public static long longOf(Map<String, String> fields, String field, long defaultValue) {
+        String value = fields.get(field);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException exception) {
+            return defaultValue;
+        }
+    }
+}
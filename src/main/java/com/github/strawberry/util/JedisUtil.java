@@ -135,6 +135,72 @@ public final class JedisUtil {
      * {@code _do(...)} calls.
      */
     public static <T> LinkedCallbackBuilder using(final JedisPool pool) {
+        return using(new Resources() {
+
+            @Override
+            public Jedis getResource() {
+                return pool.getResource();
+            }
+
+            @Override
+            public void returnResource(Jedis jedis) {
+                pool.returnResource(jedis);
+            }
+
+            @Override
+            public void returnBrokenResource(Jedis jedis) {
+                pool.returnBrokenResource(jedis);
+            }
+        });
+    }
+
+    /**
+     * The same as {@link JedisUtil#using(redis.clients.jedis.JedisPool)}, but
+     * with connections that are pinned to the calling threads by the given
+     * {@link ThreadAffinePool}, so that threads that already hold a connection
+     * of their own do not contend for the underlying {@link JedisPool}.
+     * 
+     * @param pool The thread-affine pool of {@code Jedis} connections to be
+     * utilized during the callback step.
+     * @throws JedisConnectionException if an error occurred while sending or
+     * receiving data from a {@code Jedis} connection.
+     * @return The {@code LinkedCallbackBuilder} serving as bridge to the two
+     * {@code _do(...)} calls.
+     */
+    public static LinkedCallbackBuilder using(final ThreadAffinePool pool) {
+        return using(new Resources() {
+
+            @Override
+            public Jedis getResource() {
+                return pool.getResource();
+            }
+
+            @Override
+            public void returnResource(Jedis jedis) {
+                pool.returnResource(jedis);
+            }
+
+            @Override
+            public void returnBrokenResource(Jedis jedis) {
+                pool.returnBrokenResource(jedis);
+            }
+        });
+    }
+
+    /**
+     * The borrow and return operations that are shared by {@link JedisPool}
+     * and {@link ThreadAffinePool}.
+     */
+    private static interface Resources {
+
+        public Jedis getResource();
+
+        public void returnResource(Jedis jedis);
+
+        public void returnBrokenResource(Jedis jedis);
+    }
+
+    private static LinkedCallbackBuilder using(final Resources pool) {
         return new LinkedCallbackBuilder() {
 
             @Override
@@ -157,20 +223,14 @@ public final class JedisUtil {
             }
 
             @Override
-            public void _do(Effect<Jedis> callback) {
-                boolean returned = false;
-                Jedis jedis = pool.getResource();
-                try {
-                    callback.e(jedis);
-                } catch (JedisConnectionException e) {
-                    pool.returnBrokenResource(jedis);
-                    returned = true;
-                    throw e;
-                } finally {
-                    if (!returned) {
-                        pool.returnResource(jedis);
+            public void _do(final Effect<Jedis> callback) {
+                _do(new F<Jedis, Void>() {
+                    @Override
+                    public Void f(Jedis jedis) {
+                        callback.e(jedis);
+                        return null;
                     }
-                }
+                });
             }
         };
     }
@@ -0,0 +1,96 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of the most recent latencies of an operation, from which
+ * percentiles are estimated. A fixed number of samples is retained (older
+ * samples are overwritten), thus the estimates adapt as latencies change.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The number of samples that have to be recorded before the sorted
+     * snapshot (from which percentiles are estimated) is taken anew.
+     */
+    private static final int REFRESH_INTERVAL = 64;
+
+    private final long[] samples;
+    private long count;
+
+    private long[] sorted = new long[]{};
+    private long sortedAt = -1;
+
+    /**
+     * Initializes a newly created {@code LatencyHistogram} that retains the
+     * 1024 most recent samples.
+     */
+    public LatencyHistogram() {
+        this(1024);
+    }
+
+    /**
+     * Initializes a newly created {@code LatencyHistogram}.
+     * @param size The number of most recent samples to retain.
+     */
+    public LatencyHistogram(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Size must be at least 1.");
+        }
+        this.samples = new long[size];
+    }
+
+    /**
+     * Records the given latency.
+     * @param nanos The latency in nanoseconds.
+     */
+    public synchronized void record(long nanos) {
+        this.samples[(int)(this.count % this.samples.length)] = nanos;
+        this.count++;
+    }
+
+    /**
+     * Returns the total number of latencies that have been recorded.
+     */
+    public synchronized long count() {
+        return this.count;
+    }
+
+    /**
+     * Estimates the given percentile of the recent latencies.
+     * @param percentile The percentile, in the range {@code [0, 1]}.
+     * @return The estimated latency in nanoseconds, or -1 if no latencies
+     * have been recorded yet.
+     */
+    public synchronized long percentile(double percentile) {
+        if (this.count == 0) {
+            return -1;
+        }
+        if (this.sortedAt < 0 || this.count - this.sortedAt >= REFRESH_INTERVAL) {
+            this.sorted = Arrays.copyOf(this.samples, (int)Math.min(this.count, this.samples.length));
+            Arrays.sort(this.sorted);
+            this.sortedAt = this.count;
+        }
+        int index = (int)Math.ceil(percentile * this.sorted.length) - 1;
+        return this.sorted[Math.max(0, Math.min(index, this.sorted.length - 1))];
+    }
+}
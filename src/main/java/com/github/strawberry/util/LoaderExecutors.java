@@ -0,0 +1,256 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.CacheLoader;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Factory methods for the executors on which field values are loaded (see
+ * {@link com.github.strawberry.redis.RedisLoader}). Since loads spend nearly
+ * all of their time waiting for replies from Redis, they are best run on
+ * virtual threads (as of Java 21), of which thousands may wait at once without
+ * sizing a pool of platform threads. The number of loads that actually talk to
+ * Redis at once is then bounded by the number of connections, rather than by
+ * the number of threads:
+ * 
+ * <pre>
+ * ExecutorService partitions = LoaderExecutors.newLoaderExecutor(connections);
+ * ExecutorService reloads = LoaderExecutors.newVirtualThreadExecutor();
+ * LoadingCache&lt;Field, Option&gt; cache = CacheBuilder.newBuilder().
+ *   refreshAfterWrite(1, TimeUnit.MINUTES).
+ *   build(LoaderExecutors.asyncReload(new RedisLoader(source, partitions, connections), reloads));
+ * </pre>
+ * 
+ * <b>Note</b>: a task must never wait for other tasks of the same bounded
+ * executor. A reload waits for the partitions of its value (see
+ * {@link com.github.strawberry.redis.RedisLoader}), thus reloads and
+ * partitions are run on separate executors: had they shared one, as many
+ * reloads as there are permits would hold all of them while waiting for
+ * partitions that can never run.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class LoaderExecutors {
+
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR;
+
+    static {
+        Method method = null;
+        try {
+            // Resolved reflectively, as virtual threads only exist as of Java 21.
+            method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException exception) {
+            method = null;
+        }
+        NEW_VIRTUAL_THREAD_EXECUTOR = method;
+    }
+
+    private LoaderExecutors() {}
+
+    /**
+     * Returns whether this Java runtime supports virtual threads.
+     */
+    public static boolean hasVirtualThreads() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Returns an executor that runs every task on a new virtual thread, or
+     * (on runtimes without virtual threads) on an unbounded pool of cached
+     * daemon threads.
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        if (hasVirtualThreads()) {
+            try {
+                return (ExecutorService)NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            } catch (Exception exception) {
+                // Fall through to platform threads.
+            }
+        }
+        return Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("strawberry-loader-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Returns an executor that runs every task on a new virtual thread (see
+     * {@link #newVirtualThreadExecutor()}), but lets at most the given number
+     * of tasks run at once.
+     * @param permits The maximum number of tasks that run at once, which
+     * should match the number of connections to Redis.
+     */
+    public static ExecutorService newLoaderExecutor(int permits) {
+        return bounded(newVirtualThreadExecutor(), permits);
+    }
+
+    /**
+     * Returns an executor that submits all tasks to the given executor, but
+     * lets at most the given number of them run at once. Tasks beyond that
+     * number are queued (rather than being handed to a thread that waits for
+     * its turn) and are run by the threads of the tasks that came before them
+     * as these complete, thus submitting a task never blocks and the given
+     * executor never runs more than the given number of threads for it.
+     * <b>Note</b>: a task must never wait for another task of the same bounded
+     * executor, which may be queued behind it for good.
+     * @param executor The executor that runs the tasks.
+     * @param permits The maximum number of tasks that run at once.
+     */
+    public static ExecutorService bounded(final ExecutorService executor, final int permits) {
+        if (permits < 1) {
+            throw new IllegalArgumentException("At least one permit is required.");
+        }
+        final Semaphore semaphore = new Semaphore(permits);
+        final Queue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+        return new AbstractExecutorService() {
+
+            private volatile boolean shutdown;
+
+            /**
+             * Runs queued tasks until none are left, then gives up its permit.
+             */
+            private final Runnable worker = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Runnable next = pending.poll();
+                        while (next != null) {
+                            next.run();
+                            next = pending.poll();
+                        }
+                    } finally {
+                        semaphore.release();
+                        // A task may have been queued after the last poll.
+                        dispatch();
+                    }
+                }
+            };
+
+            /**
+             * Starts a worker for every queued task for which a permit is
+             * available.
+             */
+            private void dispatch() {
+                while (!pending.isEmpty() && semaphore.tryAcquire()) {
+                    try {
+                        executor.execute(this.worker);
+                    } catch (RejectedExecutionException exception) {
+                        semaphore.release();
+                        throw exception;
+                    }
+                }
+            }
+
+            @Override
+            public void execute(Runnable command) {
+                if (this.shutdown) {
+                    throw new RejectedExecutionException("Executor has been shut down.");
+                }
+                pending.add(command);
+                dispatch();
+            }
+
+            /**
+             * Rejects new tasks. Queued tasks are still run by the workers
+             * that are running.
+             */
+            @Override
+            public void shutdown() {
+                this.shutdown = true;
+                executor.shutdown();
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                this.shutdown = true;
+                List<Runnable> unstarted = new ArrayList<Runnable>();
+                for (Runnable next = pending.poll(); next != null; next = pending.poll()) {
+                    unstarted.add(next);
+                }
+                executor.shutdownNow();
+                return unstarted;
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return this.shutdown;
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return executor.isTerminated();
+            }
+
+            @Override
+            public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+                return executor.awaitTermination(timeout, unit);
+            }
+        };
+    }
+
+    /**
+     * Returns a {@link CacheLoader} that delegates to the given loader, but
+     * reloads values (on refresh) on the given executor, so that the thread
+     * that triggered the refresh is not held up and keeps the old value in the
+     * meantime.
+     * @param loader The loader that loads (and reloads) values.
+     * @param executor The executor on which values are reloaded.
+     */
+    public static <K, V> CacheLoader<K, V> asyncReload(final CacheLoader<K, V> loader, final Executor executor) {
+        return new CacheLoader<K, V>() {
+
+            @Override
+            public V load(K key) throws Exception {
+                return loader.load(key);
+            }
+
+            @Override
+            public Map<K, V> loadAll(Iterable<? extends K> keys) throws Exception {
+                return loader.loadAll(keys);
+            }
+
+            @Override
+            public ListenableFuture<V> reload(final K key, final V oldValue) {
+                ListenableFutureTask<V> task = ListenableFutureTask.create(new Callable<V>() {
+                    @Override
+                    public V call() throws Exception {
+                        return loader.reload(key, oldValue).get();
+                    }
+                });
+                executor.execute(task);
+                return task;
+            }
+        };
+    }
+}
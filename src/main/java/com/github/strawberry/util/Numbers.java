@@ -0,0 +1,112 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A set of utility methods for parsing numeric values directly from the raw
+ * (ASCII-encoded) byte replies returned by Redis, without first decoding them
+ * into intermediate {@link String} instances.
+ * 
+ * @author Wiehann Matthysen
+ */
+public final class Numbers {
+
+    private Numbers() { }
+
+    /**
+     * Parses the given ASCII-encoded bytes as a signed decimal {@code int}.
+     * @param bytes The bytes to parse.
+     * @return The parsed {@code int} value.
+     * @throws NumberFormatException if the bytes do not represent a valid
+     * {@code int} value.
+     */
+    public static int parseInt(byte[] bytes) {
+        long value = parseLong(bytes);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw invalid(bytes);
+        }
+        return (int)value;
+    }
+
+    /**
+     * Parses the given ASCII-encoded bytes as a signed decimal {@code long}.
+     * @param bytes The bytes to parse.
+     * @return The parsed {@code long} value.
+     * @throws NumberFormatException if the bytes do not represent a valid
+     * {@code long} value.
+     */
+    public static long parseLong(byte[] bytes) {
+        int length = bytes.length;
+        if (length == 0) {
+            throw invalid(bytes);
+        }
+        int index = 0;
+        boolean negative = false;
+        if (bytes[0] == '-' || bytes[0] == '+') {
+            negative = bytes[0] == '-';
+            index++;
+            if (length == 1) {
+                throw invalid(bytes);
+            }
+        }
+        // Accumulate negatively so that Long.MIN_VALUE can be represented.
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplicationLimit = limit / 10;
+        long result = 0;
+        for (; index < length; index++) {
+            int digit = bytes[index] - '0';
+            if (digit < 0 || digit > 9 || result < multiplicationLimit) {
+                throw invalid(bytes);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw invalid(bytes);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Parses the given ASCII-encoded bytes as a {@code float}.
+     * @param bytes The bytes to parse.
+     * @return The parsed {@code float} value.
+     * @throws NumberFormatException if the bytes do not represent a valid
+     * {@code float} value.
+     */
+    public static float parseFloat(byte[] bytes) {
+        return Float.parseFloat(new String(bytes, Charsets.US_ASCII));
+    }
+
+    /**
+     * Parses the given ASCII-encoded bytes as a {@code double}.
+     * @param bytes The bytes to parse.
+     * @return The parsed {@code double} value.
+     * @throws NumberFormatException if the bytes do not represent a valid
+     * {@code double} value.
+     */
+    public static double parseDouble(byte[] bytes) {
+        return Double.parseDouble(new String(bytes, Charsets.US_ASCII));
+    }
+
+    private static NumberFormatException invalid(byte[] bytes) {
+        return new NumberFormatException(String.format("For input string: \"%s\"", new String(bytes, Charsets.US_ASCII)));
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Coalesces concurrent computations of the same key: while the value of a key
+ * is being computed, all other threads that ask for the value of that key
+ * wait for the computation in flight and share its result (or failure),
+ * rather than computing the value themselves. Nothing is retained once a
+ * computation completes, thus a later request computes the value anew.
+ * 
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ * @author Wiehann Matthysen
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, SettableFuture<V>> flights = new ConcurrentHashMap<K, SettableFuture<V>>();
+
+    /**
+     * Returns the value of the given key, as computed by the given loader or
+     * by the computation of the same key that is already in flight.
+     * @throws Exception if the computation (whichever thread performed it)
+     * failed.
+     */
+    public V execute(K key, Callable<V> loader) throws Exception {
+        SettableFuture<V> flight = SettableFuture.create();
+        SettableFuture<V> existing = this.flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            try {
+                return Uninterruptibles.getUninterruptibly(existing);
+            } catch (ExecutionException exception) {
+                Throwable cause = exception.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception)cause;
+                }
+                throw (Error)cause;
+            }
+        }
+        try {
+            V value = loader.call();
+            flight.set(value);
+            return value;
+        } catch (Exception exception) {
+            flight.setException(exception);
+            throw exception;
+        } catch (Error error) {
+            flight.setException(error);
+            throw error;
+        } finally {
+            this.flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * Returns the number of computations in flight.
+     */
+    public int inFlight() {
+        return this.flights.size();
+    }
+}
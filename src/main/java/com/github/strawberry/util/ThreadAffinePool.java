@@ -0,0 +1,239 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * A {@link JedisPool} front that pins a connection to every thread that uses
+ * it, so that the threads that load values most often never touch the
+ * (synchronized) pool again once they hold a connection of their own. Only a
+ * bounded number of connections is ever pinned: threads that arrive after
+ * that bound has been reached borrow from and return to the pool on every
+ * call, as they would without this class.
+ * 
+ * <p>
+ * Connections of threads that have terminated are returned to the pool (and
+ * their places given to other threads) as soon as the bound is reached, and a
+ * thread may return its own connection early with {@link #release()}. A
+ * thread that is already using its connection (in a nested call) borrows
+ * another one from the pool.
+ * </p>
+ * 
+ * <p>
+ * Virtual threads (as of Java 21) are never pinned a connection, but borrow
+ * from and return to the pool on every call: an executor of virtual threads
+ * (such as {@link LoaderExecutors#newVirtualThreadExecutor()}) starts a new
+ * thread for every task, thus a pinned connection would never be reused.
+ * </p>
+ * 
+ * <b>Note</b>: the given pool must allow for more connections than are
+ * pinned, otherwise the threads that have no pinned connection of their own
+ * would wait for connections that are never returned.
+ * 
+ * @see JedisUtil#using(ThreadAffinePool)
+ * @author Wiehann Matthysen
+ */
+public final class ThreadAffinePool {
+
+    private static final class Slot {
+
+        final WeakReference<Thread> owner;
+        final Jedis jedis;
+        boolean busy;
+
+        Slot(Thread owner, Jedis jedis) {
+            this.owner = new WeakReference<Thread>(owner);
+            this.jedis = jedis;
+        }
+    }
+
+    private static final Method IS_VIRTUAL;
+
+    static {
+        Method method = null;
+        try {
+            // Resolved reflectively, as virtual threads only exist as of Java 21.
+            method = Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException exception) {
+            method = null;
+        }
+        IS_VIRTUAL = method;
+    }
+
+    private final JedisPool pool;
+    private final Semaphore permits;
+
+    private final ThreadLocal<Slot> slots = new ThreadLocal<Slot>();
+    private final ConcurrentMap<Slot, Boolean> pinned = new ConcurrentHashMap<Slot, Boolean>();
+
+    /**
+     * Initializes a newly created {@code ThreadAffinePool}.
+     * @param pool The pool from which connections are borrowed.
+     * @param maxPinned The maximum number of connections that are pinned to
+     * threads at any one time.
+     */
+    public ThreadAffinePool(JedisPool pool, int maxPinned) {
+        this.pool = pool;
+        this.permits = new Semaphore(maxPinned);
+    }
+
+    /**
+     * Returns the pool from which connections are borrowed.
+     */
+    public JedisPool pool() {
+        return this.pool;
+    }
+
+    /**
+     * Returns the number of connections that are currently pinned to threads.
+     */
+    public int pinned() {
+        return this.pinned.size();
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (Boolean)IS_VIRTUAL.invoke(thread);
+        } catch (Exception exception) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the connection of the calling thread, pinning a connection to
+     * it if it has none yet and the bound allows for it, or else a connection
+     * borrowed from the pool. Virtual threads always borrow from the pool.
+     */
+    public Jedis getResource() {
+        Slot slot = this.slots.get();
+        if (slot != null && !this.pinned.containsKey(slot)) {
+            // The connection has been returned to the pool by close().
+            this.slots.remove();
+            slot = null;
+        }
+        if (slot != null) {
+            if (!slot.busy) {
+                slot.busy = true;
+                return slot.jedis;
+            }
+        } else if (!isVirtual(Thread.currentThread())
+            && (this.permits.tryAcquire() || (reclaim() && this.permits.tryAcquire()))) {
+            Jedis jedis = null;
+            try {
+                jedis = this.pool.getResource();
+            } finally {
+                if (jedis == null) {
+                    this.permits.release();
+                }
+            }
+            slot = new Slot(Thread.currentThread(), jedis);
+            slot.busy = true;
+            this.slots.set(slot);
+            this.pinned.put(slot, Boolean.TRUE);
+            return jedis;
+        }
+        return this.pool.getResource();
+    }
+
+    /**
+     * Returns the given connection (as obtained by {@link #getResource()})
+     * after use.
+     */
+    public void returnResource(Jedis jedis) {
+        Slot slot = this.slots.get();
+        if (slot != null && slot.jedis == jedis) {
+            slot.busy = false;
+        } else {
+            this.pool.returnResource(jedis);
+        }
+    }
+
+    /**
+     * Returns the given (failed) connection after use, so that it is
+     * destroyed. If it was pinned to the calling thread, the thread obtains a
+     * new connection the next time.
+     */
+    public void returnBrokenResource(Jedis jedis) {
+        Slot slot = this.slots.get();
+        if (slot != null && slot.jedis == jedis) {
+            this.slots.remove();
+            unpin(slot);
+        }
+        this.pool.returnBrokenResource(jedis);
+    }
+
+    private boolean unpin(Slot slot) {
+        if (this.pinned.remove(slot) != null) {
+            this.permits.release();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the connection of the calling thread (if any) to the pool.
+     */
+    public void release() {
+        Slot slot = this.slots.get();
+        if (slot != null && !slot.busy) {
+            this.slots.remove();
+            if (unpin(slot)) {
+                this.pool.returnResource(slot.jedis);
+            }
+        }
+    }
+
+    /**
+     * Returns the connections of threads that have terminated to the pool.
+     * @return Whether any connection was returned.
+     */
+    boolean reclaim() {
+        boolean reclaimed = false;
+        for (Slot slot : this.pinned.keySet()) {
+            Thread owner = slot.owner.get();
+            if ((owner == null || !owner.isAlive()) && unpin(slot)) {
+                this.pool.returnResource(slot.jedis);
+                reclaimed = true;
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Returns all pinned connections to the pool. Must only be called once
+     * none of the connections are in use anymore.
+     */
+    public void close() {
+        for (Slot slot : this.pinned.keySet()) {
+            if (unpin(slot)) {
+                this.pool.returnResource(slot.jedis);
+            }
+        }
+    }
+}
@@ -17,6 +17,11 @@
  */
 package com.github.strawberry.util;
 
+import com.github.strawberry.collect.IntSet;
+import com.github.strawberry.collect.LongList;
+import com.github.strawberry.collect.LongSet;
+import com.github.strawberry.collect.StringDoubleMap;
+import com.github.strawberry.collect.StringLongMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -122,6 +127,16 @@ public final class Types {
         else if (clazz.equals(Queue.class)) {
             collection = Lists.newLinkedList();
         }
+        // If it is one of the primitive-specialized collections, create it directly.
+        else if (clazz.equals(IntSet.class)) {
+            collection = new IntSet();
+        }
+        else if (clazz.equals(LongSet.class)) {
+            collection = new LongSet();
+        }
+        else if (clazz.equals(LongList.class)) {
+            collection = new LongList();
+        }
         // Else, create implementation by calling constructor via reflection.
         else {
             collection = (Collection)implementationOf(clazz);
@@ -139,6 +154,13 @@ public final class Types {
         else if (clazz.equals(SortedMap.class)) {
             map = Maps.newTreeMap();
         }
+        // If it is one of the primitive-specialized maps, create it directly.
+        else if (clazz.equals(StringLongMap.class)) {
+            map = new StringLongMap();
+        }
+        else if (clazz.equals(StringDoubleMap.class)) {
+            map = new StringDoubleMap();
+        }
         // Else, create implementation by calling constructor via reflection.
         else {
             map = (Map)implementationOf(clazz);
@@ -0,0 +1,176 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.guice.Redis;
+import com.github.strawberry.guice.RedisModule;
+import com.github.strawberry.redis.RedisCommands;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import fj.F;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class MultiplexedSourceTest extends AbstractModule {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private MultiplexedSource source;
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(new RedisModule(this.source));
+    }
+
+    @Before
+    public void setup() {
+        this.source = new MultiplexedSource("localhost", 6379);
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        this.source.close();
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+    private String valueOf(final String key) {
+        return this.source._do(new F<RedisCommands, String>() {
+            @Override
+            public String f(RedisCommands redis) {
+                byte[] value = redis.get(key.getBytes());
+                return value == null ? null : new String(value);
+            }
+        });
+    }
+
+
+
+    public static class MultiplexedContainer {
+
+        @Redis("test:string")
+        private String injectedString;
+
+        @Redis("test:list")
+        private List<String> injectedList;
+
+        public String getInjectedString() {
+            return this.injectedString;
+        }
+
+        public List<String> getInjectedList() {
+            return this.injectedList;
+        }
+    }
+
+    @Test
+    public void test_that_fields_are_injected_over_multiplexed_connection() {
+        this.jedis.set("test:string", "value");
+        this.jedis.rpush("test:list", "a");
+        this.jedis.rpush("test:list", "b");
+        MultiplexedContainer container = this.injector.getInstance(MultiplexedContainer.class);
+        assertThat(container.getInjectedString(), is("value"));
+        assertThat(container.getInjectedList().toString(), is("[a, b]"));
+    }
+
+    @Test
+    public void test_that_replies_to_concurrent_commands_are_matched_in_order() throws Exception {
+        int count = 200;
+        for (int index = 0; index < count; index++) {
+            this.jedis.set("test:key:" + index, "value:" + index);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int round = 0; round < 10; round++) {
+                for (int index = 0; index < count; index++) {
+                    final String key = "test:key:" + index;
+                    results.add(executor.submit(new Callable<String>() {
+                        @Override
+                        public String call() {
+                            return valueOf(key);
+                        }
+                    }));
+                }
+            }
+            for (int index = 0; index < results.size(); index++) {
+                assertThat(results.get(index).get(), is("value:" + (index % count)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_that_error_reply_does_not_affect_subsequent_replies() {
+        this.jedis.rpush("test:list", "a");
+        this.jedis.set("test:string", "value");
+        try {
+            valueOf("test:list");
+        } catch (JedisDataException exception) {
+            assertThat(valueOf("test:string"), is("value"));
+            return;
+        }
+        throw new AssertionError("Expected error reply.");
+    }
+
+    @Test
+    public void test_that_commands_fail_once_connection_is_closed() {
+        MultiplexedConnection connection = new MultiplexedConnection("localhost", 6379, 2000);
+        assertThat((String)MultiplexedCommands.await(connection.send("PING"), 2000), is("PONG"));
+        connection.close();
+        assertThat(connection.isOpen(), is(false));
+        try {
+            MultiplexedCommands.await(connection.send("PING"), 2000);
+        } catch (JedisConnectionException exception) {
+            return;
+        }
+        throw new AssertionError("Expected connection failure.");
+    }
+}
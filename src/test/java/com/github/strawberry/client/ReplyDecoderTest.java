@@ -0,0 +1,107 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class ReplyDecoderTest {
+
+    private static final String REPLIES =
+        "+OK\r\n" +
+        "-ERR wrong type\r\n" +
+        ":-42\r\n" +
+        "$5\r\nhello\r\n" +
+        "$-1\r\n" +
+        "*-1\r\n" +
+        "*0\r\n" +
+        "*3\r\n$1\r\na\r\n*2\r\n:1\r\n$0\r\n\r\n$-1\r\n";
+
+    private static void assertDecoded(List<Object> replies) {
+        assertThat(replies.size(), is(8));
+        assertThat((String)replies.get(0), is("OK"));
+        assertThat(replies.get(1), is(instanceOf(JedisDataException.class)));
+        assertThat(((JedisDataException)replies.get(1)).getMessage(), is("ERR wrong type"));
+        assertThat((Long)replies.get(2), is(-42L));
+        assertThat((byte[])replies.get(3), is("hello".getBytes()));
+        assertThat(replies.get(4), is(nullValue()));
+        assertThat(replies.get(5), is(nullValue()));
+        assertThat(((List<?>)replies.get(6)).isEmpty(), is(true));
+        List<?> nested = (List<?>)replies.get(7);
+        assertThat(nested.size(), is(3));
+        assertThat((byte[])nested.get(0), is("a".getBytes()));
+        assertThat((Long)((List<?>)nested.get(1)).get(0), is(1L));
+        assertThat((byte[])((List<?>)nested.get(1)).get(1), is(new byte[]{}));
+        assertThat(nested.get(2), is(nullValue()));
+    }
+
+    @Test
+    public void test_that_replies_are_decoded_from_single_fragment() {
+        ReplyDecoder decoder = new ReplyDecoder();
+        List<Object> replies = new ArrayList<Object>();
+        decoder.decode(ByteBuffer.wrap(REPLIES.getBytes()), replies);
+        assertDecoded(replies);
+        assertThat(decoder.isIdle(), is(true));
+    }
+
+    @Test
+    public void test_that_replies_are_decoded_from_single_byte_fragments() {
+        ReplyDecoder decoder = new ReplyDecoder();
+        List<Object> replies = new ArrayList<Object>();
+        for (byte next : REPLIES.getBytes()) {
+            decoder.decode(ByteBuffer.wrap(new byte[]{next}), replies);
+        }
+        assertDecoded(replies);
+        assertThat(decoder.isIdle(), is(true));
+    }
+
+    @Test
+    public void test_that_partial_reply_is_retained_until_complete() {
+        ReplyDecoder decoder = new ReplyDecoder();
+        List<Object> replies = new ArrayList<Object>();
+        byte[] value = new byte[100000];
+        Arrays.fill(value, (byte)'x');
+        byte[] reply = ("$" + value.length + "\r\n" + new String(value) + "\r\n").getBytes();
+        decoder.decode(ByteBuffer.wrap(reply, 0, 5000), replies);
+        assertThat(replies.isEmpty(), is(true));
+        assertThat(decoder.isIdle(), is(false));
+        decoder.decode(ByteBuffer.wrap(reply, 5000, reply.length - 5000), replies);
+        assertThat((byte[])replies.get(0), is(value));
+    }
+
+    @Test(expected = JedisConnectionException.class)
+    public void test_that_unknown_reply_type_throws_exception() {
+        new ReplyDecoder().decode(ByteBuffer.wrap("?\r\n".getBytes()), new ArrayList<Object>());
+    }
+}
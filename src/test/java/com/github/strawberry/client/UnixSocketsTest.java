@@ -0,0 +1,114 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.client;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.strawberry.redis.RedisCommands;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs against a Redis database that listens on the Unix domain socket given
+ * by the {@code strawberry.socket} system property (by default
+ * {@code /tmp/redis.sock}), and is skipped if there is none or if the Java
+ * runtime does not support Unix domain sockets.
+ *
+ * @author Wiehann Matthysen
+ */
+public class UnixSocketsTest {
+
+    private static final String SOCKET = System.getProperty("strawberry.socket", "/tmp/redis.sock");
+
+    private static final int COMMANDS = 1000;
+
+    private static void assumeSocket() {
+        assumeTrue(UnixSockets.isSupported() && new File(SOCKET).exists());
+    }
+
+    private static void assertPipelined(AsyncConnection connection) throws Exception {
+        try {
+            List<ListenableFuture<Object>> replies = new ArrayList<ListenableFuture<Object>>(COMMANDS);
+            for (int index = 0; index < COMMANDS; index++) {
+                connection.send("SET", "test:unix:" + index, "value:" + index);
+                replies.add(connection.send("GET", "test:unix:" + index));
+            }
+            for (int index = 0; index < COMMANDS; index++) {
+                assertThat(SafeEncoder.encode((byte[])replies.get(index).get()), is("value:" + index));
+            }
+            for (int index = 0; index < COMMANDS; index++) {
+                connection.send("DEL", "test:unix:" + index);
+            }
+            assertThat(connection.send("PING").get(), is((Object)"PONG"));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test(expected = JedisConnectionException.class)
+    public void test_that_unsupported_runtime_is_reported() {
+        assumeTrue(!UnixSockets.isSupported());
+        UnixSockets.addressOf(SOCKET);
+    }
+
+    @Test
+    public void test_that_multiplexed_connection_pipelines_over_unix_socket() throws Exception {
+        assumeSocket();
+        assertPipelined(new MultiplexedConnection(UnixSockets.addressOf(SOCKET), 2000));
+    }
+
+    @Test
+    public void test_that_nio_connection_pipelines_over_unix_socket() throws Exception {
+        assumeSocket();
+        EventLoop loop = new EventLoop();
+        try {
+            assertPipelined(new NioConnection(loop, UnixSockets.addressOf(SOCKET)));
+        } finally {
+            loop.close();
+        }
+    }
+
+    @Test
+    public void test_that_source_reads_over_unix_socket() {
+        assumeSocket();
+        MultiplexedSource source = new MultiplexedSource(UnixSockets.addressOf(SOCKET), 2, 2000);
+        try {
+            String info = source._do(new F<RedisCommands, String>() {
+                @Override
+                public String f(RedisCommands redis) {
+                    return redis.info();
+                }
+            });
+            assertThat(info.contains("redis_version"), is(true));
+        } finally {
+            source.close();
+        }
+    }
+}
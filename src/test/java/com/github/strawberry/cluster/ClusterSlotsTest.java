@@ -0,0 +1,68 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.cluster;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class ClusterSlotsTest {
+
+    @Test
+    public void test_that_crc16_matches_reference_value() {
+        byte[] bytes = SafeEncoder.encode("123456789");
+        assertThat(ClusterSlots.crc16(bytes, 0, bytes.length), is(0x31C3));
+    }
+
+    @Test
+    public void test_that_slots_match_redis() {
+        assertThat(ClusterSlots.slotOf("123456789"), is(12739));
+        assertThat(ClusterSlots.slotOf("foo"), is(12182));
+        assertThat(ClusterSlots.slotOf("bar"), is(5061));
+    }
+
+    @Test
+    public void test_that_only_hash_tag_is_hashed() {
+        assertThat(ClusterSlots.slotOf("{user1000}.following"), is(ClusterSlots.slotOf("user1000")));
+        assertThat(ClusterSlots.slotOf("{user1000}.followers"), is(ClusterSlots.slotOf("user1000")));
+        assertThat(ClusterSlots.slotOf("foo{bar}{zap}"), is(ClusterSlots.slotOf("bar")));
+    }
+
+    @Test
+    public void test_that_empty_hash_tag_is_ignored() {
+        assertThat(ClusterSlots.hashTagOf("foo{}{bar}"), is(nullValue()));
+        assertThat(ClusterSlots.hashTagOf("foo{bar"), is(nullValue()));
+        assertThat(ClusterSlots.hashTagOf("{bar}"), is("bar"));
+    }
+
+    @Test
+    public void test_that_pattern_with_literal_hash_tag_has_single_slot() {
+        assertThat(ClusterSlots.slotOfPattern("config:{app}:*"), is(ClusterSlots.slotOf("app")));
+        assertThat(ClusterSlots.slotOfPattern("config:*"), is(-1));
+        assertThat(ClusterSlots.slotOfPattern("config:{app*}:*"), is(-1));
+        assertThat(ClusterSlots.slotOfPattern("*:{app}:*"), is(-1));
+    }
+}
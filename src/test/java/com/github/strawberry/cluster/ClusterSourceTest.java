@@ -0,0 +1,221 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.cluster;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import com.github.strawberry.redis.RedisCommands;
+
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class ClusterSourceTest {
+
+    private FakeCluster cluster;
+    private ClusterSource source;
+
+    @Before
+    public void setup() {
+        this.cluster = new FakeCluster("10.0.0.1:7000", "10.0.0.2:7000", "10.0.0.3:7000");
+        this.source = new ClusterSource(Arrays.asList("10.0.0.1:7000"), this.cluster, 1000);
+    }
+
+    @After
+    public void teardown() {
+        this.source.close();
+    }
+
+    private void put(String key, String value) {
+        this.cluster.ownerOf(key).data.putString(key, SafeEncoder.encode(value));
+    }
+
+    private String get(final String key) {
+        return this.source._do(new F<RedisCommands, String>() {
+            @Override
+            public String f(RedisCommands redis) {
+                byte[] value = redis.get(SafeEncoder.encode(key));
+                return value == null ? null : SafeEncoder.encode(value);
+            }
+        });
+    }
+
+    private int redirects() {
+        int redirects = 0;
+        for (FakeCluster.Node node : this.cluster.nodes.values()) {
+            redirects += node.redirects.get();
+        }
+        return redirects;
+    }
+
+    @Test
+    public void test_that_masters_are_discovered_from_seed() {
+        assertThat(this.source.masters(), is(Arrays.asList("10.0.0.1:7000", "10.0.0.2:7000", "10.0.0.3:7000")));
+    }
+
+    @Test
+    public void test_that_key_is_routed_to_owner_of_its_slot() {
+        put("foo", "1");
+        put("bar", "2");
+        assertThat(get("foo"), is("1"));
+        assertThat(get("bar"), is("2"));
+        assertThat(redirects(), is(0));
+    }
+
+    @Test
+    public void test_that_moved_updates_slot_table() {
+        put("foo", "1");
+        assertThat(get("foo"), is("1"));
+
+        int slot = ClusterSlots.slotOf("foo");
+        FakeCluster.Node previous = this.cluster.owners[slot];
+        FakeCluster.Node next = this.cluster.node(previous == this.cluster.node("10.0.0.1:7000") ? "10.0.0.2:7000" : "10.0.0.1:7000");
+        previous.data.remove("foo");
+        this.cluster.owners[slot] = next;
+        put("foo", "1");
+
+        assertThat(get("foo"), is("1"));
+        assertThat(previous.redirects.get(), is(1));
+        assertThat(get("foo"), is("1"));
+        assertThat(previous.redirects.get(), is(1));
+    }
+
+    @Test
+    public void test_that_ask_is_followed_without_updating_slot_table() {
+        int slot = ClusterSlots.slotOf("foo");
+        FakeCluster.Node owner = this.cluster.owners[slot];
+        FakeCluster.Node target = this.cluster.node(owner == this.cluster.node("10.0.0.1:7000") ? "10.0.0.2:7000" : "10.0.0.1:7000");
+        this.cluster.migrating[slot] = target;
+        target.data.putString("foo", SafeEncoder.encode("1"));
+
+        assertThat(get("foo"), is("1"));
+        assertThat(get("foo"), is("1"));
+        assertThat(owner.redirects.get(), is(2));
+        assertThat(target.redirects.get(), is(0));
+    }
+
+    @Test
+    public void test_that_keys_are_gathered_from_all_masters() {
+        put("config:a", "1");
+        put("config:b", "2");
+        put("config:c", "3");
+        put("config:d", "4");
+        put("other", "5");
+        Set<String> keys = this.source._do(new F<RedisCommands, Set<String>>() {
+            @Override
+            public Set<String> f(RedisCommands redis) {
+                return redis.keys("config:*");
+            }
+        });
+        assertThat(keys, is((Set<String>)ImmutableSet.of(
+            "config:a", "config:b", "config:c", "config:d")));
+    }
+
+    @Test
+    public void test_that_keys_with_hash_tag_are_read_from_single_master() {
+        put("config:{app}:a", "1");
+        put("config:{app}:b", "2");
+        this.source.masters();
+        int before = this.cluster.commands();
+        Set<String> keys = this.source._do(new F<RedisCommands, Set<String>>() {
+            @Override
+            public Set<String> f(RedisCommands redis) {
+                return redis.keys("config:{app}:*");
+            }
+        });
+        assertThat(keys, is((Set<String>)ImmutableSet.of(
+            "config:{app}:a", "config:{app}:b")));
+        assertThat(this.cluster.commands() - before, is(1));
+    }
+
+    @Test
+    public void test_that_values_are_fetched_from_all_masters_in_key_order() {
+        put("a", "1");
+        this.cluster.ownerOf("b").data.putHash("b", ImmutableMap.of("x", "y"));
+        this.cluster.ownerOf("c").data.putList("c", Arrays.asList("1", "2"));
+        this.cluster.ownerOf("d").data.putSet("d", ImmutableSet.of("z"));
+        final List<String> keys = Arrays.asList("a", "b", "c", "d", "e");
+        List<Object> values = this.source._do(new F<RedisCommands, List<Object>>() {
+            @Override
+            public List<Object> f(RedisCommands redis) {
+                return redis.valuesOf(keys);
+            }
+        });
+        assertThat(SafeEncoder.encode((byte[])values.get(0)), is("1"));
+        assertThat(values.get(1), is((Object)ImmutableMap.of("x", "y")));
+        assertThat(values.get(2), is((Object)Arrays.asList("1", "2")));
+        assertThat(values.get(3), is((Object)ImmutableSet.of("z")));
+        assertThat(values.get(4), is(nullValue()));
+    }
+
+    @Test
+    public void test_that_values_of_migrating_slot_are_followed() {
+        int slot = ClusterSlots.slotOf("b");
+        FakeCluster.Node owner = this.cluster.owners[slot];
+        FakeCluster.Node target = this.cluster.node(owner == this.cluster.node("10.0.0.1:7000") ? "10.0.0.2:7000" : "10.0.0.1:7000");
+        put("a", "1");
+        this.cluster.migrating[slot] = target;
+        target.data.putString("b", SafeEncoder.encode("2"));
+        final List<String> keys = Arrays.asList("a", "b");
+        List<Object> values = this.source._do(new F<RedisCommands, List<Object>>() {
+            @Override
+            public List<Object> f(RedisCommands redis) {
+                return redis.valuesOf(keys);
+            }
+        });
+        assertThat(SafeEncoder.encode((byte[])values.get(0)), is("1"));
+        assertThat(SafeEncoder.encode((byte[])values.get(1)), is("2"));
+    }
+
+    @Test
+    public void test_that_slot_table_is_reloaded_after_failover() {
+        put("foo", "1");
+        assertThat(get("foo"), is("1"));
+
+        int slot = ClusterSlots.slotOf("foo");
+        FakeCluster.Node failed = this.cluster.owners[slot];
+        FakeCluster.Node promoted = this.cluster.node(failed == this.cluster.node("10.0.0.3:7000") ? "10.0.0.2:7000" : "10.0.0.3:7000");
+        for (int index = 0; index < ClusterSlots.SLOTS; index++) {
+            if (this.cluster.owners[index] == failed) {
+                this.cluster.owners[index] = promoted;
+            }
+        }
+        promoted.data.putString("foo", SafeEncoder.encode("1"));
+        failed.down = true;
+
+        assertThat(get("foo"), is("1"));
+        assertThat(this.source.masters().contains(failed.address), is(false));
+    }
+}
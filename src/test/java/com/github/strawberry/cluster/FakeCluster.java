@@ -0,0 +1,210 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.strawberry.client.AsyncConnection;
+import com.github.strawberry.client.ConnectionFactory;
+import com.github.strawberry.redis.Keyspace;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * A simulated Redis Cluster whose nodes keep their data in a {@link Keyspace}
+ * and reply to commands for slots they do not serve with MOVED and ASK
+ * redirections.
+ *
+ * @author Wiehann Matthysen
+ */
+class FakeCluster implements ConnectionFactory {
+
+    static class Node {
+
+        final String address;
+        final Keyspace data = new Keyspace();
+        final AtomicInteger commands = new AtomicInteger();
+        final AtomicInteger redirects = new AtomicInteger();
+        volatile boolean down;
+
+        Node(String address) {
+            this.address = address;
+        }
+    }
+
+    final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+    final Node[] owners = new Node[ClusterSlots.SLOTS];
+    final Node[] migrating = new Node[ClusterSlots.SLOTS];
+
+    /**
+     * Creates a cluster of the given nodes, among which the slots are divided
+     * evenly.
+     */
+    FakeCluster(String... addresses) {
+        for (String address : addresses) {
+            this.nodes.put(address, new Node(address));
+        }
+        List<Node> nodes = new ArrayList<Node>(this.nodes.values());
+        for (int slot = 0; slot < ClusterSlots.SLOTS; slot++) {
+            this.owners[slot] = nodes.get(slot * nodes.size() / ClusterSlots.SLOTS);
+        }
+    }
+
+    Node node(String address) {
+        return this.nodes.get(address);
+    }
+
+    Node ownerOf(String key) {
+        return this.owners[ClusterSlots.slotOf(key)];
+    }
+
+    int commands() {
+        int commands = 0;
+        for (Node node : this.nodes.values()) {
+            commands += node.commands.get();
+        }
+        return commands;
+    }
+
+    @Override
+    public AsyncConnection connect(String host, int port) {
+        final Node node = this.nodes.get(host + ":" + port);
+        if (node == null || node.down) {
+            throw new JedisConnectionException("Connection refused: " + host + ":" + port);
+        }
+        return new AsyncConnection() {
+
+            private boolean asking;
+            private volatile boolean open = true;
+
+            @Override
+            public synchronized ListenableFuture<Object> send(Object... args) {
+                if (!this.open || node.down) {
+                    this.open = false;
+                    return Futures.immediateFailedFuture(new JedisConnectionException("Connection reset."));
+                }
+                node.commands.incrementAndGet();
+                try {
+                    return Futures.immediateFuture(execute(node, this.asking, args));
+                } catch (JedisDataException exception) {
+                    return Futures.immediateFailedFuture(exception);
+                } finally {
+                    this.asking = args[0].equals("ASKING");
+                }
+            }
+
+            @Override
+            public synchronized List<ListenableFuture<Object>> sendAll(List<Object[]> commands) {
+                List<ListenableFuture<Object>> replies = new ArrayList<ListenableFuture<Object>>();
+                for (Object[] command : commands) {
+                    replies.add(send(command));
+                }
+                return replies;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return this.open;
+            }
+
+            @Override
+            public void close() {
+                this.open = false;
+            }
+        };
+    }
+
+    private static String stringOf(Object arg) {
+        return arg instanceof byte[] ? SafeEncoder.encode((byte[])arg) : String.valueOf(arg);
+    }
+
+    private static List<Object> replyOf(Collection<String> strings) {
+        List<Object> reply = new ArrayList<Object>(strings.size());
+        for (String string : strings) {
+            reply.add(SafeEncoder.encode(string));
+        }
+        return reply;
+    }
+
+    private Object slots() {
+        List<Object> ranges = new ArrayList<Object>();
+        int start = 0;
+        for (int slot = 1; slot <= ClusterSlots.SLOTS; slot++) {
+            if (slot == ClusterSlots.SLOTS || this.owners[slot] != this.owners[start]) {
+                String[] address = this.owners[start].address.split(":");
+                List<Object> master = Arrays.<Object>asList(SafeEncoder.encode(address[0]), Long.valueOf(address[1]));
+                ranges.add(Arrays.<Object>asList(Long.valueOf(start), Long.valueOf(slot - 1), master));
+                start = slot;
+            }
+        }
+        return ranges;
+    }
+
+    private synchronized Object execute(Node node, boolean asking, Object... args) {
+        String command = stringOf(args[0]);
+        if (command.equals("CLUSTER")) {
+            return slots();
+        } else if (command.equals("ASKING")) {
+            return "OK";
+        } else if (command.equals("INFO")) {
+            return SafeEncoder.encode(node.data.info());
+        } else if (command.equals("KEYS")) {
+            return replyOf(node.data.keys(stringOf(args[1])));
+        }
+        String key = stringOf(args[1]);
+        int slot = ClusterSlots.slotOf(key);
+        Node target = this.migrating[slot];
+        if (this.owners[slot] != node && !(asking && target == node)) {
+            node.redirects.incrementAndGet();
+            throw new JedisDataException("MOVED " + slot + " " + this.owners[slot].address);
+        }
+        if (target != null && target != node && node.data.type(key).equals("none")) {
+            node.redirects.incrementAndGet();
+            throw new JedisDataException("ASK " + slot + " " + target.address);
+        }
+        if (command.equals("TYPE")) {
+            return node.data.type(key);
+        } else if (command.equals("GET")) {
+            return node.data.get(SafeEncoder.encode(key));
+        } else if (command.equals("HGETALL")) {
+            List<String> pairs = new ArrayList<String>();
+            for (Map.Entry<String, String> entry : node.data.hgetAll(key).entrySet()) {
+                pairs.add(entry.getKey());
+                pairs.add(entry.getValue());
+            }
+            return replyOf(pairs);
+        } else if (command.equals("LRANGE")) {
+            return replyOf(node.data.lrange(key, Long.valueOf(stringOf(args[2])), Long.valueOf(stringOf(args[3]))));
+        } else if (command.equals("SMEMBERS")) {
+            return replyOf(node.data.smembers(key));
+        } else if (command.equals("ZRANGE")) {
+            return replyOf(node.data.zrange(key, Integer.valueOf(stringOf(args[2])), Integer.valueOf(stringOf(args[3]))));
+        }
+        throw new JedisDataException("ERR unknown command '" + command + "'");
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.TypeLiteral;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class MessagePackCodecTest {
+
+    public static class Endpoint {
+        public String host;
+        public int port;
+        public boolean secure;
+        public double weight;
+        public List<String> tags;
+    }
+
+    private final MessagePackCodec codec = new MessagePackCodec();
+
+    private Object decode(byte[] bytes, Type type) throws IOException {
+        return this.codec.decode(new ByteArrayInputStream(bytes), type);
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int index = 0; index < values.length; index++) {
+            bytes[index] = (byte)values[index];
+        }
+        return bytes;
+    }
+
+    @Test
+    public void test_that_map_is_decoded_into_object() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(buffer);
+        output.write(0x86);
+        output.write(0xa4); output.writeBytes("host");
+        output.write(0xa9); output.writeBytes("localhost");
+        output.write(0xa4); output.writeBytes("port");
+        output.write(0xcd); output.writeShort(6379);
+        output.write(0xa6); output.writeBytes("secure");
+        output.write(0xc3);
+        output.write(0xa6); output.writeBytes("weight");
+        output.write(0xcb); output.writeDouble(0.5);
+        output.write(0xa4); output.writeBytes("tags");
+        output.write(0x92);
+        output.write(0xa1); output.writeBytes("a");
+        output.write(0xa1); output.writeBytes("b");
+        output.write(0xa7); output.writeBytes("unknown");
+        output.write(0xc0);
+        Endpoint endpoint = (Endpoint)decode(buffer.toByteArray(), Endpoint.class);
+        assertThat(endpoint.host, is(equalTo("localhost")));
+        assertThat(endpoint.port, is(6379));
+        assertThat(endpoint.secure, is(true));
+        assertThat(endpoint.weight, is(0.5));
+        assertThat(endpoint.tags, is(equalTo((List<String>)ImmutableList.of("a", "b"))));
+    }
+
+    @Test
+    public void test_that_integers_of_all_widths_are_decoded() throws IOException {
+        assertThat(decode(bytes(0x7f), Long.class), is((Object)127L));
+        assertThat(decode(bytes(0xff), Long.class), is((Object)(-1L)));
+        assertThat(decode(bytes(0xd0, 0x80), Long.class), is((Object)(-128L)));
+        assertThat(decode(bytes(0xce, 0xff, 0xff, 0xff, 0xff), Long.class), is((Object)4294967295L));
+        assertThat(decode(bytes(0xcf, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff), BigInteger.class),
+            is((Object)new BigInteger("18446744073709551615")));
+    }
+
+    @Test
+    public void test_that_non_string_map_keys_are_converted_to_strings() throws IOException {
+        Type type = new TypeLiteral<Map<String, String>>(){}.getType();
+        Object decoded = decode(bytes(0x82, 0x01, 0xa1, 'a', 0xc0, 0xa1, 'b'), type);
+        assertThat(decoded, is((Object)ImmutableMap.of("1", "a", "null", "b")));
+    }
+
+    @Test
+    public void test_that_nil_is_decoded_as_null() throws IOException {
+        assertThat(decode(bytes(0xc0), String.class), is(nullValue()));
+    }
+
+    @Test(expected = IOException.class)
+    public void test_that_extension_type_throws_exception() throws IOException {
+        decode(bytes(0xd4, 0x01, 0x00), Object.class);
+    }
+
+    @Test(expected = IOException.class)
+    public void test_that_truncated_value_throws_exception() throws IOException {
+        decode(bytes(0xa4, 'h', 'o'), String.class);
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.collect;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class IntSetTest {
+
+    @Test
+    public void test_that_members_are_added_and_found() {
+        IntSet set = new IntSet();
+        assertThat(set.add(1), is(true));
+        assertThat(set.add(1), is(false));
+        assertThat(set.add(0), is(true));
+        assertThat(set.add(-5), is(true));
+        assertThat(set.size(), is(3));
+        assertThat(set.contains(0), is(true));
+        assertThat(set.contains(1), is(true));
+        assertThat(set.contains(-5), is(true));
+        assertThat(set.contains(2), is(false));
+        assertThat(set.contains((Object)1), is(true));
+        assertThat(set.contains((Object)"1"), is(false));
+    }
+
+    @Test
+    public void test_that_set_behaves_like_hash_set_under_random_operations() {
+        Random random = new Random(42);
+        IntSet set = new IntSet(4);
+        Set<Integer> expected = Sets.newHashSet();
+        for (int i = 0; i < 100000; i++) {
+            int value = random.nextInt(2000) - 1000;
+            if (random.nextInt(3) == 0) {
+                assertThat(set.removeInt(value), is(expected.remove(value)));
+            } else {
+                assertThat(set.add(value), is(expected.add(value)));
+            }
+        }
+        assertThat(set.size(), is(expected.size()));
+        assertThat((Set<Integer>)Sets.newHashSet(set), is(equalTo(expected)));
+        for (int value = -1000; value < 1000; value++) {
+            assertThat(set.contains(value), is(expected.contains(value)));
+        }
+    }
+
+    @Test
+    public void test_that_set_is_equal_to_boxed_set_with_same_members() {
+        IntSet set = new IntSet();
+        set.add(3);
+        set.add(0);
+        set.add(7);
+        assertThat((Set<Integer>)set, is(equalTo((Set<Integer>)Sets.newHashSet(0, 3, 7))));
+        assertThat(set.toIntArray().length, is(3));
+    }
+
+    @Test
+    public void test_that_clear_removes_all_members() {
+        IntSet set = new IntSet();
+        set.add(0);
+        set.add(1);
+        set.clear();
+        assertThat(set.isEmpty(), is(true));
+        assertThat(set.contains(0), is(false));
+        assertThat(set.contains(1), is(false));
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.collect;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class LongListTest {
+
+    @Test
+    public void test_that_elements_are_appended_in_order() {
+        LongList list = new LongList(1);
+        for (long value = 0; value < 100; value++) {
+            list.add(value * 3);
+        }
+        assertThat(list.size(), is(100));
+        assertThat(list.getLong(0), is(0L));
+        assertThat(list.getLong(99), is(297L));
+        assertThat(list.toLongArray().length, is(100));
+    }
+
+    @Test
+    public void test_that_list_is_equal_to_boxed_list_with_same_elements() {
+        LongList list = new LongList();
+        list.add(1L);
+        list.add(2L);
+        list.add(0, 0L);
+        assertThat((List<Long>)list, is(equalTo((List<Long>)Lists.newArrayList(0L, 1L, 2L))));
+        assertThat(list.remove(1), is(1L));
+        assertThat((List<Long>)list, is(equalTo((List<Long>)Lists.newArrayList(0L, 2L))));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void test_that_out_of_bounds_index_throws_exception() {
+        new LongList().getLong(0);
+    }
+}
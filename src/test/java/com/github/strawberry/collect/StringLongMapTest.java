@@ -0,0 +1,80 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.collect;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class StringLongMapTest {
+
+    @Test
+    public void test_that_values_are_stored_and_retrieved() {
+        StringLongMap map = new StringLongMap();
+        map.putLong("a", 1L);
+        map.putLong("b", -2L);
+        map.putLong("a", 3L);
+        assertThat(map.size(), is(2));
+        assertThat(map.getLong("a", 0L), is(3L));
+        assertThat(map.getLong("b", 0L), is(-2L));
+        assertThat(map.getLong("c", 42L), is(42L));
+        assertThat(map.get("c"), is(nullValue()));
+        assertThat((Map<String, Long>)map, is(equalTo((Map<String, Long>)ImmutableMap.of("a", 3L, "b", -2L))));
+    }
+
+    @Test
+    public void test_that_map_behaves_like_hash_map_under_random_operations() {
+        Random random = new Random(42);
+        StringLongMap map = new StringLongMap(2);
+        Map<String, Long> expected = Maps.newHashMap();
+        for (int i = 0; i < 100000; i++) {
+            String key = "key:" + random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key), is(expected.remove(key)));
+            } else {
+                long value = random.nextLong();
+                assertThat(map.put(key, value), is(expected.put(key, value)));
+            }
+        }
+        assertThat((Map<String, Long>)map, is(equalTo(expected)));
+    }
+
+    @Test
+    public void test_that_double_map_stores_unboxed_values() {
+        StringDoubleMap map = new StringDoubleMap();
+        map.putDouble("limit", 0.5);
+        assertThat(map.getDouble("limit", 0.0), is(0.5));
+        assertThat(map.getDouble("other", -1.0), is(-1.0));
+        assertThat(map.containsKey("limit"), is(true));
+        assertThat(map.remove("limit"), is(0.5));
+        assertThat(map.isEmpty(), is(true));
+    }
+}
@@ -0,0 +1,246 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.reflect.Field;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.client.EventLoop;
+import com.github.strawberry.client.NioConnection;
+import com.github.strawberry.redis.AsyncRedisLoader;
+import com.github.strawberry.redis.ConversionException;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import fj.data.Option;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class AsyncInjectionTest extends AbstractModule {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private EventLoop loop;
+    private NioConnection connection;
+    private AsyncRedisLoader loader;
+    private LoadingCache<Field, Option> cache;
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(new RedisModule(this.cache));
+    }
+
+    @Before
+    public void setup() {
+        this.loop = new EventLoop();
+        this.connection = new NioConnection(this.loop, "localhost", 6379);
+        this.loader = new AsyncRedisLoader(this.connection);
+        this.cache = CacheBuilder.newBuilder().build(this.loader);
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        this.connection.close();
+        this.loop.close();
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+
+
+    public static class AsyncContainer {
+
+        @Redis("test:string")
+        private String injectedString;
+
+        @Redis("test:number")
+        private int injectedNumber;
+
+        @Redis("test:hash")
+        private Map<String, String> injectedHash;
+
+        @Redis("test:list")
+        private int[] injectedArray;
+
+        @Redis("test:zset")
+        private Set<String> injectedSortedSet;
+
+        @Redis("test:nested:*")
+        private Map<String, Object> injectedNested;
+
+        public String getInjectedString() {
+            return this.injectedString;
+        }
+
+        public int getInjectedNumber() {
+            return this.injectedNumber;
+        }
+
+        public Map<String, String> getInjectedHash() {
+            return this.injectedHash;
+        }
+
+        public int[] getInjectedArray() {
+            return this.injectedArray;
+        }
+
+        public Set<String> getInjectedSortedSet() {
+            return this.injectedSortedSet;
+        }
+
+        public Map<String, Object> getInjectedNested() {
+            return this.injectedNested;
+        }
+    }
+
+    public static class InvalidContainer {
+
+        @Redis("test:number")
+        private int injectedNumber;
+    }
+
+    private void populate() {
+        this.jedis.set("test:string", "value");
+        this.jedis.set("test:number", "42");
+        this.jedis.hset("test:hash", "a", "1");
+        this.jedis.hset("test:hash", "b", "2");
+        this.jedis.rpush("test:list", "1");
+        this.jedis.rpush("test:list", "2");
+        this.jedis.rpush("test:list", "3");
+        this.jedis.zadd("test:zset", 2, "second");
+        this.jedis.zadd("test:zset", 1, "first");
+        this.jedis.set("test:nested:string", "nested");
+        this.jedis.sadd("test:nested:set", "member");
+    }
+
+    private void assertPopulated(AsyncContainer container) {
+        assertThat(container.getInjectedString(), is("value"));
+        assertThat(container.getInjectedNumber(), is(42));
+        assertThat(container.getInjectedHash(), is((Map<String, String>)ImmutableMap.of("a", "1", "b", "2")));
+        assertThat(container.getInjectedArray(), is(new int[]{1, 2, 3}));
+        assertThat(container.getInjectedSortedSet().toString(), is("[first, second]"));
+        assertThat(container.getInjectedNested().get("test:nested:string"), is((Object)"nested"));
+        assertThat(container.getInjectedNested().get("test:nested:set"), is((Object)Sets.newHashSet("member")));
+    }
+
+    @Test
+    public void test_that_fields_are_injected_from_asynchronous_loads() {
+        populate();
+        assertPopulated(this.injector.getInstance(AsyncContainer.class));
+    }
+
+    @Test
+    public void test_that_prefetch_warms_up_cache() throws Exception {
+        populate();
+        Map<Field, Option> prefetched = this.loader.prefetch(AsyncContainer.class).get();
+        assertThat(prefetched.size(), is(6));
+        this.cache.putAll(prefetched);
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        assertPopulated(this.injector.getInstance(AsyncContainer.class));
+    }
+
+    @Test
+    public void test_that_refresh_reloads_value_asynchronously() throws Exception {
+        this.jedis.set("test:string", "old");
+        assertThat(this.injector.getInstance(AsyncContainer.class).getInjectedString(), is("old"));
+        this.jedis.set("test:string", "new");
+        Field field = AsyncContainer.class.getDeclaredField("injectedString");
+        this.cache.refresh(field);
+        // The old value remains in place until the reload has completed.
+        for (int attempt = 0; attempt < 100 && this.cache.get(field).some().equals("old"); attempt++) {
+            Thread.sleep(10);
+        }
+        assertThat(this.injector.getInstance(AsyncContainer.class).getInjectedString(), is("new"));
+    }
+
+    @Test
+    public void test_that_many_loads_can_be_in_flight_at_once() throws Exception {
+        for (int index = 0; index < 500; index++) {
+            this.jedis.set("test:nested:" + index, Integer.toString(index));
+        }
+        Field field = AsyncContainer.class.getDeclaredField("injectedNested");
+        List<Option> values = new ArrayList<Option>();
+        for (int round = 0; round < 20; round++) {
+            values.add(this.loader.loadAsync(field).get());
+        }
+        for (Option value : values) {
+            assertThat(((Map<?, ?>)value.some()).size(), is(500));
+        }
+    }
+
+    @Test
+    public void test_that_conversion_failure_fails_future() throws Exception {
+        this.jedis.set("test:number", "not a number");
+        try {
+            this.loader.loadAsync(InvalidContainer.class.getDeclaredField("injectedNumber")).get();
+        } catch (ExecutionException exception) {
+            assertThat(exception.getCause(), is(instanceOf(ConversionException.class)));
+            return;
+        }
+        throw new AssertionError("Expected conversion failure.");
+    }
+
+    @Test(expected = JedisConnectionException.class)
+    public void test_that_blocking_load_times_out_if_no_reply_arrives() throws Exception {
+        // Accepts the connection, but never replies.
+        ServerSocket server = new ServerSocket(0);
+        NioConnection silent = new NioConnection(this.loop, "localhost", server.getLocalPort());
+        try {
+            AsyncRedisLoader silentLoader = new AsyncRedisLoader(silent, MoreExecutors.sameThreadExecutor(), 200);
+            silentLoader.load(AsyncContainer.class.getDeclaredField("injectedString"));
+        } finally {
+            silent.close();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.util.Compression;
+import com.github.strawberry.util.Compression.Format;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.common.io.ByteStreams;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import fj.data.Option;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class BinaryValueInjectionTest extends AbstractModule {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(new RedisModule(this.pool));
+    }
+
+    @Before
+    public void setup() {
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+    private static byte[] sample(int size) {
+        byte[] value = new byte[size];
+        new Random(42).nextBytes(value);
+        return value;
+    }
+
+    private static byte[] contentsOf(ByteBuffer buffer) {
+        byte[] contents = new byte[buffer.remaining()];
+        buffer.duplicate().get(contents);
+        return contents;
+    }
+
+
+
+    public static class ByteBufferContainer {
+
+        @Redis(value = "test:binary", allowNull = false, compressed = true)
+        private ByteBuffer injectedBuffer;
+
+        public ByteBuffer getInjectedBuffer() {
+            return this.injectedBuffer;
+        }
+    }
+
+    public static class ByteBufferAllowNullContainer {
+
+        @Redis("test:binary")
+        private ByteBuffer injectedBuffer;
+
+        public ByteBuffer getInjectedBuffer() {
+            return this.injectedBuffer;
+        }
+    }
+
+    @Test
+    public void test_that_large_value_is_injected_into_direct_read_only_byte_buffer() {
+        // Spans multiple chunks, with a partial chunk at the end.
+        byte[] value = sample((5 << 19) + 123);
+        this.jedis.set("test:binary".getBytes(), value);
+        ByteBuffer buffer = this.injector.getInstance(ByteBufferContainer.class).getInjectedBuffer();
+        assertThat(buffer.isDirect(), is(true));
+        assertThat(buffer.isReadOnly(), is(true));
+        assertThat(contentsOf(buffer), is(equalTo(value)));
+    }
+
+    @Test
+    public void test_that_compressed_value_is_injected_uncompressed_into_byte_buffer() {
+        byte[] value = new byte[100000];
+        Compression.set(this.jedis, "test:binary", value, Format.GZIP);
+        ByteBuffer buffer = this.injector.getInstance(ByteBufferContainer.class).getInjectedBuffer();
+        assertThat(buffer.isDirect(), is(true));
+        assertThat(contentsOf(buffer), is(equalTo(value)));
+    }
+
+    @Test
+    public void test_that_missing_value_is_injected_as_empty_byte_buffer() {
+        ByteBuffer buffer = this.injector.getInstance(ByteBufferContainer.class).getInjectedBuffer();
+        assertThat(buffer.remaining(), is(0));
+    }
+
+    @Test
+    public void test_that_missing_value_is_injected_as_null_into_byte_buffer() {
+        ByteBufferAllowNullContainer dummy = this.injector.getInstance(ByteBufferAllowNullContainer.class);
+        assertThat(dummy.getInjectedBuffer(), is(nullValue()));
+    }
+
+
+
+    public static class InputStreamContainer {
+
+        @Redis(value = "test:binary", allowNull = false, compressed = true)
+        private InputStream injectedStream;
+
+        public InputStream getInjectedStream() {
+            return this.injectedStream;
+        }
+    }
+
+    @Test
+    public void test_that_large_value_is_streamed_into_input_stream() throws IOException {
+        byte[] value = sample((3 << 20) + 1);
+        this.jedis.set("test:binary".getBytes(), value);
+        InputStream stream = this.injector.getInstance(InputStreamContainer.class).getInjectedStream();
+        assertThat(ByteStreams.toByteArray(stream), is(equalTo(value)));
+    }
+
+    @Test
+    public void test_that_compressed_value_is_streamed_uncompressed_into_input_stream() throws IOException {
+        byte[] value = new byte[3 << 20];
+        Compression.set(this.jedis, "test:binary", value, Format.LZF);
+        InputStream stream = this.injector.getInstance(InputStreamContainer.class).getInjectedStream();
+        assertThat(ByteStreams.toByteArray(stream), is(equalTo(value)));
+    }
+
+    @Test
+    public void test_that_missing_value_is_injected_as_empty_input_stream() throws IOException {
+        InputStream stream = this.injector.getInstance(InputStreamContainer.class).getInjectedStream();
+        assertThat(stream.read(), is(-1));
+    }
+
+    @Test
+    public void test_that_every_instance_receives_its_own_stream_from_cache() throws Exception {
+        LoadingCache<Field, Option> cache = CacheBuilder.newBuilder().build(new RedisLoader(this.pool));
+        Injector cachingInjector = Guice.createInjector(new RedisModule(cache));
+        byte[] value = sample(1000);
+        this.jedis.set("test:binary".getBytes(), value);
+        InputStream first = cachingInjector.getInstance(InputStreamContainer.class).getInjectedStream();
+        assertThat(ByteStreams.toByteArray(first), is(equalTo(value)));
+        InputStream second = cachingInjector.getInstance(InputStreamContainer.class).getInjectedStream();
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(ByteStreams.toByteArray(second), is(equalTo(value)));
+    }
+
+    @Test
+    public void test_that_every_instance_receives_its_own_byte_buffer_from_cache() {
+        LoadingCache<Field, Option> cache = CacheBuilder.newBuilder().build(new RedisLoader(this.pool));
+        Injector cachingInjector = Guice.createInjector(new RedisModule(cache));
+        byte[] value = sample(1000);
+        this.jedis.set("test:binary".getBytes(), value);
+        ByteBuffer first = cachingInjector.getInstance(ByteBufferContainer.class).getInjectedBuffer();
+        // Reading the first buffer moves its position to its end.
+        first.get(new byte[first.remaining()]);
+        ByteBuffer second = cachingInjector.getInstance(ByteBufferContainer.class).getInjectedBuffer();
+        assertThat(second.isReadOnly(), is(true));
+        assertThat(contentsOf(second), is(equalTo(value)));
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.redis.Keyspace;
+import com.github.strawberry.redis.LimitedSource;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.redis.SaturatedException;
+import com.github.strawberry.redis.StaleValues;
+import com.github.strawberry.util.AdaptiveLimit;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.ProvisionException;
+
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class BulkheadInjectionTest {
+
+    private final Keyspace keyspace = new Keyspace();
+    private LimitedSource source;
+    private Injector injector;
+
+    private CountDownLatch holding;
+    private CountDownLatch done;
+
+    @Before
+    public void setup() {
+        this.keyspace.putString("test:name", SafeEncoder.encode("old"));
+        this.source = new LimitedSource(this.keyspace, new AdaptiveLimit(1, 1, 1), 10, TimeUnit.MILLISECONDS);
+        this.injector = Guice.createInjector(new RedisModule(CacheBuilder.newBuilder().maximumSize(0).
+            build(new RedisLoader(this.source, new StaleValues()))));
+        this.holding = new CountDownLatch(1);
+        this.done = new CountDownLatch(1);
+    }
+
+    @After
+    public void teardown() {
+        this.done.countDown();
+    }
+
+    public static class Container {
+
+        @Redis("test:name")
+        private String name;
+    }
+
+    /**
+     * Occupies the only admission of the source until the test is done.
+     */
+    private void saturate() throws InterruptedException {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                BulkheadInjectionTest.this.source._do(new F<RedisCommands, Object>() {
+                    @Override
+                    public Object f(RedisCommands redis) {
+                        BulkheadInjectionTest.this.holding.countDown();
+                        try {
+                            BulkheadInjectionTest.this.done.await();
+                        } catch (InterruptedException exception) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return null;
+                    }
+                });
+            }
+        }).start();
+        this.holding.await();
+    }
+
+    @Test
+    public void test_that_stale_value_is_served_when_saturated() throws InterruptedException {
+        assertThat(this.injector.getInstance(Container.class).name, is("old"));
+        this.keyspace.putString("test:name", SafeEncoder.encode("new"));
+        saturate();
+        assertThat(this.injector.getInstance(Container.class).name, is("old"));
+        this.done.countDown();
+        Thread.sleep(50);
+        assertThat(this.injector.getInstance(Container.class).name, is("new"));
+    }
+
+    @Test
+    public void test_that_saturation_without_stale_value_fails() throws InterruptedException {
+        saturate();
+        try {
+            this.injector.getInstance(Container.class);
+            fail();
+        } catch (ProvisionException exception) {
+            Throwable cause = exception;
+            while (cause != null && !(cause instanceof SaturatedException)) {
+                cause = cause.getCause();
+            }
+            assertThat(cause instanceof SaturatedException, is(true));
+        }
+    }
+}
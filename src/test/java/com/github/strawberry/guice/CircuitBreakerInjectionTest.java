@@ -0,0 +1,177 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.redis.CircuitBreakerSource;
+import com.github.strawberry.redis.CircuitOpenException;
+import com.github.strawberry.redis.Keyspace;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.redis.RedisSource;
+import com.github.strawberry.redis.StaleValues;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.ProvisionException;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class CircuitBreakerInjectionTest {
+
+    private final Keyspace keyspace = new Keyspace();
+    private final AtomicInteger attempts = new AtomicInteger();
+    private volatile boolean down;
+
+    private CircuitBreakerSource source;
+    private Injector injector;
+
+    @Before
+    public void setup() {
+        this.keyspace.putString("test:name", SafeEncoder.encode("old"));
+        RedisSource flaky = new RedisSource() {
+            @Override
+            public <T> T _do(F<RedisCommands, T> callback) {
+                CircuitBreakerInjectionTest.this.attempts.incrementAndGet();
+                if (CircuitBreakerInjectionTest.this.down) {
+                    throw new JedisConnectionException("Connection refused.");
+                }
+                return CircuitBreakerInjectionTest.this.keyspace._do(callback);
+            }
+        };
+        this.source = new CircuitBreakerSource(flaky, 2, 200, TimeUnit.MILLISECONDS);
+        this.injector = Guice.createInjector(new RedisModule(CacheBuilder.newBuilder().maximumSize(0).
+            build(new RedisLoader(this.source, new StaleValues()))));
+    }
+
+    @After
+    public void teardown() {
+        this.source.close();
+    }
+
+    public static class Container {
+
+        @Redis("test:name")
+        private String name;
+    }
+
+    public static class OtherContainer {
+
+        @Redis("test:other")
+        private String other;
+    }
+
+    private String name() {
+        return this.injector.getInstance(Container.class).name;
+    }
+
+    private static Throwable rootOf(Throwable throwable) {
+        while (throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        return throwable;
+    }
+
+    @Test
+    public void test_that_circuit_opens_and_serves_last_value() {
+        assertThat(name(), is("old"));
+        this.down = true;
+        assertThat(name(), is("old"));
+        assertThat(name(), is("old"));
+        assertThat(this.source.isOpen(), is(true));
+        int attempts = this.attempts.get();
+        assertThat(name(), is("old"));
+        // Open circuits do not touch the source.
+        assertThat(this.attempts.get(), is(attempts));
+    }
+
+    @Test
+    public void test_that_last_value_is_served_through_wrapping_source() {
+        RedisSource wrapping = new RedisSource() {
+            @Override
+            public <T> T _do(F<RedisCommands, T> callback) {
+                return CircuitBreakerInjectionTest.this.source._do(callback);
+            }
+        };
+        Injector injector = Guice.createInjector(new RedisModule(CacheBuilder.newBuilder().maximumSize(0).
+            build(new RedisLoader(wrapping, new StaleValues()))));
+        assertThat(injector.getInstance(Container.class).name, is("old"));
+        this.down = true;
+        for (int attempt = 0; attempt < 3; attempt++) {
+            assertThat(injector.getInstance(Container.class).name, is("old"));
+        }
+        assertThat(this.source.isOpen(), is(true));
+    }
+
+    @Test
+    public void test_that_open_circuit_fails_fast_without_last_value() {
+        this.down = true;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                this.injector.getInstance(OtherContainer.class);
+                fail();
+            } catch (ProvisionException exception) {
+                assertThat(rootOf(exception) instanceof JedisConnectionException, is(true));
+            }
+        }
+        try {
+            this.injector.getInstance(OtherContainer.class);
+            fail();
+        } catch (ProvisionException exception) {
+            assertThat(rootOf(exception) instanceof CircuitOpenException, is(true));
+        }
+    }
+
+    @Test
+    public void test_that_circuit_closes_after_successful_probe() throws InterruptedException {
+        this.down = true;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                name();
+            } catch (ProvisionException exception) {
+                // Expected, no value has been loaded yet.
+            }
+        }
+        assertThat(this.source.isOpen(), is(true));
+        this.keyspace.putString("test:name", SafeEncoder.encode("new"));
+        this.down = false;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (this.source.isOpen() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(this.source.isOpen(), is(false));
+        assertThat(name(), is("new"));
+    }
+}
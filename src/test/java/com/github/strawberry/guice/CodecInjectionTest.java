@@ -0,0 +1,180 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.codec.JsonCodec;
+import com.github.strawberry.codec.MessagePackCodec;
+import com.github.strawberry.redis.RedisLoader;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class CodecInjectionTest extends AbstractModule {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(new RedisModule(this.pool));
+    }
+
+    @Before
+    public void setup() {
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+
+
+    public static class Endpoint {
+
+        private String host;
+        private int port;
+        private List<String> tags;
+
+        public String getHost() {
+            return this.host;
+        }
+
+        public int getPort() {
+            return this.port;
+        }
+
+        public List<String> getTags() {
+            return this.tags;
+        }
+    }
+
+    public static class JsonContainer {
+
+        @Redis(value = "test:json", codec = JsonCodec.class)
+        private Endpoint injectedEndpoint;
+
+        public Endpoint getInjectedEndpoint() {
+            return this.injectedEndpoint;
+        }
+    }
+
+    public static class JsonMapContainer {
+
+        @Redis(value = "test:json", codec = JsonCodec.class)
+        private Map<String, List<Integer>> injectedMap;
+
+        public Map<String, List<Integer>> getInjectedMap() {
+            return this.injectedMap;
+        }
+    }
+
+    public static class MessagePackContainer {
+
+        @Redis(value = "test:msgpack", codec = MessagePackCodec.class)
+        private Endpoint injectedEndpoint;
+
+        public Endpoint getInjectedEndpoint() {
+            return this.injectedEndpoint;
+        }
+    }
+
+    @Test
+    public void test_that_json_document_is_decoded_into_object() {
+        this.jedis.set("test:json", "{\"host\": \"localhost\", \"port\": 6379, \"tags\": [\"a\", \"b\"], \"other\": true}");
+        Endpoint endpoint = this.injector.getInstance(JsonContainer.class).getInjectedEndpoint();
+        assertThat(endpoint.getHost(), is(equalTo("localhost")));
+        assertThat(endpoint.getPort(), is(6379));
+        assertThat(endpoint.getTags(), is(equalTo((List<String>)ImmutableList.of("a", "b"))));
+    }
+
+    @Test
+    public void test_that_json_document_is_decoded_into_generic_map() {
+        this.jedis.set("test:json", "{\"a\": [1, 2], \"b\": []}");
+        Map<String, List<Integer>> map = this.injector.getInstance(JsonMapContainer.class).getInjectedMap();
+        assertThat(map, is(equalTo((Map<String, List<Integer>>)ImmutableMap.<String, List<Integer>>of(
+            "a", ImmutableList.of(1, 2), "b", ImmutableList.<Integer>of()))));
+    }
+
+    @Test
+    public void test_that_missing_value_is_injected_as_null_when_using_codec() {
+        assertThat(this.injector.getInstance(JsonContainer.class).getInjectedEndpoint(), is(nullValue()));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void test_that_invalid_json_document_throws_exception() {
+        this.jedis.set("test:json", "{\"host\": ");
+        this.injector.getInstance(JsonContainer.class);
+    }
+
+    @Test
+    public void test_that_message_pack_value_is_decoded_into_object() {
+        byte[] value = new byte[]{
+            (byte)0x82,
+            (byte)0xa4, 'h', 'o', 's', 't', (byte)0xa1, 'x',
+            (byte)0xa4, 'p', 'o', 'r', 't', (byte)0xcd, 0x04, (byte)0xd2
+        };
+        this.jedis.set("test:msgpack".getBytes(), value);
+        Endpoint endpoint = this.injector.getInstance(MessagePackContainer.class).getInjectedEndpoint();
+        assertThat(endpoint.getHost(), is(equalTo("x")));
+        assertThat(endpoint.getPort(), is(1234));
+    }
+
+    @Test
+    public void test_that_decoded_object_is_cached() {
+        LoadingCache cache = CacheBuilder.newBuilder().build(new RedisLoader(this.pool));
+        Injector cachingInjector = Guice.createInjector(new RedisModule(cache));
+        this.jedis.set("test:json", "{\"host\": \"localhost\"}");
+        Endpoint first = cachingInjector.getInstance(JsonContainer.class).getInjectedEndpoint();
+        Endpoint second = cachingInjector.getInstance(JsonContainer.class).getInjectedEndpoint();
+        assertThat(second, is(sameInstance(first)));
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.codec.JsonCodec;
+import com.github.strawberry.redis.JedisPoolSource;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.redis.RedisSource;
+import com.github.strawberry.redis.StaleValues;
+import com.github.strawberry.util.Compression;
+import com.github.strawberry.util.Compression.Format;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import fj.F;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class CompressedValueInjectionTest extends AbstractModule {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(new RedisModule(this.pool));
+    }
+
+    @Before
+    public void setup() {
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+
+
+    public static class StringContainer {
+
+        @Redis("test:string")
+        private String injectedString;
+
+        public String getInjectedString() {
+            return this.injectedString;
+        }
+    }
+
+    public static class ByteArrayContainer {
+
+        @Redis(value = "test:bytes", compressed = true)
+        private byte[] injectedBytes;
+
+        public byte[] getInjectedBytes() {
+            return this.injectedBytes;
+        }
+    }
+
+    public static class RawByteArrayContainer {
+
+        @Redis("test:bytes")
+        private byte[] injectedBytes;
+
+        public byte[] getInjectedBytes() {
+            return this.injectedBytes;
+        }
+    }
+
+    public static class AggregateContainer {
+
+        @Redis("test:value:*")
+        private Map<String, String> injectedMap;
+
+        public Map<String, String> getInjectedMap() {
+            return this.injectedMap;
+        }
+    }
+
+    public static class JsonContainer {
+
+        @Redis(value = "test:json", codec = JsonCodec.class)
+        private List<Integer> injectedList;
+
+        public List<Integer> getInjectedList() {
+            return this.injectedList;
+        }
+    }
+
+    @Test
+    public void test_that_gzip_compressed_string_is_injected_uncompressed() {
+        String value = Strings.repeat("large value é ", 10000);
+        Compression.set(this.jedis, "test:string", value, Format.GZIP);
+        StringContainer dummy = this.injector.getInstance(StringContainer.class);
+        assertThat(dummy.getInjectedString(), is(equalTo(value)));
+    }
+
+    @Test
+    public void test_that_lzf_compressed_string_is_injected_uncompressed() {
+        String value = Strings.repeat("large value ", 10000);
+        Compression.set(this.jedis, "test:string", value, Format.LZF);
+        StringContainer dummy = this.injector.getInstance(StringContainer.class);
+        assertThat(dummy.getInjectedString(), is(equalTo(value)));
+    }
+
+    @Test
+    public void test_that_uncompressed_string_is_injected_unchanged() {
+        this.jedis.set("test:string", "plain value");
+        StringContainer dummy = this.injector.getInstance(StringContainer.class);
+        assertThat(dummy.getInjectedString(), is(equalTo("plain value")));
+    }
+
+    @Test
+    public void test_that_compressed_bytes_are_injected_uncompressed() {
+        byte[] value = Strings.repeat("binary", 1000).getBytes();
+        Compression.set(this.jedis, "test:bytes", value, Format.LZF);
+        ByteArrayContainer dummy = this.injector.getInstance(ByteArrayContainer.class);
+        assertThat(dummy.getInjectedBytes(), is(equalTo(value)));
+    }
+
+    @Test
+    public void test_that_compressed_bytes_are_injected_as_stored_without_opt_in() {
+        byte[] value = Compression.compress(Strings.repeat("binary", 1000).getBytes(), Format.GZIP);
+        this.jedis.set("test:bytes".getBytes(), value);
+        RawByteArrayContainer dummy = this.injector.getInstance(RawByteArrayContainer.class);
+        assertThat(dummy.getInjectedBytes(), is(equalTo(value)));
+    }
+
+    @Test
+    public void test_that_compressed_strings_are_injected_uncompressed_into_aggregate() {
+        Compression.set(this.jedis, "test:value:01", "value_01", Format.GZIP);
+        this.jedis.set("test:value:02", "value_02");
+        AggregateContainer dummy = this.injector.getInstance(AggregateContainer.class);
+        assertThat(dummy.getInjectedMap().get("test:value:01"), is(equalTo("value_01")));
+        assertThat(dummy.getInjectedMap().get("test:value:02"), is(equalTo("value_02")));
+    }
+
+    @Test
+    public void test_that_compressed_json_document_is_decoded() {
+        Compression.set(this.jedis, "test:json", "[1, 2, 3]", Format.GZIP);
+        JsonContainer dummy = this.injector.getInstance(JsonContainer.class);
+        assertThat(dummy.getInjectedList(), is(equalTo((List<Integer>)ImmutableList.of(1, 2, 3))));
+    }
+
+    @Test
+    public void test_that_compressed_and_raw_fields_of_same_key_do_not_share_values() throws Exception {
+        final byte[] raw = Strings.repeat("binary", 1000).getBytes();
+        byte[] compressed = Compression.compress(raw, Format.LZF);
+        this.jedis.set("test:bytes".getBytes(), compressed);
+        final RedisSource live = new JedisPoolSource(this.pool);
+        final boolean[] down = new boolean[1];
+        RedisSource source = new RedisSource() {
+            @Override
+            public <T> T _do(F<RedisCommands, T> callback) {
+                if (down[0]) {
+                    throw new JedisConnectionException("Connection refused.");
+                }
+                return live._do(callback);
+            }
+        };
+        RedisLoader loader = new RedisLoader(source, new StaleValues());
+        Field decompressing = ByteArrayContainer.class.getDeclaredField("injectedBytes");
+        Field asStored = RawByteArrayContainer.class.getDeclaredField("injectedBytes");
+        assertThat((byte[])loader.load(decompressing).some(), is(equalTo(raw)));
+        assertThat((byte[])loader.load(asStored).some(), is(equalTo(compressed)));
+
+        // Each field is served the stale value that was loaded for it.
+        down[0] = true;
+        assertThat((byte[])loader.load(decompressing).some(), is(equalTo(raw)));
+        assertThat((byte[])loader.load(asStored).some(), is(equalTo(compressed)));
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.redis.Keyspace;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.redis.RedisSource;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+import fj.data.Option;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class LoadBudgetInjectionTest {
+
+    private static final long SLOW = 500;
+
+    private final Keyspace keyspace = new Keyspace();
+    private final AtomicInteger slowCommands = new AtomicInteger();
+    private RedisSource source;
+
+    @Before
+    public void setup() {
+        this.keyspace.putString("test:fast", SafeEncoder.encode("fast"));
+        this.keyspace.putString("test:slow", SafeEncoder.encode("slow"));
+        this.keyspace.putString("test:slower", SafeEncoder.encode("slower"));
+        // A source for which every command on a slow key takes a while.
+        this.source = new RedisSource() {
+            @Override
+            public <T> T _do(final F<RedisCommands, T> callback) {
+                return LoadBudgetInjectionTest.this.keyspace._do(new F<RedisCommands, T>() {
+                    @Override
+                    public T f(final RedisCommands redis) {
+                        return callback.f(slowed(redis));
+                    }
+                });
+            }
+        };
+    }
+
+    private RedisCommands slowed(final RedisCommands redis) {
+        return (RedisCommands)Proxy.newProxyInstance(RedisCommands.class.getClassLoader(),
+            new Class<?>[] {RedisCommands.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (args != null && String.valueOf(args[0]).equals("test:slow")) {
+                        slowCommands.incrementAndGet();
+                    }
+                    if (args != null && String.valueOf(args[0]).startsWith("test:slow")) {
+                        Thread.sleep(SLOW);
+                    }
+                    try {
+                        return method.invoke(redis, args);
+                    } catch (InvocationTargetException exception) {
+                        throw exception.getCause();
+                    }
+                }
+            });
+    }
+
+    private Injector injectorOf(LoadBudget budget) {
+        LoadingCache<Field, Option> cache = CacheBuilder.newBuilder().maximumSize(0).build(new RedisLoader(this.source));
+        return Guice.createInjector(new RedisModule(cache, budget));
+    }
+
+    public static class FieldBudgetContainer {
+
+        @Redis("test:fast")
+        private String fast;
+
+        @Redis(value = "test:slow", timeout = 50, allowNull = false)
+        private String slow;
+
+        @Redis(value = "test:slower", timeout = 50)
+        private String slower = "default";
+    }
+
+    public static class UnboundedContainer {
+
+        @Redis("test:fast")
+        private String fast;
+
+        @Redis("test:slow")
+        private String slow;
+    }
+
+    @Test
+    public void test_that_slow_field_is_cut_off_after_its_timeout() {
+        LoadBudget budget = new LoadBudget(0, 0, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        FieldBudgetContainer container = injectorOf(budget).getInstance(FieldBudgetContainer.class);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertThat(container.fast, is("fast"));
+        assertThat(container.slow, is(""));
+        assertThat(container.slower, is("default"));
+        assertThat(budget.timeouts(), is(2L));
+        assertThat(elapsed < SLOW, is(true));
+    }
+
+    @Test
+    public void test_that_module_wide_field_timeout_applies() {
+        LoadBudget budget = new LoadBudget(50, 0, TimeUnit.MILLISECONDS);
+        UnboundedContainer container = injectorOf(budget).getInstance(UnboundedContainer.class);
+        assertThat(container.fast, is("fast"));
+        assertThat(container.slow == null, is(true));
+        assertThat(budget.timeouts(), is(1L));
+    }
+
+    @Test
+    public void test_that_class_deadline_bounds_injection() {
+        LoadBudget budget = new LoadBudget(0, 100, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        UnboundedContainer container = injectorOf(budget).getInstance(UnboundedContainer.class);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertThat(container.fast, is("fast"));
+        assertThat(container.slow == null, is(true));
+        assertThat(elapsed < SLOW, is(true));
+    }
+
+    @Test
+    public void test_that_unbounded_fields_wait_for_their_values() {
+        UnboundedContainer container = injectorOf(new LoadBudget(0, 0, TimeUnit.MILLISECONDS)).
+            getInstance(UnboundedContainer.class);
+        assertThat(container.slow, is("slow"));
+    }
+
+    @Test
+    public void test_that_cut_off_load_fills_cache_in_background() throws InterruptedException {
+        LoadBudget budget = new LoadBudget(50, 0, TimeUnit.MILLISECONDS);
+        LoadingCache<Field, Option> cache = CacheBuilder.newBuilder().build(new RedisLoader(this.source));
+        Injector injector = Guice.createInjector(new RedisModule(cache, budget));
+        assertThat(injector.getInstance(UnboundedContainer.class).slow == null, is(true));
+        Thread.sleep(SLOW * 2);
+        assertThat(injector.getInstance(UnboundedContainer.class).slow, is("slow"));
+    }
+
+    @Test
+    public void test_that_cut_off_load_is_not_started_again_while_it_runs() {
+        LoadBudget budget = new LoadBudget(50, 0, TimeUnit.MILLISECONDS);
+        Injector injector = injectorOf(budget);
+        for (int i = 0; i < 3; i++) {
+            assertThat(injector.getInstance(UnboundedContainer.class).slow == null, is(true));
+        }
+        assertThat(budget.timeouts(), is(3L));
+        assertThat(this.slowCommands.get(), is(1));
+        budget.close();
+    }
+}
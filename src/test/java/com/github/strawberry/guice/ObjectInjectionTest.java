@@ -0,0 +1,193 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class ObjectInjectionTest extends AbstractModule {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(new RedisModule(this.pool));
+    }
+
+    @Before
+    public void setup() {
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+
+
+    public static class BaseConfig {
+
+        private String name;
+
+        public String getName() {
+            return this.name;
+        }
+    }
+
+    public static class ServiceConfig extends BaseConfig {
+
+        private String host;
+        private int port = 6379;
+        private Boolean enabled;
+        private double ratio;
+        private transient String ignored;
+
+        private boolean ratioSetterCalled;
+
+        public String getHost() {
+            return this.host;
+        }
+
+        public int getPort() {
+            return this.port;
+        }
+
+        public Boolean getEnabled() {
+            return this.enabled;
+        }
+
+        public double getRatio() {
+            return this.ratio;
+        }
+
+        public void setRatio(double ratio) {
+            this.ratioSetterCalled = true;
+            this.ratio = ratio;
+        }
+
+        public boolean isRatioSetterCalled() {
+            return this.ratioSetterCalled;
+        }
+
+        public String getIgnored() {
+            return this.ignored;
+        }
+    }
+
+    public static class ServiceConfigContainer {
+
+        @Redis(value = "test:service", allowNull = false)
+        private ServiceConfig injectedConfig;
+
+        public ServiceConfig getInjectedConfig() {
+            return this.injectedConfig;
+        }
+    }
+
+    public static class ServiceConfigAllowNullContainer {
+
+        @Redis("test:service")
+        private ServiceConfig injectedConfig;
+
+        public ServiceConfig getInjectedConfig() {
+            return this.injectedConfig;
+        }
+    }
+
+    @Test
+    public void test_that_hash_is_injected_into_object() {
+        this.jedis.hset("test:service", "name", "service_01");
+        this.jedis.hset("test:service", "host", "localhost");
+        this.jedis.hset("test:service", "port", "1234");
+        this.jedis.hset("test:service", "enabled", "yes");
+        this.jedis.hset("test:service", "ratio", "0.75");
+        this.jedis.hset("test:service", "ignored", "value");
+        this.jedis.hset("test:service", "unrelated", "value");
+        ServiceConfig config = this.injector.getInstance(ServiceConfigContainer.class).getInjectedConfig();
+        assertThat(config.getName(), is(equalTo("service_01")));
+        assertThat(config.getHost(), is(equalTo("localhost")));
+        assertThat(config.getPort(), is(1234));
+        assertThat(config.getEnabled(), is(true));
+        assertThat(config.getRatio(), is(0.75));
+        assertThat(config.isRatioSetterCalled(), is(true));
+        assertThat(config.getIgnored(), is(nullValue()));
+    }
+
+    @Test
+    public void test_that_missing_hash_fields_retain_default_property_values() {
+        this.jedis.hset("test:service", "host", "localhost");
+        ServiceConfig config = this.injector.getInstance(ServiceConfigContainer.class).getInjectedConfig();
+        assertThat(config.getHost(), is(equalTo("localhost")));
+        assertThat(config.getPort(), is(6379));
+        assertThat(config.getEnabled(), is(nullValue()));
+        assertThat(config.isRatioSetterCalled(), is(false));
+    }
+
+    @Test
+    public void test_that_missing_value_is_injected_as_new_instance_into_object() {
+        ServiceConfigContainer dummy = this.injector.getInstance(ServiceConfigContainer.class);
+        assertThat(dummy.getInjectedConfig(), is(notNullValue()));
+        assertThat(dummy.getInjectedConfig().getPort(), is(6379));
+    }
+
+    @Test
+    public void test_that_missing_value_is_injected_as_null_into_object() {
+        ServiceConfigAllowNullContainer dummy = this.injector.getInstance(ServiceConfigAllowNullContainer.class);
+        assertThat(dummy.getInjectedConfig(), is(nullValue()));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void test_that_invalid_hash_field_throws_exception_when_converting_to_object() {
+        this.jedis.hset("test:service", "port", "invalid");
+        this.injector.getInstance(ServiceConfigContainer.class);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void test_that_string_value_throws_exception_when_converting_to_object() {
+        this.jedis.set("test:service", "value");
+        this.injector.getInstance(ServiceConfigContainer.class);
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.redis.JedisPoolSource;
+import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.util.Compression;
+import com.github.strawberry.util.Compression.Format;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+
+import fj.data.Option;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class ParallelAggregateInjectionTest extends AbstractModule {
+
+    private static final int KEYS = 5000;
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private ExecutorService executor;
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        LoadingCache<Field, Option> cache = CacheBuilder.newBuilder().maximumSize(0).
+            build(new RedisLoader(new JedisPoolSource(this.pool), this.executor, 4));
+        install(new RedisModule(cache));
+    }
+
+    @Before
+    public void setup() {
+        this.executor = Executors.newFixedThreadPool(3);
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        this.executor.shutdown();
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+    private static String keyOf(int index) {
+        return String.format("test:aggregate:%05d", index);
+    }
+
+    private void populate() {
+        Pipeline pipeline = this.jedis.pipelined();
+        for (int index = 0; index < KEYS; index++) {
+            switch (index % 4) {
+                case 0: {
+                    pipeline.set(keyOf(index), "value:" + index);
+                } break;
+                case 1: {
+                    pipeline.hset(keyOf(index), "field", "value:" + index);
+                } break;
+                case 2: {
+                    pipeline.rpush(keyOf(index), "value:" + index);
+                } break;
+                case 3: {
+                    pipeline.zadd(keyOf(index), index, "value:" + index);
+                } break;
+            }
+        }
+        pipeline.sync();
+    }
+
+
+
+    public static class AggregateContainer {
+
+        @Redis("test:aggregate:*")
+        private Map<String, Object> injectedMap;
+
+        @Redis("test:aggregate:*")
+        private List<Object> injectedList;
+
+        public Map<String, Object> getInjectedMap() {
+            return this.injectedMap;
+        }
+
+        public List<Object> getInjectedList() {
+            return this.injectedList;
+        }
+    }
+
+    @Test
+    public void test_that_large_aggregate_is_fetched_in_partitions_and_merged_in_order() {
+        populate();
+        AggregateContainer container = this.injector.getInstance(AggregateContainer.class);
+        Map<String, Object> map = container.getInjectedMap();
+        List<Object> list = container.getInjectedList();
+        assertThat(map.size(), is(KEYS));
+        assertThat(list.size(), is(KEYS));
+        for (int index = 0; index < KEYS; index++) {
+            Object value = map.get(keyOf(index));
+            assertThat(list.get(index), is(value));
+            switch (index % 4) {
+                case 0: {
+                    assertThat(value, is((Object)("value:" + index)));
+                } break;
+                case 1: {
+                    assertThat(((Map<?, ?>)value).get("field"), is((Object)("value:" + index)));
+                } break;
+                default: {
+                    assertThat(new ArrayList<Object>((Collection<?>)value).get(0), is((Object)("value:" + index)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_that_compressed_values_are_decompressed_in_partitions() {
+        for (int index = 0; index < 2 * KEYS; index += 2) {
+            Compression.set(this.jedis, keyOf(index), "value:" + index, Format.LZF);
+            this.jedis.set(keyOf(index + 1), "value:" + (index + 1));
+        }
+        List<Object> list = this.injector.getInstance(AggregateContainer.class).getInjectedList();
+        for (int index = 0; index < 2 * KEYS; index++) {
+            assertThat(list.get(index), is((Object)("value:" + index)));
+        }
+    }
+
+    public static class OverlappingContainer {
+
+        @Redis("test:aggregate:*")
+        private Map<String, Object> injectedAll;
+
+        @Redis("test:aggregate:0*")
+        private Map<String, Object> injectedPrefixed;
+
+        @Redis("test:aggregate:*[0-4]")
+        private Map<String, Object> injectedLower;
+
+        @Redis("test:aggregate:*[5-9]")
+        private Map<String, Object> injectedUpper;
+    }
+
+    @Test(timeout = 30000)
+    public void test_that_concurrent_loads_do_not_deadlock_on_bounded_pool() throws Exception {
+        populate();
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxActive(2);
+        JedisPool bounded = new JedisPool(config, "localhost", 6379);
+        ExecutorService partitions = Executors.newCachedThreadPool();
+        ExecutorService loads = Executors.newFixedThreadPool(4);
+        try {
+            final RedisLoader loader = new RedisLoader(new JedisPoolSource(bounded), partitions, 4);
+            List<Future<Option>> values = new ArrayList<Future<Option>>();
+            for (final Field field : OverlappingContainer.class.getDeclaredFields()) {
+                values.add(loads.submit(new Callable<Option>() {
+                    @Override
+                    public Option call() throws Exception {
+                        return loader.load(field);
+                    }
+                }));
+            }
+            assertThat(((Map<?, ?>)values.get(0).get().some()).size(), is(KEYS));
+            assertThat(((Map<?, ?>)values.get(1).get().some()).size(), is(KEYS));
+            assertThat(((Map<?, ?>)values.get(2).get().some()).size(), is(KEYS / 2));
+            assertThat(((Map<?, ?>)values.get(3).get().some()).size(), is(KEYS / 2));
+        } finally {
+            loads.shutdown();
+            partitions.shutdown();
+            bounded.destroy();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class PrimitiveArrayInjectionTest extends AbstractModule {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(new RedisModule(this.pool));
+    }
+
+    @Before
+    public void setup() {
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+
+
+    public static class IntArrayContainer {
+
+        @Redis(value = "test:array", allowNull = false)
+        private int[] injectedArray;
+
+        public int[] getInjectedArray() {
+            return this.injectedArray;
+        }
+    }
+
+    public static class IntArrayAllowNullContainer {
+
+        @Redis("test:array")
+        private int[] injectedArray;
+
+        public int[] getInjectedArray() {
+            return this.injectedArray;
+        }
+    }
+
+    public static class IntArrayDefaultValueContainer {
+
+        @Redis("test:array")
+        private int[] injectedArray = new int[]{1, 2, 3};
+
+        public int[] getInjectedArray() {
+            return this.injectedArray;
+        }
+    }
+
+    @Test
+    public void test_that_list_is_converted_into_int_array() {
+        this.jedis.rpush("test:array", "1");
+        this.jedis.rpush("test:array", "-2");
+        this.jedis.rpush("test:array", "2147483647");
+        IntArrayContainer dummy = this.injector.getInstance(IntArrayContainer.class);
+        assertThat(dummy.getInjectedArray(), is(equalTo(new int[]{1, -2, 2147483647})));
+    }
+
+    @Test
+    public void test_that_sorted_set_is_converted_into_int_array() {
+        this.jedis.zadd("test:array", 3.0, "30");
+        this.jedis.zadd("test:array", 1.0, "10");
+        this.jedis.zadd("test:array", 2.0, "20");
+        IntArrayContainer dummy = this.injector.getInstance(IntArrayContainer.class);
+        assertThat(dummy.getInjectedArray(), is(equalTo(new int[]{10, 20, 30})));
+    }
+
+    @Test
+    public void test_that_missing_value_is_injected_as_null_into_int_array() {
+        IntArrayAllowNullContainer dummy = this.injector.getInstance(IntArrayAllowNullContainer.class);
+        assertThat(dummy.getInjectedArray(), is(nullValue()));
+    }
+
+    @Test
+    public void test_that_missing_value_is_injected_as_empty_int_array() {
+        IntArrayContainer dummy = this.injector.getInstance(IntArrayContainer.class);
+        assertThat(dummy.getInjectedArray(), is(equalTo(new int[]{})));
+    }
+
+    @Test
+    public void test_that_missing_value_causes_default_value_to_be_set_for_int_array() {
+        IntArrayDefaultValueContainer dummy = this.injector.getInstance(IntArrayDefaultValueContainer.class);
+        assertThat(dummy.getInjectedArray(), is(equalTo(new int[]{1, 2, 3})));
+
+        this.jedis.rpush("test:array", "4");
+        dummy = this.injector.getInstance(IntArrayDefaultValueContainer.class);
+        assertThat(dummy.getInjectedArray(), is(equalTo(new int[]{4})));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void test_that_invalid_member_throws_exception_when_converting_to_int_array() {
+        this.jedis.rpush("test:array", "1");
+        this.jedis.rpush("test:array", "invalid");
+        this.injector.getInstance(IntArrayContainer.class);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void test_that_too_large_member_throws_exception_when_converting_to_int_array() {
+        this.jedis.rpush("test:array", "2147483648");
+        this.injector.getInstance(IntArrayContainer.class);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void test_that_string_value_throws_exception_when_converting_to_int_array() {
+        this.jedis.set("test:array", "1");
+        this.injector.getInstance(IntArrayContainer.class);
+    }
+
+
+
+    public static class LongArrayContainer {
+
+        @Redis(value = "test:array", allowNull = false)
+        private long[] injectedArray;
+
+        public long[] getInjectedArray() {
+            return this.injectedArray;
+        }
+    }
+
+    @Test
+    public void test_that_set_is_converted_into_long_array() {
+        this.jedis.sadd("test:array", "9223372036854775807");
+        LongArrayContainer dummy = this.injector.getInstance(LongArrayContainer.class);
+        assertThat(dummy.getInjectedArray(), is(equalTo(new long[]{9223372036854775807L})));
+    }
+
+    @Test
+    public void test_that_missing_value_is_injected_as_empty_long_array() {
+        LongArrayContainer dummy = this.injector.getInstance(LongArrayContainer.class);
+        assertThat(dummy.getInjectedArray(), is(equalTo(new long[]{})));
+    }
+
+
+
+    public static class FloatArrayContainer {
+
+        @Redis(value = "test:array", allowNull = false)
+        private float[] injectedArray;
+
+        public float[] getInjectedArray() {
+            return this.injectedArray;
+        }
+    }
+
+    @Test
+    public void test_that_list_is_converted_into_float_array() {
+        this.jedis.rpush("test:array", "0.5");
+        this.jedis.rpush("test:array", "-1.25");
+        FloatArrayContainer dummy = this.injector.getInstance(FloatArrayContainer.class);
+        assertThat(dummy.getInjectedArray(), is(equalTo(new float[]{0.5f, -1.25f})));
+    }
+
+
+
+    public static class DoubleArrayContainer {
+
+        @Redis(value = "test:array", allowNull = false)
+        private double[] injectedArray;
+
+        public double[] getInjectedArray() {
+            return this.injectedArray;
+        }
+    }
+
+    @Test
+    public void test_that_list_is_converted_into_double_array() {
+        this.jedis.rpush("test:array", "0.123456");
+        this.jedis.rpush("test:array", "1e3");
+        DoubleArrayContainer dummy = this.injector.getInstance(DoubleArrayContainer.class);
+        assertThat(dummy.getInjectedArray(), is(equalTo(new double[]{0.123456, 1000.0})));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void test_that_invalid_member_throws_exception_when_converting_to_double_array() {
+        this.jedis.rpush("test:array", "invalid");
+        this.injector.getInstance(DoubleArrayContainer.class);
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.collect.IntSet;
+import com.github.strawberry.collect.LongList;
+import com.github.strawberry.collect.LongSet;
+import com.github.strawberry.collect.StringDoubleMap;
+import com.github.strawberry.collect.StringLongMap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class PrimitiveCollectionInjectionTest extends AbstractModule {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(new RedisModule(this.pool));
+    }
+
+    @Before
+    public void setup() {
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+
+
+    public static class IntSetContainer {
+
+        @Redis(value = "test:set", allowNull = false)
+        private IntSet injectedSet;
+
+        public IntSet getInjectedSet() {
+            return this.injectedSet;
+        }
+    }
+
+    public static class IntSetAllowNullContainer {
+
+        @Redis("test:set")
+        private IntSet injectedSet;
+
+        public IntSet getInjectedSet() {
+            return this.injectedSet;
+        }
+    }
+
+    @Test
+    public void test_that_set_is_injected_into_int_set() {
+        this.jedis.sadd("test:set", "1");
+        this.jedis.sadd("test:set", "-2");
+        this.jedis.sadd("test:set", "0");
+        IntSetContainer dummy = this.injector.getInstance(IntSetContainer.class);
+        assertThat(dummy.getInjectedSet().contains(1), is(true));
+        assertThat(dummy.getInjectedSet().contains(-2), is(true));
+        assertThat(dummy.getInjectedSet().contains(0), is(true));
+        assertThat(dummy.getInjectedSet().contains(3), is(false));
+        assertThat(dummy.getInjectedSet().size(), is(3));
+    }
+
+    @Test
+    public void test_that_missing_value_is_injected_as_empty_int_set() {
+        IntSetContainer dummy = this.injector.getInstance(IntSetContainer.class);
+        assertThat(dummy.getInjectedSet().isEmpty(), is(true));
+    }
+
+    @Test
+    public void test_that_missing_value_is_injected_as_null_into_int_set() {
+        IntSetAllowNullContainer dummy = this.injector.getInstance(IntSetAllowNullContainer.class);
+        assertThat(dummy.getInjectedSet(), is(nullValue()));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void test_that_invalid_member_throws_exception_when_converting_to_int_set() {
+        this.jedis.sadd("test:set", "invalid");
+        this.injector.getInstance(IntSetContainer.class);
+    }
+
+
+
+    public static class LongSetContainer {
+
+        @Redis(value = "test:set", allowNull = false)
+        private LongSet injectedSet;
+
+        public LongSet getInjectedSet() {
+            return this.injectedSet;
+        }
+    }
+
+    @Test
+    public void test_that_list_is_injected_into_long_set() {
+        this.jedis.rpush("test:set", "9223372036854775807");
+        this.jedis.rpush("test:set", "9223372036854775807");
+        this.jedis.rpush("test:set", "-1");
+        LongSetContainer dummy = this.injector.getInstance(LongSetContainer.class);
+        assertThat((Set<Long>)dummy.getInjectedSet(), is(equalTo((Set<Long>)ImmutableSet.of(Long.MAX_VALUE, -1L))));
+    }
+
+
+
+    public static class LongListContainer {
+
+        @Redis(value = "test:list", allowNull = false)
+        private LongList injectedList;
+
+        public LongList getInjectedList() {
+            return this.injectedList;
+        }
+    }
+
+    @Test
+    public void test_that_list_is_injected_into_long_list() {
+        this.jedis.rpush("test:list", "3");
+        this.jedis.rpush("test:list", "1");
+        this.jedis.rpush("test:list", "3");
+        LongListContainer dummy = this.injector.getInstance(LongListContainer.class);
+        assertThat(dummy.getInjectedList().toLongArray(), is(equalTo(new long[]{3L, 1L, 3L})));
+    }
+
+
+
+    public static class StringLongMapContainer {
+
+        @Redis(value = "test:limits", allowNull = false)
+        private StringLongMap injectedMap;
+
+        public StringLongMap getInjectedMap() {
+            return this.injectedMap;
+        }
+    }
+
+    @Test
+    public void test_that_hash_is_injected_into_string_to_long_map() {
+        this.jedis.hset("test:limits", "tenant_01", "100");
+        this.jedis.hset("test:limits", "tenant_02", "-200");
+        StringLongMapContainer dummy = this.injector.getInstance(StringLongMapContainer.class);
+        assertThat(dummy.getInjectedMap().getLong("tenant_01", 0L), is(100L));
+        assertThat(dummy.getInjectedMap().getLong("tenant_02", 0L), is(-200L));
+        assertThat((Map<String, Long>)dummy.getInjectedMap(), is(equalTo((Map<String, Long>)ImmutableMap.of(
+            "tenant_01", 100L, "tenant_02", -200L))));
+    }
+
+    @Test
+    public void test_that_string_is_injected_into_string_to_long_map() {
+        this.jedis.set("test:limits", "123");
+        StringLongMapContainer dummy = this.injector.getInstance(StringLongMapContainer.class);
+        assertThat(dummy.getInjectedMap().getLong("test:limits", 0L), is(123L));
+    }
+
+    @Test
+    public void test_that_missing_value_is_injected_as_empty_string_to_long_map() {
+        StringLongMapContainer dummy = this.injector.getInstance(StringLongMapContainer.class);
+        assertThat(dummy.getInjectedMap().isEmpty(), is(true));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void test_that_invalid_value_throws_exception_when_converting_to_string_to_long_map() {
+        this.jedis.hset("test:limits", "tenant_01", "invalid");
+        this.injector.getInstance(StringLongMapContainer.class);
+    }
+
+
+
+    public static class StringDoubleMapContainer {
+
+        @Redis(value = "test:weights", allowNull = false)
+        private StringDoubleMap injectedMap;
+
+        public StringDoubleMap getInjectedMap() {
+            return this.injectedMap;
+        }
+    }
+
+    @Test
+    public void test_that_hash_is_injected_into_string_to_double_map() {
+        this.jedis.hset("test:weights", "a", "0.25");
+        this.jedis.hset("test:weights", "b", "1e2");
+        StringDoubleMapContainer dummy = this.injector.getInstance(StringDoubleMapContainer.class);
+        assertThat(dummy.getInjectedMap().getDouble("a", 0.0), is(0.25));
+        assertThat(dummy.getInjectedMap().getDouble("b", 0.0), is(100.0));
+    }
+
+
+
+    public static class MultiKeyContainer {
+
+        @Redis(value = "test:nums:*", allowNull = false)
+        private StringLongMap nums;
+
+        @Redis(value = "test:weights:*", allowNull = false)
+        private StringDoubleMap weights;
+
+        @Redis(value = "test:ids:*", allowNull = false)
+        private LongSet ids;
+
+        @Redis(value = "test:ints:*", allowNull = false)
+        private IntSet ints;
+
+        @Redis(value = "test:lists:*", allowNull = false)
+        private LongList lists;
+    }
+
+    @Test
+    public void test_that_values_of_several_keys_are_parsed_into_primitive_containers() {
+        this.jedis.set("test:nums:a", "1");
+        this.jedis.set("test:nums:b", "-2");
+        this.jedis.set("test:weights:a", "0.5");
+        this.jedis.hset("test:weights:b", "c", "1.5");
+        this.jedis.set("test:ids:a", "9223372036854775807");
+        this.jedis.set("test:ids:b", "7");
+        this.jedis.sadd("test:ints:a", "1");
+        this.jedis.sadd("test:ints:b", "2");
+        this.jedis.sadd("test:ints:b", "3");
+        this.jedis.rpush("test:lists:a", "4");
+        this.jedis.rpush("test:lists:a", "5");
+        this.jedis.set("test:lists:b", "6");
+        MultiKeyContainer dummy = this.injector.getInstance(MultiKeyContainer.class);
+        assertThat((Map<String, Long>)dummy.nums, is(equalTo((Map<String, Long>)ImmutableMap.of(
+            "test:nums:a", 1L, "test:nums:b", -2L))));
+        assertThat(dummy.weights.getDouble("test:weights:a", 0.0), is(0.5));
+        assertThat(dummy.weights.getDouble("c", 0.0), is(1.5));
+        assertThat((Set<Long>)dummy.ids, is(equalTo((Set<Long>)ImmutableSet.of(Long.MAX_VALUE, 7L))));
+        assertThat((Set<Integer>)dummy.ints, is(equalTo((Set<Integer>)ImmutableSet.of(1, 2, 3))));
+        assertThat(dummy.lists.size(), is(3));
+    }
+
+    public static class MultiKeyLongSetContainer {
+
+        @Redis(value = "test:ids:*", allowNull = false)
+        private LongSet ids;
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void test_that_invalid_value_of_one_of_several_keys_throws_exception() {
+        this.jedis.set("test:ids:a", "1");
+        this.jedis.set("test:ids:b", "invalid");
+        this.injector.getInstance(MultiKeyLongSetContainer.class);
+    }
+}
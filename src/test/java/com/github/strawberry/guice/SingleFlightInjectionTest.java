@@ -0,0 +1,137 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.redis.Keyspace;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisSource;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class SingleFlightInjectionTest {
+
+    private static final int THREADS = 8;
+
+    private final Keyspace keyspace = new Keyspace();
+    private final AtomicInteger loads = new AtomicInteger();
+    private ExecutorService executor;
+    private Injector injector;
+
+    @Before
+    public void setup() {
+        this.keyspace.putString("test:name", SafeEncoder.encode("strawberry"));
+        this.keyspace.putHash("test:hash", ImmutableMap.of("a", "1"));
+        // A slow source, so that concurrent injections overlap.
+        RedisSource source = new RedisSource() {
+            @Override
+            public <T> T _do(F<RedisCommands, T> callback) {
+                SingleFlightInjectionTest.this.loads.incrementAndGet();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+                return SingleFlightInjectionTest.this.keyspace._do(callback);
+            }
+        };
+        this.injector = Guice.createInjector(new RedisModule(source));
+        this.executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void teardown() {
+        this.executor.shutdownNow();
+    }
+
+    public static class FirstContainer {
+
+        @Redis("test:name")
+        private String name;
+
+        @Redis("test:hash")
+        private Map<String, String> hash;
+    }
+
+    public static class SecondContainer {
+
+        @Redis("test:name")
+        private String name;
+
+        @Redis(value = "test:hash", allowNull = false)
+        private Map<String, String> hash;
+    }
+
+    private <T> List<Future<T>> inject(final Class<T> type) {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> instances = new ArrayList<Future<T>>();
+        for (int thread = 0; thread < THREADS / 2; thread++) {
+            instances.add(this.executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    start.await();
+                    return SingleFlightInjectionTest.this.injector.getInstance(type);
+                }
+            }));
+        }
+        start.countDown();
+        return instances;
+    }
+
+    @Test
+    public void test_that_concurrent_injections_load_each_key_once() throws Exception {
+        List<Future<FirstContainer>> first = inject(FirstContainer.class);
+        List<Future<SecondContainer>> second = inject(SecondContainer.class);
+        for (Future<FirstContainer> container : first) {
+            assertThat(container.get().name, is("strawberry"));
+            assertThat(container.get().hash, is((Map<String, String>)ImmutableMap.of("a", "1")));
+        }
+        for (Future<SecondContainer> container : second) {
+            assertThat(container.get().name, is("strawberry"));
+            assertThat(container.get().hash, is((Map<String, String>)ImmutableMap.of("a", "1")));
+        }
+        // The names are shared between both containers, but the hashes are
+        // loaded with different options, thus separately.
+        assertThat(this.loads.get(), is(3));
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.push;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.guice.Redis;
+import com.github.strawberry.guice.RedisModule;
+import com.github.strawberry.redis.JedisPoolSource;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.redis.RedisSource;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import fj.F;
+import fj.data.Option;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class ValuePushTest {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private Jedis jedis;
+    private LoadingCache<Field, Option> cache;
+    private Injector injector;
+    private ValuePublisher publisher;
+    private ValueSubscriber subscriber;
+
+    public static class Config {
+
+        @Redis("push:name")
+        private String name;
+
+        @Redis("push:hash")
+        private Map<String, String> hash;
+
+        @Redis("push:list")
+        private List<String> list;
+
+        @Redis("push:zset")
+        private Set<String> zset;
+
+        @Redis("push:group:*")
+        private Map<String, String> group;
+    }
+
+    @Before
+    public void setup() throws InterruptedException {
+        this.jedis = this.pool.getResource();
+        this.jedis.set("push:name", "old");
+        this.jedis.hset("push:hash", "a", "1");
+        this.jedis.rpush("push:list", "x");
+        this.jedis.zadd("push:zset", 1, "a");
+        this.jedis.set("push:group:first", "1");
+
+        final RedisSource live = new JedisPoolSource(this.pool);
+        RedisSource counting = new RedisSource() {
+            @Override
+            public <T> T _do(F<RedisCommands, T> callback) {
+                ValuePushTest.this.loads.incrementAndGet();
+                return live._do(callback);
+            }
+        };
+        this.cache = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.DAYS).build(new RedisLoader(counting));
+        this.injector = Guice.createInjector(new RedisModule(this.cache));
+        this.publisher = new ValuePublisher(this.pool, "push:channel");
+        this.subscriber = new ValueSubscriber("localhost", 6379, "push:channel", this.cache);
+        for (int attempt = 0; attempt < 200 && !this.subscriber.isSubscribed(); attempt++) {
+            Thread.sleep(10);
+        }
+        assertThat(this.subscriber.isSubscribed(), is(true));
+    }
+
+    @After
+    public void teardown() {
+        this.subscriber.close();
+        for (String key : this.jedis.keys("push:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+    /**
+     * Waits for the cached value of the given field of {@link Config} to be
+     * the given value.
+     */
+    private void await(String name, Object value) throws Exception {
+        Field field = Config.class.getDeclaredField(name);
+        Object current = null;
+        for (int attempt = 0; attempt < 200; attempt++) {
+            Option cached = this.cache.getIfPresent(field);
+            current = cached == null ? "(not cached)" : cached.isSome() ? cached.some() : null;
+            if (value == null ? current == null : value.equals(current)) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        assertThat(current, is(value));
+    }
+
+    @Test
+    public void testPushedValuesAreApplied() throws Exception {
+        Config config = this.injector.getInstance(Config.class);
+        assertThat(config.name, is("old"));
+        int loads = this.loads.get();
+
+        this.publisher.set("push:name", "new");
+        this.publisher.setHash("push:hash", ImmutableMap.of("b", "2"));
+        this.publisher.setList("push:list", Arrays.asList("y", "z"));
+        this.publisher.setSortedSet("push:zset", ImmutableMap.of("high", 2.0, "low", 1.0));
+        await("name", "new");
+        await("hash", ImmutableMap.of("b", "2"));
+        await("list", Arrays.asList("y", "z"));
+        await("zset", ImmutableSet.of("low", "high"));
+
+        config = this.injector.getInstance(Config.class);
+        assertThat(config.name, is("new"));
+        assertThat(config.hash, is((Map<String, String>)ImmutableMap.of("b", "2")));
+        assertThat(config.list, is(Arrays.asList("y", "z")));
+        assertThat(config.zset.iterator().next(), is("low"));
+        // No follow-up reads of the pushed values.
+        assertThat(this.loads.get(), is(loads));
+        // The values were stored as well.
+        assertThat(this.jedis.get("push:name"), is("new"));
+        assertThat(this.jedis.hgetAll("push:hash"), is((Map<String, String>)ImmutableMap.of("b", "2")));
+        assertThat(this.jedis.zrange("push:zset", 0, -1), is((Set<String>)ImmutableSet.of("low", "high")));
+    }
+
+    @Test
+    public void testAggregatesAreInvalidated() throws Exception {
+        assertThat(this.injector.getInstance(Config.class).group.size(), is(1));
+        this.publisher.set("push:group:second", "2");
+        await("group", "(not cached)");
+        Config config = this.injector.getInstance(Config.class);
+        assertThat(config.group, is((Map<String, String>)ImmutableMap.of("push:group:first", "1", "push:group:second", "2")));
+    }
+
+    @Test
+    public void testDeletion() throws Exception {
+        assertThat(this.injector.getInstance(Config.class).name, is("old"));
+        this.publisher.delete("push:name");
+        await("name", null);
+        assertThat(this.injector.getInstance(Config.class).name, is(nullValue()));
+        assertThat(this.jedis.exists("push:name"), is(false));
+    }
+
+    @Test
+    public void testUncachedFieldsAreNotLoaded() throws Exception {
+        this.publisher.set("push:name", "new");
+        this.publisher.set("push:other", "ignored");
+        // Wait for both messages to have been handled.
+        Thread.sleep(100);
+        assertThat(this.cache.size(), is(0L));
+        assertThat(this.injector.getInstance(Config.class).name, is("new"));
+    }
+}
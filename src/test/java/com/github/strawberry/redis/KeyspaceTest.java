@@ -0,0 +1,103 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class KeyspaceTest {
+
+    @Test
+    public void test_that_keys_are_matched_against_pattern() {
+        Keyspace keyspace = new Keyspace();
+        keyspace.putString("test:a", "a".getBytes());
+        keyspace.putString("test:b", "b".getBytes());
+        keyspace.putString("other:c", "c".getBytes());
+        assertThat(keyspace.keys("test:*"), is((Set<String>)Sets.newHashSet("test:a", "test:b")));
+        assertThat(keyspace.keys("test:a"), is((Set<String>)Sets.newHashSet("test:a")));
+        assertThat(keyspace.keys("test:c").isEmpty(), is(true));
+    }
+
+    @Test
+    public void test_that_ranges_follow_redis_semantics() {
+        Keyspace keyspace = new Keyspace();
+        keyspace.putList("test:list", Arrays.asList("a", "b", "c", "d"));
+        assertThat(keyspace.lrange("test:list", 0, -1), is(Arrays.asList("a", "b", "c", "d")));
+        assertThat(keyspace.lrange("test:list", 1, 2), is(Arrays.asList("b", "c")));
+        assertThat(keyspace.lrange("test:list", -2, -1), is(Arrays.asList("c", "d")));
+        assertThat(keyspace.lrange("test:list", -100, 100), is(Arrays.asList("a", "b", "c", "d")));
+        assertThat(keyspace.lrange("test:list", 3, 1).isEmpty(), is(true));
+        assertThat(keyspace.lrange("test:list", 4, 10).isEmpty(), is(true));
+        assertThat(keyspace.lrange("test:missing", 0, -1).isEmpty(), is(true));
+
+        keyspace.putString("test:string", "0123456789".getBytes());
+        assertThat(keyspace.getrange("test:string".getBytes(), 2, 4), is("234".getBytes()));
+        assertThat(keyspace.getrange("test:string".getBytes(), -3, -1), is("789".getBytes()));
+        assertThat(keyspace.getrange("test:string".getBytes(), 8, 100), is("89".getBytes()));
+        assertThat(keyspace.strlen("test:string".getBytes()), is(10L));
+        assertThat(keyspace.strlen("test:missing".getBytes()), is(0L));
+    }
+
+    @Test
+    public void test_that_sorted_set_members_are_ordered_by_score_then_member() {
+        Keyspace keyspace = new Keyspace();
+        Map<String, Double> scores = new LinkedHashMap<String, Double>();
+        scores.put("c", 1.0);
+        scores.put("b", 2.0);
+        scores.put("a", 1.0);
+        keyspace.putSortedSet("test:zset", scores);
+        assertThat(keyspace.zrange("test:zset", 0, -1).toString(), is("[a, c, b]"));
+        assertThat(keyspace.zrange("test:zset", 1, 1).toString(), is("[c]"));
+    }
+
+    @Test
+    public void test_that_missing_keys_and_hash_fields_yield_null_or_none() {
+        Keyspace keyspace = new Keyspace();
+        keyspace.putHash("test:hash", ImmutableMap.of("field", "value"));
+        assertThat(keyspace.type("test:hash"), is("hash"));
+        assertThat(keyspace.type("test:missing"), is("none"));
+        assertThat(keyspace.get("test:missing".getBytes()), is(nullValue()));
+        assertThat(keyspace.hmget("test:hash", "field", "other"), is(Arrays.asList("value", null)));
+        assertThat(keyspace.remove("test:hash"), is(true));
+        assertThat(keyspace.size(), is(0));
+    }
+
+    @Test(expected = JedisDataException.class)
+    public void test_that_wrong_type_throws_exception() {
+        Keyspace keyspace = new Keyspace();
+        keyspace.putList("test:list", Arrays.asList("a"));
+        keyspace.get("test:list".getBytes());
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.replication;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.github.strawberry.guice.Redis;
+import com.github.strawberry.guice.RedisModule;
+import com.github.strawberry.redis.Keyspace;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.redis.RedisSource;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.inject.Guice;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import fj.F;
+import fj.data.Option;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Seeds from a dump in the format of Redis 7.2, without a Redis database to
+ * fall back on.
+ *
+ * @author Wiehann Matthysen
+ */
+public class ColdStartFixtureTest {
+
+    public static class Config {
+
+        @Redis("coldstart:name")
+        private String name;
+
+        @Redis("coldstart:limit")
+        private int limit;
+
+        @Redis("coldstart:hash")
+        private Map<String, String> hash;
+
+        @Redis("coldstart:list")
+        private List<String> list;
+
+        @Redis("coldstart:zset")
+        private Set<String> zset;
+
+        @Redis("coldstart:set")
+        private Set<String> set;
+    }
+
+    private static File dump() throws URISyntaxException {
+        return new File(ColdStartFixtureTest.class.getResource(RdbParserTest.FIXTURE).toURI());
+    }
+
+    @Test
+    public void testSnapshotOfDump() throws IOException, URISyntaxException {
+        Keyspace snapshot = ColdStart.snapshotOf(dump(), KeyFilter.of(Arrays.asList("coldstart:*")));
+        assertThat(snapshot.size(), is(7));
+        assertThat(snapshot.lrange("coldstart:list", 0, 1), is(Arrays.asList("1", "2")));
+    }
+
+    @Test
+    public void testSeededInjection() throws IOException, URISyntaxException {
+        RedisSource unreachable = new RedisSource() {
+            @Override
+            public <T> T _do(F<RedisCommands, T> callback) {
+                throw new JedisConnectionException("Connection refused.");
+            }
+        };
+        LoadingCache<Field, Option> cache =
+            CacheBuilder.newBuilder().refreshAfterWrite(1, TimeUnit.DAYS).build(new RedisLoader(unreachable));
+        assertThat(ColdStart.seed(cache, dump(), Config.class), is(6));
+
+        Config config = Guice.createInjector(new RedisModule(cache)).getInstance(Config.class);
+        assertThat(config.name, is("from the dump"));
+        assertThat(config.limit, is(250));
+        assertThat(config.hash.get("b"), is("two"));
+        assertThat(config.list.size(), is(5));
+        assertThat(config.zset.iterator().next(), is("first"));
+        assertThat(config.set.contains("y"), is(true));
+    }
+}
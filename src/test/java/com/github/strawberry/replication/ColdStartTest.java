@@ -0,0 +1,169 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.replication;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.guice.Redis;
+import com.github.strawberry.guice.RedisModule;
+import com.github.strawberry.redis.JedisPoolSource;
+import com.github.strawberry.redis.Keyspace;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.redis.RedisSource;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.common.io.Files;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import fj.F;
+import fj.data.Option;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class ColdStartTest {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private Jedis jedis;
+    private File dump;
+
+    public static class Config {
+
+        @Redis("coldstart:name")
+        private String name;
+
+        @Redis("coldstart:limit")
+        private int limit;
+
+        @Redis("coldstart:hash")
+        private Map<String, String> hash;
+
+        @Redis("coldstart:list")
+        private List<String> list;
+
+        @Redis("coldstart:zset")
+        private Set<String> zset;
+
+        @Redis("coldstart:missing")
+        private String missing;
+    }
+
+    @Before
+    public void setup() throws IOException {
+        this.jedis = this.pool.getResource();
+        this.jedis.set("coldstart:name", "from the dump");
+        this.jedis.set("coldstart:limit", "250");
+        this.jedis.hset("coldstart:hash", "a", "1");
+        this.jedis.rpush("coldstart:list", "1");
+        this.jedis.rpush("coldstart:list", "2");
+        this.jedis.zadd("coldstart:zset", 2, "second");
+        this.jedis.zadd("coldstart:zset", 1, "first");
+        this.jedis.save();
+        List<String> directory = this.jedis.configGet("dir");
+        List<String> name = this.jedis.configGet("dbfilename");
+        this.dump = File.createTempFile("coldstart", ".rdb");
+        Files.copy(new File(directory.get(1), name.get(1)), this.dump);
+
+        // Changed after the dump was taken.
+        this.jedis.set("coldstart:name", "from redis");
+        this.jedis.set("coldstart:missing", "loaded lazily");
+    }
+
+    @After
+    public void teardown() {
+        for (String key : this.jedis.keys("coldstart:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+        this.dump.delete();
+    }
+
+    private LoadingCache<Field, Option> cacheOf(long refresh, TimeUnit unit) {
+        final RedisSource live = new JedisPoolSource(this.pool);
+        RedisSource counting = new RedisSource() {
+            @Override
+            public <T> T _do(F<RedisCommands, T> callback) {
+                ColdStartTest.this.loads.incrementAndGet();
+                return live._do(callback);
+            }
+        };
+        return CacheBuilder.newBuilder().refreshAfterWrite(refresh, unit).build(new RedisLoader(counting));
+    }
+
+    @Test
+    public void testSnapshotOfDump() throws IOException {
+        Keyspace snapshot = ColdStart.snapshotOf(this.dump, KeyFilter.of(Arrays.asList("coldstart:*")));
+        assertThat(snapshot.size(), is(5));
+        assertThat(new String(snapshot.get("coldstart:name".getBytes())), is("from the dump"));
+        assertThat(snapshot.lrange("coldstart:list", 0, -1), is(Arrays.asList("1", "2")));
+    }
+
+    @Test
+    public void testSeededInjection() throws IOException {
+        LoadingCache<Field, Option> cache = cacheOf(1, TimeUnit.DAYS);
+        assertThat(ColdStart.seed(cache, this.dump, Config.class), is(5));
+        Injector injector = Guice.createInjector(new RedisModule(cache));
+
+        Config config = injector.getInstance(Config.class);
+        assertThat(config.name, is("from the dump"));
+        assertThat(config.limit, is(250));
+        assertThat(config.hash.get("a"), is("1"));
+        assertThat(config.list, is(Arrays.asList("1", "2")));
+        assertThat(config.zset.iterator().next(), is("first"));
+        // Only the field that is not in the dump was loaded from Redis.
+        assertThat(config.missing, is("loaded lazily"));
+        assertThat(this.loads.get(), is(1));
+    }
+
+    @Test
+    public void testLazyRefresh() throws IOException, InterruptedException {
+        LoadingCache<Field, Option> cache = cacheOf(50, TimeUnit.MILLISECONDS);
+        ColdStart.seed(cache, this.dump, Config.class);
+        Injector injector = Guice.createInjector(new RedisModule(cache));
+        assertThat(injector.getInstance(Config.class).name, is("from the dump"));
+        Thread.sleep(100);
+        // The first access after the refresh interval reloads the value.
+        injector.getInstance(Config.class);
+        assertThat(injector.getInstance(Config.class).name, is("from redis"));
+    }
+}
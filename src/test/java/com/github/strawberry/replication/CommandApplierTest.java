@@ -0,0 +1,117 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.replication;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.redis.Keyspace;
+
+import redis.clients.util.SafeEncoder;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class CommandApplierTest {
+
+    private final Keyspace keyspace = new Keyspace();
+    private final CommandApplier applier = new CommandApplier(KeyFilter.of(Arrays.asList("mirror:*")));
+
+    @Before
+    public void setup() {
+        this.keyspace.putList("mirror:list", Arrays.asList("a", "b", "c", "d", "e"));
+        this.keyspace.putString("mirror:name", SafeEncoder.encode("strawberry"));
+    }
+
+    private boolean apply(String... command) {
+        List<Object> arguments = new ArrayList<Object>(command.length);
+        for (String argument : command) {
+            arguments.add(SafeEncoder.encode(argument));
+        }
+        return this.applier.apply(this.keyspace, arguments);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Double> scores(String key) {
+        return new HashMap<String, Double>((Map<String, Double>)this.keyspace.valueAt(key));
+    }
+
+    private static Map<String, Double> scoresOf(Object... pairs) {
+        Map<String, Double> scores = new HashMap<String, Double>();
+        for (int index = 0; index < pairs.length; index += 2) {
+            scores.put((String)pairs[index], (Double)pairs[index + 1]);
+        }
+        return scores;
+    }
+
+    @Test
+    public void test_that_pops_remove_the_given_number_of_elements() {
+        assertThat(apply("LPOP", "mirror:list"), is(true));
+        assertThat(this.keyspace.lrange("mirror:list", 0, -1), is(Arrays.asList("b", "c", "d", "e")));
+        assertThat(apply("RPOP", "mirror:list", "2"), is(true));
+        assertThat(this.keyspace.lrange("mirror:list", 0, -1), is(Arrays.asList("b", "c")));
+        assertThat(apply("LPOP", "mirror:list", "5"), is(true));
+        assertThat(this.keyspace.type("mirror:list"), is("none"));
+    }
+
+    @Test
+    public void test_that_zadd_honours_its_flags() {
+        assertThat(apply("ZADD", "mirror:zset", "1", "a", "2", "b"), is(true));
+        assertThat(apply("ZADD", "mirror:zset", "XX", "CH", "5", "a", "5", "c"), is(true));
+        assertThat(scores("mirror:zset"), is(scoresOf("a", 5.0, "b", 2.0)));
+        assertThat(apply("ZADD", "mirror:zset", "nx", "9", "a", "3", "c"), is(true));
+        assertThat(scores("mirror:zset"), is(scoresOf("a", 5.0, "b", 2.0, "c", 3.0)));
+        assertThat(apply("ZADD", "mirror:zset", "GT", "4", "a", "4", "b"), is(true));
+        assertThat(scores("mirror:zset"), is(scoresOf("a", 5.0, "b", 4.0, "c", 3.0)));
+        assertThat(apply("ZADD", "mirror:zset", "LT", "1", "c", "8", "b"), is(true));
+        assertThat(scores("mirror:zset"), is(scoresOf("a", 5.0, "b", 4.0, "c", 1.0)));
+        assertThat(apply("ZADD", "mirror:zset", "INCR", "2.5", "a"), is(true));
+        assertThat(scores("mirror:zset").get("a"), is(7.5));
+    }
+
+    @Test
+    public void test_that_infinite_scores_are_parsed() {
+        assertThat(apply("ZADD", "mirror:zset", "+inf", "top", "-inf", "bottom", "inf", "other"), is(true));
+        assertThat(scores("mirror:zset"), is(scoresOf(
+            "top", Double.POSITIVE_INFINITY, "bottom", Double.NEGATIVE_INFINITY, "other", Double.POSITIVE_INFINITY)));
+        assertThat(apply("ZINCRBY", "mirror:zset", "-inf", "new"), is(true));
+        assertThat(scores("mirror:zset").get("new"), is(Double.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    public void test_that_unlink_removes_keys() {
+        assertThat(apply("UNLINK", "mirror:name", "mirror:list", "other:name"), is(true));
+        assertThat(this.keyspace.size(), is(0));
+    }
+
+    @Test
+    public void test_that_unknown_commands_on_matching_keys_are_rejected() {
+        assertThat(apply("SUNIONSTORE", "mirror:set", "other:a", "other:b"), is(false));
+        assertThat(apply("SUNIONSTORE", "other:set", "other:a", "other:b"), is(true));
+    }
+}
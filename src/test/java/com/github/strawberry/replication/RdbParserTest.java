@@ -0,0 +1,119 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.replication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.github.strawberry.redis.Keyspace;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+
+import redis.clients.util.SafeEncoder;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class RdbParserTest {
+
+    /**
+     * A dump in the format of Redis 7.2 (RDB version 11), with listpack
+     * encodings, eviction statistics, a function, module data and streams.
+     */
+    static final String FIXTURE = "dump-v11.rdb";
+
+    static byte[] fixture() throws IOException {
+        InputStream input = RdbParserTest.class.getResourceAsStream(FIXTURE);
+        try {
+            return ByteStreams.toByteArray(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static Keyspace parse(byte[] dump, String pattern) throws IOException {
+        Keyspace keyspace = new Keyspace();
+        new RdbParser(new ByteArrayInputStream(dump), KeyFilter.of(Arrays.asList(pattern))).parseInto(keyspace);
+        return keyspace;
+    }
+
+    private static Set<String> setOf(String... members) {
+        return new HashSet<String>(Arrays.asList(members));
+    }
+
+    @Test
+    public void test_that_listpack_encodings_are_parsed() throws IOException {
+        Keyspace keyspace = parse(fixture(), "coldstart:*");
+        assertThat(SafeEncoder.encode(keyspace.get(SafeEncoder.encode("coldstart:name"))), is("from the dump"));
+        assertThat(SafeEncoder.encode(keyspace.get(SafeEncoder.encode("coldstart:limit"))), is("250"));
+        Map<String, String> hash = new HashMap<String, String>();
+        hash.put("a", "1");
+        hash.put("b", "two");
+        assertThat(keyspace.hgetAll("coldstart:hash"), is(hash));
+        assertThat(keyspace.lrange("coldstart:list", 0, -1),
+            is(Arrays.asList("1", "2", "-3000", "70000", Strings.repeat("x", 100))));
+        Map<String, Double> scores = new HashMap<String, Double>();
+        scores.put("first", 1.0);
+        scores.put("second", 2.5);
+        assertThat(new HashMap<Object, Object>((Map<?, ?>)keyspace.valueAt("coldstart:zset")),
+            is(new HashMap<Object, Object>(scores)));
+        assertThat(keyspace.smembers("coldstart:set"), is(setOf("x", "y")));
+        assertThat(keyspace.smembers("coldstart:ints"), is(setOf("1", "2", "3")));
+    }
+
+    @Test
+    public void test_that_streams_modules_and_expired_keys_are_read_past() throws IOException {
+        Keyspace keyspace = parse(fixture(), "*");
+        assertThat(keyspace.type("coldstart:stream"), is("none"));
+        assertThat(keyspace.type("other:stream"), is("none"));
+        assertThat(keyspace.type("other:module"), is("none"));
+        assertThat(keyspace.type("coldstart:expired"), is("none"));
+        assertThat(keyspace.type("other:hash"), is("hash"));
+        // Only the keys of the first database are kept.
+        assertThat(SafeEncoder.encode(keyspace.get(SafeEncoder.encode("coldstart:name"))), is("from the dump"));
+        assertThat(keyspace.size(), is(9));
+    }
+
+    @Test(expected = RdbFormatException.class)
+    public void test_that_newer_versions_are_rejected() throws IOException {
+        byte[] dump = fixture();
+        System.arraycopy(SafeEncoder.encode("REDIS0099"), 0, dump, 0, 9);
+        parse(dump, "*");
+    }
+
+    @Test(expected = RdbFormatException.class)
+    public void test_that_unknown_value_types_are_rejected() throws IOException {
+        ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        dump.write(SafeEncoder.encode("REDIS0012"));
+        dump.write(new byte[] {(byte)0xFE, 0, 99, 1, 'k'});
+        parse(dump.toByteArray(), "other:*");
+    }
+}
@@ -0,0 +1,340 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.replication;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.guice.Redis;
+import com.github.strawberry.guice.RedisModule;
+import com.github.strawberry.redis.Keyspace;
+import com.google.common.base.Strings;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class ReplicaMirrorTest {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private Jedis jedis;
+    private ReplicaMirror mirror;
+
+    public static class Config {
+
+        @Redis("mirror:name")
+        private String name;
+
+        @Redis("mirror:hash")
+        private Map<String, String> hash;
+
+        @Redis("mirror:list")
+        private List<String> list;
+
+        @Redis("mirror:set:*")
+        private Map<String, Set<String>> sets;
+    }
+
+    @Before
+    public void setup() throws InterruptedException {
+        this.jedis = this.pool.getResource();
+        this.jedis.set("mirror:name", "strawberry");
+        this.jedis.set("mirror:number", "12345");
+        // Long and repetitive: stored LZF-compressed.
+        this.jedis.set("mirror:long", Strings.repeat("strawberry", 100));
+        this.jedis.hset("mirror:hash", "a", "1");
+        this.jedis.hset("mirror:hash", "b", "two");
+        for (int index = 0; index < 600; index++) {
+            // Too large for a ziplist.
+            this.jedis.hset("mirror:largehash", "field" + index, "value" + index);
+            this.jedis.sadd("mirror:set:large", "member" + index);
+        }
+        this.jedis.rpush("mirror:list", "x");
+        this.jedis.rpush("mirror:list", "-70000");
+        this.jedis.rpush("mirror:list", "12");
+        this.jedis.sadd("mirror:set:ints", "1");
+        this.jedis.sadd("mirror:set:ints", "100000");
+        this.jedis.zadd("mirror:zset", 1.5, "a");
+        this.jedis.zadd("mirror:zset", -2, "b");
+        this.jedis.set("other:name", "ignored");
+
+        this.mirror = new ReplicaMirror("localhost", 6379,
+            KeyFilter.of(Arrays.asList("mirror:*")), 5000);
+        assertThat(this.mirror.awaitSync(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @After
+    public void teardown() {
+        this.mirror.close();
+        for (String key : this.jedis.keys("mirror:*")) {
+            this.jedis.del(key);
+        }
+        this.jedis.del("other:name");
+        this.pool.returnResource(this.jedis);
+    }
+
+    private static Map<String, Double> scoresOf(Object... pairs) {
+        Map<String, Double> scores = new HashMap<String, Double>();
+        for (int index = 0; index < pairs.length; index += 2) {
+            scores.put((String)pairs[index], (Double)pairs[index + 1]);
+        }
+        return scores;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Double> scores(String key) {
+        Object value = this.mirror.keyspace().valueAt(key);
+        return value == null ? null : new HashMap<String, Double>((Map<String, Double>)value);
+    }
+
+    private String string(String key) {
+        byte[] value = this.mirror.keyspace().get(SafeEncoder.encode(key));
+        return value == null ? null : SafeEncoder.encode(value);
+    }
+
+    /**
+     * Waits for the given key to hold the given value in the mirror.
+     */
+    private void await(String key, Object value) throws InterruptedException {
+        Object current = null;
+        for (int attempt = 0; attempt < 200; attempt++) {
+            current = currentValueOf(key, value);
+            if (value == null ? current == null : value.equals(current)) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        assertThat(current, is(value));
+    }
+
+    private Object currentValueOf(String key, Object expected) {
+        Keyspace keyspace = this.mirror.keyspace();
+        String type = keyspace.type(key);
+        if (type.equals("none")) {
+            return null;
+        } else if (type.equals("string")) {
+            return string(key);
+        } else if (type.equals("hash")) {
+            return keyspace.hgetAll(key);
+        } else if (type.equals("list")) {
+            return keyspace.lrange(key, 0, -1);
+        } else if (type.equals("set")) {
+            return keyspace.smembers(key);
+        }
+        return scores(key);
+    }
+
+    @Test
+    public void testInitialDump() {
+        Keyspace keyspace = this.mirror.keyspace();
+        assertThat(string("mirror:name"), is("strawberry"));
+        assertThat(string("mirror:number"), is("12345"));
+        assertThat(string("mirror:long"), is(Strings.repeat("strawberry", 100)));
+        Map<String, String> hash = new HashMap<String, String>();
+        hash.put("a", "1");
+        hash.put("b", "two");
+        assertThat(keyspace.hgetAll("mirror:hash"), is(hash));
+        assertThat(keyspace.hgetAll("mirror:largehash").size(), is(600));
+        assertThat(keyspace.hgetAll("mirror:largehash").get("field599"), is("value599"));
+        assertThat(keyspace.lrange("mirror:list", 0, -1), is(Arrays.asList("x", "-70000", "12")));
+        assertThat(keyspace.smembers("mirror:set:ints"), is((Set<String>)new HashSet<String>(Arrays.asList("1", "100000"))));
+        assertThat(keyspace.smembers("mirror:set:large").size(), is(600));
+        assertThat(scores("mirror:zset"), is(scoresOf("a", 1.5, "b", -2.0)));
+        assertThat(keyspace.type("other:name"), is("none"));
+    }
+
+    @Test
+    public void testLiveUpdates() throws InterruptedException {
+        this.jedis.set("mirror:name", "updated");
+        await("mirror:name", "updated");
+        this.jedis.append("mirror:name", "!");
+        this.jedis.incrBy("mirror:number", 5);
+        this.jedis.hset("mirror:hash", "c", "3");
+        this.jedis.hdel("mirror:hash", "a");
+        this.jedis.lpush("mirror:list", "first");
+        this.jedis.rpop("mirror:list");
+        this.jedis.sadd("mirror:set:ints", "7");
+        this.jedis.srem("mirror:set:ints", "1");
+        this.jedis.zincrby("mirror:zset", 1, "b");
+        this.jedis.rename("mirror:long", "mirror:renamed");
+        this.jedis.set("other:name", "still ignored");
+        this.jedis.del("mirror:largehash");
+
+        await("mirror:name", "updated!");
+        await("mirror:number", "12350");
+        Map<String, String> hash = new HashMap<String, String>();
+        hash.put("b", "two");
+        hash.put("c", "3");
+        await("mirror:hash", hash);
+        await("mirror:list", Arrays.asList("first", "x", "-70000"));
+        await("mirror:set:ints", new HashSet<String>(Arrays.asList("7", "100000")));
+        await("mirror:zset", scoresOf("a", 1.5, "b", -1.0));
+        await("mirror:long", null);
+        await("mirror:renamed", Strings.repeat("strawberry", 100));
+        await("mirror:largehash", null);
+        assertThat(this.mirror.keyspace().type("other:name"), is("none"));
+    }
+
+    @Test
+    public void testResynchronization() throws InterruptedException {
+        // Cannot be applied locally: the mirror reloads a fresh dump.
+        this.jedis.sunionstore("mirror:set:union", "mirror:set:ints", "mirror:set:large");
+        this.jedis.set("mirror:name", "after");
+        await("mirror:set:union", new LinkedHashSet<String>(this.jedis.smembers("mirror:set:union")));
+        await("mirror:name", "after");
+    }
+
+    @Test
+    public void testInjection() throws InterruptedException {
+        Injector injector = Guice.createInjector(new RedisModule(this.mirror));
+        this.jedis.set("mirror:name", "injected");
+        await("mirror:name", "injected");
+        Config config = injector.getInstance(Config.class);
+        assertThat(config.name, is("injected"));
+        assertThat(config.hash.get("b"), is("two"));
+        assertThat(config.list, is(Arrays.asList("x", "-70000", "12")));
+        assertThat(config.sets.get("mirror:set:ints"), is((Set<String>)new HashSet<String>(Arrays.asList("1", "100000"))));
+        assertThat(config.sets.get("mirror:set:large").size(), is(600));
+    }
+
+    @Test
+    public void testFilterOfAnnotations() {
+        KeyFilter filter = KeyFilter.of(Config.class);
+        assertThat(filter.matches("mirror:name"), is(true));
+        assertThat(filter.matches("mirror:set:anything"), is(true));
+        assertThat(filter.matches("mirror:number"), is(false));
+        assertThat(filter.matches("other:name"), is(false));
+    }
+
+    @Test
+    public void testCloseKeepsContents() {
+        this.mirror.close();
+        assertThat(string("mirror:name"), is("strawberry"));
+        assertThat(this.mirror.keyspace().type("mirror:missing"), is("none"));
+        assertThat(this.mirror.keyspace().get(SafeEncoder.encode("mirror:missing")), is(nullValue()));
+    }
+
+    /**
+     * Starts a master that answers every replica with the given dump, which
+     * it streams in the diskless format, and then stays silent.
+     */
+    private static ServerSocket masterOf(final byte[] dump, final AtomicInteger syncs) throws IOException {
+        final ServerSocket server = new ServerSocket(0);
+        final List<Socket> replicas = new ArrayList<Socket>();
+        Thread master = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Socket replica = server.accept();
+                        replicas.add(replica);
+                        syncs.incrementAndGet();
+                        byte[] mark = SafeEncoder.encode(Strings.repeat("0123456789", 4));
+                        OutputStream output = replica.getOutputStream();
+                        output.write(SafeEncoder.encode("+FULLRESYNC 8de1787ba490483314a4d30f1c628bc5025eb761 0\r\n"));
+                        output.write(SafeEncoder.encode("$EOF:"));
+                        output.write(mark);
+                        output.write(SafeEncoder.encode("\r\n"));
+                        output.write(dump);
+                        output.write(mark);
+                        output.flush();
+                    }
+                } catch (IOException exception) {
+                    // The server was closed.
+                }
+            }
+        });
+        master.setDaemon(true);
+        master.start();
+        return server;
+    }
+
+    @Test
+    public void testDisklessDump() throws IOException, InterruptedException {
+        AtomicInteger syncs = new AtomicInteger();
+        ServerSocket server = masterOf(RdbParserTest.fixture(), syncs);
+        ReplicaMirror diskless = new ReplicaMirror("localhost", server.getLocalPort(),
+            KeyFilter.of(Arrays.asList("coldstart:*")), 5000);
+        try {
+            assertThat(diskless.awaitSync(5, TimeUnit.SECONDS), is(true));
+            assertThat(SafeEncoder.encode(diskless.keyspace().get(SafeEncoder.encode("coldstart:name"))),
+                is("from the dump"));
+            assertThat(diskless.offset(), is(0L));
+        } finally {
+            diskless.close();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testGivingUpOnUnreadableDumps() throws IOException, InterruptedException {
+        byte[] dump = RdbParserTest.fixture();
+        System.arraycopy(SafeEncoder.encode("REDIS0099"), 0, dump, 0, 9);
+        AtomicInteger syncs = new AtomicInteger();
+        ServerSocket server = masterOf(dump, syncs);
+        ReplicaMirror unreadable = new ReplicaMirror("localhost", server.getLocalPort(),
+            KeyFilter.of(Arrays.asList("coldstart:*")), 5000);
+        try {
+            // Retried after 1 and then 2 seconds, after which the mirror gives up.
+            Thread.sleep(5000);
+            assertThat(syncs.get(), is(3));
+            long start = System.nanoTime();
+            try {
+                unreadable._do(null);
+                fail("Expected the mirror to have given up.");
+            } catch (JedisConnectionException exception) {
+                assertThat(exception.getCause() instanceof RdbFormatException, is(true));
+            }
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000, is(true));
+        } finally {
+            unreadable.close();
+            server.close();
+        }
+    }
+}
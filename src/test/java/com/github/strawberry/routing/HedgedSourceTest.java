@@ -0,0 +1,105 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.routing;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static com.github.strawberry.routing.StubSource.GET;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class HedgedSourceTest {
+
+    private ExecutorService executor;
+    private StubSource first;
+    private StubSource second;
+
+    @Before
+    public void setup() {
+        this.executor = Executors.newCachedThreadPool();
+        this.first = new StubSource("first");
+        this.second = new StubSource("second");
+    }
+
+    @After
+    public void teardown() {
+        this.executor.shutdown();
+    }
+
+    private static void warmUp(HedgedSource source) {
+        for (int read = 0; read < HedgedSource.MIN_SAMPLES; read++) {
+            source._do(GET);
+        }
+    }
+
+    @Test
+    public void test_that_reads_are_not_hedged_before_latencies_are_known() {
+        HedgedSource source = new HedgedSource(Arrays.asList(this.first, this.second), this.executor, 0.9, 1, TimeUnit.MILLISECONDS);
+        assertThat(source.hedgeDelay(), is(-1L));
+        warmUp(source);
+        assertTrue(source.hedgeDelay() >= TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void test_that_slow_read_is_hedged_to_next_source() {
+        HedgedSource source = new HedgedSource(Arrays.asList(this.first, this.second), this.executor, 0.9, 5, TimeUnit.MILLISECONDS);
+        warmUp(source);
+        this.first.delay = 500;
+        for (int read = 0; read < 6; read++) {
+            long start = System.nanoTime();
+            assertThat(source._do(GET), is("second"));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(250));
+        }
+    }
+
+    @Test
+    public void test_that_slow_read_is_hedged_over_same_source() {
+        HedgedSource source = new HedgedSource(Collections.singletonList(this.first), this.executor, 0.9, 5, TimeUnit.MILLISECONDS);
+        warmUp(source);
+        this.first.delay = 300;
+        long start = System.nanoTime();
+        // Both the read and its hedge are slow: the result still arrives.
+        assertThat(source._do(GET), is("first"));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+    }
+
+    @Test(expected = JedisConnectionException.class)
+    public void test_that_failure_of_all_reads_is_rethrown() {
+        HedgedSource source = new HedgedSource(Arrays.asList(this.first, this.second), this.executor, 0.9, 1, TimeUnit.MILLISECONDS);
+        warmUp(source);
+        this.first.down = true;
+        this.second.down = true;
+        source._do(GET);
+    }
+}
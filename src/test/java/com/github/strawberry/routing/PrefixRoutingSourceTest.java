@@ -0,0 +1,171 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.routing;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.guice.Redis;
+import com.github.strawberry.guice.RedisModule;
+import com.github.strawberry.redis.Keyspace;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisSource;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Guice;
+
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class PrefixRoutingSourceTest {
+
+    private Keyspace fallback;
+    private Keyspace config;
+    private Keyspace hot;
+    private Keyspace catalog;
+    private Map<String, RedisSource> routes;
+    private PrefixRoutingSource source;
+
+    @Before
+    public void setup() {
+        this.fallback = new Keyspace();
+        this.config = new Keyspace();
+        this.hot = new Keyspace();
+        this.catalog = new Keyspace();
+        this.routes = new LinkedHashMap<String, RedisSource>();
+        this.routes.put("config:", this.config);
+        this.routes.put("config:hot:", this.hot);
+        this.routes.put("catalog:", this.catalog);
+        this.source = new PrefixRoutingSource(this.fallback, this.routes);
+    }
+
+    private String get(final String key) {
+        return this.source._do(new F<RedisCommands, String>() {
+            @Override
+            public String f(RedisCommands redis) {
+                byte[] value = redis.get(SafeEncoder.encode(key));
+                return value == null ? null : SafeEncoder.encode(value);
+            }
+        });
+    }
+
+    private Set<String> keys(final String pattern) {
+        return this.source._do(new F<RedisCommands, Set<String>>() {
+            @Override
+            public Set<String> f(RedisCommands redis) {
+                return redis.keys(pattern);
+            }
+        });
+    }
+
+    @Test
+    public void test_that_longest_prefix_wins() {
+        assertThat(this.source.sourceOf("config:a"), is((RedisSource)this.config));
+        assertThat(this.source.sourceOf("config:hot:a"), is((RedisSource)this.hot));
+        assertThat(this.source.sourceOf("catalog:a"), is((RedisSource)this.catalog));
+        assertThat(this.source.sourceOf("other"), is((RedisSource)this.fallback));
+    }
+
+    @Test
+    public void test_that_keys_are_read_from_their_source() {
+        this.config.putString("config:a", SafeEncoder.encode("config"));
+        this.hot.putString("config:hot:a", SafeEncoder.encode("hot"));
+        this.fallback.putString("config:hot:a", SafeEncoder.encode("stale"));
+        this.fallback.putString("other", SafeEncoder.encode("fallback"));
+        assertThat(get("config:a"), is("config"));
+        assertThat(get("config:hot:a"), is("hot"));
+        assertThat(get("other"), is("fallback"));
+    }
+
+    @Test
+    public void test_that_pattern_is_sent_to_all_sources_that_may_match() {
+        this.config.putString("config:a", SafeEncoder.encode("1"));
+        this.hot.putString("config:hot:b", SafeEncoder.encode("2"));
+        this.catalog.putString("catalog:c", SafeEncoder.encode("3"));
+        // Held by a source the key is not routed to, thus ignored.
+        this.config.putString("config:hot:c", SafeEncoder.encode("4"));
+        assertThat(keys("config:*"), is((Set<String>)ImmutableSet.of("config:a", "config:hot:b")));
+        assertThat(keys("config:hot:*"), is((Set<String>)ImmutableSet.of("config:hot:b")));
+        assertThat(keys("*"), is((Set<String>)ImmutableSet.of("config:a", "config:hot:b", "catalog:c")));
+    }
+
+    @Test
+    public void test_that_values_of_different_sources_are_merged_in_key_order() {
+        this.config.putString("config:a", SafeEncoder.encode("1"));
+        this.catalog.putList("catalog:b", Arrays.asList("2"));
+        this.fallback.putHash("other", ImmutableMap.of("x", "3"));
+        this.config.putString("config:d", SafeEncoder.encode("4"));
+        final List<String> keys = Arrays.asList("config:a", "catalog:b", "other", "config:d", "catalog:missing");
+        List<Object> values = this.source._do(new F<RedisCommands, List<Object>>() {
+            @Override
+            public List<Object> f(RedisCommands redis) {
+                return redis.valuesOf(keys);
+            }
+        });
+        assertThat(SafeEncoder.encode((byte[])values.get(0)), is("1"));
+        assertThat(values.get(1), is((Object)Arrays.asList("2")));
+        assertThat(values.get(2), is((Object)ImmutableMap.of("x", "3")));
+        assertThat(SafeEncoder.encode((byte[])values.get(3)), is("4"));
+        assertThat(values.get(4), is((Object)null));
+    }
+
+    public static class RoutedContainer {
+
+        @Redis("config:name")
+        private String name;
+
+        @Redis("catalog:*")
+        private Map<String, String> catalog;
+    }
+
+    @Test
+    public void test_that_module_injects_fields_from_routed_sources() {
+        this.config.putString("config:name", SafeEncoder.encode("strawberry"));
+        this.catalog.putString("catalog:a", SafeEncoder.encode("1"));
+        this.catalog.putString("catalog:b", SafeEncoder.encode("2"));
+        this.fallback.putString("catalog:c", SafeEncoder.encode("3"));
+        RoutedContainer container = Guice.createInjector(new RedisModule(this.fallback, this.routes)).
+            getInstance(RoutedContainer.class);
+        assertThat(container.name, is("strawberry"));
+        assertThat(container.catalog, is((Map<String, String>)ImmutableMap.of("catalog:a", "1", "catalog:b", "2")));
+    }
+
+    @Test
+    public void test_that_every_command_is_routed_by_its_typed_method() throws Exception {
+        // Raw commands cannot be routed, thus every command must be overridden.
+        for (Method method : RedisCommands.class.getMethods()) {
+            Method routed = RoutingCommands.class.getMethod(method.getName(), method.getParameterTypes());
+            assertThat(method.toString(), routed.getDeclaringClass(), is((Object)RoutingCommands.class));
+        }
+    }
+}
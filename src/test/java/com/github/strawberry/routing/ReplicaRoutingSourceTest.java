@@ -0,0 +1,103 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.routing;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.routing.StubSource.GET;
+import static com.github.strawberry.routing.StubSource.replicaInfo;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class ReplicaRoutingSourceTest {
+
+    private StubSource primary;
+    private StubSource near;
+    private StubSource far;
+    private ReplicaRoutingSource source;
+
+    @Before
+    public void setup() {
+        this.primary = new StubSource("primary");
+        this.primary.info = "role:master\r\nmaster_repl_offset:1000\r\n";
+        this.near = new StubSource("near");
+        this.near.info = replicaInfo("up", 1000);
+        this.far = new StubSource("far");
+        this.far.info = replicaInfo("up", 1000);
+        this.far.delay = 20;
+    }
+
+    @After
+    public void teardown() {
+        this.source.close();
+    }
+
+    private void route(long maxLag) throws InterruptedException {
+        this.source = new ReplicaRoutingSource(this.primary, Arrays.asList(this.far, this.near), maxLag, 10, TimeUnit.MILLISECONDS);
+        // Allow for the first probes to complete.
+        Thread.sleep(200);
+    }
+
+    @Test
+    public void test_that_reads_go_to_replica_with_lowest_latency() throws InterruptedException {
+        route(100);
+        for (int read = 0; read < 10; read++) {
+            assertThat(this.source._do(GET), is("near"));
+        }
+        assertThat(this.primary.reads.get(), is(0));
+        assertThat(this.far.reads.get(), is(0));
+    }
+
+    @Test
+    public void test_that_lagging_replica_is_avoided() throws InterruptedException {
+        this.near.info = replicaInfo("up", 500);
+        route(100);
+        assertThat(this.source._do(GET), is("far"));
+    }
+
+    @Test
+    public void test_that_replica_with_link_down_is_avoided() throws InterruptedException {
+        this.near.info = replicaInfo("down", 1000);
+        this.far.info = replicaInfo("down", 1000);
+        route(100);
+        assertThat(this.source._do(GET), is("primary"));
+    }
+
+    @Test
+    public void test_that_failing_replica_falls_back_to_primary() throws InterruptedException {
+        route(100);
+        this.near.down = true;
+        assertThat(this.source._do(GET), is("primary"));
+        // The failed replica is avoided until it passes its next probe.
+        Thread.sleep(100);
+        assertThat(this.source._do(GET), is("far"));
+        this.near.down = false;
+        Thread.sleep(100);
+        assertThat(this.source._do(GET), is("near"));
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.routing;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.strawberry.redis.Keyspace;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisSource;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import fj.F;
+
+/**
+ * An in-memory {@link RedisSource} (backed by a {@link Keyspace}) whose INFO,
+ * latency and availability can be controlled by tests, and which counts the
+ * reads (all commands other than INFO) that it serves.
+ *
+ * @author Wiehann Matthysen
+ */
+final class StubSource implements RedisSource {
+
+    final Keyspace keyspace = new Keyspace();
+    final AtomicInteger reads = new AtomicInteger();
+
+    volatile String info = "role:master\r\nmaster_repl_offset:0\r\n";
+    volatile long delay;
+    volatile boolean down;
+
+    StubSource(String value) {
+        this.keyspace.putString("test:key", value.getBytes());
+    }
+
+    static String replicaInfo(String link, long offset) {
+        return "role:slave\r\nmaster_link_status:" + link + "\r\nslave_repl_offset:" + offset + "\r\n";
+    }
+
+    static final F<RedisCommands, String> GET = new F<RedisCommands, String>() {
+        @Override
+        public String f(RedisCommands redis) {
+            return new String(redis.get("test:key".getBytes()));
+        }
+    };
+
+    @Override
+    public <T> T _do(F<RedisCommands, T> callback) {
+        RedisCommands commands = (RedisCommands)Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{RedisCommands.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (down) {
+                    throw new JedisConnectionException("Connection refused.");
+                }
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                if (method.getName().equals("info")) {
+                    return info;
+                }
+                reads.incrementAndGet();
+                try {
+                    return method.invoke(keyspace, args);
+                } catch (InvocationTargetException exception) {
+                    throw exception.getCause();
+                }
+            }
+        });
+        return callback.f(commands);
+    }
+}
@@ -0,0 +1,306 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.sentinel;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.client.AsyncConnection;
+import com.github.strawberry.client.ConnectionFactory;
+import com.github.strawberry.guice.Redis;
+import com.github.strawberry.redis.Keyspace;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.redis.StaleValues;
+import com.github.strawberry.redis.RedisSource;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+import fj.data.Option;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class SentinelSourceTest {
+
+    /**
+     * An in-memory master that can be taken down.
+     */
+    private static final class Master implements RedisSource, Closeable {
+
+        final Keyspace keyspace = new Keyspace();
+        volatile boolean down;
+        volatile boolean closed;
+
+        Master(String name) {
+            this.keyspace.putString("test:name", SafeEncoder.encode(name));
+        }
+
+        @Override
+        public <T> T _do(F<RedisCommands, T> callback) {
+            if (this.down) {
+                throw new JedisConnectionException("Connection refused.");
+            }
+            return callback.f(this.keyspace);
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+    }
+
+    private static final F<RedisCommands, String> GET = new F<RedisCommands, String>() {
+        @Override
+        public String f(RedisCommands redis) {
+            return SafeEncoder.encode(redis.get(SafeEncoder.encode("test:name")));
+        }
+    };
+
+    private static class Config {
+
+        @Redis("test:name")
+        private String name;
+    }
+
+    private final Map<String, Master> masters = new ConcurrentHashMap<String, Master>();
+    private volatile String current = "10.0.0.1:6379";
+    private volatile boolean sentinelDown;
+    private final AtomicInteger connects = new AtomicInteger();
+    private final AtomicInteger closes = new AtomicInteger();
+
+    private SentinelSource source;
+
+    private final ConnectionFactory sentinels = new ConnectionFactory() {
+        @Override
+        public AsyncConnection connect(String host, int port) {
+            if (sentinelDown) {
+                throw new JedisConnectionException("Connection refused: " + host + ":" + port);
+            }
+            connects.incrementAndGet();
+            return new AsyncConnection() {
+
+                private volatile boolean open = true;
+
+                @Override
+                public ListenableFuture<Object> send(Object... args) {
+                    if (sentinelDown) {
+                        this.open = false;
+                        return Futures.immediateFailedFuture(new JedisConnectionException("Connection reset."));
+                    }
+                    return Futures.immediateFuture(reply(args));
+                }
+
+                @Override
+                public List<ListenableFuture<Object>> sendAll(List<Object[]> commands) {
+                    List<ListenableFuture<Object>> replies = new ArrayList<ListenableFuture<Object>>();
+                    for (Object[] command : commands) {
+                        replies.add(send(command));
+                    }
+                    return replies;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return this.open;
+                }
+
+                @Override
+                public void close() {
+                    this.open = false;
+                    closes.incrementAndGet();
+                }
+            };
+        }
+    };
+
+    private Object reply(Object... args) {
+        if (!args[2].equals("mymaster")) {
+            return null;
+        }
+        if (args[1].equals("get-master-addr-by-name")) {
+            String[] address = this.current.split(":");
+            return Arrays.<Object>asList(SafeEncoder.encode(address[0]), SafeEncoder.encode(address[1]));
+        }
+        List<Object> replicas = new ArrayList<Object>();
+        replicas.add(replicaOf("10.0.0.2", "6379", "slave"));
+        replicas.add(replicaOf("10.0.0.3", "6379", "s_down,slave"));
+        return replicas;
+    }
+
+    private static List<Object> replicaOf(String ip, String port, String flags) {
+        return Arrays.<Object>asList(
+            SafeEncoder.encode("name"), SafeEncoder.encode(ip + ":" + port),
+            SafeEncoder.encode("ip"), SafeEncoder.encode(ip),
+            SafeEncoder.encode("port"), SafeEncoder.encode(port),
+            SafeEncoder.encode("flags"), SafeEncoder.encode(flags));
+    }
+
+    private final SentinelSource.Factory factory = new SentinelSource.Factory() {
+        @Override
+        public RedisSource sourceOf(String host, int port) {
+            Master master = masters.get(host + ":" + port);
+            if (master == null) {
+                throw new JedisConnectionException("Connection refused: " + host + ":" + port);
+            }
+            return master;
+        }
+    };
+
+    @Before
+    public void setup() {
+        this.masters.put("10.0.0.1:6379", new Master("first"));
+        this.masters.put("10.0.0.2:6379", new Master("second"));
+        this.source = sourceOf("mymaster");
+    }
+
+    @After
+    public void teardown() {
+        this.source.close();
+    }
+
+    private SentinelSource sourceOf(String masterName) {
+        return new SentinelSource(masterName, Arrays.asList("10.0.0.9:26379", "10.0.0.10:26379"),
+            this.sentinels, 100, this.factory, 50, TimeUnit.MILLISECONDS);
+    }
+
+    private void awaitMaster(String address) throws InterruptedException {
+        for (int i = 0; i < 100 && (!this.source.master().equals(address) || this.source.isFailingOver()); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(this.source.master(), is(address));
+        assertThat(this.source.isFailingOver(), is(false));
+    }
+
+    @Test
+    public void testDiscoveryOfMasterAndReplicas() {
+        assertThat(this.source.master(), is("10.0.0.1:6379"));
+        assertThat(this.source.replicas(), is(Arrays.asList("10.0.0.2:6379")));
+        assertThat(this.source._do(GET), is("first"));
+    }
+
+    @Test(expected = JedisConnectionException.class)
+    public void testUnknownMaster() {
+        sourceOf("othermaster");
+    }
+
+    @Test
+    public void testFailover() throws InterruptedException {
+        this.masters.get("10.0.0.1:6379").down = true;
+        try {
+            this.source._do(GET);
+            fail("Expected a connection failure.");
+        } catch (JedisConnectionException exception) {
+            assertThat(this.source.isFailingOver(), is(true));
+        }
+        try {
+            this.source._do(GET);
+            fail("Expected the load to be rejected.");
+        } catch (JedisConnectionException exception) {
+            assertThat(exception, instanceOf(FailoverException.class));
+        }
+
+        // The sentinels promote the replica.
+        this.current = "10.0.0.2:6379";
+        awaitMaster("10.0.0.2:6379");
+        assertThat(this.source._do(GET), is("second"));
+        assertThat(this.masters.get("10.0.0.1:6379").closed, is(true));
+    }
+
+    @Test
+    public void testRecoveryOfSameMaster() throws InterruptedException {
+        Master master = this.masters.get("10.0.0.1:6379");
+        master.down = true;
+        try {
+            this.source._do(GET);
+            fail("Expected a connection failure.");
+        } catch (JedisConnectionException exception) {
+        }
+        master.down = false;
+        awaitMaster("10.0.0.1:6379");
+        assertThat(this.source._do(GET), is("first"));
+        assertThat(master.closed, is(false));
+    }
+
+    @Test
+    public void testUnreachableSentinels() throws InterruptedException {
+        this.sentinelDown = true;
+        Thread.sleep(150);
+        assertThat(this.source.master(), is("10.0.0.1:6379"));
+        assertThat(this.source._do(GET), is("first"));
+    }
+
+    @Test
+    public void testSentinelConnectionsAreReusedAcrossPolls() throws InterruptedException {
+        Thread.sleep(300);
+        // The first sentinel answers every poll over the connection opened for discovery.
+        assertThat(this.connects.get(), is(1));
+        assertThat(this.closes.get(), is(0));
+
+        this.sentinelDown = true;
+        Thread.sleep(150);
+        this.sentinelDown = false;
+        this.current = "10.0.0.2:6379";
+        awaitMaster("10.0.0.2:6379");
+        assertThat(this.closes.get(), is(1));
+
+        this.source.close();
+        assertThat(this.closes.get(), is(this.connects.get()));
+    }
+
+    @Test
+    public void testCachedValuesDuringFailover() throws Exception {
+        RedisLoader loader = new RedisLoader(this.source, new StaleValues());
+        Field field = Config.class.getDeclaredField("name");
+        assertThat(loader.load(field), is(Option.<Object>some("first")));
+
+        this.masters.get("10.0.0.1:6379").down = true;
+        // Served from the values that were loaded last, instead of failing.
+        assertThat(loader.load(field), is(Option.<Object>some("first")));
+        assertThat(this.source.isFailingOver(), is(true));
+        // Refreshes are paused while the master fails over.
+        Option stale = Option.<Object>some("stale");
+        assertThat(loader.reload(field, stale).get(), is(stale));
+
+        this.current = "10.0.0.2:6379";
+        awaitMaster("10.0.0.2:6379");
+        assertThat(loader.load(field), is(Option.<Object>some("second")));
+        assertThat(loader.reload(field, stale).get(), is(Option.<Object>some("second")));
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.shared;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.guice.Redis;
+import com.github.strawberry.guice.RedisModule;
+import com.github.strawberry.redis.Keyspace;
+import com.github.strawberry.redis.RedisCommands;
+import com.github.strawberry.redis.RedisSource;
+import com.github.strawberry.replication.KeyFilter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import fj.F;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class SharedStoreTest {
+
+    private final Keyspace keyspace = new Keyspace();
+    private final AtomicInteger leaderLoads = new AtomicInteger();
+    private final AtomicInteger followerLoads = new AtomicInteger();
+
+    private File directory;
+    private SharedStore leader;
+    private SharedStore follower;
+
+    public static class Config {
+
+        @Redis("shared:name")
+        private String name;
+
+        @Redis("shared:hash")
+        private Map<String, String> hash;
+
+        @Redis("shared:list:*")
+        private Map<String, List<String>> lists;
+    }
+
+    private RedisSource countingSource(final AtomicInteger loads) {
+        return new RedisSource() {
+            @Override
+            public <T> T _do(F<RedisCommands, T> callback) {
+                loads.incrementAndGet();
+                return SharedStoreTest.this.keyspace._do(callback);
+            }
+        };
+    }
+
+    @Before
+    public void setup() throws IOException, InterruptedException {
+        this.keyspace.putString("shared:name", SafeEncoder.encode("strawberry"));
+        this.keyspace.putHash("shared:hash", ImmutableMap.of("a", "1", "b", "2"));
+        this.keyspace.putList("shared:list:first", Arrays.asList("x", "y"));
+        this.keyspace.putList("shared:list:second", Arrays.asList("z"));
+        this.keyspace.putString("other:name", SafeEncoder.encode("not shared"));
+
+        this.directory = Files.createTempDir();
+        File file = new File(this.directory, "config.snapshot");
+        KeyFilter filter = KeyFilter.of(Config.class);
+        this.leader = new SharedStore(file, countingSource(this.leaderLoads), filter, 50, TimeUnit.MILLISECONDS);
+        awaitVersion(this.leader, 1);
+        this.follower = new SharedStore(file, countingSource(this.followerLoads), filter, 50, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void teardown() throws IOException {
+        this.follower.close();
+        this.leader.close();
+        for (File file : this.directory.listFiles()) {
+            file.delete();
+        }
+        this.directory.delete();
+    }
+
+    private static void awaitVersion(SharedStore store, long version) throws InterruptedException {
+        for (int attempt = 0; attempt < 200 && store.version() < version; attempt++) {
+            Thread.sleep(10);
+        }
+        assertThat(store.version() >= version, is(true));
+    }
+
+    @Test
+    public void testElection() {
+        assertThat(this.leader.isLeader(), is(true));
+        assertThat(this.follower.isLeader(), is(false));
+    }
+
+    @Test
+    public void testFollowerInjectsFromSnapshot() {
+        Injector injector = Guice.createInjector(new RedisModule(this.follower));
+        Config config = injector.getInstance(Config.class);
+        assertThat(config.name, is("strawberry"));
+        assertThat(config.hash, is((Map<String, String>)ImmutableMap.of("a", "1", "b", "2")));
+        assertThat(config.lists.get("shared:list:first"), is(Arrays.asList("x", "y")));
+        assertThat(config.lists.get("shared:list:second"), is(Arrays.asList("z")));
+        assertThat(this.followerLoads.get(), is(0));
+    }
+
+    @Test
+    public void testUnchangedValuesAreNotRewritten() throws InterruptedException {
+        long version = this.leader.version();
+        int loads = this.leaderLoads.get();
+        while (this.leaderLoads.get() < loads + 3) {
+            Thread.sleep(10);
+        }
+        assertThat(this.leader.version(), is(version));
+    }
+
+    @Test
+    public void testChangesArePickedUp() throws InterruptedException {
+        long version = this.follower.version();
+        this.keyspace.putString("shared:name", SafeEncoder.encode("updated"));
+        awaitVersion(this.follower, version + 1);
+        Config config = Guice.createInjector(new RedisModule(this.follower)).getInstance(Config.class);
+        assertThat(config.name, is("updated"));
+        assertThat(this.followerLoads.get(), is(0));
+    }
+
+    private MappedSnapshot snapshotOf(SharedStore store) {
+        return (MappedSnapshot)store._do(new F<RedisCommands, RedisCommands>() {
+            @Override
+            public RedisCommands f(RedisCommands redis) {
+                return redis;
+            }
+        });
+    }
+
+    @Test
+    public void testReplacedSnapshotIsUnmappedOnceCallbacksComplete() throws InterruptedException {
+        MappedSnapshot first = snapshotOf(this.follower);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                follower._do(new F<RedisCommands, Void>() {
+                    @Override
+                    public Void f(RedisCommands redis) {
+                        running.countDown();
+                        try {
+                            done.await();
+                        } catch (InterruptedException exception) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return null;
+                    }
+                });
+            }
+        });
+        reader.start();
+        running.await();
+
+        long version = this.follower.version();
+        this.keyspace.putString("shared:name", SafeEncoder.encode("updated"));
+        awaitVersion(this.follower, version + 1);
+        MappedSnapshot second = snapshotOf(this.follower);
+        assertThat(second == first, is(false));
+        // Still in use by the reader.
+        assertThat(first.isUnmapped(), is(false));
+        done.countDown();
+        reader.join();
+        assertThat(first.isUnmapped(), is(true));
+        assertThat(second.isUnmapped(), is(false));
+    }
+
+    @Test
+    public void testTakeOver() throws IOException, InterruptedException {
+        this.leader.close();
+        for (int attempt = 0; attempt < 200 && !this.follower.isLeader(); attempt++) {
+            Thread.sleep(10);
+        }
+        assertThat(this.follower.isLeader(), is(true));
+        long version = this.follower.version();
+        this.keyspace.putString("shared:name", SafeEncoder.encode("new leader"));
+        awaitVersion(this.follower, version + 1);
+        assertThat(SafeEncoder.encode(this.follower._do(new F<RedisCommands, byte[]>() {
+            @Override
+            public byte[] f(RedisCommands redis) {
+                return redis.get(SafeEncoder.encode("shared:name"));
+            }
+        })), is("new leader"));
+    }
+
+    @Test
+    public void testSnapshotCommands() throws IOException {
+        SortedMap<String, Object> values = new TreeMap<String, Object>();
+        values.put("string", SafeEncoder.encode("strawberry"));
+        Map<String, String> hash = new HashMap<String, String>();
+        hash.put("a", "1");
+        values.put("hash", hash);
+        values.put("list", Arrays.asList("a", "b", "c"));
+        values.put("set", new java.util.HashSet<String>(Arrays.asList("x", "y")));
+        values.put("zset", new LinkedHashSet<String>(Arrays.asList("low", "mid", "high")));
+        File file = new File(this.directory, "commands.snapshot");
+        Files.write(MappedSnapshot.encode(values), file);
+
+        MappedSnapshot snapshot = MappedSnapshot.open(file);
+        assertThat(snapshot.size(), is(5));
+        assertThat(snapshot.type("zset"), is("zset"));
+        assertThat(snapshot.type("missing"), is("none"));
+        assertThat(snapshot.keys("*t*"), is((Set<String>)ImmutableSet.of("list", "set", "string", "zset")));
+        assertThat(SafeEncoder.encode(snapshot.getrange(SafeEncoder.encode("string"), 0, 4)), is("straw"));
+        assertThat(SafeEncoder.encode(snapshot.getrange(SafeEncoder.encode("string"), -5, -1)), is("berry"));
+        assertThat(snapshot.strlen(SafeEncoder.encode("string")), is(10L));
+        assertThat(snapshot.hmget("hash", "a", "b"), is(Arrays.asList("1", null)));
+        assertThat(snapshot.lrange("list", 1, -1), is(Arrays.asList("b", "c")));
+        assertThat(snapshot.smembers("set"), is((Set<String>)ImmutableSet.of("x", "y")));
+        assertThat(snapshot.zrange("zset", 0, 1), is((Set<String>)new LinkedHashSet<String>(Arrays.asList("low", "mid"))));
+        assertThat(snapshot.get(SafeEncoder.encode("missing")), is(nullValue()));
+        List<Object> fetched = snapshot.valuesOf(Arrays.asList("list", "missing"));
+        assertThat(fetched.get(0), is((Object)Arrays.asList("a", "b", "c")));
+        assertThat(fetched.get(1), is(nullValue()));
+    }
+
+    @Test(expected = JedisDataException.class)
+    public void testWrongType() throws IOException {
+        SortedMap<String, Object> values = new TreeMap<String, Object>();
+        values.put("list", Arrays.asList("a"));
+        File file = new File(this.directory, "wrongtype.snapshot");
+        Files.write(MappedSnapshot.encode(values), file);
+        MappedSnapshot.open(file).get(SafeEncoder.encode("list"));
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class AdaptiveLimitTest {
+
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Runs the given number of rounds in which the limit is fully used and
+     * every unit of work takes the given latency.
+     */
+    private static void saturate(AdaptiveLimit limit, int rounds, long latency) throws InterruptedException {
+        for (int round = 0; round < rounds; round++) {
+            int admitted = 0;
+            while (limit.acquire(0, TimeUnit.NANOSECONDS)) {
+                admitted++;
+            }
+            for (int unit = 0; unit < admitted; unit++) {
+                limit.release(latency, false);
+            }
+        }
+    }
+
+    @Test
+    public void test_that_limit_is_enforced() throws InterruptedException {
+        AdaptiveLimit limit = new AdaptiveLimit(2, 1, 10);
+        assertThat(limit.acquire(0, TimeUnit.NANOSECONDS), is(true));
+        assertThat(limit.acquire(0, TimeUnit.NANOSECONDS), is(true));
+        assertThat(limit.acquire(10, TimeUnit.MILLISECONDS), is(false));
+        assertThat(limit.inFlight(), is(2));
+    }
+
+    @Test
+    public void test_that_waiting_unit_is_admitted_on_release() throws InterruptedException {
+        final AdaptiveLimit limit = new AdaptiveLimit(1, 1, 1);
+        limit.acquire(0, TimeUnit.NANOSECONDS);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException exception) {
+                    return;
+                }
+                limit.release(MILLISECOND, false);
+            }
+        }).start();
+        assertThat(limit.acquire(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void test_that_limit_grows_while_latency_is_steady() throws InterruptedException {
+        AdaptiveLimit limit = new AdaptiveLimit(4, 1, 100);
+        saturate(limit, 20, MILLISECOND);
+        assertThat(limit.limit() > 4, is(true));
+        assertThat(limit.limit() <= 100, is(true));
+    }
+
+    @Test
+    public void test_that_limit_does_not_grow_while_idle() throws InterruptedException {
+        AdaptiveLimit limit = new AdaptiveLimit(10, 1, 100);
+        for (int unit = 0; unit < 100; unit++) {
+            limit.acquire(0, TimeUnit.NANOSECONDS);
+            limit.release(MILLISECOND, false);
+        }
+        assertThat(limit.limit(), is(10));
+    }
+
+    @Test
+    public void test_that_limit_shrinks_when_latency_rises() throws InterruptedException {
+        AdaptiveLimit limit = new AdaptiveLimit(20, 2, 100);
+        saturate(limit, 5, MILLISECOND);
+        int grown = limit.limit();
+        while (limit.acquire(0, TimeUnit.NANOSECONDS)) {
+            // Use up the limit.
+        }
+        for (int unit = 0; unit < 5; unit++) {
+            limit.release(20 * MILLISECOND, false);
+        }
+        assertThat(limit.limit() < grown, is(true));
+        assertThat(limit.limit() >= 2, is(true));
+    }
+
+    @Test
+    public void test_that_limit_shrinks_on_failure() throws InterruptedException {
+        AdaptiveLimit limit = new AdaptiveLimit(10, 5, 100);
+        for (int unit = 0; unit < 20; unit++) {
+            limit.acquire(0, TimeUnit.NANOSECONDS);
+            limit.release(MILLISECOND, true);
+        }
+        assertThat(limit.limit(), is(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_that_invalid_limits_are_rejected() {
+        new AdaptiveLimit(1, 2, 10);
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import fj.F;
+
+import static com.github.strawberry.util.JedisUtil.using;
+
+/**
+ * Measures how the throughput of borrowing and returning connections scales
+ * with the number of threads, for a plain {@link JedisPool} and for a
+ * {@link ThreadAffinePool} in front of it. Every operation borrows a
+ * connection, optionally sends a PING over it, and returns it. Run with a
+ * Redis database on localhost:6379:
+ * 
+ * <pre>
+ * java -cp ... com.github.strawberry.util.BorrowBenchmark [seconds] [ping]
+ * </pre>
+ *
+ * @author Wiehann Matthysen
+ */
+public final class BorrowBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32};
+
+    private interface Strategy {
+
+        public <T> T _do(F<Jedis, T> callback);
+    }
+
+    private BorrowBenchmark() {}
+
+    private static long run(final Strategy strategy, int threads, final long millis, boolean ping)
+            throws InterruptedException {
+        final F<Jedis, Object> callback = ping ? new F<Jedis, Object>() {
+            @Override
+            public Object f(Jedis jedis) {
+                return jedis.ping();
+            }
+        } : new F<Jedis, Object>() {
+            @Override
+            public Object f(Jedis jedis) {
+                return jedis;
+            }
+        };
+        final AtomicLong operations = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int index = 0; index < threads; index++) {
+            workers[index] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException exception) {
+                        return;
+                    }
+                    long count = 0;
+                    long end = System.nanoTime() + millis * 1000000L;
+                    while (System.nanoTime() < end) {
+                        strategy._do(callback);
+                        count++;
+                    }
+                    operations.addAndGet(count);
+                }
+            });
+            workers[index].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.get() * 1000 / millis;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long millis = (args.length > 0 ? Long.parseLong(args[0]) : 2) * 1000;
+        boolean ping = args.length > 1 && args[1].equals("ping");
+        System.out.printf("%8s %16s %16s%n", "threads", "pool (ops/s)", "affine (ops/s)");
+        for (int threads : THREADS) {
+            JedisPoolConfig config = new JedisPoolConfig();
+            config.setMaxActive(threads * 2);
+            final JedisPool pool = new JedisPool(config, "localhost", 6379);
+            final ThreadAffinePool affine = new ThreadAffinePool(pool, threads);
+            try {
+                long pooled = run(new Strategy() {
+                    @Override
+                    public <T> T _do(F<Jedis, T> callback) {
+                        return using(pool)._do(callback);
+                    }
+                }, threads, millis, ping);
+                long pinned = run(new Strategy() {
+                    @Override
+                    public <T> T _do(F<Jedis, T> callback) {
+                        return using(affine)._do(callback);
+                    }
+                }, threads, millis, ping);
+                System.out.printf("%8d %16d %16d%n", threads, pooled, pinned);
+            } finally {
+                affine.close();
+                pool.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.strawberry.util.Compression.Format;
+import com.google.common.io.ByteStreams;
+
+import static com.github.strawberry.util.Compression.compress;
+import static com.github.strawberry.util.Compression.decompress;
+import static com.github.strawberry.util.Compression.formatOf;
+import static com.github.strawberry.util.Compression.inputStreamOf;
+import static com.github.strawberry.util.Compression.isCompressed;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class CompressionTest {
+
+    private static byte[] sample(int size) {
+        Random random = new Random(42);
+        byte[] value = new byte[size];
+        for (int index = 0; index < size; index++) {
+            // Use a small alphabet so that the sample is compressible.
+            value[index] = (byte)('a' + random.nextInt(4));
+        }
+        return value;
+    }
+
+    @Test
+    public void test_that_gzip_compressed_value_is_detected_and_decompressed() throws IOException {
+        byte[] value = sample(1 << 20);
+        byte[] compressed = compress(value, Format.GZIP);
+        assertThat(compressed.length < value.length, is(true));
+        assertThat(formatOf(compressed).some(), is(Format.GZIP));
+        assertThat(decompress(compressed), is(equalTo(value)));
+        assertThat(ByteStreams.toByteArray(inputStreamOf(compressed)), is(equalTo(value)));
+    }
+
+    @Test
+    public void test_that_lzf_compressed_value_is_detected_and_decompressed() throws IOException {
+        // Use a value that spans multiple LZF chunks.
+        byte[] value = sample(200000);
+        byte[] compressed = compress(value, Format.LZF);
+        assertThat(compressed.length < value.length, is(true));
+        assertThat(formatOf(compressed).some(), is(Format.LZF));
+        assertThat(decompress(compressed), is(equalTo(value)));
+        assertThat(ByteStreams.toByteArray(inputStreamOf(compressed)), is(equalTo(value)));
+    }
+
+    @Test
+    public void test_that_empty_value_survives_compression() throws IOException {
+        assertThat(decompress(compress(new byte[]{}, Format.GZIP)), is(equalTo(new byte[]{})));
+        assertThat(decompress(compress(new byte[]{}, Format.LZF)), is(equalTo(new byte[]{})));
+    }
+
+    @Test
+    public void test_that_uncompressed_value_is_returned_as_is() throws IOException {
+        byte[] value = "plain value".getBytes();
+        assertThat(isCompressed(value), is(false));
+        assertThat(isCompressed(new byte[]{}), is(false));
+        assertThat(decompress(value), is(sameInstance(value)));
+        assertThat(ByteStreams.toByteArray(inputStreamOf(value)), is(equalTo(value)));
+    }
+
+    @Test(expected = IOException.class)
+    public void test_that_corrupt_compressed_value_throws_exception() throws IOException {
+        byte[] compressed = compress(sample(1000), Format.GZIP);
+        byte[] truncated = new byte[compressed.length / 2];
+        System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+        decompress(truncated);
+    }
+
+    @Test
+    public void test_that_compressed_stream_is_detected_and_decompressed() throws IOException {
+        byte[] value = sample(100000);
+        InputStream compressed = new ByteArrayInputStream(compress(value, Format.LZF));
+        assertThat(ByteStreams.toByteArray(inputStreamOf(compressed)), is(equalTo(value)));
+        InputStream uncompressed = new ByteArrayInputStream(new byte[]{'Z', 'V'});
+        assertThat(ByteStreams.toByteArray(inputStreamOf(uncompressed)), is(equalTo(new byte[]{'Z', 'V'})));
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import org.junit.Test;
+
+import static com.github.strawberry.util.Glob.isLiteral;
+import static com.github.strawberry.util.Glob.matches;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class GlobTest {
+
+    @Test
+    public void test_that_literal_pattern_only_matches_itself() {
+        assertThat(isLiteral("test:key"), is(true));
+        assertThat(matches("test:key", "test:key"), is(true));
+        assertThat(matches("test:key", "test:keys"), is(false));
+        assertThat(matches("test:key", "test:ke"), is(false));
+    }
+
+    @Test
+    public void test_that_star_matches_any_sequence() {
+        assertThat(isLiteral("test:*"), is(false));
+        assertThat(matches("test:*", "test:"), is(true));
+        assertThat(matches("test:*", "test:key"), is(true));
+        assertThat(matches("*:key", "test:key"), is(true));
+        assertThat(matches("t*t:*y", "test:key"), is(true));
+        assertThat(matches("t**y", "test:key"), is(true));
+        assertThat(matches("test:*", "other:key"), is(false));
+        assertThat(matches("*", ""), is(true));
+    }
+
+    @Test
+    public void test_that_question_mark_matches_single_character() {
+        assertThat(matches("test:ke?", "test:key"), is(true));
+        assertThat(matches("test:ke?", "test:ke"), is(false));
+        assertThat(matches("test:?", "test:ab"), is(false));
+    }
+
+    @Test
+    public void test_that_set_matches_enclosed_characters() {
+        assertThat(matches("test:[abc]", "test:b"), is(true));
+        assertThat(matches("test:[abc]", "test:d"), is(false));
+        assertThat(matches("test:[^abc]", "test:d"), is(true));
+        assertThat(matches("test:[^abc]", "test:a"), is(false));
+        assertThat(matches("test:[a-c]", "test:b"), is(true));
+        assertThat(matches("test:[c-a]", "test:b"), is(true));
+        assertThat(matches("test:[a-c]", "test:d"), is(false));
+        assertThat(matches("test:[a", "test:[a"), is(true));
+    }
+
+    @Test
+    public void test_that_escaped_characters_are_matched_literally() {
+        assertThat(isLiteral("test:\\*"), is(false));
+        assertThat(matches("test:\\*", "test:*"), is(true));
+        assertThat(matches("test:\\*", "test:key"), is(false));
+        assertThat(matches("test:[\\]]", "test:]"), is(true));
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void test_that_percentiles_are_estimated_from_recorded_latencies() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.percentile(0.5), is(-1L));
+        for (int latency = 1; latency <= 100; latency++) {
+            histogram.record(latency);
+        }
+        assertThat(histogram.count(), is(100L));
+        assertThat(histogram.percentile(0.5), is(50L));
+        assertThat(histogram.percentile(0.95), is(95L));
+        assertThat(histogram.percentile(1.0), is(100L));
+        assertThat(histogram.percentile(0.0), is(1L));
+    }
+
+    @Test
+    public void test_that_only_most_recent_latencies_are_retained() {
+        LatencyHistogram histogram = new LatencyHistogram(100);
+        for (int latency = 0; latency < 1000; latency++) {
+            histogram.record(1000);
+        }
+        for (int latency = 0; latency < 100; latency++) {
+            histogram.record(10);
+        }
+        assertThat(histogram.percentile(0.99), is(10L));
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.guice.Redis;
+import com.github.strawberry.redis.Keyspace;
+import com.github.strawberry.redis.RedisLoader;
+import com.google.common.cache.CacheLoader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import redis.clients.util.SafeEncoder;
+
+import fj.data.Option;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class LoaderExecutorsTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        this.executor = LoaderExecutors.newLoaderExecutor(3);
+    }
+
+    @After
+    public void teardown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void test_that_bounded_executor_limits_running_tasks() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maximum = new AtomicInteger();
+        List<Future<?>> tasks = new ArrayList<Future<?>>();
+        for (int task = 0; task < 30; task++) {
+            tasks.add(this.executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    int current = running.incrementAndGet();
+                    synchronized (maximum) {
+                        maximum.set(Math.max(maximum.get(), current));
+                    }
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get(5, TimeUnit.SECONDS);
+        }
+        assertThat(maximum.get() <= 3, is(true));
+        assertThat(maximum.get() > 1, is(true));
+    }
+
+    @Test
+    public void test_that_queued_tasks_do_not_occupy_threads() throws Exception {
+        ExecutorService threads = Executors.newCachedThreadPool();
+        ExecutorService bounded = LoaderExecutors.bounded(threads, 2);
+        final Set<Thread> used = Collections.synchronizedSet(new HashSet<Thread>());
+        final CountDownLatch release = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<Future<?>>();
+        for (int task = 0; task < 50; task++) {
+            tasks.add(bounded.submit(new Runnable() {
+                @Override
+                public void run() {
+                    used.add(Thread.currentThread());
+                    try {
+                        release.await();
+                    } catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+        }
+        assertThat(((ThreadPoolExecutor)threads).getPoolSize() <= 2, is(true));
+        release.countDown();
+        bounded.shutdown();
+        for (Future<?> task : tasks) {
+            task.get(5, TimeUnit.SECONDS);
+        }
+        assertThat(used.size() <= 2, is(true));
+        assertThat(bounded.awaitTermination(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_that_bounded_executor_requires_permits() {
+        LoaderExecutors.bounded(this.executor, 0);
+    }
+
+    @Test
+    public void test_that_reload_runs_on_executor() throws Exception {
+        final Thread caller = Thread.currentThread();
+        CacheLoader<String, Thread> loader = LoaderExecutors.asyncReload(new CacheLoader<String, Thread>() {
+            @Override
+            public Thread load(String key) {
+                return Thread.currentThread();
+            }
+        }, this.executor);
+        assertThat(loader.load("key"), is(sameInstance(caller)));
+        ListenableFuture<Thread> reload = loader.reload("key", caller);
+        assertThat(reload.get(5, TimeUnit.SECONDS), is(not(sameInstance(caller))));
+    }
+
+    public static class Container {
+
+        @Redis("test:first")
+        private String first;
+
+        @Redis("test:second")
+        private String second;
+    }
+
+    @Test
+    public void test_that_fields_are_loaded_concurrently_in_bulk() throws Exception {
+        Keyspace keyspace = new Keyspace();
+        keyspace.putString("test:first", SafeEncoder.encode("1"));
+        keyspace.putString("test:second", SafeEncoder.encode("2"));
+        Field first = Container.class.getDeclaredField("first");
+        Field second = Container.class.getDeclaredField("second");
+        RedisLoader loader = new RedisLoader(keyspace, this.executor, 2);
+        Map<Field, Option> values = loader.loadAll(ImmutableList.of(first, second));
+        assertThat(values.get(first).some(), is((Object)"1"));
+        assertThat(values.get(second).some(), is((Object)"2"));
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import org.junit.Test;
+
+import static com.github.strawberry.util.Numbers.parseDouble;
+import static com.github.strawberry.util.Numbers.parseInt;
+import static com.github.strawberry.util.Numbers.parseLong;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class NumbersTest {
+
+    @Test
+    public void test_that_bytes_are_parsed_into_long() {
+        assertThat(parseLong("0".getBytes()), is(0L));
+        assertThat(parseLong("123".getBytes()), is(123L));
+        assertThat(parseLong("-123".getBytes()), is(-123L));
+        assertThat(parseLong("+123".getBytes()), is(123L));
+        assertThat(parseLong("9223372036854775807".getBytes()), is(Long.MAX_VALUE));
+        assertThat(parseLong("-9223372036854775808".getBytes()), is(Long.MIN_VALUE));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void test_that_too_large_value_throws_exception_when_parsing_long() {
+        parseLong("9223372036854775808".getBytes());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void test_that_too_small_value_throws_exception_when_parsing_long() {
+        parseLong("-9223372036854775809".getBytes());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void test_that_sign_only_throws_exception_when_parsing_long() {
+        parseLong("-".getBytes());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void test_that_empty_value_throws_exception_when_parsing_long() {
+        parseLong(new byte[]{});
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void test_that_invalid_value_throws_exception_when_parsing_long() {
+        parseLong("12a".getBytes());
+    }
+
+    @Test
+    public void test_that_bytes_are_parsed_into_int() {
+        assertThat(parseInt("2147483647".getBytes()), is(Integer.MAX_VALUE));
+        assertThat(parseInt("-2147483648".getBytes()), is(Integer.MIN_VALUE));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void test_that_too_large_value_throws_exception_when_parsing_int() {
+        parseInt("2147483648".getBytes());
+    }
+
+    @Test
+    public void test_that_bytes_are_parsed_into_double() {
+        assertThat(parseDouble("0.5".getBytes()), is(0.5));
+        assertThat(parseDouble("-1e3".getBytes()), is(-1000.0));
+    }
+}
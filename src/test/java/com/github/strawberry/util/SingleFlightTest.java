@@ -0,0 +1,132 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class SingleFlightTest {
+
+    private static final int THREADS = 8;
+
+    private final SingleFlight<String, Integer> flight = new SingleFlight<String, Integer>();
+    private final AtomicInteger calls = new AtomicInteger();
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        this.executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void teardown() {
+        this.executor.shutdownNow();
+    }
+
+    private List<Future<Integer>> concurrently(final String key, final Callable<Integer> loader) {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            results.add(this.executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    start.await();
+                    return SingleFlightTest.this.flight.execute(key, loader);
+                }
+            }));
+        }
+        start.countDown();
+        return results;
+    }
+
+    private Callable<Integer> slow(final int value) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                SingleFlightTest.this.calls.incrementAndGet();
+                Thread.sleep(200);
+                return value;
+            }
+        };
+    }
+
+    @Test
+    public void test_that_concurrent_requests_share_one_computation() throws Exception {
+        for (Future<Integer> result : concurrently("key", slow(42))) {
+            assertThat(result.get(), is(42));
+        }
+        assertThat(this.calls.get(), is(1));
+        assertThat(this.flight.inFlight(), is(0));
+    }
+
+    @Test
+    public void test_that_different_keys_are_computed_separately() throws Exception {
+        List<Future<Integer>> first = concurrently("first", slow(1));
+        List<Future<Integer>> second = concurrently("second", slow(2));
+        assertThat(first.get(0).get(), is(1));
+        assertThat(second.get(0).get(), is(2));
+        assertThat(this.calls.get(), is(2));
+    }
+
+    @Test
+    public void test_that_completed_computation_is_not_retained() throws Exception {
+        assertThat(this.flight.execute("key", slow(1)), is(1));
+        assertThat(this.flight.execute("key", slow(2)), is(2));
+        assertThat(this.calls.get(), is(2));
+    }
+
+    @Test
+    public void test_that_failure_is_shared() throws Exception {
+        List<Future<Integer>> results = concurrently("key", new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                SingleFlightTest.this.calls.incrementAndGet();
+                Thread.sleep(200);
+                throw new IllegalStateException("Failed.");
+            }
+        });
+        for (Future<Integer> result : results) {
+            try {
+                result.get();
+                fail();
+            } catch (ExecutionException exception) {
+                assertThat(exception.getCause() instanceof IllegalStateException, is(true));
+            }
+        }
+        assertThat(this.calls.get(), is(1));
+    }
+}
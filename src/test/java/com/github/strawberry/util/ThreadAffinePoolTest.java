@@ -0,0 +1,202 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import fj.F;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import static com.github.strawberry.util.JedisUtil.using;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class ThreadAffinePoolTest {
+
+    private static final F<Jedis, Jedis> IDENTITY = new F<Jedis, Jedis>() {
+        @Override
+        public Jedis f(Jedis jedis) {
+            return jedis;
+        }
+    };
+
+    private JedisPool pool;
+    private ThreadAffinePool affine;
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxActive(8);
+        this.pool = new JedisPool(config, "localhost", 6379);
+        this.affine = new ThreadAffinePool(this.pool, 2);
+        this.executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void teardown() {
+        this.executor.shutdownNow();
+        this.affine.close();
+        this.pool.destroy();
+    }
+
+    private Jedis onOtherThread() throws Exception {
+        return this.executor.submit(new Callable<Jedis>() {
+            @Override
+            public Jedis call() {
+                return using(ThreadAffinePoolTest.this.affine)._do(IDENTITY);
+            }
+        }).get();
+    }
+
+    @Test
+    public void test_that_thread_keeps_its_connection() {
+        Jedis first = using(this.affine)._do(IDENTITY);
+        Jedis second = using(this.affine)._do(IDENTITY);
+        assertThat(second, is(sameInstance(first)));
+        assertThat(this.affine.pinned(), is(1));
+        assertThat(second.ping(), is("PONG"));
+    }
+
+    @Test
+    public void test_that_threads_have_different_connections() throws Exception {
+        Jedis own = using(this.affine)._do(IDENTITY);
+        Jedis other = onOtherThread();
+        assertThat(other, is(not(sameInstance(own))));
+        assertThat(onOtherThread(), is(sameInstance(other)));
+        assertThat(this.affine.pinned(), is(2));
+    }
+
+    @Test
+    public void test_that_pinned_connections_are_bounded() throws Exception {
+        using(this.affine)._do(IDENTITY);
+        onOtherThread();
+        ExecutorService third = Executors.newSingleThreadExecutor();
+        try {
+            Jedis jedis = third.submit(new Callable<Jedis>() {
+                @Override
+                public Jedis call() {
+                    return using(ThreadAffinePoolTest.this.affine)._do(IDENTITY);
+                }
+            }).get();
+            assertThat(jedis.ping(), is("PONG"));
+            assertThat(this.affine.pinned(), is(2));
+        } finally {
+            third.shutdown();
+        }
+    }
+
+    @Test
+    public void test_that_connections_of_terminated_threads_are_reclaimed() throws Exception {
+        onOtherThread();
+        Thread worker = this.executor.submit(new Callable<Thread>() {
+            @Override
+            public Thread call() {
+                return Thread.currentThread();
+            }
+        }).get();
+        this.executor.shutdown();
+        // The executor may report termination before its thread has died.
+        worker.join(1000);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                using(ThreadAffinePoolTest.this.affine)._do(IDENTITY);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertThat(this.affine.pinned(), is(2));
+        using(this.affine)._do(IDENTITY);
+        assertThat(this.affine.pinned(), is(1));
+    }
+
+    @Test
+    public void test_that_nested_use_borrows_another_connection() {
+        final Jedis outer = using(this.affine)._do(IDENTITY);
+        Jedis inner = using(this.affine)._do(new F<Jedis, Jedis>() {
+            @Override
+            public Jedis f(Jedis jedis) {
+                assertThat(jedis, is(sameInstance(outer)));
+                return using(ThreadAffinePoolTest.this.affine)._do(IDENTITY);
+            }
+        });
+        assertThat(inner, is(not(sameInstance(outer))));
+        assertThat(this.affine.pinned(), is(1));
+    }
+
+    @Test
+    public void test_that_broken_connection_is_replaced() {
+        final Jedis first = using(this.affine)._do(IDENTITY);
+        try {
+            using(this.affine)._do(new F<Jedis, Object>() {
+                @Override
+                public Object f(Jedis jedis) {
+                    throw new JedisConnectionException("Broken.");
+                }
+            });
+        } catch (JedisConnectionException exception) {
+            // Expected.
+        }
+        assertThat(this.affine.pinned(), is(0));
+        assertThat(using(this.affine)._do(IDENTITY), is(not(sameInstance(first))));
+    }
+
+    @Test
+    public void test_that_release_returns_connection() {
+        using(this.affine)._do(IDENTITY);
+        this.affine.release();
+        assertThat(this.affine.pinned(), is(0));
+    }
+
+    @Test
+    public void test_that_virtual_threads_are_not_pinned() throws Exception {
+        assumeTrue(LoaderExecutors.hasVirtualThreads());
+        ExecutorService virtual = LoaderExecutors.newVirtualThreadExecutor();
+        try {
+            Jedis jedis = virtual.submit(new Callable<Jedis>() {
+                @Override
+                public Jedis call() {
+                    return using(ThreadAffinePoolTest.this.affine)._do(IDENTITY);
+                }
+            }).get();
+            assertThat(jedis.ping(), is("PONG"));
+            assertThat(this.affine.pinned(), is(0));
+        } finally {
+            virtual.shutdown();
+        }
+    }
+}
@@ -17,6 +17,11 @@
  */
 package com.github.strawberry.util;
 
+import com.github.strawberry.collect.IntSet;
+import com.github.strawberry.collect.LongList;
+import com.github.strawberry.collect.LongSet;
+import com.github.strawberry.collect.StringDoubleMap;
+import com.github.strawberry.collect.StringLongMap;
 import com.google.inject.TypeLiteral;
 
 import java.lang.reflect.Field;
@@ -29,13 +34,16 @@ import java.util.Map;
 
 import org.junit.Test;
 
+import static com.github.strawberry.util.Types.collectionImplementationOf;
 import static com.github.strawberry.util.Types.genericTypeOf;
 import static com.github.strawberry.util.Types.genericTypesOf;
 import static com.github.strawberry.util.Types.isAssignableTo;
 import static com.github.strawberry.util.Types.isEqualTo;
+import static com.github.strawberry.util.Types.mapImplementationOf;
 
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -193,4 +201,13 @@ public class TypesTest {
         assertThat(isAssignableTo(Integer.class).f(fields[5].getType()), is(false));
         assertThat(isAssignableTo(Double.class).f(fields[5].getType()), is(false));
     }
+    
+    @Test
+    public void test_that_primitive_specialized_implementations_are_created() {
+        assertThat(collectionImplementationOf(IntSet.class), is(instanceOf(IntSet.class)));
+        assertThat(collectionImplementationOf(LongSet.class), is(instanceOf(LongSet.class)));
+        assertThat(collectionImplementationOf(LongList.class), is(instanceOf(LongList.class)));
+        assertThat(mapImplementationOf(StringLongMap.class), is(instanceOf(StringLongMap.class)));
+        assertThat(mapImplementationOf(StringDoubleMap.class), is(instanceOf(StringDoubleMap.class)));
+    }
 }